@@ -0,0 +1,108 @@
+package com.clinic.management.benchmark;
+
+import com.clinic.management.dto.AppointmentView;
+import com.clinic.management.dto.SlotView;
+import com.clinic.management.entity.Appointment;
+import com.clinic.management.exception.SlotUnavailableException;
+import com.clinic.management.service.AppointmentService;
+import com.clinic.management.service.DashboardStatsService;
+import com.clinic.management.service.PartitionManager;
+import com.clinic.management.service.SlotOccupancyIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Запись, поиск слотов и список записей врача при истории за historyMonths месяцев.
+ * archive=true - месяцы старше clinic.partitions.hot-months (6) отсоединены в схему archive,
+ * archive=false - вся история в основных таблицах (hot-months больше истории).
+ * Запросы по id (запись на слот) проверяют индекс каждой присоединенной секции, список записей
+ * врача читает все присоединенные месяцы; поиск слотов на день отсекает секции по времени.
+ * ./gradlew jmh -Pjmh.includes=ArchivedHistory
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ArchivedHistoryBenchmark {
+
+    private static final int SLOT_POOL = 100_000;
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"24"})
+    public int historyMonths;
+
+    @Param({"50000"})
+    public int slotsPerMonth;
+
+    @Param({"true", "false"})
+    public boolean archive;
+
+    private BenchmarkApplication app;
+    private AppointmentService appointmentService;
+    private List<Long> freeSlots;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void start() {
+        System.setProperty("clinic.app.clinic.partitions.hot-months", archive ? "6" : "1000");
+        app = BenchmarkApplication.start(rows);
+        app.data.seedHistory(historyMonths, slotsPerMonth);
+        app.bean(PartitionManager.class).maintain();
+        app.data.analyze();
+        app.bean(SlotOccupancyIndex.class).verify(true);
+        app.bean(DashboardStatsService.class).reconcile();
+        appointmentService = app.bean(AppointmentService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        if (app != null) {
+            app.close();
+        }
+        System.clearProperty("clinic.app.clinic.partitions.hot-months");
+    }
+
+    @Setup(Level.Iteration)
+    public void loadFreeSlots() {
+        freeSlots = app.data.freeSlotIds(SLOT_POOL);
+        next.set(0);
+    }
+
+    @Benchmark
+    public Appointment bookFreeSlot() {
+        Long scheduleId = freeSlots.get(next.getAndIncrement() % freeSlots.size());
+        try {
+            return appointmentService.bookAppointment(scheduleId, "benchmark");
+        } catch (SlotUnavailableException e) {
+            return null; // пул исчерпан и пошел по кругу
+        }
+    }
+
+    @Benchmark
+    public List<SlotView> findAvailableForDoctor() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate day = BenchmarkData.firstDay().plusDays(random.nextInt(app.data.days()));
+        return appointmentService.findAvailableSchedules(day, random.nextLong(1, BenchmarkData.DOCTORS + 1));
+    }
+
+    @Benchmark
+    public List<AppointmentView> doctorAppointments() {
+        return appointmentService.getAppointmentViewsForDoctor(
+                ThreadLocalRandom.current().nextLong(1, BenchmarkData.DOCTORS + 1), false);
+    }
+}
@@ -0,0 +1,83 @@
+package com.clinic.management.benchmark;
+
+import com.clinic.management.ClinicManagementApplication;
+import com.clinic.management.service.DashboardStatsService;
+import com.clinic.management.service.LowStockMonitor;
+import com.clinic.management.service.MedicationSearchIndex;
+import com.clinic.management.service.SlotOccupancyIndex;
+import com.clinic.management.service.StockLedgerService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Приложение целиком (все бины как в продакшене, профиль prod) на случайном порту поверх
+ * BenchmarkDatabase, база заполнена rows слотами расписания. Фоновые задания по расписанию
+ * выключены, чтобы не мешать измерениям. Используется бенчмарками JMH и нагрузочным тестом.
+ * Свойства приложения переопределяются системными свойствами clinic.app.*.
+ */
+final class BenchmarkApplication implements AutoCloseable {
+
+    private static final String APP_PROPERTY_PREFIX = "clinic.app.";
+
+    final ConfigurableApplicationContext context;
+    final BenchmarkData data;
+
+    private BenchmarkApplication(ConfigurableApplicationContext context, BenchmarkData data) {
+        this.context = context;
+        this.data = data;
+    }
+
+    static BenchmarkApplication start(int rows) {
+        BenchmarkDatabase.Connection db = BenchmarkDatabase.connection();
+        Map<String, Object> props = new LinkedHashMap<>();
+        props.put("spring.profiles.active", "prod");
+        props.put("spring.datasource.url", db.url());
+        props.put("spring.datasource.username", db.username());
+        props.put("spring.datasource.password", db.password());
+        props.put("server.port", "0");
+        props.put("logging.level.root", "WARN");
+        props.put("logging.level.com.clinic", "WARN");
+        props.put("clinic.stock.reorder-cron", "-");
+        props.put("clinic.stock.reorder-delay-ms", "86400000");
+        props.put("clinic.dashboard.reconcile-cron", "-");
+        props.put("clinic.slot-index.verify-cron", "-");
+        props.put("clinic.slot-index.evict-cron", "-");
+        props.put("clinic.medication-search.refresh-cron", "-");
+        // Любое свойство приложения можно переопределить: -Dclinic.app.spring.threads.virtual.enabled=false
+        System.getProperties().stringPropertyNames().stream()
+                .filter(name -> name.startsWith(APP_PROPERTY_PREFIX))
+                .forEach(name -> props.put(name.substring(APP_PROPERTY_PREFIX.length()), System.getProperty(name)));
+        // Аргументами командной строки, чтобы перекрыть application.properties
+        String[] args = props.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ClinicManagementApplication.class).run(args);
+
+        BenchmarkData data = new BenchmarkData(context.getBean(JdbcTemplate.class), rows);
+        data.seed();
+        // Структуры в памяти строились по пустой БД - перестраиваем по заполненной
+        context.getBean(SlotOccupancyIndex.class).verify(true);
+        context.getBean(LowStockMonitor.class).reconcile();
+        context.getBean(DashboardStatsService.class).reconcile();
+        context.getBean(MedicationSearchIndex.class).refresh();
+        context.getBean(StockLedgerService.class).recordOpeningBalances();
+        return new BenchmarkApplication(context, data);
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    int port() {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        BenchmarkDatabase.shutdown();
+    }
+}
@@ -0,0 +1,185 @@
+package com.clinic.management.benchmark;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Заполнение БД для бенчмарков одним INSERT ... SELECT generate_series на таблицу:
+ * 10 млн слотов вставляются за минуты, а не часы, как через JPA.
+ *
+ * Слоты: по 32 слота в день (8:00-16:00 по 15 минут) на врача, начиная со вчерашнего дня,
+ * 70% свободны. Лекарства: rows / 100, из них 5% ниже минимального запаса.
+ * Для бенчмарка поиска каталог заменяется разнообразными названиями (seedCatalog).
+ */
+final class BenchmarkData {
+
+    static final int DOCTORS = 1000;
+    static final int SLOTS_PER_DAY = 32;
+    static final String[] SPECIALIZATIONS = {"Терапевт", "Хирург", "Кардиолог", "Невролог", "Офтальмолог"};
+
+    private final JdbcTemplate jdbc;
+    private final int rows;
+
+    BenchmarkData(JdbcTemplate jdbc, int rows) {
+        this.jdbc = jdbc;
+        this.rows = rows;
+    }
+
+    // Первый день, на который есть слоты
+    static LocalDate firstDay() {
+        return LocalDate.now().minusDays(1);
+    }
+
+    // Сколько дней покрывают rows слотов
+    int days() {
+        return days(rows);
+    }
+
+    static int days(int rows) {
+        return Math.max(1, (int) Math.ceil((double) rows / ((long) DOCTORS * SLOTS_PER_DAY)));
+    }
+
+    int medications() {
+        return Math.max(100, rows / 100);
+    }
+
+    void seed() {
+        jdbc.execute("TRUNCATE appointments, medication_orders, schedules, shift_templates, medications, doctors, "
+                + "stock_movements, stock_snapshots "
+                + "RESTART IDENTITY CASCADE");
+
+        jdbc.update("INSERT INTO doctors (name, specialization) "
+                + "SELECT 'Доктор ' || g, (ARRAY['" + String.join("','", SPECIALIZATIONS) + "'])[g % " + SPECIALIZATIONS.length + " + 1] "
+                + "FROM generate_series(1, ?) g", DOCTORS);
+
+        // g -> врач (g % DOCTORS), номер слота у врача (g / DOCTORS) -> день и время в дне
+        jdbc.update("INSERT INTO schedules (id, doctor_id, start_time, end_time, is_available) "
+                + "SELECT g, d.doctor_id, d.start_time, d.start_time + interval '15 minutes', (g % 10) < 7 "
+                + "FROM generate_series(1, ?) g, LATERAL (SELECT (g % " + DOCTORS + ") + 1 AS doctor_id, "
+                + "  ?::date + ((g / " + DOCTORS + ") / " + SLOTS_PER_DAY + ") * interval '1 day' "
+                + "  + interval '8 hours' + ((g / " + DOCTORS + ") % " + SLOTS_PER_DAY + ") * interval '15 minutes' AS start_time) d",
+                rows, firstDay());
+        // Последовательность Hibernate должна продолжаться после вставленных id
+        jdbc.execute("SELECT setval('schedules_seq', (SELECT MAX(id) FROM schedules) + 100)");
+
+        jdbc.update("INSERT INTO medications (name, description, quantity, min_stock_level, price) "
+                + "SELECT 'Препарат ' || g, NULL, CASE WHEN g % 20 = 0 THEN 5 ELSE 100 END, 10, 100.00 "
+                + "FROM generate_series(1, ?) g", medications());
+
+        jdbc.execute("VACUUM ANALYZE doctors");
+        jdbc.execute("VACUUM ANALYZE schedules");
+        jdbc.execute("VACUUM ANALYZE medications");
+    }
+
+    // Снова опускает 5% лекарств ниже минимума (после прогона автозаказа)
+    void resetLowStock() {
+        jdbc.update("UPDATE medications SET quantity = CASE WHEN id % 20 = 0 THEN 5 ELSE 100 END "
+                + "WHERE quantity <> CASE WHEN id % 20 = 0 THEN 5 ELSE 100 END");
+        jdbc.update("DELETE FROM medication_orders");
+    }
+
+    /**
+     * Врачи 1..doctors получают одну специализацию; в их слотах занято busyPermille из 1000
+     * (разброс по id слота, без зависимости от врача и времени).
+     */
+    void seedSpecialists(String specialization, int doctors, int busyPermille) {
+        jdbc.update("UPDATE doctors SET specialization = ? WHERE id <= ?", specialization, doctors);
+        jdbc.update("UPDATE schedules SET is_available = (id * 7919) % 1000 >= ? WHERE doctor_id <= ?",
+                busyPermille, doctors);
+        jdbc.execute("VACUUM ANALYZE doctors");
+        jdbc.execute("VACUUM ANALYZE schedules");
+    }
+
+    // Свободные слоты (начиная с firstDay, без истории) в случайном порядке - для бенчмарков записи
+    List<Long> freeSlotIds(int limit) {
+        return jdbc.queryForList("SELECT id FROM schedules WHERE is_available AND start_time >= ? "
+                + "ORDER BY random() LIMIT ?", Long.class, firstDay(), limit);
+    }
+
+    // Слоты, на которые в appointments больше одной записи (двойная запись) - должно быть 0
+    long doubleBookedSlots() {
+        return jdbc.queryForObject("SELECT count(*) FROM (SELECT schedule_id FROM appointments "
+                + "WHERE schedule_id IS NOT NULL GROUP BY schedule_id HAVING count(*) > 1) d", Long.class);
+    }
+
+    /**
+     * История за months прошедших месяцев (до текущего): по slotsPerMonth слотов в месяц,
+     * 70% из них заняты завершенными записями. Строки попадают в секции default; разнести их
+     * по секциям месяцев и архивировать - PartitionManager.maintain().
+     */
+    void seedHistory(int months, int slotsPerMonth) {
+        for (int m = months; m >= 1; m--) {
+            LocalDate monthStart = YearMonth.now().minusMonths(m).atDay(1);
+            jdbc.update("INSERT INTO schedules (id, doctor_id, start_time, end_time, is_available) "
+                    + "SELECT base.id + g, d.doctor_id, d.start_time, d.start_time + interval '15 minutes', (g % 10) >= 7 "
+                    + "FROM (SELECT MAX(id) AS id FROM schedules) base, generate_series(1, ?) g, "
+                    + "LATERAL (SELECT (g % " + DOCTORS + ") + 1 AS doctor_id, "
+                    + "  ?::date + ((g / " + DOCTORS + ") % 28) * interval '1 day' "
+                    + "  + interval '8 hours' + ((g / " + DOCTORS + ") / 28) * interval '15 minutes' AS start_time) d",
+                    slotsPerMonth, monthStart);
+            jdbc.update("INSERT INTO appointments (schedule_id, doctor_id, appointment_time, reason_for_visit, status, created_at) "
+                    + "SELECT s.id, s.doctor_id, s.start_time, 'benchmark', 'COMPLETED', s.start_time - interval '7 days' "
+                    + "FROM schedules s WHERE NOT s.is_available AND s.start_time >= ? AND s.start_time < ?",
+                    monthStart, monthStart.plusMonths(1));
+        }
+        jdbc.execute("SELECT setval('schedules_seq', (SELECT MAX(id) FROM schedules) + 100)");
+    }
+
+    // Статистика планировщика после массовой загрузки (секции - вместе с основной таблицей)
+    void analyze() {
+        jdbc.execute("VACUUM ANALYZE schedules");
+        jdbc.execute("VACUUM ANALYZE appointments");
+    }
+
+    /**
+     * Каталог для бенчмарка поиска: skus лекарств вместо одинаковых "Препарат N". Название -
+     * сочетание трех слогов и дозировка (69 120 вариантов), описание - форма и производитель.
+     */
+    void seedCatalog(int skus) {
+        jdbc.execute("TRUNCATE medication_orders, medications, stock_movements, stock_snapshots RESTART IDENTITY CASCADE");
+        jdbc.update("INSERT INTO medications (name, description, quantity, min_stock_level, price) "
+                + "SELECT initcap(s[1 + g % 24] || s[1 + (g / 24) % 24] || s[1 + (g / 576) % 24]) "
+                + "  || ' ' || d[1 + (g / 13824) % 5] || ' мг', "
+                + "  f[1 + (g / 69120) % 6] || ', ' || m[1 + g % 7], 100, 10, 100.00 "
+                + "FROM generate_series(0, ? - 1) g, (SELECT "
+                + "  ARRAY['ам','бро','ва','гли','да','ке','ла','ми','но','пе','ре','си',"
+                + "        'та','фу','це','зо','ко','ли','ме','на','про','тро','фе','ци'] AS s, "
+                + "  ARRAY['50','100','250','500','1000'] AS d, "
+                + "  ARRAY['Таблетки','Капсулы','Раствор для инъекций','Сироп','Мазь','Суспензия'] AS f, "
+                + "  ARRAY['Фармстандарт','Озон','Вертекс','Биохимик','Канонфарма','Татхимфарм','Медисорб'] AS m) a",
+                skus);
+        jdbc.execute("VACUUM ANALYZE medications");
+    }
+
+    /**
+     * Запросы поиска по каталогу (seedCatalog), как их набирает пользователь: начало названия
+     * длиной от 2 символов, название и начало дозировки, начало слова из описания.
+     * Генератор с постоянным зерном - одинаковые запросы в каждом прогоне.
+     */
+    List<String> searchQueries(int count) {
+        Random random = new Random(42);
+        List<Map<String, Object>> sample = jdbc.queryForList(
+                "SELECT name, description FROM medications ORDER BY md5(id::text) LIMIT ?", count);
+        List<String> queries = new ArrayList<>(count);
+        for (Map<String, Object> row : sample) {
+            String[] name = ((String) row.get("name")).split(" ");
+            int kind = random.nextInt(10);
+            if (kind < 6) {
+                queries.add(name[0].substring(0, 2 + random.nextInt(name[0].length() - 1)));
+            } else if (kind < 9) {
+                queries.add(name[0] + " " + name[1].substring(0, 1 + random.nextInt(name[1].length())));
+            } else {
+                String[] description = ((String) row.get("description")).split("[ ,]+");
+                String word = description[random.nextInt(description.length)];
+                queries.add(word.substring(0, Math.min(word.length(), 3 + random.nextInt(3))));
+            }
+        }
+        return queries;
+    }
+}
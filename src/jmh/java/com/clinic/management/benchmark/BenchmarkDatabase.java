@@ -0,0 +1,67 @@
+package com.clinic.management.benchmark;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * База для бенчмарков. Если задан -Dclinic.bench.jdbc-url (и при необходимости
+ * clinic.bench.username / clinic.bench.password), используется внешний PostgreSQL,
+ * иначе в процессе JMH запускается встроенный PostgreSQL (один на форк).
+ * Встроенный кластер создается с LC_CTYPE из clinic.bench.lc-ctype (по умолчанию C.UTF-8, как
+ * у рабочих баз - UTF-8): при LC_CTYPE=C pg_trgm не видит кириллицу (MedicationSearchBenchmark).
+ */
+final class BenchmarkDatabase {
+
+    private static EmbeddedPostgres embedded;
+
+    private BenchmarkDatabase() {
+    }
+
+    record Connection(String url, String username, String password) {
+    }
+
+    static synchronized Connection connection() {
+        String url = System.getProperty("clinic.bench.jdbc-url");
+        if (url != null) {
+            return new Connection(url,
+                    System.getProperty("clinic.bench.username", "clinic_admin"),
+                    System.getProperty("clinic.bench.password", "admin123"));
+        }
+        if (embedded == null) {
+            try {
+                EmbeddedPostgres.Builder builder = EmbeddedPostgres.builder();
+                String lcCtype = System.getProperty("clinic.bench.lc-ctype", "C.UTF-8");
+                if (!lcCtype.isBlank()) {
+                    builder.setLocaleConfig("lc-ctype", lcCtype);
+                }
+                embedded = builder
+                        // для 10 млн строк расписания настроек по умолчанию мало
+                        .setServerConfig("shared_buffers", "512MB")
+                        .setServerConfig("work_mem", "64MB")
+                        .setServerConfig("maintenance_work_mem", "512MB")
+                        .setServerConfig("max_wal_size", "4GB")
+                        .setServerConfig("fsync", "off")
+                        .setServerConfig("synchronous_commit", "off")
+                        .start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to start embedded PostgreSQL", e);
+            }
+        }
+        return new Connection(embedded.getJdbcUrl("postgres", "postgres") + "&reWriteBatchedInserts=true",
+                "postgres", "postgres");
+    }
+
+    static synchronized void shutdown() {
+        if (embedded != null) {
+            try {
+                embedded.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                embedded = null;
+            }
+        }
+    }
+}
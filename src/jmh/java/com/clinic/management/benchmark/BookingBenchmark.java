@@ -0,0 +1,76 @@
+package com.clinic.management.benchmark;
+
+import com.clinic.management.entity.Appointment;
+import com.clinic.management.exception.SlotUnavailableException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AppointmentService.bookAppointment.
+ * bookFreeSlot - каждая операция занимает новый свободный слот (без конкуренции).
+ * bookContended - CONTENDED_THREADS потоков одновременно пытаются занять один и тот же слот:
+ * успешна одна попытка из CONTENDED_THREADS, остальные получают SlotUnavailableException.
+ * После каждой итерации печатается число дважды занятых слотов; ненулевое значение прерывает прогон.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BookingBenchmark {
+
+    static final int CONTENDED_THREADS = 8;
+    private static final int SLOT_POOL = 200_000;
+
+    private List<Long> freeSlots;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Iteration)
+    public void loadFreeSlots(ClinicState state) {
+        freeSlots = state.data.freeSlotIds(SLOT_POOL);
+        if (freeSlots.isEmpty()) {
+            throw new IllegalStateException("No free slots left for the booking benchmark");
+        }
+        next.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkDoubleBookings(ClinicState state) {
+        long doubleBooked = state.data.doubleBookedSlots();
+        System.out.printf("%nDouble-booked slots: %d%n", doubleBooked);
+        if (doubleBooked > 0) {
+            throw new IllegalStateException(doubleBooked + " slot(s) booked more than once");
+        }
+    }
+
+    @Benchmark
+    public Appointment bookFreeSlot(ClinicState state) {
+        Long scheduleId = freeSlots.get(next.getAndIncrement() % freeSlots.size());
+        try {
+            return state.appointmentService.bookAppointment(scheduleId, "benchmark");
+        } catch (SlotUnavailableException e) {
+            return null; // пул исчерпан и пошел по кругу
+        }
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public Appointment bookContended(ClinicState state) {
+        Long scheduleId = freeSlots.get((next.getAndIncrement() / CONTENDED_THREADS) % freeSlots.size());
+        try {
+            return state.appointmentService.bookAppointment(scheduleId, "benchmark");
+        } catch (SlotUnavailableException e) {
+            return null; // проигранная гонка - ожидаемый исход
+        }
+    }
+}
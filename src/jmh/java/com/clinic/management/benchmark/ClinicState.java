@@ -0,0 +1,41 @@
+package com.clinic.management.benchmark;
+
+import com.clinic.management.service.AppointmentService;
+import com.clinic.management.service.MedicationService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Общее состояние бенчмарков: приложение целиком (см. BenchmarkApplication),
+ * база заполнена rows слотами расписания.
+ */
+@State(Scope.Benchmark)
+public class ClinicState {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    BenchmarkApplication app;
+    BenchmarkData data;
+    AppointmentService appointmentService;
+    MedicationService medicationService;
+
+    @Setup(Level.Trial)
+    public void start() {
+        app = BenchmarkApplication.start(rows);
+        data = app.data;
+        appointmentService = app.bean(AppointmentService.class);
+        medicationService = app.bean(MedicationService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        if (app != null) {
+            app.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.clinic.management.benchmark;
+
+import com.clinic.management.dto.SlotView;
+import com.clinic.management.entity.Schedule;
+import com.clinic.management.service.ScheduleService;
+import com.clinic.management.service.SlotOccupancyIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ScheduleService.findEarliestAvailable: 10 ближайших свободных слотов у 500 врачей одной
+ * специализации, расписание на 90 дней (BenchmarkData.seedSpecialists), против прежнего способа -
+ * getAvailableSchedules(date, specialization) день за днем, пока не наберется 10 слотов.
+ * busyPermille - сколько слотов из 1000 занято: чем больше, тем дальше приходится искать.
+ * Окно - 45 дней со случайного дня первой половины расписания.
+ * С -Dclinic.app.clinic.slot-index.enabled=false earliest измеряет запасной запрос к БД.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EarliestSlotBenchmark {
+
+    private static final String SPECIALIZATION = "Кардиолог";
+    private static final int SPECIALISTS = 500;
+    private static final int DAYS = 90;
+    private static final int WINDOW_DAYS = 45;
+    private static final int LIMIT = 10;
+
+    @Param({"700", "999"})
+    public int busyPermille;
+
+    private BenchmarkApplication app;
+    private ScheduleService scheduleService;
+
+    @Setup(Level.Trial)
+    public void start() {
+        app = BenchmarkApplication.start(BenchmarkData.DOCTORS * BenchmarkData.SLOTS_PER_DAY * DAYS);
+        app.data.seedSpecialists(SPECIALIZATION, SPECIALISTS, busyPermille);
+        app.bean(SlotOccupancyIndex.class).verify(true);
+        scheduleService = app.bean(ScheduleService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        if (app != null) {
+            app.close();
+        }
+    }
+
+    @Benchmark
+    public List<SlotView> earliest() {
+        LocalDate from = randomDay();
+        return scheduleService.findEarliestAvailable(SPECIALIZATION, from.atStartOfDay(),
+                from.plusDays(WINDOW_DAYS).atStartOfDay(), null, LIMIT);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Schedule> dayByDay() {
+        LocalDate from = randomDay();
+        List<Schedule> found = new ArrayList<>();
+        for (LocalDate day = from; day.isBefore(from.plusDays(WINDOW_DAYS)) && found.size() < LIMIT; day = day.plusDays(1)) {
+            for (Schedule schedule : scheduleService.getAvailableSchedules(day, SPECIALIZATION)) {
+                if (found.size() == LIMIT) {
+                    break;
+                }
+                found.add(schedule);
+            }
+        }
+        return found;
+    }
+
+    // Со дня не раньше сегодняшнего (расписание начинается со вчерашнего)
+    private static LocalDate randomDay() {
+        return BenchmarkData.firstDay().plusDays(1 + ThreadLocalRandom.current().nextInt(DAYS / 2));
+    }
+}
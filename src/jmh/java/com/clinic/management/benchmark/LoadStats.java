@@ -0,0 +1,93 @@
+package com.clinic.management.benchmark;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Статистика нагрузочного теста по эндпоинтам: гистограмма задержек (HdrHistogram, мкс),
+ * успешные ответы, ошибки и проигранные гонки за слот (ожидаемый исход, не ошибка).
+ * До start() (прогрев) и после stop() ничего не записывается.
+ */
+final class LoadStats {
+
+    static final class Endpoint {
+        final String name;
+        final Histogram latency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+        final LongAdder ok = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder conflicts = new LongAdder();
+
+        Endpoint(String name) {
+            this.name = name;
+            latency.setAutoResize(true);
+        }
+
+        long requests() {
+            return ok.sum() + errors.sum() + conflicts.sum();
+        }
+    }
+
+    enum Outcome { OK, ERROR, CONFLICT }
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errorKinds = new ConcurrentHashMap<>();
+    private volatile boolean recording;
+    private volatile long startedAt;
+    private volatile long stoppedAt;
+
+    void start() {
+        startedAt = System.nanoTime();
+        recording = true;
+    }
+
+    void stop() {
+        recording = false;
+        stoppedAt = System.nanoTime();
+    }
+
+    void record(String endpoint, long nanos, Outcome outcome) {
+        if (!recording) {
+            return;
+        }
+        Endpoint e = endpoints.computeIfAbsent(endpoint, Endpoint::new);
+        e.latency.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+        switch (outcome) {
+            case OK -> e.ok.increment();
+            case ERROR -> e.errors.increment();
+            case CONFLICT -> e.conflicts.increment();
+        }
+    }
+
+    // Причина ошибки ("POST /appointments/book: 500", "GET /dashboard: HttpTimeoutException") - для отчета
+    void error(String endpoint, String kind) {
+        if (recording) {
+            errorKinds.computeIfAbsent(endpoint + ": " + kind, k -> new LongAdder()).increment();
+        }
+    }
+
+    double seconds() {
+        return (stoppedAt - startedAt) / 1e9;
+    }
+
+    List<Endpoint> endpoints() {
+        List<Endpoint> list = new ArrayList<>(endpoints.values());
+        list.sort((a, b) -> a.name.compareTo(b.name));
+        return list;
+    }
+
+    Map<String, Long> errorKinds() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        errorKinds.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+                .forEach(e -> result.put(e.getKey(), e.getValue().sum()));
+        return result;
+    }
+}
@@ -0,0 +1,203 @@
+package com.clinic.management.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузочный тест всего стека по HTTP: цепочка фильтров безопасности (вход через форму),
+ * контроллеры, Thymeleaf, БД. users пользователей параллельно выполняют сценарии в пропорции mix
+ * (SEARCH - только поиск слотов, BOOK - поиск и запись, BROWSE - дашборд и списки).
+ * В конце - p50/p95/p99, пропускная способность и доля ошибок по каждому эндпоинту.
+ *
+ * Без clinic.load.base-url приложение и встроенный PostgreSQL запускаются в этом же процессе
+ * (BenchmarkApplication, rows слотов), иначе нагрузка идет на уже запущенный экземпляр.
+ * Запуск: ./gradlew loadTest -Pload.users=100 -Pload.duration=120 (все параметры - см. Config.fromSystemProperties).
+ */
+public final class LoadTest {
+
+    record Config(String baseUrl, int rows, int users, int rampUpSeconds, int warmupSeconds, int durationSeconds, long thinkMillis,
+                  Map<VirtualUser.Scenario, Integer> mix, String username, String password,
+                  LocalDate firstDay, int days, int doctors, Path report) {
+
+        static Config fromSystemProperties() {
+            int rows = Integer.getInteger("clinic.load.rows", 10_000);
+            return new Config(
+                    System.getProperty("clinic.load.base-url"),
+                    rows,
+                    Integer.getInteger("clinic.load.users", 50),
+                    Integer.getInteger("clinic.load.ramp-up", 0),
+                    Integer.getInteger("clinic.load.warmup", 15),
+                    Integer.getInteger("clinic.load.duration", 60),
+                    Long.getLong("clinic.load.think-ms", 0),
+                    parseMix(System.getProperty("clinic.load.mix", "search:60,book:25,browse:15")),
+                    System.getProperty("clinic.load.username", "doctor"),
+                    System.getProperty("clinic.load.password", "doctor123"),
+                    LocalDate.parse(System.getProperty("clinic.load.first-day", BenchmarkData.firstDay().toString())),
+                    Integer.getInteger("clinic.load.days", BenchmarkData.days(rows)),
+                    Integer.getInteger("clinic.load.doctors", BenchmarkData.DOCTORS),
+                    Path.of(System.getProperty("clinic.load.report", "build/reports/loadtest/loadtest.json")));
+        }
+
+        Config withBaseUrl(String url) {
+            return new Config(url, rows, users, rampUpSeconds, warmupSeconds, durationSeconds, thinkMillis, mix, username, password,
+                    firstDay, days, doctors, report);
+        }
+
+        // "search:60,book:25,browse:15" -> веса сценариев
+        static Map<VirtualUser.Scenario, Integer> parseMix(String mix) {
+            Map<VirtualUser.Scenario, Integer> weights = new EnumMap<>(VirtualUser.Scenario.class);
+            for (String part : mix.split(",")) {
+                String[] kv = part.trim().split(":");
+                weights.put(VirtualUser.Scenario.valueOf(kv[0].trim().toUpperCase()), Integer.parseInt(kv[1].trim()));
+            }
+            if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+                throw new IllegalArgumentException("Load mix has no positive weights: " + mix);
+            }
+            return weights;
+        }
+
+        VirtualUser.Scenario pick() {
+            int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+            int r = ThreadLocalRandom.current().nextInt(total);
+            for (Map.Entry<VirtualUser.Scenario, Integer> e : mix.entrySet()) {
+                r -= e.getValue();
+                if (r < 0) {
+                    return e.getKey();
+                }
+            }
+            throw new IllegalStateException();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.fromSystemProperties();
+        BenchmarkApplication app = null;
+        if (config.baseUrl() == null) {
+            app = BenchmarkApplication.start(config.rows());
+            config = config.withBaseUrl("http://localhost:" + app.port());
+        }
+        try {
+            LoadStats stats = run(config);
+            report(config, stats);
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    static LoadStats run(Config config) throws InterruptedException {
+        System.out.printf("Load test: %s, %d users (ramp-up %ds), mix %s, think %d ms, warmup %ds, measure %ds%n",
+                config.baseUrl(), config.users(), config.rampUpSeconds(), config.mix(), config.thinkMillis(),
+                config.warmupSeconds(), config.durationSeconds());
+        LoadStats stats = new LoadStats();
+        // Пользователи входят равномерно за ramp-up (тысячи одновременных входов с BCrypt - не типичная нагрузка),
+        // затем прогрев и измерение
+        long startedAt = System.nanoTime();
+        long end = startedAt + TimeUnit.SECONDS.toNanos(
+                config.rampUpSeconds() + config.warmupSeconds() + config.durationSeconds());
+        ExecutorService pool = Executors.newFixedThreadPool(config.users());
+        HttpClient http = VirtualUser.newHttpClient();
+        for (int i = 0; i < config.users(); i++) {
+            final Config c = config;
+            final long startAt = startedAt + TimeUnit.SECONDS.toNanos(config.rampUpSeconds()) * i / config.users();
+            pool.submit(() -> {
+                VirtualUser user = new VirtualUser(c, stats, http);
+                try {
+                    TimeUnit.NANOSECONDS.sleep(startAt - System.nanoTime());
+                    while (System.nanoTime() < end) {
+                        user.run(c.pick());
+                        user.think();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(config.rampUpSeconds() + config.warmupSeconds()));
+        stats.start();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(config.durationSeconds()));
+        stats.stop();
+        pool.shutdownNow();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        return stats;
+    }
+
+    static void report(Config config, LoadStats stats) throws IOException {
+        double seconds = stats.seconds();
+        System.out.printf("%n%-30s %9s %9s %9s %9s %9s %9s %8s %9s%n",
+                "Endpoint", "Requests", "Req/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "Errors", "Conflicts");
+        List<Map<String, Object>> endpoints = new ArrayList<>();
+        for (LoadStats.Endpoint e : stats.endpoints()) {
+            Histogram h = e.latency;
+            long requests = e.requests();
+            double errorRate = requests == 0 ? 0 : (double) e.errors.sum() / requests;
+            System.out.printf("%-30s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %7.2f%% %9d%n",
+                    e.name, requests, requests / seconds,
+                    millis(h.getValueAtPercentile(50)), millis(h.getValueAtPercentile(95)),
+                    millis(h.getValueAtPercentile(99)), millis(h.getMaxValue()),
+                    errorRate * 100, e.conflicts.sum());
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("endpoint", e.name);
+            row.put("requests", requests);
+            row.put("throughput", requests / seconds);
+            row.put("p50Ms", millis(h.getValueAtPercentile(50)));
+            row.put("p95Ms", millis(h.getValueAtPercentile(95)));
+            row.put("p99Ms", millis(h.getValueAtPercentile(99)));
+            row.put("maxMs", millis(h.getMaxValue()));
+            row.put("errors", e.errors.sum());
+            row.put("errorRate", errorRate);
+            row.put("conflicts", e.conflicts.sum());
+            endpoints.add(row);
+        }
+
+        long bookings = stats.endpoints().stream().filter(e -> VirtualUser.BOOK.equals(e.name))
+                .mapToLong(e -> e.ok.sum()).sum();
+        System.out.printf("%nSuccessful bookings: %d (%.1f/s)%n", bookings, bookings / seconds);
+        Map<String, Long> errorKinds = stats.errorKinds();
+        if (!errorKinds.isEmpty()) {
+            System.out.println("Errors:");
+            errorKinds.forEach((kind, count) -> System.out.printf("  %6d  %s%n", count, kind));
+        }
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("baseUrl", config.baseUrl());
+        json.put("rows", config.rows());
+        json.put("users", config.users());
+        json.put("rampUpSeconds", config.rampUpSeconds());
+        json.put("thinkMillis", config.thinkMillis());
+        json.put("mix", config.mix());
+        json.put("seconds", seconds);
+        json.put("bookingsPerSecond", bookings / seconds);
+        json.put("endpoints", endpoints);
+        json.put("errors", errorKinds);
+        Path report = config.report();
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report.toFile(), json);
+        System.out.println("Report: " + report.toAbsolutePath());
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.clinic.management.benchmark;
+
+import com.clinic.management.dto.MedicationSuggestion;
+import com.clinic.management.service.MedicationSearchIndex;
+import com.clinic.management.service.MedicationSearchService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MedicationSearchService: подсказки при наборе на каталоге из skus лекарств (BenchmarkData.seedCatalog),
+ * индекс в памяти (memory) против pg_trgm (trigram). Запросы - BenchmarkData.searchQueries по кругу.
+ * Mode.SampleTime - распределение времени одного поиска, в отчете JMH есть p0.99.
+ * Слотов расписания - минимум: бенчмарку нужен только каталог.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MedicationSearchBenchmark {
+
+    private static final int LIMIT = 10;
+
+    @Param({"200000"})
+    public int skus;
+
+    private BenchmarkApplication app;
+    private MedicationSearchService searchService;
+    private String[] queries;
+
+    // Свой курсор по запросам у каждого потока
+    @State(Scope.Thread)
+    public static class QueryCursor {
+        private int next;
+
+        String next(String[] queries) {
+            String query = queries[next];
+            next = (next + 1) % queries.length;
+            return query;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void start() {
+        app = BenchmarkApplication.start(10_000);
+        app.data.seedCatalog(skus);
+        app.bean(MedicationSearchIndex.class).rebuild();
+        searchService = app.bean(MedicationSearchService.class);
+        queries = app.data.searchQueries(1000).toArray(String[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        if (app != null) {
+            app.close();
+        }
+    }
+
+    @Benchmark
+    public List<MedicationSuggestion> memory(QueryCursor cursor) {
+        return searchService.search(cursor.next(queries), LIMIT, MedicationSearchService.Backend.MEMORY);
+    }
+
+    @Benchmark
+    public List<MedicationSuggestion> trigram(QueryCursor cursor) {
+        return searchService.search(cursor.next(queries), LIMIT, MedicationSearchService.Backend.TRIGRAM);
+    }
+}
@@ -0,0 +1,100 @@
+package com.clinic.management.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Страницы /schedules и /medications по HTTP с кэшем второго уровня Hibernate и без него
+ * (secondLevelCache): врачи для выпадающих списков и таблиц берутся из кэша или из БД.
+ * Кэш отрисованных таблиц (FragmentCache) выключен, чтобы каждый запрос доходил до БД и шаблона.
+ * ./gradlew jmh -Pjmh.includes=ReferencePage -Pjmh.rows=100000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReferencePageBenchmark {
+
+    private static final Pattern CSRF = Pattern.compile("name=\"_csrf\"\\s+value=\"([^\"]+)\"");
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"true", "false"})
+    public boolean secondLevelCache;
+
+    private BenchmarkApplication app;
+    private HttpClient http;
+    private String baseUrl;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException, InterruptedException {
+        System.setProperty("clinic.app.spring.jpa.properties.hibernate.cache.use_second_level_cache",
+                Boolean.toString(secondLevelCache));
+        System.setProperty("clinic.app.spring.jpa.properties.hibernate.cache.use_query_cache",
+                Boolean.toString(secondLevelCache));
+        System.setProperty("clinic.app.clinic.fragment-cache.max-bytes", "0");
+        app = BenchmarkApplication.start(rows);
+        baseUrl = "http://localhost:" + app.port();
+        // Один пользователь: сессия в cookie, вход через форму с CSRF-токеном
+        http = HttpClient.newBuilder().cookieHandler(new CookieManager())
+                .followRedirects(HttpClient.Redirect.NEVER).build();
+        Matcher csrf = CSRF.matcher(get("/login"));
+        if (!csrf.find()) {
+            throw new IllegalStateException("No CSRF token on the login page");
+        }
+        String form = "username=admin&password=admin123&_csrf=" + URLEncoder.encode(csrf.group(1), StandardCharsets.UTF_8);
+        HttpResponse<Void> login = http.send(HttpRequest.newBuilder(URI.create(baseUrl + "/login"))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString(form)).build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (login.statusCode() != 302 || login.headers().firstValue("Location").orElse("").contains("error")) {
+            throw new IllegalStateException("Login failed: " + login.statusCode());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        if (app != null) {
+            app.close();
+        }
+    }
+
+    @Benchmark
+    public int schedulesPage() throws IOException, InterruptedException {
+        return get("/schedules").length();
+    }
+
+    @Benchmark
+    public int medicationsPage() throws IOException, InterruptedException {
+        return get("/medications").length();
+    }
+
+    private String get(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(path + " -> " + response.statusCode());
+        }
+        return response.body();
+    }
+}
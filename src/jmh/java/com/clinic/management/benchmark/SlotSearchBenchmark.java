@@ -0,0 +1,45 @@
+package com.clinic.management.benchmark;
+
+import com.clinic.management.dto.SlotView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AppointmentService.findAvailableSchedules: поиск свободных слотов на день
+ * у одного врача (кандидаты из индекса занятости и проверка по id) и у всех врачей (запрос по диапазону).
+ * День и врач выбираются случайно в пределах заполненных данных.
+ * День заполнен целиком (DOCTORS * SLOTS_PER_DAY слотов) только при rows от 32000 - при меньшем
+ * rows поиск на день возвращает меньше строк, и время с большими rows не сравнимо.
+ * ./gradlew jmh -Pjmh.includes=SlotSearch -Pjmh.rows=10000,1000000,10000000
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SlotSearchBenchmark {
+
+    @Benchmark
+    public List<SlotView> findAvailableForDoctor(ClinicState state) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long doctorId = random.nextLong(1, BenchmarkData.DOCTORS + 1);
+        return state.appointmentService.findAvailableSchedules(randomDay(state, random), doctorId);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<SlotView> findAvailableForDay(ClinicState state) {
+        return state.appointmentService.findAvailableSchedules(randomDay(state, ThreadLocalRandom.current()), null);
+    }
+
+    private static LocalDate randomDay(ClinicState state, ThreadLocalRandom random) {
+        return BenchmarkData.firstDay().plusDays(random.nextInt(state.data.days()));
+    }
+}
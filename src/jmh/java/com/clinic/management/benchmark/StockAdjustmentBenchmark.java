@@ -0,0 +1,85 @@
+package com.clinic.management.benchmark;
+
+import com.clinic.management.service.MedicationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MedicationService.adjustStock: 64 потока выдают лекарства из небольшого набора популярных
+ * (hot - сколько лекарств делят все потоки). atomic - каждое изменение одним
+ * UPDATE ... RETURNING (строка блокируется на время оператора, соединения из пула);
+ * write-behind - изменения копятся в StockDeltaBuffer и пишутся пачкой раз в flush-ms.
+ * Поток чередует выдачу и возврат, чтобы остаток не упирался в ноль.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StockAdjustmentBenchmark {
+
+    private static final int DISPENSERS = 64;
+
+    @Param({"atomic", "write-behind"})
+    public String mode;
+
+    @Param({"1", "50"})
+    public int hot;
+
+    private BenchmarkApplication app;
+    private MedicationService medicationService;
+    private long[] hotIds;
+
+    @Setup(Level.Trial)
+    public void start() {
+        System.setProperty("clinic.app.clinic.stock.write-behind.enabled", String.valueOf(mode.equals("write-behind")));
+        try {
+            System.setProperty("clinic.app.clinic.stock.write-behind.journal-dir",
+                    Files.createTempDirectory("stock-journal").toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        app = BenchmarkApplication.start(10_000);
+        JdbcTemplate jdbc = app.bean(JdbcTemplate.class);
+        List<Long> ids = jdbc.queryForList("SELECT id FROM medications ORDER BY id LIMIT ?", Long.class, hot);
+        jdbc.update("UPDATE medications SET quantity = 1000000, min_stock_level = 10 WHERE id <= ?", ids.get(ids.size() - 1));
+        hotIds = ids.stream().mapToLong(Long::longValue).toArray();
+        medicationService = app.bean(MedicationService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        if (app != null) {
+            app.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Dispenser {
+        int sign = -1;
+    }
+
+    @Benchmark
+    @Threads(DISPENSERS)
+    public OptionalInt adjustStock(Dispenser dispenser) {
+        dispenser.sign = -dispenser.sign;
+        long id = hotIds[ThreadLocalRandom.current().nextInt(hotIds.length)];
+        return medicationService.adjustStock(id, dispenser.sign);
+    }
+}
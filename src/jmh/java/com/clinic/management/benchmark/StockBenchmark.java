@@ -0,0 +1,49 @@
+package com.clinic.management.benchmark;
+
+import com.clinic.management.entity.Medication;
+import com.clinic.management.service.MedicationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MedicationService: чтение лекарств с низким запасом и полный проход автозаказа.
+ * Перед каждым проходом автозаказа 5% лекарств снова опускаются ниже минимума
+ * (вне измерения), иначе второй и следующие проходы ничего бы не делали.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StockBenchmark {
+
+    // Только для прохода автозаказа: сброс остатков перед каждым вызовом
+    @State(Scope.Benchmark)
+    public static class LowStockReset {
+        @Setup(Level.Invocation)
+        public void resetLowStock(ClinicState state) {
+            state.data.resetLowStock();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public List<Medication> getLowStockMedications(ClinicState state) {
+        return state.medicationService.getLowStockMedications();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 10, batchSize = 1)
+    public MedicationService.StockCheckReport checkStockLevelsAndOrder(ClinicState state, LowStockReset reset) {
+        return state.medicationService.checkStockLevelsAndOrder();
+    }
+}
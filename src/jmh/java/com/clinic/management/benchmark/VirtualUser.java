@@ -0,0 +1,241 @@
+package com.clinic.management.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Один пользователь нагрузочного теста: своя HTTP-сессия (cookie SESSION), вход через
+ * форму /login с CSRF-токеном, дальше - сценарии как в браузере. Редиректы не следуются
+ * автоматически: каждый запрос цепочки измеряется отдельно. HttpClient общий на всех
+ * пользователей (у каждого клиента свой поток-селектор - на тысячи пользователей это дорого),
+ * cookie каждый пользователь хранит сам.
+ */
+final class VirtualUser {
+
+    enum Scenario { SEARCH, BOOK, BROWSE }
+
+    static final String LOGIN_PAGE = "GET /login";
+    static final String LOGIN = "POST /login";
+    static final String FIND = "GET /appointments/find";
+    static final String BOOK_FORM = "GET /appointments/book/{id}";
+    static final String BOOK = "POST /appointments/book";
+    static final String MY = "GET /appointments/my";
+    static final String DASHBOARD = "GET /dashboard";
+    static final String DOCTORS = "GET /doctors";
+    static final String MEDICATIONS = "GET /medications";
+
+    private static final Pattern CSRF = Pattern.compile("name=\"_csrf\"\\s+value=\"([^\"]+)\"");
+    private static final Pattern SLOT_LINK = Pattern.compile("/appointments/book/(\\d+)");
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final LoadTest.Config config;
+    private final LoadStats stats;
+    private final HttpClient http;
+    private final Map<String, String> cookies = new LinkedHashMap<>();
+    private boolean loggedIn;
+
+    VirtualUser(LoadTest.Config config, LoadStats stats, HttpClient http) {
+        this.config = config;
+        this.stats = stats;
+        this.http = http;
+    }
+
+    static HttpClient newHttpClient() {
+        return HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(10))
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+    }
+
+    void run(Scenario scenario) throws InterruptedException {
+        if (!loggedIn && !login()) {
+            return;
+        }
+        switch (scenario) {
+            case SEARCH -> search();
+            case BOOK -> book();
+            case BROWSE -> browse();
+        }
+    }
+
+    private boolean login() throws InterruptedException {
+        Response page = get(LOGIN_PAGE, "/login");
+        String csrf = page != null && page.status == 200 ? csrf(page) : null;
+        if (csrf == null) {
+            return false;
+        }
+        Response login = post(LOGIN, "/login", Map.of(
+                "username", config.username(), "password", config.password(), "_csrf", csrf));
+        loggedIn = login != null && login.status == 302 && login.location().endsWith("/dashboard");
+        if (login != null && !loggedIn) {
+            fail(login, "login rejected -> " + login.location());
+        }
+        return loggedIn;
+    }
+
+    // Поиск свободных слотов врача на день - то, что пользователь делает чаще всего
+    private List<Long> search() throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate day = config.firstDay().plusDays(random.nextInt(config.days()));
+        long doctorId = 1 + random.nextInt(config.doctors());
+        Response page = get(FIND, "/appointments/find?date=" + day + "&doctorId=" + doctorId);
+        List<Long> slots = new ArrayList<>();
+        if (page != null && page.status == 200) {
+            Matcher m = SLOT_LINK.matcher(page.body);
+            while (m.find()) {
+                slots.add(Long.parseLong(m.group(1)));
+            }
+        }
+        return slots;
+    }
+
+    // Поиск -> форма записи -> отправка формы -> "Мои записи"
+    private void book() throws InterruptedException {
+        List<Long> slots = search();
+        if (slots.isEmpty()) {
+            return;
+        }
+        think();
+        long scheduleId = slots.get(ThreadLocalRandom.current().nextInt(slots.size()));
+        Response form = get(BOOK_FORM, "/appointments/book/" + scheduleId);
+        if (form == null || form.status != 200) {
+            // слот успели занять между поиском и открытием формы - редирект обратно к поиску
+            return;
+        }
+        String csrf = csrf(form);
+        if (csrf == null) {
+            return;
+        }
+        think();
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("scheduleId", Long.toString(scheduleId));
+        fields.put("petId", "1");
+        fields.put("reasonForVisit", "Нагрузочный тест");
+        fields.put("_csrf", csrf);
+        Response booked = post(BOOK, "/appointments/book", fields);
+        if (booked != null && booked.location().endsWith("/appointments/my")) {
+            get(MY, "/appointments/my");
+        }
+    }
+
+    private void browse() throws InterruptedException {
+        get(DASHBOARD, "/dashboard");
+        think();
+        get(DOCTORS, "/doctors");
+        think();
+        get(MEDICATIONS, "/medications");
+    }
+
+    void think() throws InterruptedException {
+        if (config.thinkMillis() > 0) {
+            // равномерно в [0, 2 * think], в среднем think
+            Thread.sleep(ThreadLocalRandom.current().nextLong(2L * config.thinkMillis() + 1));
+        }
+    }
+
+    private Response get(String endpoint, String path) throws InterruptedException {
+        return send(endpoint, request(path).GET().build());
+    }
+
+    private Response post(String endpoint, String path, Map<String, String> form) throws InterruptedException {
+        String body = form.entrySet().stream()
+                .map(e -> URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8) + "="
+                        + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
+                .collect(Collectors.joining("&"));
+        return send(endpoint, request(path)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build());
+    }
+
+    private Response send(String endpoint, HttpRequest request) throws InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<String> response;
+        try {
+            response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            stats.record(endpoint, System.nanoTime() - start, LoadStats.Outcome.ERROR);
+            stats.error(endpoint, e.getClass().getSimpleName());
+            return null;
+        }
+        // Set-Cookie: SESSION=...; Path=/; HttpOnly -> запоминаем пару имя=значение
+        for (String header : response.headers().allValues("Set-Cookie")) {
+            int eq = header.indexOf('=');
+            int end = header.indexOf(';');
+            if (eq > 0) {
+                cookies.put(header.substring(0, eq), header.substring(eq + 1, end < 0 ? header.length() : end));
+            }
+        }
+        Response r = new Response(endpoint, response.statusCode(),
+                response.headers().firstValue("Location").orElse(""), response.body());
+        stats.record(endpoint, System.nanoTime() - start, classify(r));
+        if (r.status >= 400) {
+            stats.error(endpoint, Integer.toString(r.status));
+        } else if (r.location().contains("/login")) {
+            // сессия потеряна - войти заново на следующей итерации
+            loggedIn = false;
+            stats.error(endpoint, "redirect to login");
+        }
+        return r;
+    }
+
+    // Редирект POST /appointments/book обратно к поиску - проигранная гонка за слот,
+    // GET формы записи с редиректом - слот заняли после поиска; оба исхода ожидаемы при нагрузке
+    private LoadStats.Outcome classify(Response r) {
+        if (r.status >= 400 || (r.status == 302 && r.location().contains("/login") && !LOGIN.equals(r.endpoint))) {
+            return LoadStats.Outcome.ERROR;
+        }
+        if (r.status == 302 && (BOOK.equals(r.endpoint) || BOOK_FORM.equals(r.endpoint))) {
+            if (r.location().endsWith("/appointments/my")) {
+                return LoadStats.Outcome.OK;
+            }
+            return r.location().contains("/appointments/find") ? LoadStats.Outcome.CONFLICT : LoadStats.Outcome.ERROR;
+        }
+        if (LOGIN.equals(r.endpoint) && !(r.status == 302 && r.location().endsWith("/dashboard"))) {
+            return LoadStats.Outcome.ERROR;
+        }
+        return LoadStats.Outcome.OK;
+    }
+
+    private void fail(Response r, String kind) {
+        stats.error(r.endpoint, kind);
+    }
+
+    private String csrf(Response page) {
+        Matcher m = CSRF.matcher(page.body);
+        if (m.find()) {
+            return m.group(1);
+        }
+        fail(page, "no CSRF token in page");
+        return null;
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(config.baseUrl() + path)).timeout(TIMEOUT);
+        if (!cookies.isEmpty()) {
+            builder.header("Cookie", cookies.entrySet().stream()
+                    .map(e -> e.getKey() + "=" + e.getValue())
+                    .collect(Collectors.joining("; ")));
+        }
+        return builder;
+    }
+
+    private record Response(String endpoint, int status, String location, String body) {
+    }
+}
@@ -0,0 +1,151 @@
+package com.clinic.management.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Перегородка (bulkhead) перед пулом соединений. На виртуальных потоках запросов может быть
+ * тысячи одновременно, а соединений в Hikari - десятки: без перегородки все ждут внутри
+ * Hikari (очередь без гарантии порядка) и через connection-timeout получают ошибку.
+ *
+ * Здесь соединение выдается только по разрешению справедливого (FIFO) семафора на
+ * maxConcurrent разрешений - меньше размера пула, поэтому Hikari отдает соединение сразу.
+ * Ожидающих не больше maxWaiting: сверх этого запрос сразу отклоняется, а не копит очередь,
+ * которую все равно не успеть обслужить. Разрешение возвращается при close() соединения.
+ *
+ * Поток, который уже держит соединение (например, REQUIRES_NEW внутри транзакции), берет
+ * следующее без разрешения, из оставшихся соединений пула: иначе maxConcurrent потоков,
+ * ждущих второе соединение, не отпустили бы первое и ждали бы друг друга до таймаута.
+ */
+public class BulkheadDataSource extends DelegatingDataSource {
+
+    private final int maxConcurrent;
+    private final int maxWaiting;
+    private final long acquireTimeoutMs;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    // Сколько соединений перегородки открыто в текущем потоке
+    private final ThreadLocal<AtomicInteger> held = ThreadLocal.withInitial(AtomicInteger::new);
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public BulkheadDataSource(DataSource target, int maxConcurrent, int maxWaiting, long acquireTimeoutMs,
+                              MeterRegistry registry) {
+        super(target);
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaiting = maxWaiting;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.waitTimer = Timer.builder("clinic.db.bulkhead.wait")
+                .description("Time spent waiting for a database bulkhead permit")
+                .register(registry);
+        this.rejected = Counter.builder("clinic.db.bulkhead.rejected")
+                .description("Connection requests rejected by the database bulkhead (queue full or timeout)")
+                .register(registry);
+        Gauge.builder("clinic.db.bulkhead.waiting", waiting, AtomicInteger::get)
+                .description("Threads waiting for a database bulkhead permit")
+                .register(registry);
+        Gauge.builder("clinic.db.bulkhead.active", this, b -> b.maxConcurrent - b.permits.availablePermits())
+                .description("Connections currently held through the database bulkhead")
+                .register(registry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return guard(super::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return guard(() -> super.getConnection(username, password));
+    }
+
+    private void acquire() throws SQLException {
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            rejected.increment();
+            throw new SQLTransientConnectionException(
+                    "Database bulkhead queue is full (" + maxWaiting + " waiting)");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new SQLTransientConnectionException(
+                        "Database bulkhead permit not available within " + acquireTimeoutMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a database bulkhead permit", e);
+        } finally {
+            waiting.decrementAndGet();
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private interface ConnectionSupplier {
+        Connection get() throws SQLException;
+    }
+
+    // Соединение из пула оборачивается так, чтобы close() вернул разрешение (ровно один раз)
+    private Connection guard(ConnectionSupplier supplier) throws SQLException {
+        AtomicInteger threadHeld = held.get();
+        boolean permit = threadHeld.get() == 0;
+        if (permit) {
+            acquire();
+        }
+        Connection target;
+        try {
+            target = supplier.get();
+        } catch (SQLException | RuntimeException e) {
+            if (permit) {
+                permits.release();
+            }
+            throw e;
+        }
+        threadHeld.incrementAndGet();
+        AtomicBoolean released = new AtomicBoolean();
+        InvocationHandler handler = (proxy, method, args) -> {
+            if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                try {
+                    target.close();
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        threadHeld.decrementAndGet();
+                        if (permit) {
+                            permits.release();
+                        }
+                    }
+                }
+                return null;
+            }
+            return invoke(target, method, args);
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, handler);
+    }
+
+    private static Object invoke(Connection target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.clinic.management.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Проверка логина и пароля с кэшем успешных проверок. Без него каждый вход через форму
+ * и каждый запрос к API (HTTP Basic передает пароль в каждом запросе) - это запрос к таблице
+ * "user" и BCrypt, а BCrypt намеренно дорогой (десятки миллисекунд CPU).
+ *
+ * После успешной проверки делегатом (JdbcDaoImpl + BCrypt) запоминаются HMAC-SHA256 пары
+ * логин/пароль с ключом, случайным для процесса, и полномочия пользователя. Совпадение HMAC -
+ * вход без БД и BCrypt. Неверный пароль всегда проверяет делегат, так что перебор паролей
+ * по-прежнему стоит BCrypt. Кэш ограничен числом записей (вытесняются редкие пользователи)
+ * и временем жизни: смена пароля или роли в БД вступает в силу не позже чем через ttl
+ * (сразу - после evict).
+ */
+public class CachingAuthenticationProvider implements AuthenticationProvider, MeterBinder {
+
+    private static final String HMAC = "HmacSHA256";
+
+    private final AuthenticationProvider delegate;
+    private final Cache<String, VerifiedCredentials> cache;
+    private final SecretKeySpec key;
+
+    private record VerifiedCredentials(byte[] digest, Object principal,
+                                       Collection<? extends GrantedAuthority> authorities) {
+    }
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegate, long maximumSize, Duration ttl) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, HMAC);
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        Object credentials = authentication.getCredentials();
+        if (credentials == null) {
+            return delegate.authenticate(authentication);
+        }
+        String username = authentication.getName();
+        byte[] digest = digest(username, credentials.toString());
+        VerifiedCredentials verified = cache.getIfPresent(username);
+        if (verified != null && MessageDigest.isEqual(verified.digest(), digest)) {
+            UsernamePasswordAuthenticationToken result = UsernamePasswordAuthenticationToken.authenticated(
+                    verified.principal(), null, verified.authorities());
+            result.setDetails(authentication.getDetails());
+            return result;
+        }
+        Authentication result = delegate.authenticate(authentication);
+        if (result != null && result.isAuthenticated()) {
+            cache.put(username, new VerifiedCredentials(digest, result.getPrincipal(), result.getAuthorities()));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return UsernamePasswordAuthenticationToken.class.isAssignableFrom(authentication);
+    }
+
+    // Сразу забыть проверенный пароль пользователя (смена пароля, блокировка)
+    public void evict(String username) {
+        cache.invalidate(username);
+    }
+
+    // cache.gets{cache=credentials,result=hit|miss}, cache.size, cache.evictions
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "credentials");
+    }
+
+    private byte[] digest(String username, String password) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(key);
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+}
@@ -9,6 +9,8 @@ import com.clinic.management.repository.ScheduleRepository;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
@@ -23,4 +25,23 @@ public class DataLoader {
 
         };
     }
-}
\ No newline at end of file
+
+    // Учетные записи по умолчанию (раньше жили в памяти, в SecurityConfig); существующие не трогаем
+    @Bean
+    CommandLineRunner initUsers(JdbcTemplate jdbcTemplate, PasswordEncoder passwordEncoder) {
+        return args -> {
+            createUserIfMissing(jdbcTemplate, passwordEncoder, "admin", "admin123", "ADMIN");
+            createUserIfMissing(jdbcTemplate, passwordEncoder, "doctor", "doctor123", "DOCTOR");
+        };
+    }
+
+    private static void createUserIfMissing(JdbcTemplate jdbcTemplate, PasswordEncoder passwordEncoder,
+                                            String username, String password, String role) {
+        Integer existing = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM \"user\" WHERE username = ?", Integer.class, username);
+        if (existing != null && existing == 0) {
+            jdbcTemplate.update("INSERT INTO \"user\" (username, password, role) VALUES (?, ?, ?) "
+                    + "ON CONFLICT (username) DO NOTHING", username, passwordEncoder.encode(password), role);
+        }
+    }
+}
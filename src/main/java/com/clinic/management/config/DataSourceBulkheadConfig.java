@@ -0,0 +1,51 @@
+package com.clinic.management.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+/**
+ * Оборачивает DataSource приложения в BulkheadDataSource (clinic.db.bulkhead.enabled=true).
+ * По умолчанию разрешений на четверть меньше, чем соединений в пуле Hikari: остаток - для
+ * вложенных соединений потоков, уже получивших разрешение (см. BulkheadDataSource).
+ */
+@Configuration
+@ConditionalOnProperty(name = "clinic.db.bulkhead.enabled", havingValue = "true", matchIfMissing = true)
+public class DataSourceBulkheadConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(DataSourceBulkheadConfig.class);
+
+    // static: BeanPostProcessor создается раньше остальных бинов
+    @Bean
+    public static BeanPostProcessor dataSourceBulkheadPostProcessor(Environment environment,
+                                                                    ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource) || bean instanceof BulkheadDataSource) {
+                    return bean;
+                }
+                int poolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+                int maxConcurrent = environment.getProperty("clinic.db.bulkhead.max-concurrent", Integer.class,
+                        Math.max(1, poolSize - Math.max(1, poolSize / 4)));
+                if (maxConcurrent >= poolSize) {
+                    log.warn("clinic.db.bulkhead.max-concurrent={} leaves no pool connections (of {}) for nested "
+                            + "connections; they will wait in the pool", maxConcurrent, poolSize);
+                }
+                int maxWaiting = environment.getProperty("clinic.db.bulkhead.max-waiting", Integer.class, 10_000);
+                long timeoutMs = environment.getProperty("clinic.db.bulkhead.acquire-timeout-ms", Long.class, 60_000L);
+                log.info("Database bulkhead for '{}': {} concurrent connections, up to {} waiting, timeout {} ms",
+                        beanName, maxConcurrent, maxWaiting, timeoutMs);
+                return new BulkheadDataSource(dataSource, maxConcurrent, maxWaiting, timeoutMs, meterRegistry.getObject());
+            }
+        };
+    }
+}
@@ -0,0 +1,294 @@
+package com.clinic.management.config;
+
+import com.clinic.management.service.JobCoordinator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.session.MapSession;
+import org.springframework.session.PrincipalNameIndexResolver;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * HTTP-сессии в таблице session, общей для всех экземпляров приложения (Spring Session,
+ * см. SessionConfig): за балансировщиком запрос может попасть на любой узел, sticky-сессии не нужны.
+ *
+ * Запись ленивая. Новая сессия вставляется в конце первого запроса; дальше строка обновляется,
+ * только если изменились атрибуты (setAttribute/removeAttribute: вход, CSRF-токен) или id
+ * (меняется при входе), а время последнего обращения - не чаще раза в clinic.session.touch-interval.
+ * Обычный запрос с сессией - одно чтение по уникальному индексу token, без записи. Цена:
+ * expiry_date в БД может отставать от фактической активности на touch-interval.
+ *
+ * Атрибуты хранятся одним блоком (Java-сериализация) - сессии маленькие: контекст безопасности
+ * и CSRF-токен. Изменение объекта в сессии без setAttribute не сохраняется (как SaveMode.ON_SET_ATTRIBUTE
+ * в Spring Session JDBC); при одновременных запросах одной сессии на разных узлах побеждает последняя запись.
+ *
+ * Завершенная сессия (выход) помечается active = false; такие и истекшие строки удаляются
+ * по расписанию порциями по clinic.session.cleanup-batch-size, каждая порция - отдельный
+ * короткий DELETE. Чистку выполняет один узел (JobCoordinator); SKIP LOCKED страхует,
+ * если аренда истекла раньше, чем закончилась чистка.
+ */
+@Component
+public class JdbcSessionRepository implements SessionRepository<JdbcSessionRepository.StoredSession> {
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcSessionRepository.class);
+
+    private static final String USER_ID = "(SELECT id FROM \"user\" WHERE username = ?)";
+
+    private static final String INSERT = "INSERT INTO session (token, user_id, active, created_at, expiry_date, "
+            + "last_accessed_at, max_inactive_seconds, attributes) VALUES (?, " + USER_ID + ", TRUE, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE = "UPDATE session SET token = ?, user_id = " + USER_ID + ", expiry_date = ?, "
+            + "last_accessed_at = ?, max_inactive_seconds = ?, attributes = ? WHERE token = ? AND active";
+
+    private static final String TOUCH = "UPDATE session SET last_accessed_at = ?, expiry_date = ? "
+            + "WHERE token = ? AND active";
+
+    private static final String SELECT = "SELECT token, created_at, last_accessed_at, max_inactive_seconds, attributes "
+            + "FROM session WHERE token = ? AND active";
+
+    private static final String INVALIDATE = "UPDATE session SET active = FALSE, attributes = NULL, expiry_date = ? "
+            + "WHERE token = ?";
+
+    private static final String DELETE_EXPIRED = "DELETE FROM session WHERE id IN "
+            + "(SELECT id FROM session WHERE expiry_date < ? LIMIT ? FOR UPDATE SKIP LOCKED)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JobCoordinator jobCoordinator;
+
+    @Value("${server.servlet.session.timeout:30m}")
+    private Duration timeout;
+
+    @Value("${clinic.session.touch-interval:60s}")
+    private Duration touchInterval;
+
+    @Value("${clinic.session.cleanup-batch-size:1000}")
+    private int cleanupBatchSize;
+
+    private final PrincipalNameIndexResolver<Session> principalNameResolver = new PrincipalNameIndexResolver<>();
+    private final SerializingConverter serializer = new SerializingConverter();
+    private final DeserializingConverter deserializer = new DeserializingConverter(getClass().getClassLoader());
+
+    private Counter inserts;
+    private Counter updates;
+    private Counter touches;
+    private Counter skipped;
+    private Counter cleanedUp;
+
+    @PostConstruct
+    void registerMetrics() {
+        inserts = sessionSaves("insert");
+        updates = sessionSaves("update");
+        touches = sessionSaves("touch");
+        skipped = sessionSaves("skipped");
+        cleanedUp = Counter.builder("clinic.session.cleanup.deleted")
+                .description("Expired or invalidated sessions deleted")
+                .register(meterRegistry);
+    }
+
+    private Counter sessionSaves(String result) {
+        return Counter.builder("clinic.session.saves")
+                .tag("result", result)
+                .description("Session saves at the end of a request by kind of write (skipped - nothing written)")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public StoredSession createSession() {
+        MapSession session = new MapSession();
+        session.setMaxInactiveInterval(timeout);
+        return new StoredSession(session, null);
+    }
+
+    @Override
+    public void save(StoredSession session) {
+        Instant lastAccessed = session.getLastAccessedTime();
+        Timestamp expiry = Timestamp.from(lastAccessed.plus(session.getMaxInactiveInterval()));
+        if (session.persistedId == null) {
+            jdbcTemplate.update(INSERT, session.getId(), principalName(session),
+                    Timestamp.from(session.getCreationTime()), expiry, Timestamp.from(lastAccessed),
+                    (int) session.getMaxInactiveInterval().toSeconds(), serialize(session));
+            inserts.increment();
+        } else if (session.changed || !session.getId().equals(session.persistedId)) {
+            jdbcTemplate.update(UPDATE, session.getId(), principalName(session), expiry, Timestamp.from(lastAccessed),
+                    (int) session.getMaxInactiveInterval().toSeconds(), serialize(session), session.persistedId);
+            updates.increment();
+        } else if (Duration.between(session.persistedLastAccessedTime, lastAccessed).compareTo(touchInterval) >= 0) {
+            jdbcTemplate.update(TOUCH, Timestamp.from(lastAccessed), expiry, session.persistedId);
+            touches.increment();
+        } else {
+            skipped.increment();
+            return;
+        }
+        session.persistedId = session.getId();
+        session.persistedLastAccessedTime = lastAccessed;
+        session.changed = false;
+    }
+
+    @Override
+    public StoredSession findById(String id) {
+        List<StoredSession> found = jdbcTemplate.query(SELECT, (rs, rowNum) -> {
+            MapSession session = new MapSession(rs.getString("token"));
+            session.setCreationTime(rs.getTimestamp("created_at").toInstant());
+            session.setLastAccessedTime(rs.getTimestamp("last_accessed_at").toInstant());
+            session.setMaxInactiveInterval(Duration.ofSeconds(rs.getInt("max_inactive_seconds")));
+            byte[] attributes = rs.getBytes("attributes");
+            if (attributes != null) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> map = (Map<String, Object>) deserializer.convert(attributes);
+                map.forEach(session::setAttribute);
+            }
+            return new StoredSession(session, session.getId());
+        }, id);
+        if (found.isEmpty()) {
+            return null;
+        }
+        StoredSession session = found.get(0);
+        if (session.isExpired()) {
+            deleteById(id);
+            return null;
+        }
+        return session;
+    }
+
+    @Override
+    public void deleteById(String id) {
+        jdbcTemplate.update(INVALIDATE, Timestamp.from(Instant.now()), id);
+    }
+
+    // Истекшие и завершенные сессии - порциями, чтобы не держать долгих блокировок на большой таблице
+    @Scheduled(cron = "${clinic.session.cleanup-cron:0 * * * * *}")
+    public void cleanUpExpiredSessions() {
+        jobCoordinator.runExclusive("session-cleanup", this::deleteExpiredSessions);
+    }
+
+    private void deleteExpiredSessions() {
+        Timestamp now = Timestamp.from(Instant.now());
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(DELETE_EXPIRED, now, cleanupBatchSize);
+            total += deleted;
+        } while (deleted == cleanupBatchSize);
+        if (total > 0) {
+            cleanedUp.increment(total);
+            log.debug("Deleted {} expired or invalidated sessions", total);
+        }
+    }
+
+    private String principalName(StoredSession session) {
+        return principalNameResolver.resolveIndexValueFor(session);
+    }
+
+    private byte[] serialize(StoredSession session) {
+        Map<String, Object> attributes = new HashMap<>();
+        for (String name : session.getAttributeNames()) {
+            attributes.put(name, session.getAttribute(name));
+        }
+        return serializer.convert(attributes);
+    }
+
+    /**
+     * Сессия с отметками о том, что нужно записать в БД при сохранении.
+     */
+    public static final class StoredSession implements Session {
+
+        private final MapSession delegate;
+        // token строки в БД; null - сессия еще не сохранялась
+        private String persistedId;
+        private Instant persistedLastAccessedTime;
+        private boolean changed;
+
+        StoredSession(MapSession delegate, String persistedId) {
+            this.delegate = delegate;
+            this.persistedId = persistedId;
+            this.persistedLastAccessedTime = delegate.getLastAccessedTime();
+        }
+
+        @Override
+        public String getId() {
+            return delegate.getId();
+        }
+
+        @Override
+        public String changeSessionId() {
+            return delegate.changeSessionId();
+        }
+
+        @Override
+        public <T> T getAttribute(String attributeName) {
+            return delegate.getAttribute(attributeName);
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            return delegate.getAttributeNames();
+        }
+
+        @Override
+        public void setAttribute(String attributeName, Object attributeValue) {
+            delegate.setAttribute(attributeName, attributeValue);
+            changed = true;
+        }
+
+        @Override
+        public void removeAttribute(String attributeName) {
+            delegate.removeAttribute(attributeName);
+            changed = true;
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return delegate.getCreationTime();
+        }
+
+        @Override
+        public void setLastAccessedTime(Instant lastAccessedTime) {
+            delegate.setLastAccessedTime(lastAccessedTime);
+        }
+
+        @Override
+        public Instant getLastAccessedTime() {
+            return delegate.getLastAccessedTime();
+        }
+
+        @Override
+        public void setMaxInactiveInterval(Duration interval) {
+            delegate.setMaxInactiveInterval(interval);
+            changed = true;
+        }
+
+        @Override
+        public Duration getMaxInactiveInterval() {
+            return delegate.getMaxInactiveInterval();
+        }
+
+        @Override
+        public boolean isExpired() {
+            return delegate.isExpired();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.clinic.management.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Метрики сервисов: @Timed на методах обрабатывается TimedAspect.
+ * Гистограммы для метрик clinic.* и http.server.requests включаются свойствами
+ * management.metrics.distribution.percentiles-histogram.* (application.properties).
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+}
@@ -1,26 +1,71 @@
 package com.clinic.management.config;
 
+import jakarta.servlet.DispatcherType;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.userdetails.jdbc.JdbcDaoImpl;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
 
+import javax.sql.DataSource;
+import java.time.Duration;
+
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
 
+    // Actuator: health открыт (проверки балансировщика), остальное (prometheus, metrics) -
+    // только ADMIN по HTTP Basic, без сессий: скрейпер Prometheus не умеет в форму входа
+    @Bean
+    @Order(1)
+    public SecurityFilterChain actuatorSecurityFilterChain(HttpSecurity http) throws Exception {
+        http
+                .securityMatcher("/actuator/**")
+                .authorizeHttpRequests((requests) -> requests
+                        .requestMatchers("/actuator/health/**").permitAll()
+                        .anyRequest().hasRole("ADMIN")
+                )
+                .httpBasic(Customizer.withDefaults())
+                .sessionManagement((session) -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .csrf((csrf) -> csrf.disable());
+
+        return http.build();
+    }
+
+    // JSON API (/api/v1): киоски и мобильные клиенты входят по HTTP Basic на каждый запрос,
+    // без сессий и форм, поэтому CSRF-токен не нужен (cookie не используются)
     @Bean
+    @Order(2)
+    public SecurityFilterChain apiSecurityFilterChain(HttpSecurity http) throws Exception {
+        http
+                .securityMatcher("/api/**")
+                .authorizeHttpRequests((requests) -> requests
+                        .anyRequest().authenticated()
+                )
+                .httpBasic(Customizer.withDefaults())
+                .sessionManagement((session) -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .csrf((csrf) -> csrf.disable());
+
+        return http.build();
+    }
+
+    @Bean
+    @Order(3)
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
                 .authorizeHttpRequests((requests) -> requests
+                        // ответ об ошибке (в т.ч. 401 API) не подменяется редиректом на форму входа
+                        .dispatcherTypeMatchers(DispatcherType.ERROR).permitAll()
                         .requestMatchers("/", "/home", "/css/**", "/js/**", "/images/**").permitAll()
+                        .requestMatchers("/admin/**").hasRole("ADMIN")
                         .requestMatchers("/medications/**", "/schedules/**").authenticated()
                         .anyRequest().authenticated()
                 )
@@ -40,21 +85,22 @@ public class SecurityConfig {
         return http.build();
     }
 
+    // Пользователи - в таблице "user" (общей для всех экземпляров), роль - колонка role;
+    // успешные проверки паролей кэшируются, чтобы не ходить в БД и BCrypt на каждый вход и запрос API
     @Bean
-    public UserDetailsService userDetailsService() {
-        UserDetails admin = User.builder()
-                .username("admin")
-                .password(passwordEncoder().encode("admin123"))
-                .roles("ADMIN")
-                .build();
-
-        UserDetails doctor = User.builder()
-                .username("doctor")
-                .password(passwordEncoder().encode("doctor123"))
-                .roles("DOCTOR")
-                .build();
+    public CachingAuthenticationProvider authenticationProvider(
+            DataSource dataSource,
+            @Value("${clinic.security.credential-cache.max-size:10000}") long cacheSize,
+            @Value("${clinic.security.credential-cache.ttl:5m}") Duration cacheTtl) {
+        JdbcDaoImpl users = new JdbcDaoImpl();
+        users.setDataSource(dataSource);
+        users.setUsersByUsernameQuery("SELECT username, password, TRUE FROM \"user\" WHERE username = ?");
+        users.setAuthoritiesByUsernameQuery("SELECT username, 'ROLE_' || role FROM \"user\" WHERE username = ?");
 
-        return new InMemoryUserDetailsManager(admin, doctor);
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(users);
+        provider.setPasswordEncoder(passwordEncoder());
+        return new CachingAuthenticationProvider(provider, cacheSize, cacheTtl);
     }
 
     @Bean
@@ -0,0 +1,11 @@
+package com.clinic.management.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.session.config.annotation.web.http.EnableSpringHttpSession;
+
+// HTTP-сессии в БД (JdbcSessionRepository) вместо памяти Tomcat: фильтр Spring Session
+// подменяет HttpSession во всех запросах, так что сессия видна на любом экземпляре
+@Configuration
+@EnableSpringHttpSession
+public class SessionConfig {
+}
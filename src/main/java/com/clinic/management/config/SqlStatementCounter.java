@@ -0,0 +1,29 @@
+package com.clinic.management.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Считает SQL-запросы Hibernate в текущем потоке. Подключается свойством
+ * hibernate.session_factory.statement_inspector; Hibernate создает экземпляр сам,
+ * поэтому счетчик статический (ThreadLocal). Сбрасывается и читается
+ * в SqlStatementsMetricsFilter - получается число запросов на один HTTP-запрос.
+ * Запросы через JdbcTemplate сюда не попадают.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    public static int current() {
+        return COUNT.get()[0];
+    }
+}
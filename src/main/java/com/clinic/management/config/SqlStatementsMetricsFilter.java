@@ -0,0 +1,44 @@
+package com.clinic.management.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Метрика clinic.http.sql.statements: сколько SQL-запросов Hibernate выполнил
+ * один HTTP-запрос, по шаблону URI. Рост значения для страницы - признак N+1.
+ */
+@Component
+public class SqlStatementsMetricsFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        SqlStatementCounter.reset();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if (pattern != null) {
+                DistributionSummary.builder("clinic.http.sql.statements")
+                        .description("Hibernate SQL statements per HTTP request")
+                        .tag("uri", pattern.toString())
+                        .tag("method", request.getMethod())
+                        .register(meterRegistry)
+                        .record(SqlStatementCounter.current());
+            }
+        }
+    }
+}
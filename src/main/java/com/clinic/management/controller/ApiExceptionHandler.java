@@ -0,0 +1,40 @@
+package com.clinic.management.controller;
+
+import com.clinic.management.exception.ResourceNotFoundException;
+import com.clinic.management.exception.SlotUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Ошибки JSON API в формате application/problem+json (RFC 7807)
+ * вместо redirect с flash-сообщением, как на страницах.
+ */
+@RestControllerAdvice(assignableTypes = {AppointmentApiController.class, MedicationApiController.class})
+public class ApiExceptionHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ApiExceptionHandler.class);
+
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ProblemDetail handleNotFound(ResourceNotFoundException e) {
+        return ProblemDetail.forStatusAndDetail(HttpStatus.NOT_FOUND, e.getMessage());
+    }
+
+    // Слот уже занят (в том числе проигранная гонка) - клиенту нужно выбрать другой
+    @ExceptionHandler(SlotUnavailableException.class)
+    public ProblemDetail handleSlotUnavailable(SlotUnavailableException e) {
+        ProblemDetail problem = ProblemDetail.forStatusAndDetail(HttpStatus.CONFLICT, e.getMessage());
+        problem.setProperty("scheduleId", e.getScheduleId());
+        return problem;
+    }
+
+    // Например, отмена записи не в статусе BOOKED
+    @ExceptionHandler(IllegalStateException.class)
+    public ProblemDetail handleIllegalState(IllegalStateException e) {
+        log.warn("API request rejected: {}", e.getMessage());
+        return ProblemDetail.forStatusAndDetail(HttpStatus.CONFLICT, e.getMessage());
+    }
+}
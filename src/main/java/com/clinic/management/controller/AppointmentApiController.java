@@ -0,0 +1,104 @@
+package com.clinic.management.controller;
+
+import com.clinic.management.dto.AppointmentView;
+import com.clinic.management.dto.BookingView;
+import com.clinic.management.dto.SlotView;
+import com.clinic.management.entity.Appointment;
+import com.clinic.management.service.AppointmentService;
+import com.clinic.management.service.SlotVersionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * JSON API для киосков и мобильных клиентов (вместо разбора HTML-страниц):
+ * поиск свободных слотов, запись, отмена, записи врача.
+ * Списки слотов отдаются со строгим ETag из SlotVersionService (версия слотов дня в БД, общая
+ * для всех узлов): при совпадении If-None-Match ответ 304 без загрузки списка и сериализации.
+ * Ошибки - ApiExceptionHandler.
+ */
+@RestController
+@RequestMapping("/api/v1")
+public class AppointmentApiController {
+
+    private static final Logger log = LoggerFactory.getLogger(AppointmentApiController.class);
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private SlotVersionService slotVersionService;
+
+    // GET /api/v1/slots?date=2024-05-20[&doctorId=7 | &specialization=Терапевт]
+    @GetMapping("/slots")
+    public ResponseEntity<List<SlotView>> findAvailableSlots(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+                                                             @RequestParam(required = false) Long doctorId,
+                                                             @RequestParam(required = false) String specialization,
+                                                             WebRequest request) {
+        // Версия берется до чтения: изменение во время запроса не останется незамеченным
+        String etag = slotVersionService.etag(date, doctorId);
+        if (request.checkNotModified(etag)) {
+            return null; // 304 уже выставлен
+        }
+        List<SlotView> slots = doctorId == null && specialization != null && !specialization.isBlank()
+                ? appointmentService.findAvailableSchedulesBySpecialization(date, specialization.trim())
+                        .stream().map(SlotView::of).toList()
+                : appointmentService.findAvailableSchedules(date, doctorId);
+        // no-cache: клиент хранит ответ, но каждый раз сверяет ETag
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(slots);
+    }
+
+    // POST /api/v1/bookings {"scheduleId": 1, "reasonForVisit": "..."}
+    @PostMapping("/bookings")
+    public ResponseEntity<BookingView> book(@RequestBody AppointmentController.AppointmentRequest bookingRequest) {
+        if (bookingRequest.getScheduleId() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "scheduleId is required");
+        }
+        log.info("API booking request: {}", bookingRequest);
+        Appointment appointment = appointmentService.bookAppointment(
+                bookingRequest.getScheduleId(), bookingRequest.getReasonForVisit());
+        return ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentContextPath()
+                        .path("/api/v1/bookings/{id}").buildAndExpand(appointment.getId()).toUri())
+                .body(BookingView.of(appointment));
+    }
+
+    @GetMapping("/bookings/{id}")
+    public BookingView getBooking(@PathVariable Long id) {
+        return BookingView.of(appointmentService.findAppointmentById(id));
+    }
+
+    // DELETE /api/v1/bookings/{id} - отмена записи, слот снова свободен
+    @DeleteMapping("/bookings/{id}")
+    public ResponseEntity<Void> cancel(@PathVariable Long id) {
+        appointmentService.cancelAppointment(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    // GET /api/v1/doctors/7/appointments[?includeArchive=true] - по умолчанию без архивных месяцев
+    @GetMapping("/doctors/{doctorId}/appointments")
+    public List<AppointmentView> getDoctorAppointments(@PathVariable Long doctorId,
+                                                       @RequestParam(defaultValue = "false") boolean includeArchive) {
+        return appointmentService.getAppointmentViewsForDoctor(doctorId, includeArchive);
+    }
+}
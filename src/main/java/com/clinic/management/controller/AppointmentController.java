@@ -1,14 +1,24 @@
 package com.clinic.management.controller;
 
+import com.clinic.management.dto.AppointmentView;
+import com.clinic.management.dto.SlotView;
 import com.clinic.management.entity.Schedule;
 import com.clinic.management.repository.ScheduleRepository; // Для получения деталей слота
 import com.clinic.management.service.AppointmentService;
+import com.clinic.management.service.DoctorService;
+import com.clinic.management.service.ScheduleService;
+import com.clinic.management.service.SlotEventBroadcaster;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import java.util.Collections;
@@ -26,27 +36,88 @@ public class AppointmentController {
     @Autowired
     private ScheduleRepository scheduleRepository; // Нужен для получения деталей слота
 
+    @Autowired
+    private SlotEventBroadcaster slotEventBroadcaster;
+
+    @Autowired
+    private ScheduleService scheduleService;
+
+    @Autowired
+    private DoctorService doctorService;
+
+    private static final int RECENT_APPOINTMENTS_LIMIT = 50;
+    // Окно поиска ближайшего свободного времени по умолчанию, дней
+    private static final int EARLIEST_DEFAULT_DAYS = 14;
+
 
     // --- Страница поиска доступных слотов (упрощенный вариант) ---
     // В реальном приложении здесь была бы форма для выбора даты/врача
     // и, возможно, асинхронная загрузка слотов
     @GetMapping("/find")
-    public String showAvailableSlots(Model model) {
-        // Для примера показываем все доступные слоты на сегодня + 1 день
-        // В реальном приложении дата должна приходить из запроса
-        java.time.LocalDate today = java.time.LocalDate.now();
-        List<Schedule> availableSchedules = appointmentService.findAvailableSchedules(today.plusDays(1), null);
+    public String showAvailableSlots(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) java.time.LocalDate date,
+                                     @RequestParam(required = false) Long doctorId,
+                                     Model model) {
+        // По умолчанию показываем доступные слоты на завтра
+        java.time.LocalDate day = date != null ? date : java.time.LocalDate.now().plusDays(1);
+        // Слоты с данными врача: кандидаты из индекса занятости, проверенные одним запросом
+        List<SlotView> availableSchedules = appointmentService.findAvailableSchedules(day, doctorId);
         model.addAttribute("availableSchedules", availableSchedules);
+        model.addAttribute("date", day);
+        model.addAttribute("doctorId", doctorId);
         return "find_appointment"; // Имя HTML шаблона для отображения слотов
     }
 
 
+    // --- Ближайшее свободное время у любого врача специализации ---
+    @GetMapping("/earliest")
+    public String showEarliestSlots(@RequestParam(required = false) String specialization,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) java.time.LocalDate from,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) java.time.LocalDate to,
+                                    @RequestParam(required = false) Integer duration,
+                                    Model model) {
+        java.time.LocalDate fromDay = from != null ? from : java.time.LocalDate.now();
+        java.time.LocalDate toDay = to != null ? to : fromDay.plusDays(EARLIEST_DEFAULT_DAYS - 1);
+        model.addAttribute("specializations", doctorService.findSpecializations());
+        model.addAttribute("specialization", specialization);
+        model.addAttribute("from", fromDay);
+        model.addAttribute("to", toDay);
+        model.addAttribute("duration", duration);
+        if (specialization != null && !specialization.isBlank()) {
+            // Уже прошедшее время сегодняшнего дня не предлагаем
+            java.time.LocalDateTime now = java.time.LocalDateTime.now();
+            java.time.LocalDateTime start = fromDay.atStartOfDay().isAfter(now) ? fromDay.atStartOfDay() : now;
+            try {
+                model.addAttribute("earliestSlots", scheduleService.findEarliestAvailable(specialization, start,
+                        toDay.plusDays(1).atStartOfDay(), duration, null));
+            } catch (IllegalArgumentException e) {
+                log.debug("Invalid earliest slot search: {}", e.getMessage());
+                model.addAttribute("errorMessage", "Проверьте период поиска и длительность приема.");
+            }
+        }
+        return "earliest_appointment";
+    }
+
+
+    // --- Поток изменений слотов (SSE) для страницы поиска: вместо постоянного обновления страницы ---
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamSlotEvents(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) java.time.LocalDate date,
+                                       @RequestParam(required = false) Long doctorId,
+                                       @RequestParam(required = false) String specialization) {
+        SseEmitter emitter = slotEventBroadcaster.subscribe(new SlotEventBroadcaster.Filter(date, doctorId,
+                specialization == null || specialization.isBlank() ? null : specialization.trim()));
+        if (emitter == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many slot event subscribers");
+        }
+        return emitter;
+    }
+
+
     // --- Показ формы бронирования для выбранного слота ---
     @GetMapping("/book/{scheduleId}")
     public String showBookingForm(@PathVariable Long scheduleId, Model model, RedirectAttributes redirectAttributes) {
         log.debug("Showing booking form for scheduleId: {}", scheduleId);
         try {
-            Schedule schedule = scheduleRepository.findById(scheduleId)
+            Schedule schedule = scheduleRepository.findWithDoctorById(scheduleId)
                     .orElseThrow(() -> new com.clinic.management.exception.ResourceNotFoundException("Schedule slot not found"));
 
             if (!schedule.isAvailable()) {
@@ -84,6 +155,11 @@ public class AppointmentController {
             redirectAttributes.addFlashAttribute("successMessage", "Вы успешно записаны на прием!");
             // Перенаправить на страницу "Мои записи" или дашборд
             return "redirect:/appointments/my"; // Предполагаемый URL для просмотра записей
+        } catch (com.clinic.management.exception.SlotUnavailableException e) {
+            // Слот заняли раньше нас - возвращаем к поиску свободных слотов
+            log.info("Booking lost the race for scheduleId: {}", e.getScheduleId());
+            redirectAttributes.addFlashAttribute("errorMessage", "Извините, этот слот уже занят.");
+            return "redirect:/appointments/find";
         } catch (IllegalStateException | com.clinic.management.exception.ResourceNotFoundException e) {
             log.warn("Booking failed: {}", e.getMessage());
             // Возвращаем пользователя обратно к форме бронирования с ошибкой
@@ -103,12 +179,19 @@ public class AppointmentController {
 
     // --- Страница просмотра записей (заглушка) ---
     @GetMapping("/my")
-    public String showMyAppointments(Model model) {
+    public String showMyAppointments(@RequestParam(required = false) Long doctorId,
+                                     @RequestParam(defaultValue = "false") boolean archive, Model model) {
         // !!! ЗАГЛУШКА: Получение ID текущего владельца !!!
         Long currentOwnerId = 1L;
         // TODO: Получить все записи для всех питомцев владельца
         // List<Appointment> appointments = appointmentService.getAppointmentsForOwner(currentOwnerId);
-
+        // Пока показываем записи врача (doctorId) или последние записи - проекцией, одним запросом
+        List<AppointmentView> appointments = doctorId != null
+                ? appointmentService.getAppointmentViewsForDoctor(doctorId, archive)
+                : appointmentService.getRecentAppointmentViews(RECENT_APPOINTMENTS_LIMIT);
+        model.addAttribute("appointments", appointments);
+        model.addAttribute("doctorId", doctorId);
+        model.addAttribute("archive", archive);
         return "my_appointments"; // Имя HTML шаблона для просмотра записей
     }
 
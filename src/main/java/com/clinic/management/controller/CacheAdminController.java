@@ -0,0 +1,79 @@
+package com.clinic.management.controller;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Статистика кэша второго уровня и кэша запросов Hibernate (только для администраторов)
+@RestController
+@RequestMapping("/admin/cache")
+public class CacheAdminController {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheAdminController.class);
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @GetMapping
+    public Map<String, Object> statistics() {
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("secondLevelCache", counters(stats.getSecondLevelCacheHitCount(),
+                stats.getSecondLevelCacheMissCount(), stats.getSecondLevelCachePutCount()));
+        result.put("queryCache", counters(stats.getQueryCacheHitCount(),
+                stats.getQueryCacheMissCount(), stats.getQueryCachePutCount()));
+
+        // Вытеснения (по размеру и TTL) считает сам Caffeine - JCache MXBean статистики региона
+        Map<String, Long> evictions = jcacheEvictions();
+        Map<String, Object> regions = new TreeMap<>();
+        for (String region : stats.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStats = stats.getCacheRegionStatistics(region);
+            if (regionStats == null) {
+                continue;
+            }
+            Map<String, Object> r = counters(regionStats.getHitCount(), regionStats.getMissCount(),
+                    regionStats.getPutCount());
+            r.put("evictions", evictions.getOrDefault(region, 0L));
+            regions.put(region, r);
+        }
+        result.put("regions", regions);
+        return result;
+    }
+
+    private static Map<String, Object> counters(long hits, long misses, long puts) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("hits", hits);
+        m.put("misses", misses);
+        m.put("puts", puts);
+        long total = hits + misses;
+        m.put("hitRatio", total == 0 ? 0.0 : (double) hits / total);
+        return m;
+    }
+
+    private Map<String, Long> jcacheEvictions() {
+        Map<String, Long> evictions = new LinkedHashMap<>();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (ObjectName name : server.queryNames(new ObjectName("javax.cache:type=CacheStatistics,*"), null)) {
+                evictions.put(name.getKeyProperty("Cache"), (Long) server.getAttribute(name, "CacheEvictions"));
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read JCache statistics MXBeans: {}", e.getMessage());
+        }
+        return evictions;
+    }
+}
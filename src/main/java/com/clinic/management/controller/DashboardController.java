@@ -1,10 +1,6 @@
 package com.clinic.management.controller;
 
-import com.clinic.management.entity.Doctor;
-import com.clinic.management.service.AppointmentService;
-import com.clinic.management.service.DoctorService;
-import com.clinic.management.service.MedicationService;
-import com.clinic.management.service.ScheduleService;
+import com.clinic.management.service.DashboardStatsService;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -13,29 +9,24 @@ import org.springframework.web.bind.annotation.RequestMapping;
 @Controller
 @RequestMapping("/dashboard")
 public class DashboardController {
-    private final ScheduleService scheduleService;
-    private final MedicationService medicationService;
-    private final AppointmentService appointmentService;
-    private final DoctorService doctorService;
+    private final DashboardStatsService dashboardStatsService;
 
 
-    public DashboardController(ScheduleService scheduleService, MedicationService medicationService, AppointmentService appointmentService, DoctorService doctorService) {
-        this.scheduleService = scheduleService;
-        this.medicationService = medicationService;
-        this.appointmentService = appointmentService;
-        this.doctorService = doctorService;
+    public DashboardController(DashboardStatsService dashboardStatsService) {
+        this.dashboardStatsService = dashboardStatsService;
 
     }
 
     @GetMapping
     public String showDashboard(Model model) {
-        long doctorCount = doctorService.countAllDoctors();
-        long medicationCount = medicationService.getAllMedications().size();
-        long appointmentCountToday = appointmentService.countAllAppointments();
+        // Счетчики поддерживаются сервисом по событиям - страница не обращается к таблицам
+        DashboardStatsService.DashboardStats stats = dashboardStatsService.getStats();
         model.addAttribute("pageTitle", "Панель управления"); // Set the page title
-        model.addAttribute("doctorCount", doctorCount);
-        model.addAttribute("medicationCount", medicationCount);
-        model.addAttribute("appointmentCount", appointmentCountToday);
+        model.addAttribute("doctorCount", stats.doctorCount());
+        model.addAttribute("medicationCount", stats.medicationCount());
+        model.addAttribute("appointmentCount", stats.appointmentsToday());
+        model.addAttribute("appointmentsByStatus", stats.appointmentsTodayByStatus());
+        model.addAttribute("lowStockCount", stats.lowStockCount());
         return "dashboard";
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,10 @@
 package com.clinic.management.controller;
 
+import com.clinic.management.dto.KeysetPage;
 import com.clinic.management.entity.Doctor;
 import com.clinic.management.repository.DoctorRepository;
 import com.clinic.management.repository.ScheduleRepository;
+import com.clinic.management.service.DoctorService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Controller;
@@ -24,6 +26,9 @@ public class DoctorController {
     @Autowired
     private DoctorRepository doctorRepository;
 
+    @Autowired
+    private DoctorService doctorService;
+
     @GetMapping("/add")
     public String showAddDoctorForm(Model model) {
         model.addAttribute("doctor", new Doctor());
@@ -40,7 +45,7 @@ public class DoctorController {
             }
 
 
-            doctorRepository.save(doctor);
+            doctorService.createDoctor(doctor);
             redirectAttributes.addFlashAttribute("successMessage", "Врач '" + doctor.getName() + "' успешно добавлен.");
             return "redirect:/doctors";
         } catch (Exception e) {
@@ -51,14 +56,29 @@ public class DoctorController {
     }
 
 
+    // Список врачей постранично (keyset): фильтры name/specialization, сортировка sort/dir, курсор cursor
     @GetMapping
-    public String listDoctors(Model model) {
+    public String listDoctors(@RequestParam(required = false) String name,
+                              @RequestParam(required = false) String specialization,
+                              @RequestParam(defaultValue = "name") String sort,
+                              @RequestParam(defaultValue = "asc") String dir,
+                              @RequestParam(required = false) String cursor,
+                              @RequestParam(required = false) Integer size,
+                              Model model) {
+        model.addAttribute("name", name);
+        model.addAttribute("specialization", specialization);
+        model.addAttribute("sort", sort);
+        model.addAttribute("dir", dir);
+        model.addAttribute("size", KeysetPage.clampSize(size));
         try {
-            List<Doctor> doctors = doctorRepository.findAll();
-            model.addAttribute("doctors", doctors);
+            KeysetPage<Doctor> page = doctorService.findDoctorsPage(name, specialization, sort,
+                    "desc".equalsIgnoreCase(dir), cursor, size);
+            model.addAttribute("page", page);
+            model.addAttribute("doctors", page.content());
             return "doctor";
         } catch (Exception e) {
             model.addAttribute("errorMessage", "Ошибка загрузки списка врачей: " + e.getMessage());
+            model.addAttribute("page", new KeysetPage<Doctor>(List.of(), null, null));
             model.addAttribute("doctors", List.of());
             return "doctor";
         }
@@ -77,7 +97,7 @@ public class DoctorController {
             // Если связанных записей нет, продолжаем удаление
             Optional<Doctor> doctorOptional = doctorRepository.findById(id);
             if (doctorOptional.isPresent()) {
-                doctorRepository.deleteById(id);
+                doctorService.deleteDoctor(id);
                 redirectAttributes.addFlashAttribute("successMessage", "Врач '" + doctorOptional.get().getName() + "' (ID: " + id + ") успешно удален.");
             } else {
                 redirectAttributes.addFlashAttribute("errorMessage", "Ошибка: Врач с ID " + id + " не найден.");
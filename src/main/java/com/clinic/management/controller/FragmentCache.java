@@ -0,0 +1,249 @@
+package com.clinic.management.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.spring6.expression.ThymeleafEvaluationContext;
+import org.thymeleaf.web.servlet.JakartaServletWebApplication;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Кэш отрисованных фрагментов страниц (таблицы расписания и лекарств) в виде готового HTML.
+ * Ключ - шаблон фрагмента, версия данных (ScheduleService.dataVersion, MedicationService.dataVersion)
+ * и параметры запроса (фильтры, сортировка, курсор). Пока версия не изменилась, попадание
+ * отдает строку без запросов к БД и без обработки шаблона; страница вставляет ее через th:utext.
+ *
+ * Размер ограничен суммарным объемом HTML (clinic.fragment-cache.max-bytes), вытесняются
+ * давно не запрошенные записи (LRU). Записи устаревших версий удаляются, как только сохранена
+ * запись новой версии того же фрагмента. max-bytes=0 - кэш выключен, фрагмент рисуется каждый раз.
+ *
+ * Версия данных локальна для узла и не видит изменений, сделанных на других экземплярах, поэтому
+ * запись живет не дольше clinic.fragment-cache.ttl: дольше этого чужое изменение не остается
+ * незамеченным. ttl=0 - без ограничения (один экземпляр приложения).
+ *
+ * Во фрагментах не должно быть ничего, что зависит от пользователя (CSRF-токены, имя, роли):
+ * один и тот же HTML получают все.
+ */
+@Component
+public class FragmentCache {
+
+    private static final Logger log = LoggerFactory.getLogger(FragmentCache.class);
+
+    // Запись без HTML: ключ, узел LinkedHashMap, заголовки объектов
+    private static final long ENTRY_OVERHEAD = 256;
+
+    @Autowired
+    private ITemplateEngine templateEngine;
+
+    @Autowired
+    private ServletContext servletContext;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${clinic.fragment-cache.max-bytes:33554432}")
+    private long maxBytes;
+
+    @Value("${clinic.fragment-cache.ttl:5s}")
+    private Duration ttl;
+
+    private record Key(String template, long version, List<Object> params) {
+    }
+
+    private record Entry(String html, long bytes, long createdNanos) {
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // accessOrder = true: get переносит запись в конец, вытесняется голова
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Long> latestVersions = new HashMap<>();
+    private long bytes;
+    // Источник времени для ttl (наносекунды, как System.nanoTime); тесты подменяют его, чтобы не ждать
+    LongSupplier ticker = System::nanoTime;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private Counter evictions;
+    private JakartaServletWebApplication webApplication;
+
+    @PostConstruct
+    void initialize() {
+        webApplication = JakartaServletWebApplication.buildApplication(servletContext);
+        FunctionCounter.builder("clinic.fragment.cache.requests", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .description("Rendered fragment cache lookups")
+                .register(meterRegistry);
+        FunctionCounter.builder("clinic.fragment.cache.requests", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .description("Rendered fragment cache lookups")
+                .register(meterRegistry);
+        Gauge.builder("clinic.fragment.cache.hit.ratio", this, FragmentCache::hitRatio)
+                .description("Share of fragment lookups served from cache since start")
+                .register(meterRegistry);
+        Gauge.builder("clinic.fragment.cache.bytes", this, FragmentCache::bytesHeld)
+                .description("Estimated size of cached fragment HTML")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("clinic.fragment.cache.entries", this, FragmentCache::size)
+                .description("Cached fragments")
+                .register(meterRegistry);
+        evictions = Counter.builder("clinic.fragment.cache.evictions")
+                .description("Fragments evicted to stay within clinic.fragment-cache.max-bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * HTML фрагмента из кэша или, при промахе, отрисованный заново.
+     * Версию данных нужно получить до вызова (до чтения из БД): изменение, закоммиченное
+     * во время отрисовки, увеличит версию, и следующий запрос нарисует фрагмент заново.
+     *
+     * @param template  шаблон фрагмента (например, fragments/schedules_table)
+     * @param version   версия данных, которые показывает фрагмент
+     * @param params    параметры, от которых зависит содержимое (null допустимы)
+     * @param variables переменные шаблона; вызывается только при промахе - здесь запросы к БД
+     */
+    public String render(String template, long version, List<?> params, Supplier<Map<String, Object>> variables) {
+        Key key = new Key(template, version, Arrays.asList(params.toArray()));
+        Entry cached = get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached.html();
+        }
+        misses.incrementAndGet();
+        String html = process(template, variables.get());
+        put(key, html);
+        return html;
+    }
+
+    public long bytesHeld() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double hitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    private Entry get(Key key) {
+        if (maxBytes <= 0) {
+            return null;
+        }
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null && !ttl.isZero() && ticker.getAsLong() - entry.createdNanos() > ttl.toNanos()) {
+                entries.remove(key);
+                bytes -= entry.bytes();
+                return null;
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(Key key, String html) {
+        // Оценка сверху: кириллица хранится в String по 2 байта на символ
+        long size = 2L * html.length() + ENTRY_OVERHEAD;
+        if (maxBytes <= 0 || size > maxBytes) {
+            return;
+        }
+        lock.lock();
+        try {
+            Long latest = latestVersions.get(key.template());
+            if (latest != null && key.version() < latest) {
+                return; // данные уже изменились, эту версию больше не запросят
+            }
+            if (latest == null || key.version() > latest) {
+                latestVersions.put(key.template(), key.version());
+                removeOlderVersions(key.template(), key.version());
+            }
+            Entry previous = entries.put(key, new Entry(html, size, ticker.getAsLong()));
+            bytes += size - (previous != null ? previous.bytes() : 0);
+            Iterator<Entry> lru = entries.values().iterator();
+            while (bytes > maxBytes && lru.hasNext()) {
+                bytes -= lru.next().bytes();
+                lru.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeOlderVersions(String template, long version) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().template().equals(template) && e.getKey().version() < version) {
+                bytes -= e.getValue().bytes();
+                it.remove();
+            }
+        }
+    }
+
+    // Отрисовка шаблона фрагмента в строку в контексте текущего запроса (ссылки @{...} с context path)
+    private String process(String template, Map<String, Object> variables) {
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
+        // HTML общий для всех пользователей: ссылки не должны получить ;jsessionid= конкретной сессии
+        HttpServletResponse response = new HttpServletResponseWrapper(attributes.getResponse()) {
+            @Override
+            public String encodeURL(String url) {
+                return url;
+            }
+        };
+        WebContext context = new WebContext(webApplication.buildExchange(attributes.getRequest(), response),
+                LocaleContextHolder.getLocale(), variables);
+        context.setVariable(ThymeleafEvaluationContext.THYMELEAF_EVALUATION_CONTEXT_CONTEXT_VARIABLE_NAME,
+                new ThymeleafEvaluationContext(applicationContext, null));
+        long started = System.nanoTime();
+        String html = templateEngine.process(template, context);
+        log.debug("Rendered fragment {} in {} us ({} chars)", template, (System.nanoTime() - started) / 1000, html.length());
+        return html;
+    }
+}
@@ -0,0 +1,63 @@
+package com.clinic.management.controller;
+
+import com.clinic.management.dto.StockAdjustmentView;
+import com.clinic.management.service.MedicationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.OptionalInt;
+
+/**
+ * JSON API склада для аптечных терминалов: выдача и поступление лекарств
+ * (MedicationService.adjustStock, в журнал движения - DISPENSE и RESTOCK).
+ * Если включена отложенная запись остатков, ответ 202 без нового остатка.
+ */
+@RestController
+@RequestMapping("/api/v1/medications")
+public class MedicationApiController {
+
+    private static final Logger log = LoggerFactory.getLogger(MedicationApiController.class);
+
+    public record StockChangeRequest(Integer quantity) {
+    }
+
+    @Autowired
+    private MedicationService medicationService;
+
+    // POST /api/v1/medications/5/dispense {"quantity": 2}
+    @PostMapping("/{id}/dispense")
+    public ResponseEntity<StockAdjustmentView> dispense(@PathVariable Long id, @RequestBody StockChangeRequest request) {
+        return adjust(id, -positiveQuantity(request));
+    }
+
+    // POST /api/v1/medications/5/restock {"quantity": 100}
+    @PostMapping("/{id}/restock")
+    public ResponseEntity<StockAdjustmentView> restock(@PathVariable Long id, @RequestBody StockChangeRequest request) {
+        return adjust(id, positiveQuantity(request));
+    }
+
+    private ResponseEntity<StockAdjustmentView> adjust(Long id, int change) {
+        log.debug("API stock change for medication id={}: {}", id, change);
+        OptionalInt quantity = medicationService.adjustStock(id, change);
+        if (quantity.isEmpty()) {
+            return ResponseEntity.accepted().body(new StockAdjustmentView(id, change, null, true));
+        }
+        return ResponseEntity.ok(new StockAdjustmentView(id, change, quantity.getAsInt(), false));
+    }
+
+    private static int positiveQuantity(StockChangeRequest request) {
+        if (request == null || request.quantity() == null || request.quantity() <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "quantity must be a positive number");
+        }
+        return request.quantity();
+    }
+}
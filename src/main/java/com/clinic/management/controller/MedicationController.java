@@ -1,17 +1,36 @@
 package com.clinic.management.controller;
 
+import com.clinic.management.dto.KeysetPage;
+import com.clinic.management.dto.MedicationSuggestion;
+import com.clinic.management.dto.StockPoint;
 import com.clinic.management.entity.Medication;
 // Убедитесь, что импорт правильный
 import com.clinic.management.exception.ResourceNotFoundException;
+import com.clinic.management.service.CsvTransferService;
+import com.clinic.management.service.LowStockMonitor;
+import com.clinic.management.service.MedicationSearchService;
 import com.clinic.management.service.MedicationService;
+import com.clinic.management.service.StockLedgerService;
 import org.slf4j.Logger; // Добавим логгер
 import org.slf4j.LoggerFactory; // Добавим логгер
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes; // Для сообщений после редиректа
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Controller
 @RequestMapping("/medications") // Базовый путь для всех методов этого контроллера
 public class MedicationController {
@@ -22,15 +41,52 @@ public class MedicationController {
     @Autowired
     private MedicationService medicationService;
 
-    // Отображение страницы управления лекарствами (HTML шаблон)
+    @Autowired
+    private LowStockMonitor lowStockMonitor;
+
+    @Autowired
+    private FragmentCache fragmentCache;
+
+    @Autowired
+    private CsvTransferService csvTransferService;
+
+    @Autowired
+    private MedicationSearchService medicationSearchService;
+
+    @Autowired
+    private StockLedgerService stockLedgerService;
+
+    // Отображение страницы управления лекарствами (HTML шаблон).
+    // Список постраничный (keyset): фильтры name/lowStock, сортировка sort/dir, курсор cursor
     @GetMapping
-    public String viewMedications(Model model) {
+    public String viewMedications(@RequestParam(required = false) String name,
+                                  @RequestParam(defaultValue = "false") boolean lowStock,
+                                  @RequestParam(defaultValue = "name") String sort,
+                                  @RequestParam(defaultValue = "asc") String dir,
+                                  @RequestParam(required = false) String cursor,
+                                  @RequestParam(required = false) Integer size,
+                                  Model model) {
         log.info("GET request received for /medications");
+        model.addAttribute("name", name);
+        model.addAttribute("lowStock", lowStock);
+        model.addAttribute("sort", sort);
+        model.addAttribute("dir", dir);
+        model.addAttribute("size", KeysetPage.clampSize(size));
         try {
-            // Добавляем список ВСЕХ лекарств
-            model.addAttribute("medications", medicationService.getAllMedications());
-            // ИСПРАВЛЕНО: Добавляем список лекарств с НИЗКИМ ЗАПАСОМ
-            model.addAttribute("lowStockMedications", medicationService.getLowStockMedications());
+            // Одна страница лекарств вместо всего каталога; таблица - готовый HTML из кэша,
+            // пока каталог не менялся (при промахе - запрос и отрисовка fragments/medications_table)
+            String table = fragmentCache.render("fragments/medications_table", medicationService.dataVersion(),
+                    Arrays.asList(name, lowStock, sort, dir, cursor, KeysetPage.clampSize(size)), () -> {
+                        KeysetPage<Medication> page = medicationService.findMedicationsPage(name, lowStock, sort,
+                                "desc".equalsIgnoreCase(dir), cursor, size);
+                        Map<String, Object> variables = new HashMap<>(model.asMap());
+                        variables.put("page", page);
+                        variables.put("medications", page.content());
+                        return variables;
+                    });
+            model.addAttribute("medicationsTable", table);
+            // Число лекарств с НИЗКИМ ЗАПАСОМ (из памяти); сам список - фильтр lowStock=true
+            model.addAttribute("lowStockCount", lowStockMonitor.lowStockCount());
             // Добавляем пустой объект для формы добавления (если нужно использовать th:object)
             // model.addAttribute("newMedication", new Medication());
         } catch (Exception e) {
@@ -43,6 +99,26 @@ public class MedicationController {
         return "medications";
     }
 
+    // Подсказки при наборе названия (JSON): GET /medications/search?q=пара&limit=10
+    @GetMapping("/search")
+    @ResponseBody
+    public List<MedicationSuggestion> searchMedications(@RequestParam(defaultValue = "") String q,
+                                                        @RequestParam(required = false) Integer limit) {
+        log.debug("GET request received for /medications/search q='{}'", q);
+        return medicationSearchService.search(q, limit);
+    }
+
+    // Остаток на момент времени и расход за days дней до него по журналу движения запасов (JSON):
+    // GET /medications/5/stock-history?at=2025-03-01T12:00&days=30 (без at - сейчас)
+    @GetMapping("/{id}/stock-history")
+    @ResponseBody
+    public StockPoint stockHistory(@PathVariable Long id,
+                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at,
+                                   @RequestParam(defaultValue = "30") int days) {
+        log.debug("GET request received for /medications/{}/stock-history at={}, days={}", id, at, days);
+        return stockLedgerService.stockAt(id, at != null ? at : LocalDateTime.now(), Math.max(1, days));
+    }
+
     // Обработка добавления нового лекарства (из формы)
     @PostMapping // Метод POST на /medications
     public String addMedication(Medication medication, RedirectAttributes redirectAttributes) {
@@ -59,6 +135,37 @@ public class MedicationController {
         return "redirect:/medications"; // Перенаправление обратно на страницу списка
     }
 
+    // Импорт каталога из CSV (например, прайс поставщика): строки с ошибками пропускаются
+    // и перечисляются на странице, остальные загружаются одной транзакцией
+    @PostMapping("/import")
+    public String importMedications(@RequestParam("file") MultipartFile file, RedirectAttributes redirectAttributes) {
+        log.info("POST request received for /medications/import: {} ({} bytes)", file.getOriginalFilename(), file.getSize());
+        try (InputStream csv = file.getInputStream()) {
+            CsvTransferService.ImportReport report = csvTransferService.importMedications(csv);
+            redirectAttributes.addFlashAttribute("successMessage", "Импорт завершен: добавлено " + report.inserted()
+                    + ", обновлено " + report.updated() + ", без изменений " + report.unchanged()
+                    + ", строк с ошибками " + report.errorCount() + " (" + report.elapsedMillis() + " мс).");
+            redirectAttributes.addFlashAttribute("importErrors", report.errors());
+            redirectAttributes.addFlashAttribute("importErrorCount", report.errorCount());
+        } catch (IllegalArgumentException e) {
+            log.warn("Medications import rejected: {}", e.getMessage());
+            redirectAttributes.addFlashAttribute("errorMessage", "Файл не загружен: " + e.getMessage());
+        } catch (Exception e) {
+            log.error("Error importing medications from {}", file.getOriginalFilename(), e);
+            redirectAttributes.addFlashAttribute("errorMessage", "Ошибка импорта: " + e.getMessage());
+        }
+        return "redirect:/medications";
+    }
+
+    // Выгрузка всего каталога в CSV: строки идут из БД прямо в ответ, каталог в память не загружается
+    @GetMapping("/export")
+    public void exportMedications(HttpServletResponse response) throws IOException {
+        log.info("GET request received for /medications/export");
+        response.setContentType("text/csv;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"medications.csv\"");
+        csvTransferService.exportMedications(response.getOutputStream());
+    }
+
     // Обработка изменения запаса (из JS prompt, который перенаправляет сюда)
     // ИЗМЕНЕНО: Лучше использовать POST или PUT для изменений, но т.к. JS делает GET, оставим GET
     // Если бы JS делал POST, то использовали бы @PostMapping
@@ -66,8 +173,12 @@ public class MedicationController {
     public String updateStock(@RequestParam Long id, @RequestParam int quantity, RedirectAttributes redirectAttributes) {
         log.info("GET request received for /medications/update-stock id={}, quantityChange={}", id, quantity);
         try {
-            medicationService.updateMedicationStock(id, quantity);
-            redirectAttributes.addFlashAttribute("successMessage", "Запас препарата успешно обновлен.");
+            // Уменьшение - выдача (DISPENSE), увеличение - поступление (RESTOCK)
+            if (medicationService.adjustStock(id, quantity).isPresent()) {
+                redirectAttributes.addFlashAttribute("successMessage", "Запас препарата успешно обновлен.");
+            } else {
+                redirectAttributes.addFlashAttribute("successMessage", "Изменение запаса принято и будет записано в течение секунды.");
+            }
         } catch (ResourceNotFoundException e) { // Используем существующий класс
             log.warn("Update stock failed: {}", e.getMessage());
             redirectAttributes.addFlashAttribute("errorMessage", e.getMessage());
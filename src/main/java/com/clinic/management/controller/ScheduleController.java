@@ -1,16 +1,33 @@
 package com.clinic.management.controller;
 
+import com.clinic.management.dto.KeysetPage;
 import com.clinic.management.entity.Doctor; // Добавить импорт
 import com.clinic.management.entity.Schedule;
+import com.clinic.management.entity.ShiftTemplate;
 import com.clinic.management.repository.DoctorRepository; // Добавить импорт
+import com.clinic.management.service.CsvTransferService;
 import com.clinic.management.service.ScheduleService;
+import com.clinic.management.service.ShiftTemplateService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.format.annotation.DateTimeFormat; // Добавить импорт для дат
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalDateTime; // Добавить импорт для дат
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List; // Добавить импорт для List
+import java.util.Map;
 
 @Controller
 @RequestMapping("/schedules")
@@ -22,16 +39,55 @@ public class ScheduleController {
     @Autowired // Добавить инъекцию репозитория врачей
     private DoctorRepository doctorRepository;
 
+    @Autowired
+    private ShiftTemplateService shiftTemplateService;
+
+    @Autowired
+    private FragmentCache fragmentCache;
+
+    @Autowired
+    private CsvTransferService csvTransferService;
+
+    // Список слотов постранично (keyset): фильтры doctorId/date/available, сортировка sort/dir, курсор cursor
     @GetMapping
-    public String viewSchedules(Model model) {
-        List<Schedule> schedules = scheduleService.getAllSchedules();
-        List<Doctor> doctors = doctorRepository.findAll(); // Получить список врачей
-        model.addAttribute("schedules", schedules);
-        model.addAttribute("doctors", doctors); // Добавить врачей в модель
+    public String viewSchedules(@RequestParam(required = false) Long doctorId,
+                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+                                @RequestParam(defaultValue = "false") boolean available,
+                                @RequestParam(defaultValue = "startTime") String sort,
+                                @RequestParam(defaultValue = "asc") String dir,
+                                @RequestParam(required = false) String cursor,
+                                @RequestParam(required = false) Integer size,
+                                Model model) {
+        populateSchedulesPage(model, doctorId, date, available, sort, dir, cursor, size);
         // model.addAttribute("newSchedule", new Schedule()); // Можно добавить для th:object, но текущая форма использует @RequestParam
         return "schedules"; // Имя вашего HTML шаблона
     }
 
+    private void populateSchedulesPage(Model model, Long doctorId, LocalDate date, boolean available,
+                                       String sort, String dir, String cursor, Integer size) {
+        List<Doctor> doctors = doctorRepository.findAllByOrderByNameAsc(); // Получить список врачей (для формы и фильтра)
+        int pageSize = KeysetPage.clampSize(size);
+        model.addAttribute("doctors", doctors); // Добавить врачей в модель
+        model.addAttribute("doctorId", doctorId);
+        model.addAttribute("date", date);
+        model.addAttribute("available", available);
+        model.addAttribute("sort", sort);
+        model.addAttribute("dir", dir);
+        model.addAttribute("size", pageSize);
+        // Таблица с пагинацией - готовый HTML из кэша, пока расписание не менялось;
+        // при промахе - запрос страницы слотов и отрисовка fragments/schedules_table
+        String table = fragmentCache.render("fragments/schedules_table", scheduleService.dataVersion(),
+                Arrays.asList(doctorId, date, available, sort, dir, cursor, pageSize), () -> {
+                    KeysetPage<Schedule> page = scheduleService.findSchedulesPage(doctorId, date, available, sort,
+                            "desc".equalsIgnoreCase(dir), cursor, size);
+                    Map<String, Object> variables = new HashMap<>(model.asMap());
+                    variables.put("page", page);
+                    variables.put("schedules", page.content());
+                    return variables;
+                });
+        model.addAttribute("schedulesTable", table);
+    }
+
     // --- ИЗМЕНЕНО: Улучшенный метод добавления с @RequestParam ---
     // Использование @ModelAttribute Schedule schedule было бы проще,
     // но требует правильной настройки конвертера для Doctor ID -> Doctor entity.
@@ -58,11 +114,8 @@ public class ScheduleController {
             // В случае ошибки, снова загружаем данные для формы и возвращаем ту же страницу
             // Добавляем сообщение об ошибке
             model.addAttribute("errorMessage", "Ошибка добавления расписания: " + e.getMessage());
-            // Снова добавляем необходимые данные для рендеринга страницы
-            List<Schedule> schedules = scheduleService.getAllSchedules();
-            List<Doctor> doctors = doctorRepository.findAll();
-            model.addAttribute("schedules", schedules);
-            model.addAttribute("doctors", doctors);
+            // Снова добавляем необходимые данные для рендеринга страницы (первая страница списка)
+            populateSchedulesPage(model, null, null, false, "startTime", "asc", null, null);
             return "schedules"; // Возвращаем ту же страницу с ошибкой
         }
     }
@@ -74,4 +127,94 @@ public class ScheduleController {
         scheduleService.deleteSchedule(id);
         return "redirect:/schedules";
     }
-}
\ No newline at end of file
+
+    // --- Импорт и экспорт CSV ---
+
+    // Загрузка слотов из CSV; уже существующие слоты пропускаются, строки с ошибками перечисляются на странице
+    @PostMapping("/import")
+    public String importSchedules(@RequestParam("file") MultipartFile file, RedirectAttributes redirectAttributes) {
+        try (InputStream csv = file.getInputStream()) {
+            CsvTransferService.ImportReport report = csvTransferService.importSchedules(csv);
+            redirectAttributes.addFlashAttribute("successMessage", "Импорт завершен: добавлено слотов " + report.inserted()
+                    + ", уже существовало " + report.unchanged() + ", строк с ошибками " + report.errorCount()
+                    + " (" + report.elapsedMillis() + " мс).");
+            redirectAttributes.addFlashAttribute("importErrors", report.errors());
+            redirectAttributes.addFlashAttribute("importErrorCount", report.errorCount());
+        } catch (IllegalArgumentException e) {
+            redirectAttributes.addFlashAttribute("errorMessage", "Файл не загружен: " + e.getMessage());
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("errorMessage", "Ошибка импорта: " + e.getMessage());
+        }
+        return "redirect:/schedules";
+    }
+
+    // Выгрузка слотов за период (например, для расчета зарплаты) потоком из БД в ответ
+    @GetMapping("/export")
+    public void exportSchedules(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                HttpServletResponse response) throws IOException {
+        response.setContentType("text/csv;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"schedules.csv\"");
+        csvTransferService.exportSchedules(from, to, response.getOutputStream());
+    }
+
+    // --- Шаблоны смен: массовое создание слотов ---
+
+    @GetMapping("/templates")
+    public String viewShiftTemplates(Model model) {
+        model.addAttribute("templates", shiftTemplateService.getAllTemplates());
+        model.addAttribute("doctors", doctorRepository.findAllByOrderByNameAsc());
+        model.addAttribute("weekDays", DayOfWeek.values());
+        return "shift_templates";
+    }
+
+    // Один шаблон на каждого выбранного врача, сразу с генерацией слотов
+    @PostMapping("/templates")
+    public String createShiftTemplates(@RequestParam("doctorIds") List<Long> doctorIds,
+                                       @RequestParam("daysOfWeek") List<DayOfWeek> daysOfWeek,
+                                       @RequestParam("startTime") @DateTimeFormat(iso = DateTimeFormat.ISO.TIME) LocalTime startTime,
+                                       @RequestParam("endTime") @DateTimeFormat(iso = DateTimeFormat.ISO.TIME) LocalTime endTime,
+                                       @RequestParam(value = "slotMinutes", defaultValue = "15") int slotMinutes,
+                                       @RequestParam("validFrom") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate validFrom,
+                                       @RequestParam("validTo") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate validTo,
+                                       RedirectAttributes redirectAttributes) {
+        try {
+            int created = 0;
+            int skipped = 0;
+            long elapsed = 0;
+            for (Long doctorId : doctorIds) {
+                ShiftTemplate template = new ShiftTemplate();
+                template.setDaysOfWeekSet(EnumSet.copyOf(daysOfWeek));
+                template.setStartTime(startTime);
+                template.setEndTime(endTime);
+                template.setSlotMinutes(slotMinutes);
+                template.setValidFrom(validFrom);
+                template.setValidTo(validTo);
+                ShiftTemplate saved = shiftTemplateService.createTemplate(doctorId, template);
+
+                ShiftTemplateService.GenerationResult result = shiftTemplateService.generateSlots(saved.getId());
+                created += result.slotsCreated();
+                skipped += result.slotsSkipped();
+                elapsed += result.elapsedMillis();
+            }
+            redirectAttributes.addFlashAttribute("successMessage", "Создано слотов: " + created
+                    + " (уже существовало: " + skipped + "), время генерации " + elapsed + " мс.");
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("errorMessage", "Ошибка создания шаблона смены: " + e.getMessage());
+        }
+        return "redirect:/schedules/templates";
+    }
+
+    // Повторная генерация по существующему шаблону (существующие слоты пропускаются)
+    @PostMapping("/templates/{id}/generate")
+    public String regenerateFromTemplate(@PathVariable Long id, RedirectAttributes redirectAttributes) {
+        try {
+            ShiftTemplateService.GenerationResult result = shiftTemplateService.generateSlots(id);
+            redirectAttributes.addFlashAttribute("successMessage", "Создано слотов: " + result.slotsCreated()
+                    + " (уже существовало: " + result.slotsSkipped() + "), время генерации " + result.elapsedMillis() + " мс.");
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("errorMessage", "Ошибка генерации слотов: " + e.getMessage());
+        }
+        return "redirect:/schedules/templates";
+    }
+}
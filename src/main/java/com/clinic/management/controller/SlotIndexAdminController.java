@@ -0,0 +1,28 @@
+package com.clinic.management.controller;
+
+import com.clinic.management.service.SlotOccupancyIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Служебная информация об индексе занятости слотов (только для администраторов)
+@RestController
+@RequestMapping("/admin/slot-index")
+public class SlotIndexAdminController {
+
+    @Autowired
+    private SlotOccupancyIndex slotOccupancyIndex;
+
+    @GetMapping
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("ready", slotOccupancyIndex.isReady());
+        status.put("footprint", slotOccupancyIndex.footprint());
+        status.put("lastConsistencyCheck", slotOccupancyIndex.lastConsistencyReport());
+        return status;
+    }
+}
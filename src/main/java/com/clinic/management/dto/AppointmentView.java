@@ -0,0 +1,17 @@
+package com.clinic.management.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Строка списка записей на прием: только поля, которые показывает страница,
+ * вместе с данными врача - одним запросом, без загрузки сущностей и их связей.
+ */
+public interface AppointmentView {
+    Long getId();
+    LocalDateTime getAppointmentTime();
+    String getStatus();
+    String getReasonForVisit();
+    Long getDoctorId();
+    String getDoctorName();
+    String getDoctorSpecialization();
+}
@@ -0,0 +1,25 @@
+package com.clinic.management.dto;
+
+import com.clinic.management.entity.Appointment;
+
+import java.time.LocalDateTime;
+
+/**
+ * Созданная запись на прием в ответе JSON API (POST /api/v1/bookings).
+ */
+public record BookingView(Long id,
+                          Long scheduleId,
+                          Long doctorId,
+                          LocalDateTime appointmentTime,
+                          String status,
+                          String reasonForVisit) {
+
+    public static BookingView of(Appointment appointment) {
+        return new BookingView(appointment.getId(),
+                appointment.getSchedule() != null ? appointment.getSchedule().getId() : null,
+                appointment.getDoctor() != null ? appointment.getDoctor().getId() : null,
+                appointment.getAppointmentTime(),
+                appointment.getStatus(),
+                appointment.getReasonForVisit());
+    }
+}
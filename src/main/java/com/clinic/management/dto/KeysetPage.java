@@ -0,0 +1,116 @@
+package com.clinic.management.dto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.mapping.PropertyPath;
+import org.springframework.util.ClassUtils;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Страница keyset-пагинации (seek method): вместо OFFSET запрос продолжает чтение
+ * с ключей сортировки последней показанной строки, поэтому стоимость страницы
+ * не зависит от того, насколько далеко пролистан список.
+ *
+ * @param content        строки страницы в порядке сортировки
+ * @param nextCursor     курсор следующей страницы или null, если ее нет
+ * @param previousCursor курсор предыдущей страницы или null для первой страницы
+ */
+public record KeysetPage<T>(List<T> content, String nextCursor, String previousCursor) {
+
+    private static final Logger log = LoggerFactory.getLogger(KeysetPage.class);
+
+    public static final int DEFAULT_SIZE = 20;
+    public static final int MAX_SIZE = 100;
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public boolean hasPrevious() {
+        return previousCursor != null;
+    }
+
+    public boolean isEmpty() {
+        return content.isEmpty();
+    }
+
+    public static int clampSize(Integer size) {
+        if (size == null || size <= 0) {
+            return DEFAULT_SIZE;
+        }
+        return Math.min(size, MAX_SIZE);
+    }
+
+    /**
+     * Сортировка по разрешенному полю с id в качестве второго ключа: keyset требует
+     * уникального порядка, иначе строки с одинаковым значением поля терялись бы на границе страниц.
+     */
+    public static Sort sort(String property, Set<String> allowed, String defaultProperty, boolean descending) {
+        String prop = property != null && allowed.contains(property) ? property : defaultProperty;
+        Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+        return "id".equals(prop) ? Sort.by(direction, "id") : Sort.by(direction, prop, "id");
+    }
+
+    /**
+     * Позиция по курсору из запроса. Поврежденный курсор, курсор от другой сортировки
+     * (пользователь сменил сортировку) или с ключом не того типа, что свойство сущности,
+     * ведет на первую страницу.
+     * @param domainType сущность, свойства которой перечислены в sort
+     */
+    public static KeysetScrollPosition position(String cursor, Sort sort, Class<?> domainType) {
+        if (cursor == null || cursor.isBlank()) {
+            return ScrollPosition.keyset();
+        }
+        try {
+            KeysetScrollPosition position = PageCursor.decode(cursor);
+            Set<String> sortKeys = new HashSet<>();
+            sort.forEach(order -> sortKeys.add(order.getProperty()));
+            if (position.getKeys().keySet().equals(sortKeys) && hasPropertyTypes(position, domainType)) {
+                return position;
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring malformed page cursor: {}", e.getMessage());
+        }
+        return ScrollPosition.keyset();
+    }
+
+    // Иначе значение не того типа дошло бы до запроса и завершилось бы ошибкой при связывании параметров
+    private static boolean hasPropertyTypes(KeysetScrollPosition position, Class<?> domainType) {
+        for (Map.Entry<String, Object> key : position.getKeys().entrySet()) {
+            Class<?> type = PropertyPath.from(key.getKey(), domainType).getType();
+            if (!ClassUtils.isAssignableValue(type, key.getValue())) {
+                log.debug("Ignoring page cursor: {} is not a {}", key.getKey(), type.getSimpleName());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Собирает страницу из окна Spring Data. При прокрутке назад окно уже развернуто
+     * в порядок сортировки, а hasNext() окна означает "есть еще строки раньше".
+     */
+    public static <T> KeysetPage<T> of(Window<T> window, KeysetScrollPosition requested) {
+        List<T> content = window.getContent();
+        if (content.isEmpty()) {
+            // Пустая страница (например, последние строки удалены) - даем вернуться в начало
+            return new KeysetPage<>(content, null, requested.isInitial() ? null : "");
+        }
+        KeysetScrollPosition first = (KeysetScrollPosition) window.positionAt(0);
+        KeysetScrollPosition last = (KeysetScrollPosition) window.positionAt(content.size() - 1);
+        boolean backward = requested.scrollsBackward();
+        boolean moreAfter = backward || window.hasNext();
+        boolean moreBefore = backward ? window.hasNext() : !requested.isInitial();
+        return new KeysetPage<>(content,
+                moreAfter ? PageCursor.encode(last.forward()) : null,
+                moreBefore ? PageCursor.encode(first.backward()) : null);
+    }
+}
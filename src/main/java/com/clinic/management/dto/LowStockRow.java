@@ -0,0 +1,11 @@
+package com.clinic.management.dto;
+
+/**
+ * Проекция лекарства с низким запасом для задания автозаказа.
+ */
+public interface LowStockRow {
+    Long getId();
+    String getName();
+    Integer getQuantity();
+    Integer getMinStockLevel();
+}
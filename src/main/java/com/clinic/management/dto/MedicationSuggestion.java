@@ -0,0 +1,9 @@
+package com.clinic.management.dto;
+
+/**
+ * Подсказка поиска по каталогу лекарств (GET /medications/search).
+ */
+public record MedicationSuggestion(Long id,
+                                   String name,
+                                   String description) {
+}
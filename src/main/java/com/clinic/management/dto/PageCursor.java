@@ -0,0 +1,101 @@
+package com.clinic.management.dto;
+
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кодирование позиции keyset-пагинации (значения ключей сортировки последней/первой строки
+ * страницы и направление) в непрозрачную строку для параметра cursor в URL.
+ *
+ * Формат до Base64: "f" или "b", затем пары ключ=тип:значение через ';'.
+ * Ключ и значение дополнительно кодируются Base64, так что разделители в данных не мешают.
+ */
+public final class PageCursor {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private PageCursor() {
+    }
+
+    public static String encode(KeysetScrollPosition position) {
+        StringBuilder sb = new StringBuilder(position.scrollsForward() ? "f" : "b");
+        for (Map.Entry<String, Object> e : position.getKeys().entrySet()) {
+            sb.append(';').append(b64(e.getKey())).append('=')
+                    .append(typeOf(e.getValue())).append(':').append(b64(String.valueOf(e.getValue())));
+        }
+        return ENCODER.encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException если строка повреждена, содержит неизвестный тип
+     *                                  или значение, не разбираемое как свой тип
+     */
+    public static KeysetScrollPosition decode(String cursor) {
+        String raw = new String(DECODER.decode(cursor), StandardCharsets.UTF_8);
+        String[] parts = raw.split(";");
+        Map<String, Object> keys = new LinkedHashMap<>();
+        for (int i = 1; i < parts.length; i++) {
+            int eq = parts[i].indexOf('=');
+            int colon = parts[i].indexOf(':', eq);
+            if (eq < 0 || colon < 0) {
+                throw new IllegalArgumentException("Malformed cursor part: " + parts[i]);
+            }
+            String key = unb64(parts[i].substring(0, eq));
+            char type = parts[i].charAt(eq + 1);
+            keys.put(key, parse(type, unb64(parts[i].substring(colon + 1))));
+        }
+        return switch (parts[0]) {
+            case "f" -> ScrollPosition.forward(keys);
+            case "b" -> ScrollPosition.backward(keys);
+            default -> throw new IllegalArgumentException("Unknown cursor direction: " + parts[0]);
+        };
+    }
+
+    private static char typeOf(Object value) {
+        if (value instanceof Long) return 'L';
+        if (value instanceof Integer) return 'I';
+        if (value instanceof String) return 'S';
+        if (value instanceof LocalDateTime) return 'T';
+        if (value instanceof LocalDate) return 'D';
+        if (value instanceof BigDecimal) return 'N';
+        if (value instanceof Boolean) return 'B';
+        throw new IllegalArgumentException("Unsupported keyset value type: "
+                + (value == null ? "null" : value.getClass().getName()));
+    }
+
+    private static Object parse(char type, String value) {
+        try {
+            return switch (type) {
+                case 'L' -> Long.valueOf(value);
+                case 'I' -> Integer.valueOf(value);
+                case 'S' -> value;
+                case 'T' -> LocalDateTime.parse(value);
+                case 'D' -> LocalDate.parse(value);
+                case 'N' -> new BigDecimal(value);
+                case 'B' -> Boolean.valueOf(value);
+                default -> throw new IllegalArgumentException("Unknown cursor value type: " + type);
+            };
+        } catch (DateTimeException e) {
+            // Ошибки разбора чисел - уже IllegalArgumentException (NumberFormatException), дат - нет
+            throw new IllegalArgumentException("Malformed cursor value: " + value, e);
+        }
+    }
+
+    private static String b64(String s) {
+        return ENCODER.encodeToString(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String unb64(String s) {
+        return new String(DECODER.decode(s), StandardCharsets.UTF_8);
+    }
+}
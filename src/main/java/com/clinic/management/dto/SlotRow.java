@@ -0,0 +1,15 @@
+package com.clinic.management.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Плоская проекция слота расписания без загрузки сущностей Schedule/Doctor.
+ * Используется для массового чтения (построение индекса занятости).
+ */
+public interface SlotRow {
+    Long getId();
+    Long getDoctorId();
+    LocalDateTime getStartTime();
+    LocalDateTime getEndTime();
+    Boolean getAvailable();
+}
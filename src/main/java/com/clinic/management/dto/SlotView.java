@@ -0,0 +1,28 @@
+package com.clinic.management.dto;
+
+import com.clinic.management.entity.Doctor;
+import com.clinic.management.entity.Schedule;
+
+import java.time.LocalDateTime;
+
+/**
+ * Свободный слот в ответах JSON API (/api/v1/slots) и в поиске ближайшего свободного времени.
+ */
+public record SlotView(Long id,
+                       Long doctorId,
+                       String doctorName,
+                       String specialization,
+                       LocalDateTime startTime,
+                       LocalDateTime endTime) {
+
+    // Врач должен быть загружен вместе со слотом (@EntityGraph в ScheduleRepository)
+    public static SlotView of(Schedule schedule) {
+        Doctor doctor = schedule.getDoctor();
+        return new SlotView(schedule.getId(),
+                doctor != null ? doctor.getId() : null,
+                doctor != null ? doctor.getName() : null,
+                doctor != null ? doctor.getSpecialization() : null,
+                schedule.getStartTime(),
+                schedule.getEndTime());
+    }
+}
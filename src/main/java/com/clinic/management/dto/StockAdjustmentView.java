@@ -0,0 +1,9 @@
+package com.clinic.management.dto;
+
+/**
+ * Результат выдачи или поступления в ответе JSON API (POST /api/v1/medications/{id}/dispense).
+ * @param quantity новый остаток; null, если изменение отложено (clinic.stock.write-behind.enabled)
+ * @param deferred изменение принято в буфер и попадет в БД со следующей пачкой
+ */
+public record StockAdjustmentView(long medicationId, int change, Integer quantity, boolean deferred) {
+}
@@ -0,0 +1,12 @@
+package com.clinic.management.dto;
+
+/**
+ * Остаток лекарства сразу после изменения (UPDATE ... RETURNING) и до него:
+ * разность - фактическое изменение с учетом того, что остаток не уходит ниже нуля.
+ */
+public record StockLevel(long medicationId, int quantity, int minStockLevel, int previousQuantity) {
+
+    public int change() {
+        return quantity - previousQuantity;
+    }
+}
@@ -0,0 +1,18 @@
+package com.clinic.management.dto;
+
+/**
+ * Строка журнала движения запасов (stock_movements): фактическое изменение остатка лекарства.
+ */
+public record StockMovement(long medicationId, Type type, long quantityChange) {
+
+    public enum Type {
+        // Выдача (списание при отпуске препарата)
+        DISPENSE,
+        // Поступление и возврат
+        RESTOCK,
+        // Пополнение по автозаказу
+        AUTO_ORDER,
+        // Ручное изменение, импорт каталога, начальный остаток
+        CORRECTION
+    }
+}
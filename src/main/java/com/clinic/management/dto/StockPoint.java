@@ -0,0 +1,9 @@
+package com.clinic.management.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Остаток лекарства на момент времени по журналу движения запасов и расход за days дней до него.
+ */
+public record StockPoint(long medicationId, LocalDateTime at, long quantity, int days, long consumed) {
+}
@@ -0,0 +1,7 @@
+package com.clinic.management.dto;
+
+/**
+ * Пополнение запаса одного лекарства: сколько заказано и на сколько увеличить остаток.
+ */
+public record StockReplenishment(long medicationId, int quantityOrdered) {
+}
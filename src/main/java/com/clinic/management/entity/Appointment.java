@@ -1,10 +1,14 @@
 package com.clinic.management.entity;
 
 import jakarta.persistence.*;
-import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import java.time.LocalDateTime;
 
-@Data
+@Getter
+@Setter
+@ToString
 @Entity
 @Table(name = "appointments") // Новая таблица
 public class Appointment {
@@ -13,13 +17,19 @@ public class Appointment {
     private Long id;
 
     // Какая запись (слот) в расписании занята
-    @OneToOne // Одна запись занимает один слот
-    @JoinColumn(name = "schedule_id", unique = true) // Слот может быть занят только одной записью
+    // Одна запись занимает один слот. Таблицы секционированы по времени, поэтому уникальность
+    // слота и внешний ключ включают его: UNIQUE (schedule_id, appointment_time) и ссылку
+    // на schedules (id, start_time) создает PartitionManager, Hibernate их не описывает
+    // (@ManyToOne - без уникального ключа по одному schedule_id)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "schedule_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
+    @ToString.Exclude
     private Schedule schedule; // Используем существующее расписание
 
     // Какой ветеринар ведет прием (дублирует информацию из Schedule, но может быть полезно)
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "doctor_id", nullable = false)
+    @JoinColumn(name = "doctor_id", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
+    @ToString.Exclude
     private Doctor doctor;
 
     @Column(nullable = false)
@@ -32,4 +42,16 @@ public class Appointment {
     private String status; // Например: BOOKED, COMPLETED, CANCELLED
 
     private LocalDateTime createdAt; // Когда создана запись
-}
\ No newline at end of file
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Appointment other)) return false;
+        return id != null && id.equals(other.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Appointment.class.hashCode();
+    }
+}
@@ -1,11 +1,19 @@
 package com.clinic.management.entity;
 
 import jakarta.persistence.*;
-import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.util.Set;
 
-@Data
+@Getter
+@Setter
+@ToString
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "doctors") // регион настроен в application.conf
 @Table(name = "doctors")
 public class Doctor {
     @Id
@@ -19,5 +27,18 @@ public class Doctor {
     private String specialization;
 
     @OneToMany(mappedBy = "doctor", cascade = CascadeType.ALL)
+    @ToString.Exclude
     private Set<Schedule> schedules;
-}
\ No newline at end of file
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Doctor other)) return false;
+        return id != null && id.equals(other.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Doctor.class.hashCode();
+    }
+}
@@ -1,10 +1,16 @@
 package com.clinic.management.entity;
 
 import jakarta.persistence.*;
-import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import java.math.BigDecimal;
 
-@Data
+@Getter
+@Setter
+@ToString
+// Не в кэше второго уровня: остаток меняется при каждой выдаче, в том числе на других узлах
+// и через JDBC, - копия в памяти узла устаревала бы сразу
 @Entity
 @Table(name = "medications")
 public class Medication {
@@ -25,4 +31,16 @@ public class Medication {
 
     @Column(nullable = false)
     private BigDecimal price;
-}
\ No newline at end of file
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Medication other)) return false;
+        return id != null && id.equals(other.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Medication.class.hashCode();
+    }
+}
@@ -1,10 +1,14 @@
 package com.clinic.management.entity;
 
 import jakarta.persistence.*;
-import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import java.time.LocalDateTime;
 
-@Data
+@Getter
+@Setter
+@ToString
 @Entity
 @Table(name = "medication_orders")
 public class MedicationOrder {
@@ -12,8 +16,9 @@ public class MedicationOrder {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "medication_id", nullable = false)
+    @ToString.Exclude
     private Medication medication;
 
     @Column(nullable = false)
@@ -24,4 +29,16 @@ public class MedicationOrder {
 
     @Column(nullable = false)
     private String status = "PENDING"; // Статус: PENDING, FULFILLED, CANCELLED
-}
\ No newline at end of file
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MedicationOrder other)) return false;
+        return id != null && id.equals(other.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return MedicationOrder.class.hashCode();
+    }
+}
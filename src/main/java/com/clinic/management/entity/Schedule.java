@@ -1,19 +1,29 @@
 package com.clinic.management.entity;
 
 import jakarta.persistence.*;
-import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import java.time.LocalDateTime;
 
-@Data
+@Getter
+@Setter
+@ToString
 @Entity
 @Table(name = "schedules")
 public class Schedule {
+    // Последовательность с шагом 50 (pooled-оптимизатор Hibernate): в отличие от IDENTITY
+    // позволяет группировать INSERT-ы в JDBC batch при массовой генерации слотов
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "schedules_seq")
+    @SequenceGenerator(name = "schedules_seq", sequenceName = "schedules_seq", allocationSize = 50)
     private Long id;
 
-    @ManyToOne
-    @JoinColumn(name = "doctor_id", nullable = false)
+    // Ленивая связь: списки слотов загружают врача явно (entity graph / fetch join).
+    // Внешний ключ секционированной таблицы создает PartitionManager
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "doctor_id", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
+    @ToString.Exclude
     private Doctor doctor;
 
     @Column(nullable = false)
@@ -24,4 +34,19 @@ public class Schedule {
 
     @Column(nullable = false)
     private boolean isAvailable = true;
-}
\ No newline at end of file
+
+    // Равенство по идентификатору: не зависит от изменяемых полей и связей (в отличие от @Data),
+    // не инициализирует ленивые прокси; hashCode постоянен, чтобы сущность не терялась
+    // в HashSet после присвоения id при сохранении.
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Schedule other)) return false;
+        return id != null && id.equals(other.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Schedule.class.hashCode();
+    }
+}
@@ -0,0 +1,79 @@
+package com.clinic.management.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Getter
+@Setter
+@ToString
+@Entity
+@Table(name = "shift_templates")
+public class ShiftTemplate {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "doctor_id", nullable = false)
+    @ToString.Exclude
+    private Doctor doctor;
+
+    @Column(nullable = false)
+    private String daysOfWeek; // Дни недели через запятую: MONDAY,WEDNESDAY,FRIDAY
+
+    @Column(nullable = false)
+    private LocalTime startTime; // Начало смены
+
+    @Column(nullable = false)
+    private LocalTime endTime; // Конец смены
+
+    @Column(nullable = false)
+    private int slotMinutes = 15; // Длительность одного слота
+
+    @Column(nullable = false)
+    private LocalDate validFrom; // Первый день действия шаблона
+
+    @Column(nullable = false)
+    private LocalDate validTo; // Последний день действия шаблона (включительно)
+
+    private LocalDateTime createdAt;
+
+    public Set<DayOfWeek> getDaysOfWeekSet() {
+        if (daysOfWeek == null || daysOfWeek.isBlank()) {
+            return EnumSet.noneOf(DayOfWeek.class);
+        }
+        return Arrays.stream(daysOfWeek.split(","))
+                .map(String::trim)
+                .map(DayOfWeek::valueOf)
+                .collect(Collectors.toCollection(() -> EnumSet.noneOf(DayOfWeek.class)));
+    }
+
+    public void setDaysOfWeekSet(Set<DayOfWeek> days) {
+        this.daysOfWeek = days.stream()
+                .sorted()
+                .map(DayOfWeek::name)
+                .collect(Collectors.joining(","));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ShiftTemplate other)) return false;
+        return id != null && id.equals(other.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return ShiftTemplate.class.hashCode();
+    }
+}
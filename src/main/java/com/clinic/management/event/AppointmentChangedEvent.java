@@ -0,0 +1,14 @@
+package com.clinic.management.event;
+
+import java.time.LocalDateTime;
+
+/**
+ * Изменение статуса записи на прием.
+ * previousStatus равен null для новой записи, status - null для удаленной.
+ * Обработчики (@TransactionalEventListener) получают событие после коммита.
+ */
+public record AppointmentChangedEvent(Long appointmentId,
+                                      LocalDateTime appointmentTime,
+                                      String previousStatus,
+                                      String status) {
+}
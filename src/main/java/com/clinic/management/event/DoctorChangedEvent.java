@@ -0,0 +1,14 @@
+package com.clinic.management.event;
+
+/**
+ * Создание, изменение или удаление врача.
+ * Обработчики (@TransactionalEventListener) получают событие после коммита.
+ */
+public record DoctorChangedEvent(Type type, Long doctorId) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+}
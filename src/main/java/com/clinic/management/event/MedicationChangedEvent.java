@@ -0,0 +1,26 @@
+package com.clinic.management.event;
+
+import com.clinic.management.entity.Medication;
+
+/**
+ * Изменение лекарства или его остатка. Несет состояние после изменения,
+ * чтобы обработчики могли определить пересечение минимального запаса без запроса к БД.
+ * Обработчики (@TransactionalEventListener) получают событие после коммита.
+ */
+public record MedicationChangedEvent(Type type, Long medicationId, int quantity, int minStockLevel) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+        STOCK_CHANGED
+    }
+
+    public static MedicationChangedEvent of(Type type, Medication medication) {
+        return new MedicationChangedEvent(type, medication.getId(), medication.getQuantity(), medication.getMinStockLevel());
+    }
+
+    public boolean isLowStock() {
+        return type != Type.DELETED && quantity < minStockLevel;
+    }
+}
@@ -0,0 +1,11 @@
+package com.clinic.management.event;
+
+/**
+ * Массовое изменение каталога лекарств (импорт CSV) в обход сущностей.
+ * Вместо MedicationChangedEvent на каждую строку обработчики получают одно событие
+ * и перечитывают из БД то, что им нужно.
+ * @param inserted сколько лекарств добавлено
+ * @param updated  сколько существующих лекарств изменено
+ */
+public record MedicationsBulkChangedEvent(int inserted, int updated) {
+}
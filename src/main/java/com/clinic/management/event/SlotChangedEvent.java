@@ -0,0 +1,39 @@
+package com.clinic.management.event;
+
+import com.clinic.management.entity.Doctor;
+import com.clinic.management.entity.Schedule;
+
+import java.time.LocalDateTime;
+
+/**
+ * Изменение состояния одного слота расписания.
+ * Публикуется сервисами через ApplicationEventPublisher; обработчики
+ * (@TransactionalEventListener) получают его только после коммита транзакции.
+ * Данных хватает, чтобы показать слот без обращения к БД (поток событий на странице записи).
+ */
+public record SlotChangedEvent(Type type,
+                               Long scheduleId,
+                               Long doctorId,
+                               String doctorName,
+                               String specialization,
+                               LocalDateTime startTime,
+                               LocalDateTime endTime) {
+
+    public enum Type {
+        ADDED,   // слот создан
+        REMOVED, // слот удален
+        BOOKED,  // слот занят записью
+        FREED    // запись отменена, слот снова свободен
+    }
+
+    public static SlotChangedEvent of(Type type, Schedule schedule) {
+        Doctor doctor = schedule.getDoctor();
+        return new SlotChangedEvent(type,
+                schedule.getId(),
+                doctor != null ? doctor.getId() : null,
+                doctor != null ? doctor.getName() : null,
+                doctor != null ? doctor.getSpecialization() : null,
+                schedule.getStartTime(),
+                schedule.getEndTime());
+    }
+}
@@ -0,0 +1,11 @@
+package com.clinic.management.event;
+
+import java.time.LocalDate;
+
+/**
+ * Массовое изменение слотов врача за период (генерация по шаблону смен, импорт).
+ * Вместо сотен тысяч SlotChangedEvent обработчики получают одно событие и
+ * перечитывают затронутый диапазон [from, to] (включительно) сами.
+ */
+public record SlotsBulkChangedEvent(Long doctorId, LocalDate from, LocalDate to) {
+}
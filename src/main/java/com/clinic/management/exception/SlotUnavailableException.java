@@ -0,0 +1,15 @@
+package com.clinic.management.exception;
+
+// Слот расписания уже занят (в том числе проигрыш в гонке за один слот)
+public class SlotUnavailableException extends IllegalStateException {
+    private final Long scheduleId;
+
+    public SlotUnavailableException(Long scheduleId) {
+        super("Selected time slot is no longer available.");
+        this.scheduleId = scheduleId;
+    }
+
+    public Long getScheduleId() {
+        return scheduleId;
+    }
+}
@@ -1,12 +1,72 @@
 package com.clinic.management.repository;
 
+import com.clinic.management.dto.AppointmentView;
 import com.clinic.management.entity.Appointment;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
-public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
+public interface AppointmentRepository extends JpaRepository<Appointment, Long>, JpaSpecificationExecutor<Appointment> {
 
     List<Appointment> findByDoctorId(Long doctorId);
     // Найти записи по ID слота расписания
     boolean existsByScheduleId(Long scheduleId);
-}
\ No newline at end of file
+
+    // Проекции для страниц: запись и врач одним запросом, без загрузки сущностей
+    @Query("SELECT a.id AS id, a.appointmentTime AS appointmentTime, a.status AS status, " +
+            "a.reasonForVisit AS reasonForVisit, d.id AS doctorId, d.name AS doctorName, " +
+            "d.specialization AS doctorSpecialization " +
+            "FROM Appointment a JOIN a.doctor d WHERE d.id = :doctorId ORDER BY a.appointmentTime DESC, a.id DESC")
+    List<AppointmentView> findViewsByDoctorId(@Param("doctorId") Long doctorId);
+
+    // Полная история врача, включая архивные месяцы: представление appointments_history
+    // (см. PartitionManager). Слоты архивных записей тоже в архиве - связь schedule у них не загрузить
+    @Query(value = "SELECT * FROM appointments_history WHERE doctor_id = :doctorId " +
+            "ORDER BY appointment_time DESC, id DESC", nativeQuery = true)
+    List<Appointment> findHistoryByDoctorId(@Param("doctorId") Long doctorId);
+
+    @Query(value = "SELECT a.id AS \"id\", a.appointment_time AS \"appointmentTime\", a.status AS \"status\", " +
+            "a.reason_for_visit AS \"reasonForVisit\", d.id AS \"doctorId\", d.name AS \"doctorName\", " +
+            "d.specialization AS \"doctorSpecialization\" " +
+            "FROM appointments_history a JOIN doctors d ON d.id = a.doctor_id WHERE a.doctor_id = :doctorId " +
+            "ORDER BY a.appointment_time DESC, a.id DESC", nativeQuery = true)
+    List<AppointmentView> findHistoryViewsByDoctorId(@Param("doctorId") Long doctorId);
+
+    @Query("SELECT a.id AS id, a.appointmentTime AS appointmentTime, a.status AS status, " +
+            "a.reasonForVisit AS reasonForVisit, d.id AS doctorId, d.name AS doctorName, " +
+            "d.specialization AS doctorSpecialization " +
+            "FROM Appointment a JOIN a.doctor d ORDER BY a.createdAt DESC, a.id DESC")
+    List<AppointmentView> findRecentViews(Pageable pageable);
+
+    // Количество записей по статусам в диапазоне [from, to) - индекс idx_appointments_time.
+    // Каждая строка: [status, count]
+    @Query("SELECT a.status, COUNT(a) FROM Appointment a " +
+            "WHERE a.appointmentTime >= :from AND a.appointmentTime < :to GROUP BY a.status")
+    List<Object[]> countByStatusInRange(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    // Фильтры для постраничного списка; null-значение фильтра означает "без условия"
+
+    static Specification<Appointment> forDoctor(Long doctorId) {
+        return (root, query, cb) -> doctorId == null ? null
+                : cb.equal(root.get("doctor").get("id"), doctorId);
+    }
+
+    static Specification<Appointment> hasStatus(String status) {
+        return (root, query, cb) -> status == null ? null : cb.equal(root.get("status"), status);
+    }
+
+    static Specification<Appointment> fetchDoctor() {
+        return (root, query, cb) -> {
+            if (query.getResultType() != Long.class && query.getResultType() != long.class) {
+                root.fetch("doctor");
+            }
+            return null;
+        };
+    }
+}
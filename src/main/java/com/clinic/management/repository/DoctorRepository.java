@@ -1,7 +1,44 @@
 package com.clinic.management.repository;
 
 import com.clinic.management.entity.Doctor;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
-public interface DoctorRepository extends JpaRepository<Doctor, Long> {
+import java.util.List;
+
+public interface DoctorRepository extends JpaRepository<Doctor, Long>, JpaSpecificationExecutor<Doctor> {
+
+    // Список врачей для выпадающих списков форм - из кэша запросов Hibernate.
+    // Кэш сбрасывается автоматически при любом изменении таблицы doctors через Hibernate
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<Doctor> findAllByOrderByNameAsc();
+
+    // Специализации для формы поиска ближайшего свободного времени
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT DISTINCT d.specialization FROM Doctor d WHERE d.specialization IS NOT NULL ORDER BY d.specialization")
+    List<String> findSpecializations();
+
+    // Врачи специализации для поиска по индексу занятости слотов
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT d.id FROM Doctor d WHERE d.specialization = :specialization ORDER BY d.id")
+    List<Long> findIdsBySpecialization(String specialization);
+
+    // Фильтры для постраничного списка (findBy(spec, q -> q.sortBy(...).limit(...).scroll(...))).
+    // null-значение фильтра означает "без условия".
+
+    // lower(name) LIKE 'x%' - по индексу idx_doctors_lower_name_prefix
+    static Specification<Doctor> nameStartsWith(String prefix) {
+        return (root, query, cb) -> prefix == null ? null
+                : cb.like(cb.lower(root.get("name")), prefix.toLowerCase() + "%");
+    }
+
+    static Specification<Doctor> hasSpecialization(String specialization) {
+        return (root, query, cb) -> specialization == null ? null
+                : cb.equal(root.get("specialization"), specialization);
+    }
 }
\ No newline at end of file
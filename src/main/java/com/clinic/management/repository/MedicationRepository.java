@@ -1,9 +1,58 @@
 package com.clinic.management.repository;
 
+import com.clinic.management.dto.LowStockRow;
 import com.clinic.management.entity.Medication;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
-public interface MedicationRepository extends JpaRepository<Medication, Long> {
-    List<Medication> findByQuantityLessThan(int minStockLevel);
-}
\ No newline at end of file
+public interface MedicationRepository extends JpaRepository<Medication, Long>, JpaSpecificationExecutor<Medication>,
+        MedicationRepositoryCustom {
+
+    // Низкий запас - сравнение двух колонок (quantity < min_stock_level) выполняется в БД
+    @Query("SELECT m FROM Medication m WHERE m.quantity < m.minStockLevel ORDER BY m.name")
+    List<Medication> findLowStock();
+
+    @Query("SELECT COUNT(m) FROM Medication m WHERE m.quantity < m.minStockLevel")
+    long countLowStock();
+
+    // Очередная порция для автозаказа (keyset по id) из части id % partitions = partition
+    // (весь каталог - partitions = 1). Строки блокируются до конца транзакции порции;
+    // строки, заблокированные другими транзакциями, пропускаются и попадут в следующий запуск.
+    @Query(value = "SELECT id, name, quantity, min_stock_level AS \"minStockLevel\" FROM medications " +
+            "WHERE quantity < min_stock_level AND id > :afterId AND id % :partitions = :partition " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<LowStockRow> lockLowStockChunk(long afterId, int partitions, int partition, int limit);
+
+    // То же для конкретных лекарств (очередь пересечений минимального запаса).
+    // Здесь строки не пропускаются, а ожидаются: иначе пересечение, совпавшее с чужой короткой
+    // транзакцией списания, потерялось бы до плановой сверки.
+    @Query(value = "SELECT id, name, quantity, min_stock_level AS \"minStockLevel\" FROM medications " +
+            "WHERE quantity < min_stock_level AND id IN (:ids) ORDER BY id " +
+            "FOR UPDATE", nativeQuery = true)
+    List<LowStockRow> lockLowStockByIds(Collection<Long> ids);
+
+    @Query("SELECT m.id FROM Medication m WHERE m.quantity < m.minStockLevel")
+    List<Long> findLowStockIds();
+
+    // Текущий остаток с блокировкой строки до конца транзакции (перед заменой остатка из формы)
+    @Query(value = "SELECT quantity FROM medications WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Optional<Integer> lockQuantity(Long id);
+
+    // Фильтры для постраничного списка; null-значение фильтра означает "без условия"
+
+    // lower(name) LIKE '%x%' - по триграммному индексу idx_medications_lower_name_trgm
+    static Specification<Medication> nameContains(String text) {
+        return (root, query, cb) -> text == null ? null
+                : cb.like(cb.lower(root.get("name")), "%" + text.toLowerCase() + "%");
+    }
+
+    static Specification<Medication> lowStockOnly(boolean lowStockOnly) {
+        return (root, query, cb) -> !lowStockOnly ? null
+                : cb.lessThan(root.get("quantity"), root.<Integer>get("minStockLevel"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.clinic.management.repository;
+
+import com.clinic.management.dto.MedicationSuggestion;
+import com.clinic.management.dto.StockLevel;
+import com.clinic.management.dto.StockMovement;
+import com.clinic.management.dto.StockReplenishment;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Массовые операции над запасами, выполняемые через JDBC batch, и поиск по триграммному индексу
+public interface MedicationRepositoryCustom {
+
+    // Создает по одному заказу со статусом PENDING на каждое пополнение
+    void insertPendingOrders(List<StockReplenishment> replenishments, LocalDateTime orderDate);
+
+    // Увеличивает остатки на заказанное количество (quantity = quantity + ?, без потери параллельных изменений)
+    void addOrderedQuantities(List<StockReplenishment> replenishments);
+
+    /**
+     * Изменяет остаток одним атомарным UPDATE: quantity = GREATEST(quantity + delta, 0),
+     * и тем же оператором добавляет фактическое изменение в журнал движения (stock_movements).
+     * Параллельные изменения не теряются, строка блокируется только на время оператора.
+     * @return новый остаток или пустое значение, если лекарства нет
+     */
+    Optional<StockLevel> adjustQuantity(long medicationId, int delta, StockMovement.Type movementType);
+
+    /**
+     * Применяет пачку изменений остатков (сумма дельт по каждому лекарству) одним UPDATE.
+     * Журнал движения не пишет: разбивку на выдачу и поступления знает только вызывающий.
+     * Строки предварительно блокируются в порядке id, чтобы пачки разных узлов не взаимоблокировались.
+     * @return новые остатки; лекарств, которых уже нет, в списке нет
+     */
+    List<StockLevel> applyQuantityDeltas(Map<Long, Long> deltas);
+
+    /**
+     * Отмечает пачку отложенных изменений как примененную (stock_delta_batch) и удаляет отметки
+     * пачек, журналы которых уже удалены.
+     * @return false, если пачка уже была применена
+     */
+    boolean markStockBatchApplied(String batchId, Collection<String> forgetBatchIds);
+
+    /**
+     * Поиск по индексу idx_medications_search_trgm. Каждое слово должно быть началом слова
+     * в названии или описании; сначала названия, начинающиеся с phrase, затем совпадения
+     * всех слов в названии, затем с описанием, внутри - по названию.
+     * @param phrase нормализованный запрос целиком
+     * @param words  слова нормализованного запроса
+     */
+    List<MedicationSuggestion> searchByTrigrams(String phrase, List<String> words, int limit);
+}
@@ -0,0 +1,186 @@
+package com.clinic.management.repository;
+
+import com.clinic.management.dto.MedicationSuggestion;
+import com.clinic.management.dto.StockLevel;
+import com.clinic.management.dto.StockMovement;
+import com.clinic.management.dto.StockReplenishment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class MedicationRepositoryCustomImpl implements MedicationRepositoryCustom {
+
+    private static final String ORDER_STATUS_PENDING = "PENDING";
+
+    private static final RowMapper<StockLevel> STOCK_LEVEL = (rs, rowNum) ->
+            new StockLevel(rs.getLong("id"), rs.getInt("quantity"), rs.getInt("min_stock_level"),
+                    rs.getInt("previous_quantity"));
+
+    private static final RowMapper<MedicationSuggestion> SUGGESTION = (rs, rowNum) ->
+            new MedicationSuggestion(rs.getLong("id"), rs.getString("name"), rs.getString("description"));
+
+    // Нормализованное название в порядке кодов символов - ключ idx_medications_search_name
+    private static final String NAME_TEXT = "search_name COLLATE \"C\"";
+
+    // Сколько первых по названию строк просматривается, прежде чем искать по триграммам
+    private static final int ORDERED_SCAN_ROWS = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void insertPendingOrders(List<StockReplenishment> replenishments, LocalDateTime orderDate) {
+        if (replenishments.isEmpty()) {
+            return;
+        }
+        Timestamp date = Timestamp.valueOf(orderDate);
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO medication_orders (medication_id, quantity_ordered, order_date, status) VALUES (?, ?, ?, ?)",
+                replenishments, replenishments.size(), (ps, r) -> {
+                    ps.setLong(1, r.medicationId());
+                    ps.setInt(2, r.quantityOrdered());
+                    ps.setTimestamp(3, date);
+                    ps.setString(4, ORDER_STATUS_PENDING);
+                });
+    }
+
+    @Override
+    public void addOrderedQuantities(List<StockReplenishment> replenishments) {
+        if (replenishments.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+                "UPDATE medications SET quantity = quantity + ? WHERE id = ?",
+                replenishments, replenishments.size(), (ps, r) -> {
+                    ps.setInt(1, r.quantityOrdered());
+                    ps.setLong(2, r.medicationId());
+                });
+    }
+
+    @Override
+    public Optional<StockLevel> adjustQuantity(long medicationId, int delta, StockMovement.Type movementType) {
+        // Прежний остаток - из строки, заблокированной тем же оператором (RETURNING видит только новую)
+        List<StockLevel> updated = jdbcTemplate.query(
+                "WITH old AS (SELECT id, quantity FROM medications WHERE id = ? FOR UPDATE), "
+                        + "changed AS (UPDATE medications m SET quantity = GREATEST(m.quantity + ?, 0) FROM old "
+                        + "WHERE m.id = old.id RETURNING m.id, m.quantity, m.min_stock_level, old.quantity AS previous_quantity), "
+                        + "movement AS (INSERT INTO stock_movements (medication_id, movement_type, quantity_change) "
+                        + "SELECT id, ?, quantity - previous_quantity FROM changed WHERE quantity <> previous_quantity) "
+                        + "SELECT id, quantity, min_stock_level, previous_quantity FROM changed",
+                STOCK_LEVEL, medicationId, delta, movementType.name());
+        return updated.stream().findFirst();
+    }
+
+    @Override
+    public List<StockLevel> applyQuantityDeltas(Map<Long, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return List.of();
+        }
+        Long[] ids = deltas.keySet().stream().sorted().toArray(Long[]::new);
+        Long[] values = new Long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            values[i] = deltas.get(ids[i]);
+        }
+        // UPDATE ... FROM блокирует строки в порядке плана соединения, а не по id.
+        // Прежние остатки читаются под той же блокировкой
+        Map<Long, Integer> previous = new HashMap<>();
+        jdbcTemplate.query("SELECT id, quantity FROM medications WHERE id = ANY(?) ORDER BY id FOR UPDATE",
+                rs -> {
+                    previous.put(rs.getLong("id"), rs.getInt("quantity"));
+                }, (Object) ids);
+        // Сумма дельт пачки - bigint; остаток ограничивается диапазоном integer
+        List<StockLevel> updated = jdbcTemplate.query(
+                "UPDATE medications m SET quantity = LEAST(GREATEST(m.quantity + d.delta, 0), 2147483647)"
+                        + " FROM unnest(?::bigint[], ?::bigint[]) AS d(id, delta) WHERE m.id = d.id"
+                        + " RETURNING m.id, m.quantity, m.min_stock_level",
+                (rs, rowNum) -> new StockLevel(rs.getLong("id"), rs.getInt("quantity"), rs.getInt("min_stock_level"),
+                        previous.get(rs.getLong("id"))),
+                ids, values);
+        return updated;
+    }
+
+    @Override
+    public boolean markStockBatchApplied(String batchId, Collection<String> forgetBatchIds) {
+        if (!forgetBatchIds.isEmpty()) {
+            jdbcTemplate.update("DELETE FROM stock_delta_batch WHERE batch_id = ANY(?)",
+                    (Object) forgetBatchIds.toArray(String[]::new));
+        }
+        return jdbcTemplate.update("INSERT INTO stock_delta_batch (batch_id) VALUES (?) ON CONFLICT DO NOTHING",
+                batchId) == 1;
+    }
+
+    @Override
+    public List<MedicationSuggestion> searchByTrigrams(String phrase, List<String> words, int limit) {
+        // Группы выполняются по очереди, следующая - только если предыдущие дали меньше limit строк.
+        // Первая идет по B-дереву idx_medications_search_name в порядке названий. Условие на каждое
+        // слово - отдельный LIKE: GIN не применяется к LIKE ALL (массив).
+        // search_name и search_text - нормализованные тексты (db/sql/08-medication-search.sql);
+        // нормализованный текст содержит только буквы, цифры и пробелы - экранировать % и _ не нужно
+        List<MedicationSuggestion> found = new ArrayList<>(jdbcTemplate.query(
+                "SELECT id, name, description FROM medications WHERE " + NAME_TEXT + " LIKE ?"
+                        + " ORDER BY " + NAME_TEXT + ", id LIMIT ?",
+                SUGGESTION, phrase + "%", limit));
+        String allWordsInName = wordConditions("' ' || search_name", words.size());
+        String allWordsInText = wordConditions("' ' || search_text", words.size());
+        if (found.size() < limit) {
+            List<Object> args = wordPatterns(words);
+            args.add(phrase + "%");
+            found.addAll(searchGroup(allWordsInName + " AND " + NAME_TEXT + " NOT LIKE ?", args,
+                    limit - found.size()));
+        }
+        if (found.size() < limit) {
+            List<Object> args = wordPatterns(words);
+            args.addAll(wordPatterns(words));
+            found.addAll(searchGroup(allWordsInText + " AND NOT (" + allWordsInName + ")", args,
+                    limit - found.size()));
+        }
+        return found;
+    }
+
+    /**
+     * Первые limit строк группы (condition) в порядке названий. Сначала - первые ORDERED_SCAN_ROWS
+     * строк B-дерева idx_medications_search_name: частое слово (форма выпуска, производитель -
+     * десятки тысяч строк) находит там limit строк, и сортировать все его совпадения не нужно.
+     * Иначе совпадений мало: строки отбираются по триграммному индексу и сортируются только они;
+     * OFFSET 0 не дает планировщику вместо этого пройти B-дерево целиком с проверкой каждой строки.
+     */
+    private List<MedicationSuggestion> searchGroup(String condition, List<Object> args, int limit) {
+        List<Object> scanArgs = new ArrayList<>();
+        scanArgs.add(ORDERED_SCAN_ROWS);
+        scanArgs.addAll(args);
+        scanArgs.add(limit);
+        List<MedicationSuggestion> first = jdbcTemplate.query("SELECT id, name, description FROM (SELECT id, name,"
+                + " description, search_name, search_text, " + NAME_TEXT + " AS name_text FROM medications"
+                + " ORDER BY " + NAME_TEXT + ", id LIMIT ?) medications"
+                + " WHERE " + condition + " ORDER BY name_text, id LIMIT ?", SUGGESTION, scanArgs.toArray());
+        if (first.size() == limit) {
+            return first;
+        }
+        List<Object> trigramArgs = new ArrayList<>(args);
+        trigramArgs.add(limit);
+        return jdbcTemplate.query("SELECT id, name, description FROM (SELECT id, name, description, " + NAME_TEXT
+                + " AS name_text FROM medications WHERE " + condition + " OFFSET 0) found ORDER BY name_text, id LIMIT ?",
+                SUGGESTION, trigramArgs.toArray());
+    }
+
+    private static String wordConditions(String text, int words) {
+        return String.join(" AND ", Collections.nCopies(words, text + " LIKE ?"));
+    }
+
+    // Слово - начало слова текста
+    private static List<Object> wordPatterns(List<String> words) {
+        List<Object> patterns = new ArrayList<>(words.size());
+        words.forEach(word -> patterns.add("% " + word + "%"));
+        return patterns;
+    }
+}
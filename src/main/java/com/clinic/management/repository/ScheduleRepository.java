@@ -1,18 +1,129 @@
 package com.clinic.management.repository;
 
+import com.clinic.management.dto.SlotRow;
+import com.clinic.management.dto.SlotView;
 import com.clinic.management.entity.Schedule;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface ScheduleRepository extends JpaRepository<Schedule, Long> {
+public interface ScheduleRepository extends JpaRepository<Schedule, Long>, JpaSpecificationExecutor<Schedule>,
+        ScheduleRepositoryCustom {
     List<Schedule> findByDoctorId(Long doctorId);
+
+    // Слот вместе с врачом (форма записи, события слотов)
+    @EntityGraph(attributePaths = "doctor")
+    Optional<Schedule> findWithDoctorById(Long id);
     boolean existsByDoctorId(Long doctorId);
 
-    @Query("SELECT s FROM Schedule s WHERE DATE(s.startTime) = :date " +
-            "AND s.doctor.specialization = :specialization AND s.isAvailable = true")
-    List<Schedule> findAvailableSchedules(LocalDate date, String specialization);
+    // Все запросы по доступности работают с полуинтервалом [from, to) по start_time,
+    // чтобы использовать частичные индексы из db/sql/01-schedule-indexes.sql.
+    // Оборачивать колонку в DATE(...) нельзя - индекс тогда не используется.
+    // Связь с врачом ленивая; запросы для страниц загружают врача тем же SELECT (@EntityGraph).
+
+    @EntityGraph(attributePaths = "doctor")
+    @Query("SELECT s FROM Schedule s WHERE s.startTime >= :from AND s.startTime < :to " +
+            "AND s.isAvailable = true ORDER BY s.startTime")
+    List<Schedule> findAvailableInRange(LocalDateTime from, LocalDateTime to);
+
+    @EntityGraph(attributePaths = "doctor")
+    @Query("SELECT s FROM Schedule s WHERE s.doctor.id = :doctorId " +
+            "AND s.startTime >= :from AND s.startTime < :to " +
+            "AND s.isAvailable = true ORDER BY s.startTime")
+    List<Schedule> findAvailableInRangeForDoctor(Long doctorId, LocalDateTime from, LocalDateTime to);
+
+    @EntityGraph(attributePaths = "doctor")
+    @Query("SELECT s FROM Schedule s WHERE s.doctor.specialization = :specialization " +
+            "AND s.startTime >= :from AND s.startTime < :to " +
+            "AND s.isAvailable = true ORDER BY s.startTime")
+    List<Schedule> findAvailableInRangeForSpecialization(String specialization, LocalDateTime from, LocalDateTime to);
+
+    // Ближайшие свободные слоты специализации в окне: первые page.size по времени начала, проекцией
+    @Query("SELECT new com.clinic.management.dto.SlotView(s.id, d.id, d.name, d.specialization, s.startTime, s.endTime) " +
+            "FROM Schedule s JOIN s.doctor d WHERE d.specialization = :specialization " +
+            "AND s.startTime >= :from AND s.startTime < :to " +
+            "AND s.isAvailable = true ORDER BY s.startTime, s.id")
+    List<SlotView> findFirstAvailableForSpecialization(String specialization, LocalDateTime from, LocalDateTime to,
+                                                       Pageable page);
+
+    default List<Schedule> findAvailableSchedules(LocalDate date, String specialization) {
+        return findAvailableInRangeForSpecialization(specialization, date.atStartOfDay(), date.plusDays(1).atStartOfDay());
+    }
+
+    // Версии слотов для ETag (db/sql/11-slot-day-versions.sql): врача на день - по первичному ключу,
+    // всех врачей - максимум дня по индексу (day, version). Нет строки - слотов у дня еще не было
+    @Query(value = "SELECT coalesce(max(version), 0) FROM slot_day_versions WHERE doctor_id = :doctorId AND day = :day",
+            nativeQuery = true)
+    long findSlotDayVersion(Long doctorId, LocalDate day);
+
+    @Query(value = "SELECT coalesce(max(version), 0) FROM slot_day_versions WHERE day = :day", nativeQuery = true)
+    long findMaxSlotDayVersion(LocalDate day);
+
+    @Query("SELECT s.startTime FROM Schedule s WHERE s.doctor.id = :doctorId " +
+            "AND s.startTime >= :from AND s.startTime < :to")
+    List<LocalDateTime> findStartTimesForDoctor(Long doctorId, LocalDateTime from, LocalDateTime to);
+
+    // Атомарный захват слота: условный UPDATE вместо "прочитать - проверить - сохранить".
+    // Из конкурирующих запросов строку обновит ровно один, остальные получат 0.
+    @Modifying
+    @Query("UPDATE Schedule s SET s.isAvailable = false WHERE s.id = :id AND s.isAvailable = true")
+    int claimSlot(Long id);
+
+    @Modifying
+    @Query("UPDATE Schedule s SET s.isAvailable = true WHERE s.id = :id AND s.isAvailable = false")
+    int releaseSlot(Long id);
+
+    // Потоковое чтение слотов для индекса занятости (вызывать внутри транзакции)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT s.id AS id, s.doctor.id AS doctorId, s.startTime AS startTime, " +
+            "s.endTime AS endTime, s.isAvailable AS available FROM Schedule s WHERE s.startTime >= :from")
+    Stream<SlotRow> streamSlotsStartingFrom(LocalDateTime from);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT s.id AS id, s.doctor.id AS doctorId, s.startTime AS startTime, " +
+            "s.endTime AS endTime, s.isAvailable AS available FROM Schedule s " +
+            "WHERE s.doctor.id = :doctorId AND s.startTime >= :from AND s.startTime < :to")
+    Stream<SlotRow> streamSlotsForDoctor(Long doctorId, LocalDateTime from, LocalDateTime to);
 
     List<Schedule> findAll();
-}
\ No newline at end of file
+
+    // Фильтры для постраничного списка; null-значение фильтра означает "без условия"
+
+    static Specification<Schedule> forDoctor(Long doctorId) {
+        return (root, query, cb) -> doctorId == null ? null
+                : cb.equal(root.get("doctor").get("id"), doctorId);
+    }
+
+    // Слоты на дату: полуинтервал [date, date + 1) по start_time, как и в запросах выше
+    static Specification<Schedule> onDate(LocalDate date) {
+        return (root, query, cb) -> date == null ? null
+                : cb.and(cb.greaterThanOrEqualTo(root.get("startTime"), date.atStartOfDay()),
+                        cb.lessThan(root.get("startTime"), date.plusDays(1).atStartOfDay()));
+    }
+
+    static Specification<Schedule> availableOnly(boolean availableOnly) {
+        return (root, query, cb) -> !availableOnly ? null : cb.isTrue(root.get("isAvailable"));
+    }
+
+    // Врач загружается тем же запросом, а не отдельным SELECT на каждую строку страницы
+    static Specification<Schedule> fetchDoctor() {
+        return (root, query, cb) -> {
+            if (query.getResultType() != Long.class && query.getResultType() != long.class) {
+                root.fetch("doctor");
+            }
+            return null;
+        };
+    }
+}
@@ -0,0 +1,13 @@
+package com.clinic.management.repository;
+
+import com.clinic.management.dto.SlotView;
+
+import java.util.Collection;
+import java.util.List;
+
+// Чтение слотов через JDBC там, где загрузка сущностей заметно дороже самого запроса
+public interface ScheduleRepositoryCustom {
+
+    // Проверка кандидатов из индекса занятости: те из ids, что все еще свободны, вместе с врачом (порядок не задан)
+    List<SlotView> findAvailableSlotViews(Collection<Long> ids);
+}
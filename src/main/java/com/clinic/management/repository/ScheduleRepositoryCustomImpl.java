@@ -0,0 +1,31 @@
+package com.clinic.management.repository;
+
+import com.clinic.management.dto.SlotView;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public class ScheduleRepositoryCustomImpl implements ScheduleRepositoryCustom {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<SlotView> findAvailableSlotViews(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        // Один параметр-массив вместо IN (?, ?, ...): текст запроса не зависит от числа id,
+        // и драйвер переиспользует подготовленный на сервере план
+        return jdbcTemplate.query("SELECT s.id, s.doctor_id, d.name, d.specialization, s.start_time, s.end_time "
+                        + "FROM schedules s JOIN doctors d ON d.id = s.doctor_id "
+                        + "WHERE s.id = ANY(?) AND s.is_available",
+                (rs, rowNum) -> new SlotView(rs.getLong("id"), rs.getLong("doctor_id"), rs.getString("name"),
+                        rs.getString("specialization"), rs.getObject("start_time", LocalDateTime.class),
+                        rs.getObject("end_time", LocalDateTime.class)),
+                (Object) ids.toArray(Long[]::new));
+    }
+}
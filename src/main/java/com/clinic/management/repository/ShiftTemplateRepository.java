@@ -0,0 +1,12 @@
+package com.clinic.management.repository;
+
+import com.clinic.management.entity.ShiftTemplate;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.List;
+
+public interface ShiftTemplateRepository extends JpaRepository<ShiftTemplate, Long> {
+
+    @EntityGraph(attributePaths = "doctor")
+    List<ShiftTemplate> findAllByOrderByCreatedAtDesc();
+}
@@ -0,0 +1,148 @@
+package com.clinic.management.repository;
+
+import com.clinic.management.dto.StockMovement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Журнал движения запасов и снимки остатков (db/sql/10-stock-ledger.sql), через JDBC:
+ * строки пишутся пачками, чтения - агрегаты по индексам.
+ */
+@Repository
+public class StockLedgerRepository {
+
+    /**
+     * Итоги журнала по лекарству на момент времени.
+     * @param quantity остаток
+     * @param dispensedTotal сколько выдано за всю историю журнала
+     */
+    public record Totals(long quantity, long dispensedTotal) {
+
+        public static final Totals EMPTY = new Totals(0, 0);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Добавляет движения одним JDBC batch; вызывается в транзакции, изменившей остатки
+    public void append(List<StockMovement> movements) {
+        if (movements.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO stock_movements (medication_id, movement_type, quantity_change) VALUES (?, ?, ?)",
+                movements, movements.size(), (ps, m) -> {
+                    ps.setLong(1, m.medicationId());
+                    ps.setString(2, m.type().name());
+                    ps.setLong(3, m.quantityChange());
+                });
+    }
+
+    /**
+     * Начальный остаток (CORRECTION) для лекарств, у которых в журнале нет ни одной строки:
+     * каталог, заполненный до появления журнала или в обход приложения.
+     * @return сколько строк добавлено
+     */
+    public int appendOpeningBalances() {
+        return jdbcTemplate.update("INSERT INTO stock_movements (medication_id, movement_type, quantity_change) "
+                + "SELECT m.id, ?, m.quantity FROM medications m WHERE m.quantity <> 0 "
+                + "AND NOT EXISTS (SELECT 1 FROM stock_movements s WHERE s.medication_id = m.id)",
+                StockMovement.Type.CORRECTION.name());
+    }
+
+    /**
+     * Момент, до которого журнал уже не пополнится: строка пишется не раньше начала своей
+     * транзакции (moved_at - clock_timestamp), значит все строки старше начала самой старой
+     * открытой транзакции (кроме текущей) закоммичены. Время - по часам БД, как и moved_at.
+     */
+    public LocalDateTime commitWatermark() {
+        return jdbcTemplate.queryForObject("SELECT LEAST(clock_timestamp(), "
+                + "(SELECT MIN(xact_start) FROM pg_stat_activity WHERE datname = current_database() "
+                + "AND backend_type = 'client backend' AND pid <> pg_backend_pid()) - interval '1 microsecond')::timestamp",
+                Timestamp.class).toLocalDateTime();
+    }
+
+    public Optional<LocalDateTime> lastSnapshotTime() {
+        Timestamp last = jdbcTemplate.queryForObject("SELECT MAX(taken_at) FROM stock_snapshots", Timestamp.class);
+        return Optional.ofNullable(last).map(Timestamp::toLocalDateTime);
+    }
+
+    /**
+     * Снимок на момент at: для лекарств с движениями после предыдущего снимка (previous) -
+     * их последний снимок плюс движения в (previous, at].
+     * @param previous момент предыдущего снимка (null - снимков еще нет)
+     * @return сколько лекарств попало в снимок
+     */
+    public int insertSnapshot(LocalDateTime previous, LocalDateTime at) {
+        Timestamp takenAt = Timestamp.valueOf(at);
+        return jdbcTemplate.update("INSERT INTO stock_snapshots (medication_id, taken_at, quantity, dispensed_total) "
+                + "SELECT d.medication_id, ?, COALESCE(last.quantity, 0) + d.change, "
+                + "COALESCE(last.dispensed_total, 0) + d.dispensed "
+                + "FROM (SELECT medication_id, SUM(quantity_change) AS change, "
+                + "COALESCE(-SUM(quantity_change) FILTER (WHERE movement_type = ?), 0) AS dispensed "
+                + "FROM stock_movements WHERE moved_at > COALESCE(?::timestamp, '-infinity') AND moved_at <= ? "
+                + "GROUP BY medication_id) d "
+                + "LEFT JOIN LATERAL (SELECT s.quantity, s.dispensed_total FROM stock_snapshots s "
+                + "WHERE s.medication_id = d.medication_id ORDER BY s.taken_at DESC LIMIT 1) last ON true",
+                takenAt, StockMovement.Type.DISPENSE.name(),
+                previous != null ? Timestamp.valueOf(previous) : null, takenAt);
+    }
+
+    /**
+     * Сверка журнала с medications.quantity: остаток по журналу (последний снимок плюс движения
+     * после него) против текущего. Один оператор видит согласованное состояние обеих таблиц,
+     * поэтому параллельные изменения остатков расхождений не дают.
+     * @param repair дописать расхождения в журнал строками CORRECTION
+     * @return сколько лекарств расходится с журналом
+     */
+    public int reconcile(boolean repair) {
+        String drift = "WITH drift AS (SELECT m.id, m.quantity - COALESCE(sn.quantity, 0) - COALESCE(mv.change, 0) AS diff "
+                + "FROM medications m "
+                + "LEFT JOIN LATERAL (SELECT s.taken_at, s.quantity FROM stock_snapshots s "
+                + "WHERE s.medication_id = m.id ORDER BY s.taken_at DESC LIMIT 1) sn ON true "
+                + "LEFT JOIN LATERAL (SELECT SUM(x.quantity_change) AS change FROM stock_movements x "
+                + "WHERE x.medication_id = m.id AND x.moved_at > COALESCE(sn.taken_at, '-infinity')) mv ON true) ";
+        if (repair) {
+            return jdbcTemplate.update(drift + "INSERT INTO stock_movements (medication_id, movement_type, quantity_change) "
+                    + "SELECT id, ?, diff FROM drift WHERE diff <> 0", StockMovement.Type.CORRECTION.name());
+        }
+        Integer count = jdbcTemplate.queryForObject(drift + "SELECT COUNT(*) FROM drift WHERE diff <> 0", Integer.class);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Итоги журнала на момент at: последний снимок не позже at плюс движения после него.
+     * Лекарства без движений к этому моменту в результат не попадают.
+     */
+    public Map<Long, Totals> totalsAt(Collection<Long> medicationIds, LocalDateTime at) {
+        Map<Long, Totals> totals = new HashMap<>();
+        if (medicationIds.isEmpty()) {
+            return totals;
+        }
+        Timestamp time = Timestamp.valueOf(at);
+        jdbcTemplate.query("SELECT ids.id, COALESCE(sn.quantity, 0) + COALESCE(mv.change, 0) AS quantity, "
+                        + "COALESCE(sn.dispensed_total, 0) + COALESCE(mv.dispensed, 0) AS dispensed_total "
+                        + "FROM unnest(?::bigint[]) AS ids(id) "
+                        + "LEFT JOIN LATERAL (SELECT s.taken_at, s.quantity, s.dispensed_total FROM stock_snapshots s "
+                        + "WHERE s.medication_id = ids.id AND s.taken_at <= ? ORDER BY s.taken_at DESC LIMIT 1) sn ON true "
+                        + "LEFT JOIN LATERAL (SELECT SUM(m.quantity_change) AS change, "
+                        + "-SUM(m.quantity_change) FILTER (WHERE m.movement_type = ?) AS dispensed "
+                        + "FROM stock_movements m WHERE m.medication_id = ids.id "
+                        + "AND m.moved_at > COALESCE(sn.taken_at, '-infinity') AND m.moved_at <= ?) mv ON true "
+                        + "WHERE sn.taken_at IS NOT NULL OR mv.change IS NOT NULL",
+                rs -> {
+                    totals.put(rs.getLong("id"), new Totals(rs.getLong("quantity"), rs.getLong("dispensed_total")));
+                },
+                medicationIds.toArray(Long[]::new), time, StockMovement.Type.DISPENSE.name(), time);
+        return totals;
+    }
+}
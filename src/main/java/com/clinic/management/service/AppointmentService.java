@@ -1,18 +1,34 @@
 package com.clinic.management.service;
 
+import com.clinic.management.dto.AppointmentView;
+import com.clinic.management.dto.KeysetPage;
+import com.clinic.management.dto.SlotView;
 import com.clinic.management.entity.*; // Импортируем все нужные сущности
+import com.clinic.management.event.AppointmentChangedEvent;
+import com.clinic.management.event.SlotChangedEvent;
 import com.clinic.management.exception.ResourceNotFoundException;
+import com.clinic.management.exception.SlotUnavailableException;
 import com.clinic.management.repository.*; // Импортируем все нужные репозитории
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 @Service
 public class AppointmentService {
@@ -20,6 +36,8 @@ public class AppointmentService {
     private static final Logger log = LoggerFactory.getLogger(AppointmentService.class);
     private static final String STATUS_BOOKED = "BOOKED";
     private static final String STATUS_CANCELLED = "CANCELLED";
+    // Поля, по которым разрешена сортировка списка записей
+    public static final Set<String> SORT_FIELDS = Set.of("appointmentTime", "id");
 
     @Autowired
     private AppointmentRepository appointmentRepository;
@@ -30,52 +48,99 @@ public class AppointmentService {
     @Autowired
     private DoctorRepository doctorRepository; // Может понадобиться для поиска по доктору
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private SlotOccupancyIndex slotOccupancyIndex;
+
     /**
      * Находит доступные слоты в расписании на указанную дату для конкретного врача (если указан).
+     * Для врача кандидатов дает индекс занятости в памяти (SlotOccupancyIndex.freeSlotIds),
+     * и они проверяются одним запросом к БД по первичному ключу (JDBC, без загрузки сущностей).
+     * Индекс локален для узла, поэтому отрицательный ответ ("свободных нет") отдается только по БД:
+     * если индекс не может ответить или после проверки не осталось ни одного слота, как и для
+     * всех врачей сразу, выполняется запрос по диапазону [date, date + 1) - его обслуживает
+     * частичный индекс по (doctor_id, start_time).
      * @param date Дата
      * @param doctorId ID врача (опционально)
-     * @return Список доступных Schedule
+     * @return Список доступных слотов, отсортированный по времени начала
      */
-    public List<Schedule> findAvailableSchedules(LocalDate date, Long doctorId) {
+    @Timed(value = "clinic.slots.find", description = "Available slots lookup for a day")
+    public List<SlotView> findAvailableSchedules(LocalDate date, Long doctorId) {
         log.debug("Finding available schedules for date: {}, doctorId: {}", date, doctorId);
+        if (doctorId != null) {
+            List<Long> candidates = slotOccupancyIndex.freeSlotIds(date, doctorId).orElse(List.of());
+            if (!candidates.isEmpty()) {
+                // Индекс обновляется после коммита: слот могли занять только что или на другом узле
+                Map<Long, SlotView> available = new HashMap<>();
+                scheduleRepository.findAvailableSlotViews(candidates).forEach(slot -> available.put(slot.id(), slot));
+                List<SlotView> result = candidates.stream()
+                        .map(available::get)
+                        .filter(Objects::nonNull)
+                        .toList();
+                if (!result.isEmpty()) {
+                    return result;
+                }
+            }
+        }
+        LocalDateTime from = date.atStartOfDay();
+        LocalDateTime to = date.plusDays(1).atStartOfDay();
         List<Schedule> schedules;
         if (doctorId != null) {
             // TODO: Проверить, существует ли доктор с таким ID перед вызовом репозитория
             // doctorRepository.findById(doctorId).orElseThrow(() -> new ResourceNotFoundException("Doctor not found with id: " + doctorId));
-            schedules = scheduleRepository.findByDoctorId(doctorId);
+            schedules = scheduleRepository.findAvailableInRangeForDoctor(doctorId, from, to);
         } else {
-            schedules = scheduleRepository.findAll();
+            schedules = scheduleRepository.findAvailableInRange(from, to);
         }
+        return schedules.stream().map(SlotView::of).toList();
+    }
 
-        // Фильтруем по дате и доступности
-        return schedules.stream()
-                .filter(s -> s.getStartTime() != null && s.getStartTime().toLocalDate().equals(date)) // Добавлена проверка на null
-                .filter(Schedule::isAvailable) // Только доступные слоты
-                .collect(Collectors.toList());
-        // TODO: Можно добавить поиск по специализации врача, если нужно
+    /**
+     * Находит доступные слоты врачей указанной специализации на дату.
+     * @param date Дата
+     * @param specialization Специализация врача
+     * @return Список доступных Schedule, отсортированный по времени начала
+     */
+    public List<Schedule> findAvailableSchedulesBySpecialization(LocalDate date, String specialization) {
+        log.debug("Finding available schedules for date: {}, specialization: {}", date, specialization);
+        return scheduleRepository.findAvailableSchedules(date, specialization);
     }
 
 
     /**
      * Создает запись на прием для питомца к врачу в выбранный слот расписания.
+     * Слот занимается одним условным UPDATE (is_available: true -> false), поэтому
+     * из нескольких одновременных запросов на один слот успешен ровно один,
+     * а остальные сразу получают SlotUnavailableException - без двойной записи
+     * и без ошибки уникальности при flush.
      * @param scheduleId ID слота расписания
      * @param reasonForVisit Причина визита
      * @return Созданный Appointment
-     * @throws ResourceNotFoundException если слот или питомец не найдены
-     * @throws IllegalStateException если слот уже занят или информация о докторе отсутствует
+     * @throws ResourceNotFoundException если слот не найден
+     * @throws SlotUnavailableException если слот уже занят
+     * @throws IllegalStateException если информация о докторе отсутствует
      */
     @Transactional // Важно для консистентности данных
+    @Timed(value = "clinic.appointments.book", description = "Appointment booking; exception tag shows lost races")
     public Appointment bookAppointment(Long scheduleId, String reasonForVisit) {
         log.info("Attempting to book appointment for scheduleId: {}", scheduleId);
 
-        // 1. Найти слот расписания и проверить доступность
-        Schedule schedule = scheduleRepository.findById(scheduleId)
-                .orElseThrow(() -> new ResourceNotFoundException("Schedule slot not found with id: " + scheduleId));
-
-        if (!schedule.isAvailable()) {
+        // 1. Атомарно занять слот. Отказ - только по БД: индекс занятости локален для узла,
+        // и слот, освобожденный на другом узле, он может еще считать занятым.
+        // Индекс лишь различает причину отказа: слот, известный индексу, существует, и проигравшим
+        // гонку за один слот не нужен второй запрос к БД
+        if (scheduleRepository.claimSlot(scheduleId) == 0) {
+            if (slotOccupancyIndex.slotState(scheduleId) == SlotOccupancyIndex.SlotState.UNKNOWN
+                    && !scheduleRepository.existsById(scheduleId)) {
+                throw new ResourceNotFoundException("Schedule slot not found with id: " + scheduleId);
+            }
             log.warn("Attempted to book an already unavailable schedule slot: {}", scheduleId);
-            throw new IllegalStateException("Selected time slot is no longer available.");
+            throw new SlotUnavailableException(scheduleId);
         }
+        Schedule schedule = scheduleRepository.findWithDoctorById(scheduleId)
+                .orElseThrow(() -> new ResourceNotFoundException("Schedule slot not found with id: " + scheduleId));
 
         // 2. TODO: Найти питомца (Pet) по его ID (petId) - подразумевается, что petId будет добавлен как параметр
         // Pet pet = petRepository.findById(petId)
@@ -86,7 +151,8 @@ public class AppointmentService {
         // 3. Получить доктора из расписания
         Doctor doctor = schedule.getDoctor();
         if (doctor == null) {
-            // Этого не должно быть, если данные консистентны, но проверим
+            // Этого не должно быть, если данные консистентны, но проверим.
+            // Исключение откатит транзакцию вместе с захватом слота.
             log.error("Doctor is null for scheduleId: {}", scheduleId);
             throw new IllegalStateException("Doctor information is missing for the selected schedule.");
         }
@@ -101,12 +167,11 @@ public class AppointmentService {
         appointment.setStatus(STATUS_BOOKED);
         appointment.setCreatedAt(LocalDateTime.now());
 
-        // 5. Пометить слот как занятый
-        schedule.setAvailable(false);
-        scheduleRepository.save(schedule); // Сохраняем измененный слот
-
-        // 6. Сохранить новую запись
+        // 5. Сохранить новую запись (слот уже помечен занятым на шаге 1)
         Appointment savedAppointment = appointmentRepository.save(appointment);
+        eventPublisher.publishEvent(SlotChangedEvent.of(SlotChangedEvent.Type.BOOKED, schedule));
+        eventPublisher.publishEvent(new AppointmentChangedEvent(savedAppointment.getId(),
+                savedAppointment.getAppointmentTime(), null, STATUS_BOOKED));
 
         log.info("Successfully booked appointment with ID: {} at schedule slot ID: {}",
                 savedAppointment.getId(), scheduleId); // Убрали Pet ID из лога
@@ -121,6 +186,7 @@ public class AppointmentService {
      * @throws IllegalStateException если запись уже отменена или не в статусе BOOKED
      */
     @Transactional
+    @Timed(value = "clinic.appointments.cancel", description = "Appointment cancellation")
     public void cancelAppointment(Long appointmentId) {
         log.info("Attempting to cancel appointment with ID: {}", appointmentId);
         Appointment appointment = appointmentRepository.findById(appointmentId)
@@ -135,11 +201,14 @@ public class AppointmentService {
         // Освобождаем слот расписания
         Schedule schedule = appointment.getSchedule();
         if (schedule != null) {
-            // Проверяем, не занят ли слот уже другой записью (маловероятно при правильной логике, но безопасно)
-            // В данном простом случае просто делаем доступным
-            schedule.setAvailable(true);
-            scheduleRepository.save(schedule);
-            log.info("Made schedule slot ID: {} available again.", schedule.getId());
+            // Условный UPDATE: слот освобождается, только если он действительно занят
+            if (scheduleRepository.releaseSlot(schedule.getId()) > 0) {
+                eventPublisher.publishEvent(SlotChangedEvent.of(SlotChangedEvent.Type.FREED, schedule));
+                log.info("Made schedule slot ID: {} available again.", schedule.getId());
+            }
+            // Отвязываем отмененную запись от слота: schedule_id уникален, иначе слот нельзя
+            // будет занять повторно. Врач и время приема остаются в самой записи.
+            appointment.setSchedule(null);
         } else {
             // Это может произойти, если связь appointment -> schedule была нарушена или не установлена
             log.warn("Cannot make schedule available for cancelled appointment ID: {} because schedule link is missing.", appointmentId);
@@ -149,20 +218,61 @@ public class AppointmentService {
         appointment.setStatus(STATUS_CANCELLED);
         // appointment.setUpdatedAt(LocalDateTime.now()); // Можно добавить поле для отслеживания времени изменения
         appointmentRepository.save(appointment);
+        eventPublisher.publishEvent(new AppointmentChangedEvent(appointmentId,
+                appointment.getAppointmentTime(), STATUS_BOOKED, STATUS_CANCELLED));
         log.info("Successfully cancelled appointment with ID: {}", appointmentId);
     }
 
 
     /**
-     * Получает список записей для конкретного доктора.
+     * Получает список записей для конкретного доктора за "горячие" месяцы (без архива).
      * @param doctorId ID доктора
      * @return Список записей
      */
     public List<Appointment> getAppointmentsForDoctor(Long doctorId) {
-        log.debug("Fetching appointments for doctorId: {}", doctorId);
+        return getAppointmentsForDoctor(doctorId, false);
+    }
+
+    /**
+     * Получает список записей для конкретного доктора.
+     * Без архива читаются только секции последних clinic.partitions.hot-months месяцев и будущие:
+     * время запроса не зависит от объема истории. С архивом - вся история через
+     * appointments_history, включая архивные месяцы (см. PartitionManager).
+     * @param doctorId ID доктора
+     * @param includeArchive true - включая архивные месяцы
+     * @return Список записей
+     */
+    @Transactional(readOnly = true)
+    public List<Appointment> getAppointmentsForDoctor(Long doctorId, boolean includeArchive) {
+        log.debug("Fetching appointments for doctorId: {} (archive: {})", doctorId, includeArchive);
         // TODO: Желательно проверить существование доктора перед запросом
         // doctorRepository.findById(doctorId).orElseThrow(() -> new ResourceNotFoundException("Doctor not found with id: " + doctorId));
-        return appointmentRepository.findByDoctorId(doctorId);
+        return includeArchive
+                ? appointmentRepository.findHistoryByDoctorId(doctorId)
+                : appointmentRepository.findByDoctorId(doctorId);
+    }
+
+    /**
+     * Записи врача для отображения: проекция с данными врача, один запрос на страницу.
+     * @param doctorId ID доктора
+     * @param includeArchive true - включая архивные месяцы (см. getAppointmentsForDoctor)
+     * @return Записи, новые сверху
+     */
+    @Transactional(readOnly = true)
+    public List<AppointmentView> getAppointmentViewsForDoctor(Long doctorId, boolean includeArchive) {
+        log.debug("Fetching appointment views for doctorId: {} (archive: {})", doctorId, includeArchive);
+        return includeArchive
+                ? appointmentRepository.findHistoryViewsByDoctorId(doctorId)
+                : appointmentRepository.findViewsByDoctorId(doctorId);
+    }
+
+    /**
+     * Последние созданные записи для отображения (проекция, один запрос).
+     * @param limit сколько записей вернуть
+     */
+    @Transactional(readOnly = true)
+    public List<AppointmentView> getRecentAppointmentViews(int limit) {
+        return appointmentRepository.findRecentViews(PageRequest.of(0, limit));
     }
 
     // TODO: Добавить метод getAppointmentsForOwner(Long ownerId)
@@ -192,9 +302,29 @@ public class AppointmentService {
                 .orElseThrow(() -> new ResourceNotFoundException("Appointment not found with id: " + appointmentId));
     }
 
+    /**
+     * Страница записей на прием (keyset-пагинация), по умолчанию новые сверху.
+     * @param doctorId ID врача (опционально)
+     * @param status статус записи (опционально)
+     * @param cursor курсор из предыдущей страницы (null - первая страница)
+     * @param size размер страницы, не больше KeysetPage.MAX_SIZE
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<Appointment> findAppointmentsPage(Long doctorId, String status, String sortBy,
+                                                        boolean descending, String cursor, Integer size) {
+        Sort sort = KeysetPage.sort(sortBy, SORT_FIELDS, "appointmentTime", descending);
+        KeysetScrollPosition position = KeysetPage.position(cursor, sort, Appointment.class);
+        Specification<Appointment> spec = Specification
+                .where(AppointmentRepository.forDoctor(doctorId))
+                .and(AppointmentRepository.hasStatus(StringUtils.hasText(status) ? status.trim() : null))
+                .and(AppointmentRepository.fetchDoctor());
+        int limit = KeysetPage.clampSize(size);
+        return KeysetPage.of(appointmentRepository.findBy(spec, q -> q.sortBy(sort).limit(limit).scroll(position)), position);
+    }
+
     /**
      * Получает все записи на прием.
-     * ОСТОРОЖНО: Может вернуть большой объем данных. Рассмотрите пагинацию для реальных приложений.
+     * ОСТОРОЖНО: Может вернуть большой объем данных. Для списков используйте findAppointmentsPage.
      * @return Список всех записей.
      */
     public List<Appointment> findAllAppointments() {
@@ -0,0 +1,78 @@
+package com.clinic.management.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковое чтение CSV (RFC 4180): разделитель - запятая, поля в двойных кавычках могут
+ * содержать запятые, переводы строк и удвоенные кавычки. Держит в памяти одну запись.
+ * BOM в начале файла (так сохраняет Excel) пропускается.
+ */
+final class CsvReader {
+
+    private final Reader in;
+    private long line = 1;
+    private long recordLine;
+
+    CsvReader(Reader reader) throws IOException {
+        this.in = new BufferedReader(reader, 64 * 1024);
+        in.mark(1);
+        if (in.read() != '\uFEFF') {
+            in.reset();
+        }
+    }
+
+    /**
+     * Следующая запись или null в конце файла. Пустая строка - запись из одного пустого поля.
+     * @throws IllegalArgumentException если кавычка не закрыта до конца файла
+     */
+    List<String> next() throws IOException {
+        int c = in.read();
+        if (c == -1) {
+            return null;
+        }
+        recordLine = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("Строка " + recordLine + ": не закрыта кавычка.");
+                }
+                if (c == '"') {
+                    c = in.read();
+                    if (c != '"') {
+                        quoted = false;
+                        continue; // c - символ после закрывающей кавычки
+                    }
+                } else if (c == '\n') {
+                    line++;
+                }
+                field.append((char) c);
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                if (c == '\n') {
+                    line++;
+                }
+                fields.add(field.toString());
+                return fields;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = in.read();
+        }
+    }
+
+    // Номер строки файла, с которой началась последняя прочитанная запись (с 1)
+    long recordLine() {
+        return recordLine;
+    }
+}
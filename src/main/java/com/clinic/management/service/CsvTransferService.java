@@ -0,0 +1,503 @@
+package com.clinic.management.service;
+
+import com.clinic.management.dto.StockMovement;
+import com.clinic.management.event.MedicationsBulkChangedEvent;
+import com.clinic.management.event.SlotsBulkChangedEvent;
+import io.micrometer.core.annotation.Timed;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Массовый импорт и экспорт CSV для каталога лекарств и слотов расписания через COPY PostgreSQL.
+ *
+ * Импорт: файл читается потоково, каждая строка проверяется, корректные строки сразу уходят
+ * через COPY во временную таблицу (удаляется при коммите), ошибочные попадают в отчет с номером
+ * строки. Проверки, которым нужна БД (повторы в файле, несуществующий врач), выполняются
+ * над временной таблицей одним UPDATE, после чего строки переносятся в основную таблицу
+ * набором операций (UPDATE ... FROM, INSERT ... SELECT). Все - одна транзакция: файл
+ * загружается целиком без ошибочных строк или не загружается вовсе (ошибка чтения, разрыв).
+ * В памяти - одна строка файла и первые MAX_REPORTED_ERRORS ошибок, каким бы большим ни был файл.
+ *
+ * Экспорт: COPY (SELECT ...) TO STDOUT отдает строки по мере чтения, они сразу пишутся
+ * в поток ответа; память не зависит от размера таблицы.
+ */
+@Service
+public class CsvTransferService {
+
+    private static final Logger log = LoggerFactory.getLogger(CsvTransferService.class);
+
+    // Сколько ошибок возвращать в отчете (считаются все)
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    // Шаг schedules_seq (allocationSize у Schedule): pooled-оптимизатор Hibernate выдает ID
+    // блоками (значение последовательности - 49, значение]; импорт берет такие же блоки
+    private static final int SCHEDULE_ID_BLOCK = 50;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // BOM: Excel без него открывает UTF-8 CSV в кодировке Windows
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /**
+     * Ошибка в строке файла. Serializable: отчет передается на страницу через flash-атрибуты сессии.
+     * @param line номер строки файла (заголовок - строка 1)
+     */
+    public record RowError(long line, String message) implements Serializable {
+    }
+
+    /**
+     * Итог импорта.
+     * @param rowsRead   строк данных в файле (без заголовка и пустых строк)
+     * @param inserted   добавлено записей
+     * @param updated    изменено существующих записей
+     * @param unchanged  корректных строк, не изменивших данные (запись уже такая или уже есть)
+     * @param errorCount строк с ошибками (не загружены)
+     * @param errors     первые MAX_REPORTED_ERRORS ошибок по порядку строк
+     */
+    public record ImportReport(long rowsRead, int inserted, int updated, long unchanged, long errorCount,
+                               List<RowError> errors, long elapsedMillis) {
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private MedicationService medicationService;
+
+    /**
+     * Импорт каталога лекарств. Колонки (по заголовку, порядок любой, лишние игнорируются):
+     * name - обязательна; description, quantity, min_stock_level, price. Лекарство с тем же
+     * названием обновляется (пустые поля не меняют текущее значение), новое добавляется
+     * (цена обязательна, количество по умолчанию 0, минимальный запас - 10).
+     * @throws IllegalArgumentException если в заголовке нет колонки name или файл поврежден
+     */
+    @Transactional
+    @Timed(value = "clinic.csv.import", extraTags = {"table", "medications"}, description = "CSV import through COPY")
+    public ImportReport importMedications(InputStream csv) throws IOException {
+        long startedAt = System.nanoTime();
+        jdbcTemplate.execute("CREATE TEMP TABLE medications_import (line BIGINT, name VARCHAR(255), "
+                + "description VARCHAR(255), quantity INT, min_stock_level INT, price NUMERIC(38, 2), error TEXT) "
+                + "ON COMMIT DROP");
+        Errors errors = new Errors();
+        long rowsRead = copyRows(csv, "medications_import (line, name, description, quantity, min_stock_level, price)",
+                List.of("name"), errors, (row, out) -> {
+                    String name = row.text("name");
+                    if (name == null) {
+                        throw new IllegalArgumentException("не указано название");
+                    }
+                    out.text(limit(name, 255, "название"))
+                            .text(limit(row.text("description"), 255, "описание"))
+                            .value(nonNegative(row.integer("quantity"), "количество"))
+                            .value(nonNegative(row.integer("min_stock_level"), "минимальный запас"))
+                            .value(price(row.decimal("price")));
+                });
+        jdbcTemplate.execute("ANALYZE medications_import");
+
+        markErrors("UPDATE medications_import s SET error = 'Повтор названия в файле, загружена строка ' || d.last_line "
+                + "FROM (SELECT name, MAX(line) AS last_line FROM medications_import GROUP BY name HAVING COUNT(*) > 1) d "
+                + "WHERE s.name = d.name AND s.line < d.last_line", errors);
+        markErrors("UPDATE medications_import s SET error = 'Для нового препарата нужна цена' "
+                + "WHERE s.error IS NULL AND s.price IS NULL "
+                + "AND NOT EXISTS (SELECT 1 FROM medications m WHERE m.name = s.name)", errors);
+
+        // Новый остаток из файла заменяет текущий: разница - в журнал движения запасов (строки
+        // блокируются до конца транзакции, чтобы параллельная выдача не разошлась с журналом)
+        jdbcTemplate.update("WITH changed AS (SELECT m.id, s.quantity - m.quantity AS change "
+                + "FROM medications m JOIN medications_import s ON m.name = s.name "
+                + "WHERE s.error IS NULL AND s.quantity IS NOT NULL AND s.quantity <> m.quantity FOR UPDATE OF m) "
+                + "INSERT INTO stock_movements (medication_id, movement_type, quantity_change) "
+                + "SELECT id, ?, change FROM changed", StockMovement.Type.CORRECTION.name());
+        // Строки без изменений не перезаписываются
+        int updated = jdbcTemplate.update("UPDATE medications m SET description = COALESCE(s.description, m.description), "
+                + "quantity = COALESCE(s.quantity, m.quantity), min_stock_level = COALESCE(s.min_stock_level, m.min_stock_level), "
+                + "price = COALESCE(s.price, m.price) "
+                + "FROM medications_import s WHERE s.error IS NULL AND m.name = s.name "
+                + "AND (m.description, m.quantity, m.min_stock_level, m.price) IS DISTINCT FROM "
+                + "(COALESCE(s.description, m.description), COALESCE(s.quantity, m.quantity), "
+                + "COALESCE(s.min_stock_level, m.min_stock_level), COALESCE(s.price, m.price))");
+        // Начальный остаток нового лекарства - тем же оператором в журнал движения
+        int inserted = jdbcTemplate.queryForObject("WITH added AS ("
+                + "INSERT INTO medications (name, description, quantity, min_stock_level, price) "
+                + "SELECT s.name, s.description, COALESCE(s.quantity, 0), COALESCE(s.min_stock_level, 10), s.price "
+                + "FROM medications_import s WHERE s.error IS NULL "
+                + "AND NOT EXISTS (SELECT 1 FROM medications m WHERE m.name = s.name) RETURNING id, quantity), "
+                + "opening AS (INSERT INTO stock_movements (medication_id, movement_type, quantity_change) "
+                + "SELECT id, ?, quantity FROM added WHERE quantity <> 0) "
+                + "SELECT COUNT(*) FROM added", Integer.class, StockMovement.Type.CORRECTION.name());
+
+        if (inserted + updated > 0) {
+            medicationService.markCatalogChanged();
+            eventPublisher.publishEvent(new MedicationsBulkChangedEvent(inserted, updated));
+        }
+        ImportReport report = report(rowsRead, inserted, updated, errors, "medications_import", startedAt);
+        log.info("Imported medications CSV: {} row(s), {} inserted, {} updated, {} unchanged, {} error(s) in {} ms",
+                rowsRead, inserted, updated, report.unchanged(), report.errorCount(), report.elapsedMillis());
+        return report;
+    }
+
+    /**
+     * Импорт слотов расписания. Колонки: doctor_id, start_time, end_time - обязательны
+     * (дата и время: 2025-03-01 09:00 или 2025-03-01T09:00), is_available (true/false, по умолчанию true).
+     * Слот врача с тем же временем начала, который уже есть, пропускается, как при генерации
+     * по шаблону смены; выгрузку exportSchedules можно загрузить обратно.
+     * @throws IllegalArgumentException если в заголовке нет обязательных колонок или файл поврежден
+     */
+    @Transactional
+    @Timed(value = "clinic.csv.import", extraTags = {"table", "schedules"}, description = "CSV import through COPY")
+    public ImportReport importSchedules(InputStream csv) throws IOException {
+        long startedAt = System.nanoTime();
+        jdbcTemplate.execute("CREATE TEMP TABLE schedules_import (line BIGINT, doctor_id BIGINT, "
+                + "start_time TIMESTAMP, end_time TIMESTAMP, is_available BOOLEAN, error TEXT) ON COMMIT DROP");
+        Errors errors = new Errors();
+        long rowsRead = copyRows(csv, "schedules_import (line, doctor_id, start_time, end_time, is_available)",
+                List.of("doctor_id", "start_time", "end_time"), errors, (row, out) -> {
+                    Long doctorId = row.longValue("doctor_id");
+                    LocalDateTime start = row.dateTime("start_time");
+                    LocalDateTime end = row.dateTime("end_time");
+                    if (doctorId == null || start == null || end == null) {
+                        throw new IllegalArgumentException("нужны врач, начало и окончание");
+                    }
+                    if (!end.isAfter(start)) {
+                        throw new IllegalArgumentException("окончание должно быть позже начала");
+                    }
+                    Boolean available = row.bool("is_available");
+                    out.value(doctorId).value(start).value(end).value(available == null || available);
+                });
+        jdbcTemplate.execute("ANALYZE schedules_import");
+
+        markErrors("UPDATE schedules_import s SET error = 'Врач с id=' || s.doctor_id || ' не найден' "
+                + "WHERE NOT EXISTS (SELECT 1 FROM doctors d WHERE d.id = s.doctor_id)", errors);
+        markErrors("UPDATE schedules_import s SET error = 'Повтор слота в файле, загружена строка ' || d.first_line "
+                + "FROM (SELECT doctor_id, start_time, MIN(line) AS first_line FROM schedules_import "
+                + "WHERE error IS NULL GROUP BY doctor_id, start_time HAVING COUNT(*) > 1) d "
+                + "WHERE s.doctor_id = d.doctor_id AND s.start_time = d.start_time AND s.line > d.first_line", errors);
+        // Уже существующие слоты - не ошибка: повторная загрузка файла безопасна.
+        // Сверка по всей истории: слоты прошлых месяцев уже могут быть в архиве
+        jdbcTemplate.update("DELETE FROM schedules_import s WHERE s.error IS NULL AND EXISTS "
+                + "(SELECT 1 FROM schedules_history x WHERE x.doctor_id = s.doctor_id AND x.start_time = s.start_time)");
+
+        Integer toInsert = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM schedules_import WHERE error IS NULL", Integer.class);
+        int inserted = 0;
+        if (toInsert != null && toInsert > 0) {
+            inserted = jdbcTemplate.update("WITH blocks AS MATERIALIZED ("
+                    + "  SELECT g - 1 AS block, nextval('schedules_seq') AS hi FROM generate_series(1, ?) g), "
+                    + "numbered AS (SELECT s.*, row_number() OVER (ORDER BY s.line) - 1 AS rn "
+                    + "  FROM schedules_import s WHERE s.error IS NULL) "
+                    + "INSERT INTO schedules (id, doctor_id, start_time, end_time, is_available) "
+                    + "SELECT b.hi - ? + 1 + r.rn % ?, r.doctor_id, r.start_time, r.end_time, r.is_available "
+                    + "FROM numbered r JOIN blocks b ON b.block = r.rn / ?",
+                    (toInsert + SCHEDULE_ID_BLOCK - 1) / SCHEDULE_ID_BLOCK,
+                    SCHEDULE_ID_BLOCK, SCHEDULE_ID_BLOCK, SCHEDULE_ID_BLOCK);
+            // Одно событие на врача: индекс занятости, версии дней и кэш страниц перечитают диапазон
+            jdbcTemplate.query("SELECT doctor_id, MIN(start_time)::date AS day_from, MAX(start_time)::date AS day_to "
+                    + "FROM schedules_import WHERE error IS NULL GROUP BY doctor_id", rs -> {
+                eventPublisher.publishEvent(new SlotsBulkChangedEvent(rs.getLong("doctor_id"),
+                        rs.getObject("day_from", LocalDate.class), rs.getObject("day_to", LocalDate.class)));
+            });
+        }
+        ImportReport report = report(rowsRead, inserted, 0, errors, "schedules_import", startedAt);
+        log.info("Imported schedules CSV: {} row(s), {} inserted, {} already existed, {} error(s) in {} ms",
+                rowsRead, inserted, report.unchanged(), report.errorCount(), report.elapsedMillis());
+        return report;
+    }
+
+    /**
+     * Выгрузка каталога лекарств в CSV (с заголовком; колонки подходят для importMedications).
+     * @return число выгруженных строк
+     */
+    @Timed(value = "clinic.csv.export", extraTags = {"table", "medications"}, description = "CSV export through COPY")
+    public long exportMedications(OutputStream out) throws IOException {
+        return copyOut("SELECT id, name, description, quantity, min_stock_level, price FROM medications ORDER BY id", out);
+    }
+
+    /**
+     * Выгрузка слотов расписания за период (границы включительно; null - без ограничения)
+     * в порядке времени, с именем и специализацией врача.
+     * @return число выгруженных строк
+     */
+    @Timed(value = "clinic.csv.export", extraTags = {"table", "schedules"}, description = "CSV export through COPY")
+    public long exportSchedules(LocalDate from, LocalDate to, OutputStream out) throws IOException {
+        // У COPY нет параметров запроса; LocalDate.toString - только цифры и дефисы
+        String where = "TRUE";
+        if (from != null) {
+            where += " AND s.start_time >= DATE '" + from + "'";
+        }
+        if (to != null) {
+            where += " AND s.start_time < DATE '" + to.plusDays(1) + "'";
+        }
+        // Вся история (включая архивные месяцы); условие по start_time доходит до каждой секции
+        return copyOut("SELECT s.id, s.doctor_id, d.name AS doctor_name, d.specialization, s.start_time, s.end_time, "
+                + "s.is_available FROM schedules_history s JOIN doctors d ON d.id = s.doctor_id WHERE " + where
+                + " ORDER BY s.start_time, s.id", out);
+    }
+
+    private long copyOut(String query, OutputStream out) throws IOException {
+        long startedAt = System.nanoTime();
+        out.write(UTF8_BOM);
+        // Без транзакции: соединение берется на время одного COPY, снимок данных - на время запроса
+        long rows;
+        try {
+            rows = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+                try {
+                    return con.unwrap(PGConnection.class).getCopyAPI()
+                            .copyOut("COPY (" + query + ") TO STDOUT WITH (FORMAT csv, HEADER, ENCODING 'UTF8')", out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // клиент закрыл соединение
+        }
+        out.flush();
+        log.info("Exported {} row(s) to CSV in {} ms", rows, (System.nanoTime() - startedAt) / 1_000_000);
+        return rows;
+    }
+
+    // Читает CSV, проверяет строки и пишет корректные в COPY ... FROM STDIN; возвращает число строк данных
+    private long copyRows(InputStream csv, String target, List<String> requiredColumns, Errors errors,
+                          RowMapper mapper) throws IOException {
+        CsvReader reader = new CsvReader(new InputStreamReader(csv, StandardCharsets.UTF_8));
+        List<String> header = reader.next();
+        if (header == null) {
+            throw new IllegalArgumentException("Файл пуст.");
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.putIfAbsent(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String column : requiredColumns) {
+            if (!columns.containsKey(column)) {
+                throw new IllegalArgumentException("В заголовке нет колонки " + column + ".");
+            }
+        }
+        // Соединение транзакции: временная таблица видна только в нем
+        PGCopyOutputStream copyIn = jdbcTemplate.execute((ConnectionCallback<PGCopyOutputStream>) con ->
+                new PGCopyOutputStream(con.unwrap(PGConnection.class),
+                        "COPY " + target + " FROM STDIN WITH (FORMAT csv)", COPY_BUFFER_SIZE));
+        long rowsRead = 0;
+        try (Writer copy = new BufferedWriter(new OutputStreamWriter(copyIn, StandardCharsets.UTF_8))) {
+            CopyLine line = new CopyLine(copy);
+            for (List<String> fields = reader.next(); fields != null; fields = reader.next()) {
+                if (fields.size() == 1 && fields.get(0).isBlank()) {
+                    continue;
+                }
+                rowsRead++;
+                Row row = new Row(columns, fields);
+                line.start(reader.recordLine());
+                try {
+                    mapper.map(row, line);
+                } catch (IllegalArgumentException e) {
+                    errors.add(reader.recordLine(), e.getMessage());
+                    continue;
+                }
+                line.end();
+            }
+        }
+        return rowsRead;
+    }
+
+    private void markErrors(String update, Errors errors) {
+        errors.count += jdbcTemplate.update(update);
+    }
+
+    private ImportReport report(long rowsRead, int inserted, int updated, Errors errors, String staging, long startedAt) {
+        List<RowError> reported = new ArrayList<>(errors.rows);
+        jdbcTemplate.query("SELECT line, error FROM " + staging + " WHERE error IS NOT NULL ORDER BY line LIMIT ?",
+                rs -> {
+                    reported.add(new RowError(rs.getLong("line"), rs.getString("error")));
+                }, MAX_REPORTED_ERRORS);
+        reported.sort(Comparator.comparingLong(RowError::line));
+        List<RowError> first = List.copyOf(reported.subList(0, Math.min(MAX_REPORTED_ERRORS, reported.size())));
+        long unchanged = Math.max(0, rowsRead - errors.count - inserted - updated);
+        return new ImportReport(rowsRead, inserted, updated, unchanged, errors.count, first,
+                (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    // --- Проверка значений; сообщение IllegalArgumentException попадает в отчет ---
+
+    private static String limit(String value, int maxLength, String field) {
+        if (value != null && value.length() > maxLength) {
+            throw new IllegalArgumentException(field + ": длиннее " + maxLength + " символов");
+        }
+        return value;
+    }
+
+    private static Integer nonNegative(Integer value, String field) {
+        if (value != null && value < 0) {
+            throw new IllegalArgumentException(field + ": отрицательное значение");
+        }
+        return value;
+    }
+
+    private static String price(BigDecimal value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.signum() < 0 || value.scale() > 2 || value.precision() - value.scale() > 36) {
+            throw new IllegalArgumentException("цена: ожидается неотрицательное число с точностью до копеек");
+        }
+        return value.toPlainString();
+    }
+
+    @FunctionalInterface
+    private interface RowMapper {
+        void map(Row row, CopyLine out) throws IOException;
+    }
+
+    private static final class Errors {
+        private long count;
+        private final List<RowError> rows = new ArrayList<>();
+
+        void add(long line, String message) {
+            count++;
+            if (rows.size() < MAX_REPORTED_ERRORS) {
+                rows.add(new RowError(line, message));
+            }
+        }
+    }
+
+    /**
+     * Строка файла: поля по именам колонок заголовка. Пустое поле - null.
+     */
+    private static final class Row {
+        private final Map<String, Integer> columns;
+        private final List<String> fields;
+
+        Row(Map<String, Integer> columns, List<String> fields) {
+            this.columns = columns;
+            this.fields = fields;
+        }
+
+        String text(String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= fields.size()) {
+                return null;
+            }
+            String value = fields.get(index).trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        Integer integer(String column) {
+            String value = text(column);
+            try {
+                return value == null ? null : Integer.valueOf(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(column + ": не целое число '" + value + "'");
+            }
+        }
+
+        Long longValue(String column) {
+            String value = text(column);
+            try {
+                return value == null ? null : Long.valueOf(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(column + ": не целое число '" + value + "'");
+            }
+        }
+
+        BigDecimal decimal(String column) {
+            String value = text(column);
+            try {
+                // Допускается и десятичная запятая (так выгружает русский Excel)
+                return value == null ? null : new BigDecimal(value.replace(',', '.'));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(column + ": не число '" + value + "'");
+            }
+        }
+
+        LocalDateTime dateTime(String column) {
+            String value = text(column);
+            try {
+                return value == null ? null : LocalDateTime.parse(value.replace(' ', 'T'));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException(column + ": ожидается дата и время вида 2025-03-01 09:00, получено '"
+                        + value + "'");
+            }
+        }
+
+        Boolean bool(String column) {
+            String value = text(column);
+            if (value == null) {
+                return null;
+            }
+            return switch (value.toLowerCase(Locale.ROOT)) {
+                case "true", "t", "1", "yes", "да" -> true;
+                case "false", "f", "0", "no", "нет" -> false;
+                default -> throw new IllegalArgumentException(column + ": ожидается true или false, получено '" + value + "'");
+            };
+        }
+    }
+
+    /**
+     * Строка для COPY в формате CSV: первое поле - номер строки файла. Поля копятся в буфере
+     * и пишутся в COPY только целой строкой, чтобы строка с ошибкой не попала в поток наполовину.
+     */
+    private static final class CopyLine {
+        private final Writer out;
+        private final StringBuilder buffer = new StringBuilder(256);
+
+        CopyLine(Writer out) {
+            this.out = out;
+        }
+
+        void start(long line) {
+            buffer.setLength(0);
+            buffer.append(line);
+        }
+
+        // Строки всегда в кавычках: пустая строка в кавычках - '', без кавычек - NULL
+        CopyLine text(String value) {
+            buffer.append(',');
+            if (value != null) {
+                buffer.append('"').append(value.replace("\"", "\"\"")).append('"');
+            }
+            return this;
+        }
+
+        CopyLine value(Object value) {
+            buffer.append(',');
+            if (value != null) {
+                buffer.append(value);
+            }
+            return this;
+        }
+
+        void end() throws IOException {
+            buffer.append('\n');
+            out.append(buffer);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.clinic.management.service;
+
+import com.clinic.management.event.AppointmentChangedEvent;
+import com.clinic.management.event.DoctorChangedEvent;
+import com.clinic.management.event.MedicationChangedEvent;
+import com.clinic.management.event.MedicationsBulkChangedEvent;
+import com.clinic.management.repository.AppointmentRepository;
+import com.clinic.management.repository.DoctorRepository;
+import com.clinic.management.repository.MedicationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Счетчики для панели управления, которые поддерживаются по событиям изменений,
+ * а не считаются заново при каждом открытии страницы.
+ *
+ * Врачи и лекарства считаются по DoctorChangedEvent / MedicationChangedEvent (импорт - MedicationsBulkChangedEvent),
+ * записи на сегодня по статусам - по AppointmentChangedEvent, число лекарств
+ * с низким запасом берется из LowStockMonitor. Данные, измененные в обход сервисов
+ * (DataLoader, SQL), и возможные расхождения из-за гонки с событиями исправляет
+ * периодическая сверка дешевыми COUNT-запросами (clinic.dashboard.reconcile-cron).
+ * При смене дня счетчики записей пересчитываются сразу, при первом чтении.
+ */
+@Service
+public class DashboardStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(DashboardStatsService.class);
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private MedicationRepository medicationRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private LowStockMonitor lowStockMonitor;
+
+    /**
+     * Снимок счетчиков для панели управления.
+     * @param appointmentsTodayByStatus количество записей на сегодня по статусам (BOOKED, CANCELLED, ...)
+     */
+    public record DashboardStats(long doctorCount,
+                                 long medicationCount,
+                                 long appointmentsToday,
+                                 Map<String, Long> appointmentsTodayByStatus,
+                                 int lowStockCount,
+                                 LocalDateTime reconciledAt) {
+    }
+
+    // Счетчики записей за один день; при смене дня заменяются целиком
+    private record DayCounters(LocalDate day, Map<String, AtomicLong> byStatus) {
+    }
+
+    private final AtomicLong doctorCount = new AtomicLong();
+    private final AtomicLong medicationCount = new AtomicLong();
+    private volatile DayCounters today = new DayCounters(LocalDate.MIN, new ConcurrentHashMap<>());
+    private volatile LocalDateTime reconciledAt;
+    // ReentrantLock, а не synchronized: внутри запрос к БД, а synchronized на Java 21
+    // прикрепляет виртуальный поток к несущему на все время ожидания
+    private final ReentrantLock dayLock = new ReentrantLock();
+
+    /**
+     * Возвращает текущие значения счетчиков. Запросов к БД нет,
+     * кроме одного пересчета записей после смены дня.
+     */
+    public DashboardStats getStats() {
+        DayCounters counters = currentDay();
+        Map<String, Long> byStatus = new TreeMap<>();
+        long total = 0;
+        for (Map.Entry<String, AtomicLong> e : counters.byStatus().entrySet()) {
+            long value = e.getValue().get();
+            if (value > 0) {
+                byStatus.put(e.getKey(), value);
+                total += value;
+            }
+        }
+        return new DashboardStats(doctorCount.get(), medicationCount.get(), total,
+                Collections.unmodifiableMap(byStatus), lowStockMonitor.lowStockCount(), reconciledAt);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        reconcile();
+    }
+
+    /**
+     * Сверка счетчиков с БД: COUNT по врачам и лекарствам и GROUP BY status
+     * по записям на сегодня.
+     */
+    @Scheduled(cron = "${clinic.dashboard.reconcile-cron:0 */5 * * * *}")
+    public void reconcile() {
+        long doctors = doctorRepository.count();
+        long medications = medicationRepository.count();
+        long doctorDrift = doctorCount.getAndSet(doctors) - doctors;
+        long medicationDrift = medicationCount.getAndSet(medications) - medications;
+        reloadDay(LocalDate.now());
+        reconciledAt = LocalDateTime.now();
+        if (doctorDrift != 0 || medicationDrift != 0) {
+            log.info("Dashboard counters corrected: doctors {} ({}), medications {} ({})",
+                    doctors, -doctorDrift, medications, -medicationDrift);
+        }
+        log.debug("Dashboard counters reconciled: doctors={}, medications={}, appointments today={}",
+                doctors, medications, today.byStatus());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDoctorChanged(DoctorChangedEvent event) {
+        switch (event.type()) {
+            case CREATED -> doctorCount.incrementAndGet();
+            case DELETED -> doctorCount.decrementAndGet();
+            default -> { }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMedicationChanged(MedicationChangedEvent event) {
+        switch (event.type()) {
+            case CREATED -> medicationCount.incrementAndGet();
+            case DELETED -> medicationCount.decrementAndGet();
+            default -> { }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMedicationsBulkChanged(MedicationsBulkChangedEvent event) {
+        medicationCount.addAndGet(event.inserted());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAppointmentChanged(AppointmentChangedEvent event) {
+        if (event.appointmentTime() == null) {
+            return;
+        }
+        DayCounters counters = currentDay();
+        if (!event.appointmentTime().toLocalDate().equals(counters.day())) {
+            return; // запись не на сегодня
+        }
+        if (event.previousStatus() != null) {
+            counters.byStatus().computeIfAbsent(event.previousStatus(), s -> new AtomicLong()).decrementAndGet();
+        }
+        if (event.status() != null) {
+            counters.byStatus().computeIfAbsent(event.status(), s -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    private DayCounters currentDay() {
+        LocalDate now = LocalDate.now();
+        DayCounters counters = today;
+        if (!counters.day().equals(now)) {
+            dayLock.lock();
+            try {
+                counters = today;
+                if (!counters.day().equals(now)) {
+                    counters = reloadDay(now);
+                }
+            } finally {
+                dayLock.unlock();
+            }
+        }
+        return counters;
+    }
+
+    private DayCounters reloadDay(LocalDate day) {
+        dayLock.lock();
+        try {
+            List<Object[]> rows = appointmentRepository.countByStatusInRange(
+                    day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+            Map<String, AtomicLong> byStatus = new ConcurrentHashMap<>();
+            for (Object[] row : rows) {
+                byStatus.put((String) row[0], new AtomicLong((Long) row[1]));
+            }
+            DayCounters counters = new DayCounters(day, byStatus);
+            today = counters;
+            return counters;
+        } finally {
+            dayLock.unlock();
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.clinic.management.service;
 
 
+import com.clinic.management.dto.KeysetPage;
 import com.clinic.management.entity.Doctor; // Импортируем сущность Doctor
+import com.clinic.management.event.DoctorChangedEvent;
 import com.clinic.management.exception.ResourceNotFoundException;
 import com.clinic.management.repository.DoctorRepository; // Импортируем репозиторий DoctorRepository
 // Импортируем репозитории, которые могут понадобиться для проверок связанных сущностей (опционально)
@@ -10,17 +12,26 @@ import com.clinic.management.repository.ScheduleRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 
 import java.util.List;
 import java.util.Optional; // Для использования в update
+import java.util.Set;
 
 @Service
 public class DoctorService {
 
     private static final Logger log = LoggerFactory.getLogger(DoctorService.class);
 
+    // Поля, по которым разрешена сортировка списка врачей
+    public static final Set<String> SORT_FIELDS = Set.of("name", "specialization", "id");
+
     @Autowired
     private DoctorRepository doctorRepository;
 
@@ -31,6 +42,8 @@ public class DoctorService {
     @Autowired(required = false) // Делаем необязательными, если не используется проверка
     private ScheduleRepository scheduleRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
     /**
      * Находит доктора по его ID.
@@ -60,11 +73,48 @@ public class DoctorService {
         return doctors;
     }
 
+    /**
+     * Специализации врачей по алфавиту (из кэша запросов Hibernate).
+     */
+    public List<String> findSpecializations() {
+        return doctorRepository.findSpecializations();
+    }
+
+    /**
+     * Страница списка врачей (keyset-пагинация).
+     * @param namePrefix начало имени, без учета регистра (опционально)
+     * @param specialization точная специализация (опционально)
+     * @param sortBy поле сортировки из SORT_FIELDS, по умолчанию name
+     * @param descending сортировка по убыванию
+     * @param cursor курсор из предыдущей страницы (null - первая страница)
+     * @param size размер страницы, не больше KeysetPage.MAX_SIZE
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<Doctor> findDoctorsPage(String namePrefix, String specialization, String sortBy,
+                                              boolean descending, String cursor, Integer size) {
+        Sort sort = KeysetPage.sort(sortBy, SORT_FIELDS, "name", descending);
+        KeysetScrollPosition position = KeysetPage.position(cursor, sort, Doctor.class);
+        Specification<Doctor> spec = Specification
+                .where(DoctorRepository.nameStartsWith(StringUtils.hasText(namePrefix) ? namePrefix.trim() : null))
+                .and(DoctorRepository.hasSpecialization(StringUtils.hasText(specialization) ? specialization.trim() : null));
+        int limit = KeysetPage.clampSize(size);
+        return KeysetPage.of(doctorRepository.findBy(spec, q -> q.sortBy(sort).limit(limit).scroll(position)), position);
+    }
+
     /**
      * Создает нового доктора в системе.
      * @param doctor Объект Doctor с данными для создания. ID должен быть null или отсутствовать.
      * @return Сохраненный объект Doctor с присвоенным ID.
      */
+    @Transactional
+    public Doctor createDoctor(Doctor doctor) {
+        log.info("Creating new doctor: {}", doctor.getName());
+        doctor.setId(null); // ID назначает БД
+        Doctor savedDoctor = doctorRepository.save(doctor);
+        eventPublisher.publishEvent(new DoctorChangedEvent(DoctorChangedEvent.Type.CREATED, savedDoctor.getId()));
+        log.info("Successfully created doctor with ID: {}", savedDoctor.getId());
+        return savedDoctor;
+    }
 
 
     /**
@@ -109,6 +159,7 @@ public class DoctorService {
 
         // 3. Удалить доктора
         doctorRepository.deleteById(doctorId);
+        eventPublisher.publishEvent(new DoctorChangedEvent(DoctorChangedEvent.Type.DELETED, doctorId));
         log.info("Successfully deleted doctor with ID: {}", doctorId);
     }
 
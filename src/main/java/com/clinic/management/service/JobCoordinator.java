@@ -0,0 +1,203 @@
+package com.clinic.management.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Задания по расписанию в кластере: несколько экземпляров приложения работают с одной БД,
+ * и @Scheduled срабатывает на каждом. Задание, которое меняет общие данные (автозаказ,
+ * чистка сессий), через координатор выполняется на одном узле.
+ *
+ * Узел выполняет задание, если захватил аренду - строку job_lease (задание, часть). Захват -
+ * один INSERT ... ON CONFLICT DO UPDATE с условием "аренда истекла и захвачена до начала
+ * этого запуска"; время берется из часов БД. Если аренда занята, узел пропускает запуск:
+ * задание уже идет на другом узле (или этот запуск там уже завершился), очереди запусков нет.
+ *
+ * Аренда выдается на clinic.jobs.lease и, пока задание идет, продлевается каждые lease/3
+ * отдельным потоком узла. Узел упал - продлевать некому, через lease задание подхватит
+ * следующий запуск на другом узле. После завершения аренда держится еще clinic.jobs.min-hold
+ * от момента захвата: cron на узлах срабатывает с разбросом в секунды, и опоздавший узел
+ * не должен повторить только что завершенный запуск.
+ *
+ * Работу задания можно разбить на части (runPartitioned): у каждой части своя аренда, узел
+ * берет их по одной, начиная со случайной. Пока один узел обрабатывает часть, остальные
+ * разбирают следующие, так что части расходятся по узлам, сработавшим одновременно.
+ *
+ * Задания, которые поддерживают состояние в памяти узла (индекс занятости слотов,
+ * счетчики панели, множество LowStockMonitor, SSE), координатор не используют:
+ * они нужны на каждом узле.
+ */
+@Service
+public class JobCoordinator {
+
+    private static final Logger log = LoggerFactory.getLogger(JobCoordinator.class);
+
+    private static final String ACQUIRE = "INSERT INTO job_lease AS l "
+            + "(job_name, partition_no, owner, acquired_at, expires_at, finished_at) "
+            + "VALUES (?, ?, ?, now(), now() + make_interval(secs => ?), NULL) "
+            + "ON CONFLICT (job_name, partition_no) DO UPDATE SET owner = EXCLUDED.owner, "
+            + "acquired_at = EXCLUDED.acquired_at, expires_at = EXCLUDED.expires_at, finished_at = NULL "
+            + "WHERE l.expires_at <= now() AND l.acquired_at < ?";
+
+    private static final String RENEW = "UPDATE job_lease SET expires_at = now() + make_interval(secs => ?) "
+            + "WHERE job_name = ? AND partition_no = ? AND owner = ?";
+
+    private static final String RELEASE = "UPDATE job_lease "
+            + "SET expires_at = GREATEST(now(), acquired_at + make_interval(secs => ?)), finished_at = now() "
+            + "WHERE job_name = ? AND partition_no = ? AND owner = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Максимальная пауза в продлении, после которой аренду может забрать другой узел
+    @Value("${clinic.jobs.lease:10m}")
+    private Duration lease;
+
+    // Минимальное время от захвата до освобождения аренды
+    @Value("${clinic.jobs.min-hold:30s}")
+    private Duration minHold;
+
+    private record Lease(String job, int partition) {
+    }
+
+    // pid@host и случайный суффикс: два экземпляра в одном контейнере получат разные имена
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName()
+            + "/" + Integer.toHexString(ThreadLocalRandom.current().nextInt());
+
+    private final Set<Lease> held = ConcurrentHashMap.newKeySet();
+
+    // Не пул @Scheduled: там продление ждало бы завершения самого задания
+    private ScheduledExecutorService renewer;
+
+    @PostConstruct
+    void startRenewer() {
+        renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "job-lease-renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, lease.toMillis() / 3);
+        renewer.scheduleWithFixedDelay(this::renewHeldLeases, period, period, TimeUnit.MILLISECONDS);
+        log.info("Job coordinator started as {}: lease {}, min hold {}", owner, lease, minHold);
+    }
+
+    @PreDestroy
+    void stopRenewer() {
+        // Аренды незавершенных заданий не освобождаются: они истекут через lease
+        renewer.shutdownNow();
+    }
+
+    public String owner() {
+        return owner;
+    }
+
+    /**
+     * Выполнить задание, если ни один узел не выполняет его сейчас и не завершил этот запуск.
+     * @param job  имя задания (ключ аренды)
+     * @param work работа задания
+     * @return true - выполнено на этом узле, false - пропущено
+     */
+    public boolean runExclusive(String job, Runnable work) {
+        return runPartition(job, 0, databaseNow(), work);
+    }
+
+    /**
+     * Выполнить задание, разбитое на части 0..partitions-1: каждую часть - на одном узле.
+     * Части, захваченные другими узлами, пропускаются.
+     * @param job        имя задания
+     * @param partitions число частей; должно быть одинаковым на всех узлах
+     * @param work       работа над частью (получает номер части)
+     * @return сколько частей выполнено на этом узле
+     */
+    public int runPartitioned(String job, int partitions, IntConsumer work) {
+        // Часть, захваченная после начала запуска, уже обработана в этом запуске другим узлом,
+        // даже если обработка заняла больше min-hold
+        OffsetDateTime firedAt = databaseNow();
+        int start = ThreadLocalRandom.current().nextInt(partitions);
+        int done = 0;
+        for (int i = 0; i < partitions; i++) {
+            int partition = (start + i) % partitions;
+            if (runPartition(job, partition, firedAt, () -> work.accept(partition))) {
+                done++;
+            }
+        }
+        return done;
+    }
+
+    private boolean runPartition(String job, int partition, OffsetDateTime firedAt, Runnable work) {
+        if (jdbcTemplate.update(ACQUIRE, job, partition, owner, seconds(lease), firedAt) == 0) {
+            log.debug("Job {} partition {} skipped: leased by another node", job, partition);
+            runs(job, "skipped");
+            return false;
+        }
+        Lease acquired = new Lease(job, partition);
+        held.add(acquired);
+        log.debug("Job {} partition {} acquired by {}", job, partition, owner);
+        try {
+            work.run();
+            runs(job, "completed");
+            return true;
+        } catch (RuntimeException e) {
+            runs(job, "failed");
+            throw e;
+        } finally {
+            held.remove(acquired);
+            release(acquired);
+        }
+    }
+
+    private void release(Lease lease) {
+        try {
+            jdbcTemplate.update(RELEASE, seconds(minHold), lease.job(), lease.partition(), owner);
+        } catch (RuntimeException e) {
+            // Аренда истечет сама
+            log.warn("Failed to release lease of job {} partition {}: {}", lease.job(), lease.partition(), e.getMessage());
+        }
+    }
+
+    private void renewHeldLeases() {
+        for (Lease lease : held) {
+            try {
+                if (jdbcTemplate.update(RENEW, seconds(this.lease), lease.job(), lease.partition(), owner) == 0) {
+                    // Продление опоздало больше чем на lease, и аренду забрал другой узел
+                    log.warn("Lease of job {} partition {} was taken over by another node", lease.job(), lease.partition());
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to renew lease of job {} partition {}: {}", lease.job(), lease.partition(), e.getMessage());
+            }
+        }
+    }
+
+    private OffsetDateTime databaseNow() {
+        return jdbcTemplate.queryForObject("SELECT now()", OffsetDateTime.class);
+    }
+
+    private void runs(String job, String result) {
+        meterRegistry.counter("clinic.jobs.runs", "job", job, "result", result).increment();
+    }
+
+    private static double seconds(Duration duration) {
+        return duration.toMillis() / 1000.0;
+    }
+}
@@ -0,0 +1,145 @@
+package com.clinic.management.service;
+
+import com.clinic.management.event.MedicationChangedEvent;
+import com.clinic.management.event.MedicationsBulkChangedEvent;
+import com.clinic.management.repository.MedicationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отслеживает лекарства с низким запасом по событиям MedicationChangedEvent,
+ * без периодического опроса всей таблицы.
+ *
+ * Множество lowStock содержит ID лекарств с quantity < minStockLevel. Когда остаток
+ * пересекает минимум сверху вниз, ID попадает в очередь автозаказа. Очередь схлопывает
+ * повторы: сколько бы раз ни списывали препарат до обработки очереди, заказ будет один.
+ * Очередь разбирается раз в clinic.stock.reorder-delay-ms.
+ *
+ * Полный проход MedicationService.checkStockLevelsAndOrder остается как редкая сверка;
+ * множество при этом перечитывается из БД (reconcile).
+ */
+@Service
+public class LowStockMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(LowStockMonitor.class);
+
+    @Autowired
+    private MedicationRepository medicationRepository;
+
+    @Autowired
+    private MedicationService medicationService;
+
+    private final Set<Long> lowStock = ConcurrentHashMap.newKeySet();
+    private final Set<Long> pendingReorder = ConcurrentHashMap.newKeySet(); // схлопывающая очередь
+
+    public int lowStockCount() {
+        return lowStock.size();
+    }
+
+    public boolean isLowStock(Long medicationId) {
+        return lowStock.contains(medicationId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        reconcile();
+        // Все, что уже ниже минимума на момент старта, заказываем сразу
+        pendingReorder.addAll(lowStock);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMedicationChanged(MedicationChangedEvent event) {
+        Long id = event.medicationId();
+        if (id == null) {
+            return;
+        }
+        if (event.type() == MedicationChangedEvent.Type.DELETED) {
+            lowStock.remove(id);
+            pendingReorder.remove(id);
+            return;
+        }
+        if (event.isLowStock()) {
+            if (lowStock.add(id)) {
+                // Пересечение минимума сверху вниз
+                log.debug("Medication id={} crossed min stock level: quantity={}, min={}",
+                        id, event.quantity(), event.minStockLevel());
+                pendingReorder.add(id);
+            }
+        } else {
+            lowStock.remove(id);
+        }
+    }
+
+    // Импорт каталога: множество перечитывается из БД, лекарства, впервые оказавшиеся
+    // ниже минимума, ставятся в очередь автозаказа
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMedicationsBulkChanged(MedicationsBulkChangedEvent event) {
+        pendingReorder.addAll(reload());
+    }
+
+    /**
+     * Разбирает очередь автозаказа. Все накопленные с прошлого раза пересечения
+     * обрабатываются одним вызовом MedicationService.reorderMedications.
+     */
+    @Scheduled(fixedDelayString = "${clinic.stock.reorder-delay-ms:1000}")
+    public void drainReorderQueue() {
+        if (pendingReorder.isEmpty()) {
+            return;
+        }
+        List<Long> batch = new ArrayList<>();
+        for (Iterator<Long> it = pendingReorder.iterator(); it.hasNext(); ) {
+            batch.add(it.next());
+            it.remove();
+        }
+        try {
+            medicationService.reorderMedications(batch);
+        } catch (Exception e) {
+            // Вернем в очередь - попробуем на следующем шаге
+            log.error("AUTO-ORDER: Failed to reorder {} medication(s): {}", batch.size(), e.getMessage(), e);
+            pendingReorder.addAll(batch);
+        }
+    }
+
+    /**
+     * Перечитывает множество лекарств с низким запасом из БД (индекс idx_medications_low_stock).
+     * Выполняется вместе с плановой сверкой автозаказа.
+     */
+    @Scheduled(cron = "${clinic.stock.reorder-cron:0 0 * * * ?}")
+    public void reconcile() {
+        reload();
+    }
+
+    // Возвращает ID, которых не было в множестве
+    private Set<Long> reload() {
+        Set<Long> actual = new HashSet<>(medicationRepository.findLowStockIds());
+        Set<Long> added = new HashSet<>();
+        for (Long id : actual) {
+            if (lowStock.add(id)) {
+                added.add(id);
+            }
+        }
+        int drift = added.size();
+        for (Iterator<Long> it = lowStock.iterator(); it.hasNext(); ) {
+            if (!actual.contains(it.next())) {
+                it.remove();
+                drift++;
+            }
+        }
+        log.info("Low stock set reconciled with DB: {} medication(s) below min stock level, {} correction(s)",
+                lowStock.size(), drift);
+        return added;
+    }
+}
@@ -0,0 +1,358 @@
+package com.clinic.management.service;
+
+import com.clinic.management.dto.MedicationSuggestion;
+import com.clinic.management.entity.Medication;
+import com.clinic.management.event.MedicationChangedEvent;
+import com.clinic.management.event.MedicationsBulkChangedEvent;
+import com.clinic.management.repository.MedicationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Индекс каталога лекарств в памяти для MedicationSearchService (clinic.medication-search.backend=memory).
+ *
+ * Основа - неизменяемый снимок: лекарства, отсортированные по нормализованному названию, и списки
+ * позиций по началам слов длиной 1..MAX_PREFIX (edge n-gram): отдельно для слов названия и для слов
+ * названия с описанием. Позиции в списках возрастают, то есть идут в порядке названий, поэтому
+ * каждая группа подсказок (см. MedicationSearchService) набирается до limit и перебор
+ * останавливается, а не проходит все совпадения. Названия, начинающиеся с запроса целиком, -
+ * непрерывный отрезок снимка, его находит двоичный поиск.
+ *
+ * Изменения после построения снимка (saveMedication, deleteMedication - события
+ * MedicationChangedEvent после коммита) копятся в небольшой таблице changes, которую поиск
+ * просматривает целиком; записи снимка с теми же id пропускаются. Когда изменений набирается
+ * clinic.medication-search.rebuild-threshold или прошел импорт CSV, снимок перестраивается из БД
+ * в фоне. Изменения на других узлах кластера попадают в индекс при плановой перестройке
+ * (clinic.medication-search.refresh-cron).
+ */
+@Service
+public class MedicationSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(MedicationSearchIndex.class);
+
+    // Самое длинное начало слова, по которому строится список; более длинные слова запроса
+    // ищутся по первым MAX_PREFIX символам и проверяются целиком
+    private static final int MAX_PREFIX = 4;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MedicationRepository medicationRepository;
+
+    @Value("${clinic.medication-search.backend:memory}")
+    private String backend;
+
+    @Value("${clinic.medication-search.rebuild-threshold:1000}")
+    private int rebuildThreshold;
+
+    private record Entry(long id, String name, String description, String nameText,
+                         String[] nameWords, String[] allWords) {
+    }
+
+    // Списки по началам слов названия и слов названия вместе с описанием
+    private record Snapshot(Entry[] entries, Map<String, int[]> namePostings, Map<String, int[]> allPostings) {
+    }
+
+    // entry == null - лекарство удалено
+    private record Change(long seq, Entry entry) {
+    }
+
+    private record Hit(Entry entry, int tier) {
+    }
+
+    private static final Comparator<Hit> RANKING = Comparator.comparingInt(Hit::tier)
+            .thenComparing(hit -> hit.entry().nameText())
+            .thenComparingLong(hit -> hit.entry().id());
+
+    // null - индекс не построен (поиск идет через БД), события не отслеживаются
+    private volatile Snapshot snapshot;
+
+    private final Map<Long, Change> changes = new ConcurrentHashMap<>();
+    private final AtomicLong changeSeq = new AtomicLong();
+    private volatile boolean rebuildRequested;
+    private final Object rebuildLock = new Object();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if ("memory".equalsIgnoreCase(backend.trim())) {
+            rebuild();
+        }
+    }
+
+    public boolean isBuilt() {
+        return snapshot != null;
+    }
+
+    /**
+     * Перечитывает каталог из БД и заменяет снимок. Изменения, полученные до начала чтения,
+     * в новом снимке уже есть и из changes удаляются; пришедшие во время чтения остаются.
+     */
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long startedAt = System.nanoTime();
+            long mark = changeSeq.get();
+            List<Entry> entries = new ArrayList<>();
+            jdbcTemplate.query("SELECT id, name, description FROM medications",
+                    rs -> {
+                        entries.add(entry(rs.getLong("id"), rs.getString("name"), rs.getString("description")));
+                    });
+            Snapshot built = build(entries);
+            snapshot = built;
+            changes.values().removeIf(change -> change.seq() <= mark);
+            log.info("Medication search index rebuilt: {} medication(s), {} prefix list(s), {} ms",
+                    built.entries().length, built.namePostings().size() + built.allPostings().size(),
+                    (System.nanoTime() - startedAt) / 1_000_000);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${clinic.medication-search.rebuild-delay-ms:5000}")
+    public void rebuildIfRequested() {
+        if (rebuildRequested && snapshot != null) {
+            rebuildRequested = false;
+            rebuild();
+        }
+    }
+
+    // Плановая перестройка: подхватывает изменения, сделанные на других узлах
+    @Scheduled(cron = "${clinic.medication-search.refresh-cron:0 */10 * * * *}")
+    public void refresh() {
+        if (snapshot != null) {
+            rebuild();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMedicationChanged(MedicationChangedEvent event) {
+        Long id = event.medicationId();
+        if (snapshot == null || id == null || event.type() == MedicationChangedEvent.Type.STOCK_CHANGED) {
+            return; // остаток в поиске не участвует
+        }
+        if (event.type() == MedicationChangedEvent.Type.DELETED) {
+            record(id, null);
+            return;
+        }
+        // Событие несет только остаток: название и описание читаются уже закоммиченными
+        Medication medication = medicationRepository.findById(id).orElse(null);
+        record(id, medication == null ? null : entry(id, medication.getName(), medication.getDescription()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMedicationsBulkChanged(MedicationsBulkChangedEvent event) {
+        if (snapshot != null) {
+            rebuildRequested = true;
+        }
+    }
+
+    private void record(long id, Entry entry) {
+        changes.put(id, new Change(changeSeq.incrementAndGet(), entry));
+        if (changes.size() >= rebuildThreshold) {
+            rebuildRequested = true;
+        }
+    }
+
+    /**
+     * Поиск (см. MedicationSearchService): phrase и words уже нормализованы.
+     * Индекс строится при первом поиске, если еще не построен.
+     */
+    List<MedicationSuggestion> search(String phrase, List<String> words, int limit) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            rebuild();
+            current = snapshot;
+        }
+        Entry[] entries = current.entries();
+        List<Hit> hits = new ArrayList<>(limit * 2);
+
+        // 1. Названия, начинающиеся с запроса: непрерывный отрезок снимка
+        int found = 0;
+        for (int i = lowerBound(entries, phrase); i < entries.length && found < limit
+                && entries[i].nameText().startsWith(phrase); i++) {
+            if (!changes.containsKey(entries[i].id())) {
+                hits.add(new Hit(entries[i], 0));
+                found++;
+            }
+        }
+
+        // 2. Все слова - в названии, 3. с описанием: пересечение списков по началам слов.
+        // Первая группа целиком входит во вторую, вторая - в третью, поэтому записи прежних групп
+        // пропускаются
+        if (found < limit) {
+            found += collect(current, current.namePostings(), words, limit - found,
+                    entry -> !entry.nameText().startsWith(phrase) && matchesAll(entry.nameWords(), words), 1, hits);
+        }
+        if (found < limit) {
+            collect(current, current.allPostings(), words, limit - found,
+                    entry -> !matchesAll(entry.nameWords(), words) && matchesAll(entry.allWords(), words), 2, hits);
+        }
+
+        // 4. Изменения после построения снимка
+        for (Change change : changes.values()) {
+            Entry entry = change.entry();
+            if (entry != null) {
+                int tier = tier(entry, phrase, words);
+                if (tier >= 0) {
+                    hits.add(new Hit(entry, tier));
+                }
+            }
+        }
+
+        hits.sort(RANKING);
+        return hits.stream().limit(limit)
+                .map(hit -> new MedicationSuggestion(hit.entry().id(), hit.entry().name(), hit.entry().description()))
+                .toList();
+    }
+
+    // Перебор пересечения списков слов запроса в порядке названий до need подходящих записей.
+    // Списки - необходимое условие (начала слов до MAX_PREFIX символов), accept проверяет слова целиком
+    private int collect(Snapshot current, Map<String, int[]> postings, List<String> words, int need,
+                        Predicate<Entry> accept, int tier, List<Hit> hits) {
+        int[][] lists = new int[words.size()][];
+        for (int w = 0; w < lists.length; w++) {
+            String word = words.get(w);
+            lists[w] = postings.get(word.substring(0, Math.min(word.length(), MAX_PREFIX)));
+            if (lists[w] == null) {
+                return 0;
+            }
+        }
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+        int[] cursors = new int[lists.length];
+        int collected = 0;
+        for (int position : lists[0]) {
+            if (!containsAll(lists, cursors, position)) {
+                continue;
+            }
+            Entry entry = current.entries()[position];
+            if (!changes.containsKey(entry.id()) && accept.test(entry)) {
+                hits.add(new Hit(entry, tier));
+                if (++collected == need) {
+                    break;
+                }
+            }
+        }
+        return collected;
+    }
+
+    // Позиции в списках возрастают, поэтому курсоры только сдвигаются вперед
+    private static boolean containsAll(int[][] lists, int[] cursors, int position) {
+        for (int l = 1; l < lists.length; l++) {
+            int[] list = lists[l];
+            int index = Arrays.binarySearch(list, cursors[l], list.length, position);
+            if (index < 0) {
+                cursors[l] = -index - 1;
+                return false;
+            }
+            cursors[l] = index;
+        }
+        return true;
+    }
+
+    // 0 - название начинается с запроса, 1 - все слова в названии, 2 - с описанием, -1 - не подходит
+    private static int tier(Entry entry, String phrase, List<String> words) {
+        if (entry.nameText().startsWith(phrase)) {
+            return 0;
+        }
+        if (matchesAll(entry.nameWords(), words)) {
+            return 1;
+        }
+        return matchesAll(entry.allWords(), words) ? 2 : -1;
+    }
+
+    private static boolean matchesAll(String[] textWords, List<String> words) {
+        for (String word : words) {
+            boolean matched = false;
+            for (String textWord : textWords) {
+                if (textWord.startsWith(word)) {
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lowerBound(Entry[] entries, String phrase) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries[mid].nameText().compareTo(phrase) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static Entry entry(long id, String name, String description) {
+        String nameText = MedicationSearchService.normalize(name == null ? "" : name);
+        String allText = MedicationSearchService.normalize((name == null ? "" : name) + " "
+                + (description == null ? "" : description));
+        return new Entry(id, name, description, nameText,
+                MedicationSearchService.words(nameText).toArray(String[]::new),
+                MedicationSearchService.words(allText).toArray(String[]::new));
+    }
+
+    private static Snapshot build(List<Entry> list) {
+        Entry[] entries = list.toArray(Entry[]::new);
+        Arrays.sort(entries, Comparator.comparing(Entry::nameText).thenComparingLong(Entry::id));
+        return new Snapshot(entries, postings(entries, Entry::nameWords), postings(entries, Entry::allWords));
+    }
+
+    private static Map<String, int[]> postings(Entry[] entries, Function<Entry, String[]> words) {
+        Map<String, Postings> postings = new HashMap<>();
+        for (int position = 0; position < entries.length; position++) {
+            for (String word : words.apply(entries[position])) {
+                for (int length = 1; length <= Math.min(word.length(), MAX_PREFIX); length++) {
+                    postings.computeIfAbsent(word.substring(0, length), prefix -> new Postings()).add(position);
+                }
+            }
+        }
+        Map<String, int[]> lists = new HashMap<>(postings.size() * 2);
+        postings.forEach((prefix, positions) -> lists.put(prefix, positions.toArray()));
+        return lists;
+    }
+
+    // Растущий список позиций; повтор позиции подряд (два слова с одним началом) не добавляется
+    private static final class Postings {
+        private int[] positions = new int[4];
+        private int size;
+
+        void add(int position) {
+            if (size > 0 && positions[size - 1] == position) {
+                return;
+            }
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.clinic.management.service;
+
+import com.clinic.management.dto.MedicationSuggestion;
+import com.clinic.management.repository.MedicationRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Поиск по каталогу лекарств при наборе (typeahead) по названию и описанию.
+ *
+ * Запрос нормализуется (нижний регистр, ё -> е, все, кроме цифр, латиницы и кириллицы, -
+ * разделители слов).
+ * Лекарство подходит, если каждое слово запроса - начало какого-либо слова в названии или
+ * описании. Порядок: сначала названия, начинающиеся с запроса целиком, затем совпадения всех
+ * слов в названии, затем с участием описания; внутри группы - по нормализованному названию и id.
+ *
+ * Два способа поиска с одинаковым результатом, выбор - clinic.medication-search.backend:
+ * memory - индекс в памяти узла (MedicationSearchIndex), trigram - запрос к PostgreSQL
+ * по GIN-индексу pg_trgm (db/sql/08-medication-search.sql). Сравнение - MedicationSearchBenchmark.
+ */
+@Service
+public class MedicationSearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(MedicationSearchService.class);
+
+    public enum Backend {
+        MEMORY,
+        TRIGRAM
+    }
+
+    public static final int DEFAULT_LIMIT = 10;
+    public static final int MAX_LIMIT = 50;
+
+    // Более длинный запрос обрезается; лишние слова отбрасываются
+    private static final int MAX_QUERY_LENGTH = 100;
+    private static final int MAX_WORDS = 8;
+
+    @Autowired
+    private MedicationSearchIndex medicationSearchIndex;
+
+    @Autowired
+    private MedicationRepository medicationRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${clinic.medication-search.backend:memory}")
+    private String backendName;
+
+    private Backend backend;
+
+    private final Map<Backend, Timer> timers = new EnumMap<>(Backend.class);
+
+    @PostConstruct
+    void init() {
+        try {
+            backend = Backend.valueOf(backendName.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Unknown clinic.medication-search.backend: " + backendName
+                    + " (expected memory or trigram)");
+        }
+        for (Backend b : Backend.values()) {
+            timers.put(b, Timer.builder("clinic.medication.search")
+                    .description("Typeahead search over the medication catalog")
+                    .tag("backend", b.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        log.info("Medication search backend: {}", backend);
+    }
+
+    public Backend backend() {
+        return backend;
+    }
+
+    /**
+     * Поиск способом из конфигурации.
+     * @param query строка, которую набирает пользователь
+     * @param limit сколько подсказок вернуть (по умолчанию DEFAULT_LIMIT, не больше MAX_LIMIT)
+     */
+    public List<MedicationSuggestion> search(String query, Integer limit) {
+        return search(query, limit == null ? DEFAULT_LIMIT : limit, backend);
+    }
+
+    public List<MedicationSuggestion> search(String query, int limit, Backend backend) {
+        String phrase = normalize(query == null ? "" : query.substring(0, Math.min(query.length(), MAX_QUERY_LENGTH)));
+        if (phrase.isEmpty()) {
+            return List.of();
+        }
+        List<String> words = words(phrase);
+        if (words.size() > MAX_WORDS) {
+            words = words.subList(0, MAX_WORDS);
+            phrase = String.join(" ", words);
+        }
+        int clamped = Math.max(1, Math.min(limit, MAX_LIMIT));
+        String normalizedPhrase = phrase;
+        List<String> normalizedWords = words;
+        return timers.get(backend).record(() -> backend == Backend.MEMORY
+                ? medicationSearchIndex.search(normalizedPhrase, normalizedWords, clamped)
+                : medicationRepository.searchByTrigrams(normalizedPhrase, normalizedWords, clamped));
+    }
+
+    /**
+     * Нормализация текста для поиска; то же делает функция clinic_search_text в БД.
+     * Алфавит задан явно (как и в функции), а не через Character.isLetterOrDigit: классы символов
+     * в регулярных выражениях PostgreSQL зависят от LC_CTYPE базы.
+     */
+    static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean separator = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (c == 'ё') {
+                c = 'е';
+            }
+            if (c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'а' && c <= 'я') {
+                if (separator && !normalized.isEmpty()) {
+                    normalized.append(' ');
+                }
+                normalized.append(c);
+                separator = false;
+            } else {
+                separator = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    // Слова нормализованного текста
+    static List<String> words(String normalized) {
+        return normalized.isEmpty() ? List.of() : Arrays.asList(normalized.split(" "));
+    }
+}
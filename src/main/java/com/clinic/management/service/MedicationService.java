@@ -1,20 +1,47 @@
 package com.clinic.management.service;
 
+import com.clinic.management.dto.KeysetPage;
+import com.clinic.management.dto.LowStockRow;
+import com.clinic.management.dto.StockLevel;
+import com.clinic.management.dto.StockMovement;
+import com.clinic.management.dto.StockReplenishment;
 import com.clinic.management.entity.Medication;
-import com.clinic.management.entity.MedicationOrder; // Добавлен импорт
+import com.clinic.management.event.MedicationChangedEvent;
 import com.clinic.management.exception.ResourceNotFoundException;
 import com.clinic.management.repository.MedicationRepository;
 import com.clinic.management.repository.MedicationOrderRepository; // Добавлен импорт
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
 
 import java.time.LocalDateTime; // Добавлен импорт
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 @Service
 @Transactional
@@ -22,8 +49,19 @@ public class MedicationService {
 
     private static final Logger log = LoggerFactory.getLogger(MedicationService.class);
 
-    // Статус для нового заказа
-    private static final String ORDER_STATUS_PENDING = "PENDING";
+    // Поля, по которым разрешена сортировка списка лекарств
+    public static final Set<String> SORT_FIELDS = Set.of("name", "quantity", "price", "id");
+
+    /**
+     * Метрики одного запуска автозаказа.
+     * @param rowsScanned сколько лекарств с низким запасом прочитано
+     * @param ordersCreated сколько заказов создано
+     * @param chunks сколько порций (транзакций) обработано
+     * @param elapsedMillis длительность запуска
+     */
+    public record StockCheckReport(LocalDateTime finishedAt, int rowsScanned, int ordersCreated,
+                                   int chunks, long elapsedMillis) {
+    }
 
     @Autowired
     private MedicationRepository medicationRepository;
@@ -31,44 +69,153 @@ public class MedicationService {
     @Autowired // Внедряем репозиторий для заказов
     private MedicationOrderRepository medicationOrderRepository;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JobCoordinator jobCoordinator;
+
+    @Autowired
+    private StockDeltaBuffer stockDeltaBuffer;
+
+    @Autowired
+    private StockLedgerService stockLedgerService;
+
+    // Частые изменения остатков (adjustStock) копятся в памяти и пишутся пачкой (StockDeltaBuffer)
+    @Value("${clinic.stock.write-behind.enabled:false}")
+    private boolean stockWriteBehind;
+
+    // Сколько лекарств обрабатывается в одной транзакции автозаказа
+    @Value("${clinic.stock.reorder-chunk-size:500}")
+    private int reorderChunkSize;
+
+    // На сколько частей делится плановый проход, чтобы его разобрали несколько узлов
+    @Value("${clinic.stock.reorder-partitions:4}")
+    private int reorderPartitions;
+
+    // Автозаказ покрывает расход за столько дней...
+    @Value("${clinic.stock.reorder-cover-days:14}")
+    private int reorderCoverDays;
+
+    // ...по среднему расходу за столько дней (журнал движения запасов)
+    @Value("${clinic.stock.consumption-window-days:30}")
+    private int consumptionWindowDays;
+
+    private volatile StockCheckReport lastStockCheckReport;
+
+    // Версия данных каталога для кэша отрисованной таблицы (FragmentCache)
+    private final AtomicLong dataVersion = new AtomicLong();
+
     // Получить все лекарства (для основной таблицы)
     public List<Medication> getAllMedications() {
         log.debug("Fetching all medications");
         return medicationRepository.findAll();
     }
 
+    // Страница списка лекарств (keyset-пагинация) с фильтром по названию и низкому запасу
+    @Transactional(readOnly = true)
+    public KeysetPage<Medication> findMedicationsPage(String nameContains, boolean lowStockOnly, String sortBy,
+                                                      boolean descending, String cursor, Integer size) {
+        Sort sort = KeysetPage.sort(sortBy, SORT_FIELDS, "name", descending);
+        KeysetScrollPosition position = KeysetPage.position(cursor, sort, Medication.class);
+        Specification<Medication> spec = Specification
+                .where(MedicationRepository.nameContains(StringUtils.hasText(nameContains) ? nameContains.trim() : null))
+                .and(MedicationRepository.lowStockOnly(lowStockOnly));
+        int limit = KeysetPage.clampSize(size);
+        return KeysetPage.of(medicationRepository.findBy(spec, q -> q.sortBy(sort).limit(limit).scroll(position)), position);
+    }
+
     // Получить лекарства с низким запасом (для предупреждения и автозаказа)
     public List<Medication> getLowStockMedications() {
         log.debug("Fetching low stock medications");
-        List<Medication> allMeds = medicationRepository.findAll();
-        List<Medication> lowStock = allMeds.stream()
-                .filter(med -> med.getQuantity() < med.getMinStockLevel())
-                .collect(Collectors.toList());
+        List<Medication> lowStock = medicationRepository.findLowStock();
         log.debug("Found {} low stock medications", lowStock.size());
         return lowStock;
     }
 
-    // Обновить запас лекарства (для кнопки "Изменить запас")
-    public Medication updateMedicationStock(Long id, int quantityChange) {
+    // Одним атомарным UPDATE ... SET quantity = GREATEST(quantity + ?, 0) RETURNING, без чтения
+    // сущности - параллельные изменения того же лекарства не теряются
+    private StockLevel changeStock(Long id, int quantityChange, StockMovement.Type movementType) {
         log.debug("Updating stock for medication id={}, change={}", id, quantityChange);
-        Medication medication = medicationRepository.findById(id)
+        StockLevel level = medicationRepository.adjustQuantity(id, quantityChange, movementType)
                 .orElseThrow(() -> new ResourceNotFoundException("Medication not found with id " + id));
+        eventPublisher.publishEvent(new MedicationChangedEvent(MedicationChangedEvent.Type.STOCK_CHANGED,
+                id, level.quantity(), level.minStockLevel()));
+        bumpDataVersionAfterCommit();
+        log.info("Updated stock for medication id={}. New quantity: {}", id, level.quantity());
+        return level;
+    }
 
-        int newQuantity = medication.getQuantity() + quantityChange;
-        if (newQuantity < 0) {
-            log.warn("Attempted to set negative stock for medication id={}. Setting to 0.", id);
-            newQuantity = 0;
+    /**
+     * Изменение остатка: выдача (в журнал движения - DISPENSE) и поступления (RESTOCK) - кнопка
+     * "Изменить запас" и JSON API аптечных терминалов (MedicationApiController). По умолчанию -
+     * один атомарный оператор без транзакции вокруг него. При clinic.stock.write-behind.enabled изменение только добавляется в StockDeltaBuffer
+     * и попадает в БД со следующей пачкой (flushStockDeltas): остаток не уходит ниже нуля
+     * в сумме пачки, а не после каждой операции, изменение несуществующего лекарства
+     * отбрасывается при записи пачки.
+     * @return новый остаток или пустое значение, если изменение отложено
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public OptionalInt adjustStock(Long id, int quantityChange) {
+        if (stockWriteBehind && stockDeltaBuffer.add(id, quantityChange)) {
+            return OptionalInt.empty();
         }
-        medication.setQuantity(newQuantity);
-        Medication savedMedication = medicationRepository.save(medication);
-        log.info("Updated stock for medication id={}. New quantity: {}", id, savedMedication.getQuantity());
-        return savedMedication;
+        StockMovement.Type movementType = quantityChange < 0 ? StockMovement.Type.DISPENSE : StockMovement.Type.RESTOCK;
+        return OptionalInt.of(changeStock(id, quantityChange, movementType).quantity());
+    }
+
+    /**
+     * При старте: начальные остатки в журнале движения для лекарств, которых в нем нет,
+     * затем журналы отложенных изменений, оставшиеся после падения, и открытие буфера.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void startStockTracking() {
+        stockLedgerService.recordOpeningBalances();
+        stockDeltaBuffer.recover();
+        flushStockDeltas();
+        if (stockWriteBehind) {
+            stockDeltaBuffer.open();
+        }
+    }
+
+    /**
+     * Записывает накопленные изменения остатков (clinic.stock.write-behind.flush-ms).
+     * Каждая пачка - одна транзакция: UPDATE всех ее лекарств и отметка пачки.
+     */
+    @Scheduled(fixedDelayString = "${clinic.stock.write-behind.flush-ms:250}",
+            initialDelayString = "${clinic.stock.write-behind.flush-ms:250}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void flushStockDeltas() {
+        stockDeltaBuffer.flush(this::applyStockBatch);
+    }
+
+    @PreDestroy
+    public void stopStockWriteBehind() {
+        stockDeltaBuffer.flush(this::applyStockBatch);
+        stockDeltaBuffer.close();
     }
 
     // Сохранить новое лекарство или обновить существующее (для формы добавления)
     public Medication saveMedication(Medication medication) {
         log.debug("Saving medication: {}", medication.getName());
+        boolean isNew = medication.getId() == null;
+        // Остаток из формы заменяет текущий: в журнал движения - разница с ним
+        int previousQuantity = isNew ? 0 : medicationRepository.lockQuantity(medication.getId()).orElse(0);
         Medication savedMedication = medicationRepository.save(medication);
+        if (savedMedication.getQuantity() != previousQuantity) {
+            stockLedgerService.record(new StockMovement(savedMedication.getId(), StockMovement.Type.CORRECTION,
+                    savedMedication.getQuantity() - previousQuantity));
+        }
+        eventPublisher.publishEvent(MedicationChangedEvent.of(
+                isNew ? MedicationChangedEvent.Type.CREATED : MedicationChangedEvent.Type.UPDATED, savedMedication));
+        bumpDataVersionAfterCommit();
         log.info("Saved medication id={}, name={}", savedMedication.getId(), savedMedication.getName());
         return savedMedication;
     }
@@ -81,75 +228,276 @@ public class MedicationService {
             throw new ResourceNotFoundException("Medication not found with id " + id);
         }
         medicationRepository.deleteById(id);
+        eventPublisher.publishEvent(new MedicationChangedEvent(MedicationChangedEvent.Type.DELETED, id, 0, 0));
+        bumpDataVersionAfterCommit();
         log.info("Deleted medication id={}", id);
     }
 
     /**
      * Запланированный метод для автоматической проверки и заказа лекарств.
-     * Запускается по расписанию (например, раз в час).
      * Если количество лекарства меньше минимального запаса, создает
      * запись в таблице MedicationOrder и увеличивает количество лекарства
-     * на (minStockLevel * 2 - currentQuantity), чтобы довести запас
-     * до двойного минимального уровня.
+     * так, чтобы запаса хватило на clinic.stock.reorder-cover-days дней реального
+     * расхода сверх минимального (см. orderQuantity); пополнение пишется
+     * в журнал движения запасов (AUTO_ORDER).
+     *
+     * Лекарства с низким запасом выбираются в БД порциями по clinic.stock.reorder-chunk-size
+     * (keyset по id, частичный индекс idx_medications_low_stock). Каждая порция обрабатывается
+     * в своей транзакции: заказы вставляются одним JDBC batch, остатки увеличиваются другим.
+     * Так блокировки строк и память держатся только на время одной порции.
+     *
+     * Основной триггер автозаказа - пересечение минимального запаса (см. LowStockMonitor),
+     * поэтому плановый полный проход - редкая сверка (см. scheduledStockCheck).
+     * @return метрики запуска
      */
-    @Scheduled(cron = "0 */1 * * * ?") // Пример: Запускать каждый час
-    // @Scheduled(cron = "0 */1 * * * ?") // Для теста: Запускать каждую минуту
-    public void checkStockLevelsAndOrder() {
-        log.info("Running scheduled stock check and auto-order...");
-        List<Medication> lowStockMedications = getLowStockMedications();
-
-        if (lowStockMedications.isEmpty()) {
-            log.info("Scheduled stock check: No low stock medications found. No orders needed.");
-            return;
-        }
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // транзакции открываются на каждую порцию
+    @Timed(value = "clinic.stock.check", description = "Full low-stock scan with auto-order")
+    public StockCheckReport checkStockLevelsAndOrder() {
+        return checkStockLevelsAndOrder(1, 0);
+    }
 
-        log.warn("Scheduled stock check found {} low stock medication(s). Creating automatic orders...", lowStockMedications.size());
+    /**
+     * Плановая сверка (по умолчанию раз в час). Cron срабатывает на каждом экземпляре приложения,
+     * поэтому проход разбит на clinic.stock.reorder-partitions частей по id, и каждую часть
+     * выполняет один узел (JobCoordinator); на единственном узле части идут подряд.
+     */
+    @Scheduled(cron = "${clinic.stock.reorder-cron:0 0 * * * ?}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Timed(value = "clinic.stock.check", description = "Full low-stock scan with auto-order")
+    public void scheduledStockCheck() {
+        int done = jobCoordinator.runPartitioned("stock-reorder", reorderPartitions,
+                partition -> checkStockLevelsAndOrder(reorderPartitions, partition));
+        log.debug("Scheduled stock check: {} of {} partition(s) processed on this node", done, reorderPartitions);
+    }
+
+    /**
+     * Проход автозаказа по части каталога: лекарства с id % partitions = partition.
+     * @return метрики запуска
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public StockCheckReport checkStockLevelsAndOrder(int partitions, int partition) {
+        log.info("Running scheduled stock check and auto-order (partition {} of {})...", partition, partitions);
+        long startedAt = System.nanoTime();
+        TransactionTemplate chunkTransaction = new TransactionTemplate(transactionManager);
 
-        for (Medication med : lowStockMedications) {
+        int rowsScanned = 0;
+        int ordersCreated = 0;
+        int chunks = 0;
+        long lastId = 0;
+        while (true) {
+            long afterId = lastId;
+            ChunkResult chunk;
             try {
-                int currentQuantity = med.getQuantity();
-                int minStock = med.getMinStockLevel();
-
-                // Рассчитываем количество для заказа:
-                // нужно (minStock - currentQuantity) чтобы достичь минимума
-                // + еще minStock (минимальный запас)
-                int quantityToOrder = (minStock - currentQuantity) + minStock;
-                // Или проще: (minStock * 2) - currentQuantity
-
-                // Убедимся, что заказываем положительное количество
-                if (quantityToOrder <= 0) {
-                    log.warn("Skipping order for {} (ID: {}): Calculated order quantity ({}) is not positive. Current: {}, Min: {}",
-                            med.getName(), med.getId(), quantityToOrder, currentQuantity, minStock);
-                    continue; // Переходим к следующему лекарству
+                chunk = chunkTransaction.execute(status -> reorderChunk(
+                        () -> medicationRepository.lockLowStockChunk(afterId, partitions, partition, reorderChunkSize),
+                        afterId));
+            } catch (Exception e) {
+                // Порция откатилась целиком; оставшиеся лекарства будут обработаны следующим запуском
+                log.error("AUTO-ORDER: Failed to process chunk after medication ID: {}. Error: {}", afterId, e.getMessage(), e);
+                break;
+            }
+            if (chunk == null || chunk.rowsScanned() == 0) {
+                break;
+            }
+            chunks++;
+            rowsScanned += chunk.rowsScanned();
+            ordersCreated += chunk.ordersCreated();
+            meterRegistry.counter("clinic.stock.orders.created", "trigger", "scan").increment(chunk.ordersCreated());
+            lastId = chunk.lastId();
+            if (chunk.rowsScanned() < reorderChunkSize) {
+                break;
+            }
+        }
+
+        StockCheckReport report = new StockCheckReport(LocalDateTime.now(), rowsScanned, ordersCreated, chunks,
+                (System.nanoTime() - startedAt) / 1_000_000);
+        lastStockCheckReport = report;
+        if (rowsScanned == 0) {
+            log.info("Scheduled stock check: No low stock medications found. No orders needed ({} ms).", report.elapsedMillis());
+        } else {
+            log.warn("Scheduled stock check finished: {} low stock medication(s) scanned, {} order(s) created in {} chunk(s), {} ms",
+                    rowsScanned, ordersCreated, chunks, report.elapsedMillis());
+        }
+        return report;
+    }
+
+    /**
+     * Автозаказ для конкретных лекарств (вызывается очередью пересечений минимального запаса).
+     * Лекарства, чей запас уже восстановлен, пропускаются условием в запросе,
+     * поэтому повторный вызов для того же ID заказа не создаст.
+     * @param medicationIds ID лекарств
+     * @return метрики запуска
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Timed(value = "clinic.stock.reorder", description = "Auto-order for medications that crossed min stock level")
+    public StockCheckReport reorderMedications(Collection<Long> medicationIds) {
+        long startedAt = System.nanoTime();
+        TransactionTemplate chunkTransaction = new TransactionTemplate(transactionManager);
+        List<Long> ids = medicationIds.stream().sorted().toList();
+        int rowsScanned = 0;
+        int ordersCreated = 0;
+        int chunks = 0;
+        for (int from = 0; from < ids.size(); from += reorderChunkSize) {
+            List<Long> chunkIds = ids.subList(from, Math.min(from + reorderChunkSize, ids.size()));
+            ChunkResult chunk = chunkTransaction.execute(status -> reorderChunk(
+                    () -> medicationRepository.lockLowStockByIds(chunkIds), 0));
+            if (chunk != null) {
+                chunks++;
+                rowsScanned += chunk.rowsScanned();
+                ordersCreated += chunk.ordersCreated();
+                meterRegistry.counter("clinic.stock.orders.created", "trigger", "crossing").increment(chunk.ordersCreated());
+            }
+        }
+        StockCheckReport report = new StockCheckReport(LocalDateTime.now(), rowsScanned, ordersCreated, chunks,
+                (System.nanoTime() - startedAt) / 1_000_000);
+        if (ordersCreated > 0) {
+            log.warn("AUTO-ORDER: {} order(s) created for {} medication(s) that crossed min stock level, {} ms",
+                    ordersCreated, ids.size(), report.elapsedMillis());
+        }
+        return report;
+    }
+
+    public StockCheckReport getLastStockCheckReport() {
+        return lastStockCheckReport;
+    }
+
+    /**
+     * Версия данных каталога лекарств: растет после коммита каждого изменения
+     * (добавление, правка, удаление, изменение остатка, автозаказ).
+     */
+    public long dataVersion() {
+        return dataVersion.get();
+    }
+
+    /**
+     * Каталог изменен в обход сервиса (импорт CSV): версия данных вырастет после коммита.
+     */
+    public void markCatalogChanged() {
+        bumpDataVersionAfterCommit();
+    }
+
+    /**
+     * Увеличивает версию данных после коммита текущей транзакции (без транзакции - сразу):
+     * увеличенная раньше версия позволила бы параллельному запросу закэшировать под ней
+     * еще старые данные. (Слушатель события здесь не подходит: методы сервиса транзакционные.)
+     */
+    private void bumpDataVersionAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dataVersion.incrementAndGet();
                 }
+            });
+        } else {
+            dataVersion.incrementAndGet();
+        }
+    }
 
-                log.info("AUTO-ORDER: Creating order for Medication ID: {}, Name: '{}', Current Qty: {}, Min Stock: {}, Quantity to Order: {}",
-                        med.getId(), med.getName(), currentQuantity, minStock, quantityToOrder);
-
-                // 1. Создаем и сохраняем запись о заказе
-                MedicationOrder newOrder = new MedicationOrder();
-                newOrder.setMedication(med);
-                newOrder.setQuantityOrdered(quantityToOrder);
-                newOrder.setOrderDate(LocalDateTime.now());
-                newOrder.setStatus(ORDER_STATUS_PENDING); // Используем константу
-                medicationOrderRepository.save(newOrder);
-                log.info("AUTO-ORDER: Saved new MedicationOrder with ID: {} for Medication '{}'", newOrder.getId(), med.getName());
-
-                // 2. Увеличиваем текущее количество лекарства
-                // ВАЖНО: Это имитация немедленного пополнения. В реальной системе
-                // запас должен увеличиваться только ПОСЛЕ фактического получения заказа.
-                int updatedQuantity = currentQuantity + quantityToOrder;
-                med.setQuantity(updatedQuantity);
-                medicationRepository.save(med); // Сохраняем обновленное лекарство
-                log.info("AUTO-ORDER: Updated stock for Medication ID: {} ('{}') to new quantity: {}", med.getId(), med.getName(), updatedQuantity);
+    // Пачка отложенных изменений остатков: пачка, уже примененная до падения узла, пропускается
+    private void applyStockBatch(StockDeltaBuffer.Batch batch) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            if (!medicationRepository.markStockBatchApplied(batch.id(), batch.forgetBatchIds())) {
+                log.warn("Stock delta batch {} was already applied, skipping", batch.id());
+                return;
+            }
+            List<StockLevel> levels = medicationRepository.applyQuantityDeltas(batch.deltas());
+            List<StockMovement> movements = new ArrayList<>();
+            for (StockLevel level : levels) {
+                eventPublisher.publishEvent(new MedicationChangedEvent(MedicationChangedEvent.Type.STOCK_CHANGED,
+                        level.medicationId(), level.quantity(), level.minStockLevel()));
+                addBatchMovements(movements, level, batch.deltas().get(level.medicationId()),
+                        batch.dispensed().getOrDefault(level.medicationId(), 0L));
+            }
+            stockLedgerService.record(movements);
+            if (!levels.isEmpty()) {
+                bumpDataVersionAfterCommit();
+            }
+            if (levels.size() < batch.deltas().size()) {
+                log.warn("Stock delta batch {}: {} deleted medication(s) skipped",
+                        batch.id(), batch.deltas().size() - levels.size());
+            }
+            log.debug("Applied stock delta batch {} for {} medication(s)", batch.id(), levels.size());
+        });
+    }
 
-            } catch (Exception e) {
-                // Логируем ошибку для конкретного лекарства и продолжаем проверку остальных
-                log.error("AUTO-ORDER: Failed to process automatic order for medication ID: {}, Name: '{}'. Error: {}",
-                        med.getId(), med.getName() != null ? med.getName() : "N/A", e.getMessage(), e);
-                // Здесь можно добавить механизм уведомления администратора об ошибке
+    /**
+     * Движения одного лекарства из пачки: выдача и поступления отдельно. Если остаток уперся
+     * в ноль, выдано меньше запрошенного на эту разницу; если в предел integer - корректировка.
+     */
+    private static void addBatchMovements(List<StockMovement> movements, StockLevel level, long requested, long dispensed) {
+        long received = requested + dispensed;
+        long shortfall = level.change() - requested;
+        if (shortfall > 0) {
+            dispensed -= shortfall;
+        } else if (shortfall < 0) {
+            movements.add(new StockMovement(level.medicationId(), StockMovement.Type.CORRECTION, shortfall));
+        }
+        if (dispensed != 0) {
+            movements.add(new StockMovement(level.medicationId(), StockMovement.Type.DISPENSE, -dispensed));
+        }
+        if (received != 0) {
+            movements.add(new StockMovement(level.medicationId(), StockMovement.Type.RESTOCK, received));
+        }
+    }
+
+    /**
+     * Сколько заказать: довести запас до минимального плюс расход за clinic.stock.reorder-cover-days
+     * (по среднему за clinic.stock.consumption-window-days из журнала движения), но не меньше
+     * двух минимальных - для лекарств без выдачи это прежняя формула minStock * 2 - current.
+     */
+    private int orderQuantity(int currentQuantity, int minStock, long consumed) {
+        long coverDemand = (consumed * reorderCoverDays + consumptionWindowDays - 1) / consumptionWindowDays;
+        long target = (long) minStock + Math.max(minStock, coverDemand);
+        return (int) Math.min(target - currentQuantity, Integer.MAX_VALUE);
+    }
+
+    private record ChunkResult(int rowsScanned, int ordersCreated, long lastId) {
+    }
+
+    // Одна порция автозаказа; вызывается внутри транзакции
+    private ChunkResult reorderChunk(Supplier<List<LowStockRow>> lowStockRows, long afterId) {
+        List<LowStockRow> rows = lowStockRows.get();
+        if (rows.isEmpty()) {
+            return new ChunkResult(0, 0, afterId);
+        }
+        List<StockReplenishment> replenishments = new ArrayList<>(rows.size());
+        Map<Long, Long> consumed = stockLedgerService.consumption(rows.stream().map(LowStockRow::getId).toList(),
+                consumptionWindowDays);
+        for (LowStockRow row : rows) {
+            int currentQuantity = row.getQuantity();
+            int minStock = row.getMinStockLevel();
+            // Рассчитываем количество для заказа по расходу из журнала (см. orderQuantity)
+            int quantityToOrder = orderQuantity(currentQuantity, minStock, consumed.getOrDefault(row.getId(), 0L));
+
+            // Убедимся, что заказываем положительное количество
+            if (quantityToOrder <= 0) {
+                log.warn("Skipping order for {} (ID: {}): Calculated order quantity ({}) is not positive. Current: {}, Min: {}",
+                        row.getName(), row.getId(), quantityToOrder, currentQuantity, minStock);
+                continue;
             }
+            log.debug("AUTO-ORDER: Medication ID: {}, Name: '{}', Current Qty: {}, Min Stock: {}, Quantity to Order: {}",
+                    row.getId(), row.getName(), currentQuantity, minStock, quantityToOrder);
+            replenishments.add(new StockReplenishment(row.getId(), quantityToOrder));
+            // Строка заблокирована до конца транзакции, так что новый остаток известен точно
+            eventPublisher.publishEvent(new MedicationChangedEvent(MedicationChangedEvent.Type.STOCK_CHANGED,
+                    row.getId(), currentQuantity + quantityToOrder, minStock));
         }
-        log.info("Scheduled stock check and auto-order finished.");
+
+        // 1. Записи о заказах
+        medicationRepository.insertPendingOrders(replenishments, LocalDateTime.now());
+        // 2. Увеличиваем остатки
+        // ВАЖНО: Это имитация немедленного пополнения. В реальной системе
+        // запас должен увеличиваться только ПОСЛЕ фактического получения заказа.
+        medicationRepository.addOrderedQuantities(replenishments);
+        // 3. Движения в журнал - одним batch
+        stockLedgerService.record(replenishments.stream()
+                .map(r -> new StockMovement(r.medicationId(), StockMovement.Type.AUTO_ORDER, r.quantityOrdered()))
+                .toList());
+        if (!replenishments.isEmpty()) {
+            bumpDataVersionAfterCommit();
+        }
+
+        return new ChunkResult(rows.size(), replenishments.size(), rows.get(rows.size() - 1).getId());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,402 @@
+package com.clinic.management.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Помесячное секционирование appointments (по appointment_time) и schedules (по start_time).
+ *
+ * Секция месяца - таблица public.<таблица>_pYYYY_MM, строки вне созданных месяцев попадают
+ * в <таблица>_default. Обслуживание (при старте и раз в сутки по clinic.partitions.maintenance-cron)
+ * заводит секции на clinic.partitions.months-ahead месяцев вперед и переносит в собственные секции
+ * месяцы, накопившиеся в default (слоты далеко вперед, импорт прошлых дат).
+ *
+ * Месяцы старше clinic.partitions.hot-months отсоединяются (DETACH) и переезжают в схему archive.
+ * В основной таблице остается ограниченное число секций независимо от объема истории: запросы
+ * по id (запись, отмена), в которых нет ключа секционирования, проверяют индекс каждой
+ * присоединенной секции, и их время не растет с историей. Полная история - в представлениях
+ * appointments_history и schedules_history (основная таблица UNION ALL архивные); их читают
+ * запросы с явным "включая архив".
+ *
+ * Первичный и уникальные ключи секционированной таблицы обязаны включать ключ секционирования:
+ * первичный ключ - (id, время), слот занимает не больше одной записи - UNIQUE (schedule_id,
+ * appointment_time), ссылка записи на слот - FOREIGN KEY (schedule_id, appointment_time)
+ * на schedules (id, start_time). Время записи всегда равно началу ее слота, поэтому запись
+ * и слот лежат в секциях одного месяца и архивируются вместе.
+ *
+ * Таблицы создает Hibernate (ddl-auto=update) обычными; при первом старте они перестраиваются
+ * в секционированные с переносом данных, индексов и внешних ключей. DDL выполняется в транзакциях
+ * под pg_advisory_xact_lock, так что узлы кластера, стартующие одновременно, не мешают друг другу.
+ */
+@Service
+public class PartitionManager implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionManager.class);
+
+    public static final String ARCHIVE_SCHEMA = "archive";
+
+    // Ключ pg_advisory_xact_lock для DDL секций
+    private static final long DDL_LOCK_KEY = 0x636c696e6963L;
+
+    private static final DateTimeFormatter MONTH_SUFFIX = DateTimeFormatter.ofPattern("'_p'yyyy_MM");
+
+    private record PartitionedTable(String name, String key) {
+
+        String partition(YearMonth month) {
+            return name + MONTH_SUFFIX.format(month);
+        }
+
+        String defaultPartition() {
+            return name + "_default";
+        }
+
+        String history() {
+            return name + "_history";
+        }
+    }
+
+    private static final PartitionedTable SCHEDULES = new PartitionedTable("schedules", "start_time");
+    private static final PartitionedTable APPOINTMENTS = new PartitionedTable("appointments", "appointment_time");
+
+    // Порядок важен при архивации: запись ссылается на слот, поэтому ее секция отсоединяется первой
+    private static final List<PartitionedTable> TABLES = List.of(APPOINTMENTS, SCHEDULES);
+
+    private static final String APPOINTMENT_SLOT_UNIQUE = "appointments_schedule_uk";
+    private static final String APPOINTMENT_SLOT_FK = "appointments_schedule_fk";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JobCoordinator jobCoordinator;
+
+    // На сколько месяцев вперед (после текущего) заводить секции
+    @Value("${clinic.partitions.months-ahead:3}")
+    private int monthsAhead;
+
+    // Сколько прошедших месяцев (кроме текущего) остается в основной таблице
+    @Value("${clinic.partitions.hot-months:6}")
+    private int hotMonths;
+
+    /**
+     * Начало "горячего" периода: первый день месяца, с которого данные еще в основных таблицах.
+     * Более ранние месяцы - в архиве (после ближайшего обслуживания).
+     */
+    public LocalDateTime hotFrom() {
+        return YearMonth.now().minusMonths(hotMonths).atDay(1).atStartOfDay();
+    }
+
+    // После скриптов db/sql (они выполняются при создании EntityManagerFactory), но до
+    // ApplicationReadyEvent, на котором индекс занятости и счетчики читают таблицы
+    @Override
+    public void afterSingletonsInstantiated() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${clinic.partitions.maintenance-cron:0 30 3 * * *}")
+    public void scheduledMaintenance() {
+        jobCoordinator.runExclusive("partition-maintenance", this::maintain);
+    }
+
+    /**
+     * Секционировать таблицы (если еще не), завести недостающие секции, архивировать старые
+     * месяцы и пересоздать представления истории. Повторный вызов ничего не меняет.
+     */
+    public void maintain() {
+        inTransaction(this::partitionTables);
+        YearMonth hotFrom = YearMonth.from(hotFrom());
+        YearMonth last = YearMonth.now().plusMonths(monthsAhead);
+        Set<YearMonth> months = new TreeSet<>();
+        for (PartitionedTable table : TABLES) {
+            months.addAll(monthsInDefault(table));
+        }
+        for (YearMonth month = hotFrom; !month.isAfter(last); month = month.plusMonths(1)) {
+            months.add(month);
+        }
+        for (YearMonth month : months) {
+            if (TABLES.stream().anyMatch(table -> !attachedMonths(table).contains(month))) {
+                inTransaction(() -> createPartitions(month));
+            }
+        }
+        Set<YearMonth> expired = new TreeSet<>();
+        for (PartitionedTable table : TABLES) {
+            attachedMonths(table).stream().filter(month -> month.isBefore(hotFrom)).forEach(expired::add);
+        }
+        for (YearMonth month : expired) {
+            inTransaction(() -> archive(month));
+        }
+        // Hibernate мог добавить колонку - представления пересоздаются при каждом обслуживании
+        inTransaction(this::refreshHistoryViews);
+    }
+
+    private void inTransaction(Runnable ddl) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(?)", Object.class, DDL_LOCK_KEY);
+            ddl.run();
+        });
+    }
+
+    // --- Перестройка обычных таблиц в секционированные (один раз) ---
+
+    private void partitionTables() {
+        if (isPartitioned(SCHEDULES) && isPartitioned(APPOINTMENTS)) {
+            return;
+        }
+        jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + ARCHIVE_SCHEMA);
+        // Сначала слоты: DROP старой таблицы снимает и внешний ключ записей на нее
+        for (PartitionedTable table : List.of(SCHEDULES, APPOINTMENTS)) {
+            if (!isPartitioned(table)) {
+                convert(table);
+            }
+        }
+        jdbcTemplate.execute("ALTER TABLE appointments ADD CONSTRAINT " + APPOINTMENT_SLOT_UNIQUE
+                + " UNIQUE (schedule_id, appointment_time)");
+        // Порядок переноса строк из default при создании секций месяца - см. createPartitions
+        jdbcTemplate.execute("ALTER TABLE appointments ADD CONSTRAINT " + APPOINTMENT_SLOT_FK
+                + " FOREIGN KEY (schedule_id, appointment_time) REFERENCES schedules (id, start_time)");
+        // Внешние ключи секционированных таблиц Hibernate не видит и при каждом старте пытался бы
+        // добавить свои заново, поэтому в сущностях они отключены и заводятся здесь. Базу, где
+        // ключ на doctors создал Hibernate до перестройки, convert уже перенесла
+        for (PartitionedTable table : TABLES) {
+            addDoctorForeignKey(table);
+        }
+    }
+
+    private void addDoctorForeignKey(PartitionedTable table) {
+        boolean exists = Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM pg_constraint "
+                + "WHERE conrelid = to_regclass(?) AND contype = 'f' AND confrelid = 'doctors'::regclass)",
+                Boolean.class, table.name()));
+        if (!exists) {
+            jdbcTemplate.execute("ALTER TABLE " + table.name() + " ADD CONSTRAINT " + table.name()
+                    + "_doctor_fk FOREIGN KEY (doctor_id) REFERENCES doctors (id)");
+        }
+    }
+
+    private boolean isPartitioned(PartitionedTable table) {
+        return "p".equals(jdbcTemplate.queryForObject(
+                "SELECT (SELECT relkind::text FROM pg_class WHERE oid = to_regclass(?))", String.class, table.name()));
+    }
+
+    private void convert(PartitionedTable table) {
+        String name = table.name();
+        String old = name + "_unpartitioned";
+        // Индексы и триггеры из db/sql (не считая ключей) и внешние ключи на несекционированные
+        // таблицы пересоздаются на новой таблице теми же командами
+        List<String> indexes = jdbcTemplate.queryForList("SELECT pg_get_indexdef(i.indexrelid) FROM pg_index i "
+                + "WHERE i.indrelid = to_regclass(?) "
+                + "AND NOT EXISTS (SELECT 1 FROM pg_constraint c WHERE c.conindid = i.indexrelid)", String.class, name);
+        List<String> triggers = jdbcTemplate.queryForList("SELECT pg_get_triggerdef(oid) FROM pg_trigger "
+                + "WHERE tgrelid = to_regclass(?) AND NOT tgisinternal", String.class, name);
+        List<Map<String, Object>> foreignKeys = jdbcTemplate.queryForList("SELECT quote_ident(conname) AS name, "
+                + "pg_get_constraintdef(oid) AS definition FROM pg_constraint "
+                + "WHERE conrelid = to_regclass(?) AND contype = 'f' AND confrelid <> ALL (?::regclass[])",
+                name, managedTables());
+
+        // id из собственной последовательности таблицы (serial или IDENTITY): последовательность
+        // удаляется вместе со старой таблицей, у новой будет своя. IDENTITY секционированной
+        // таблицы PostgreSQL до 17 не применяет при вставке через нее, поэтому - DEFAULT nextval
+        boolean generatedId = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT pg_get_serial_sequence(?, 'id') IS NOT NULL", Boolean.class, name));
+
+        jdbcTemplate.execute("LOCK TABLE " + name + " IN ACCESS EXCLUSIVE MODE");
+        long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + name, Long.class);
+        log.info("Converting table {} ({} rows) to monthly partitions by {}", name, rows, table.key());
+        jdbcTemplate.execute("ALTER TABLE " + name + " RENAME TO " + old);
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE " + old + " INCLUDING DEFAULTS) "
+                + "PARTITION BY RANGE (" + table.key() + ")");
+        jdbcTemplate.execute("CREATE TABLE " + table.defaultPartition() + " PARTITION OF " + name + " DEFAULT");
+        // Секции на все месяцы с данными: строки сразу ложатся на место, а не в default
+        List<LocalDate> months = jdbcTemplate.queryForList("SELECT DISTINCT date_trunc('month', " + table.key()
+                + ")::date FROM " + old + " WHERE " + table.key() + " IS NOT NULL", LocalDate.class);
+        for (LocalDate month : months) {
+            YearMonth yearMonth = YearMonth.from(month);
+            jdbcTemplate.execute("CREATE TABLE " + table.partition(yearMonth) + " PARTITION OF " + name
+                    + " FOR VALUES FROM ('" + yearMonth.atDay(1) + "') TO ('" + yearMonth.plusMonths(1).atDay(1) + "')");
+        }
+        jdbcTemplate.execute("INSERT INTO " + name + " SELECT * FROM " + old);
+        jdbcTemplate.execute("DROP TABLE " + old + " CASCADE");
+        if (generatedId) {
+            String sequence = name + "_id_seq";
+            jdbcTemplate.execute("CREATE SEQUENCE " + sequence + " OWNED BY " + name + ".id");
+            jdbcTemplate.execute("ALTER TABLE " + name + " ALTER COLUMN id SET DEFAULT nextval('" + sequence + "')");
+            // Нумерация продолжается после последнего id старой таблицы
+            jdbcTemplate.queryForList("SELECT setval(?, MAX(id)) FROM " + name, sequence);
+        }
+
+        jdbcTemplate.execute("ALTER TABLE " + name + " ADD PRIMARY KEY (id, " + table.key() + ")");
+        for (Map<String, Object> foreignKey : foreignKeys) {
+            jdbcTemplate.execute("ALTER TABLE " + name + " ADD CONSTRAINT " + foreignKey.get("name")
+                    + " " + foreignKey.get("definition"));
+        }
+        indexes.forEach(jdbcTemplate::execute);
+        // Триггеры - после переноса строк: перенос не меняет данные (версии слотов не поднимаются)
+        triggers.forEach(jdbcTemplate::execute);
+        log.info("Table {} partitioned: {} monthly partition(s) and default", name, months.size());
+    }
+
+    // --- Секции месяцев ---
+
+    private Set<YearMonth> attachedMonths(PartitionedTable table) {
+        List<String> partitions = jdbcTemplate.queryForList("SELECT c.relname::text FROM pg_inherits i "
+                + "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?)", String.class, table.name());
+        Set<YearMonth> months = new TreeSet<>();
+        for (String partition : partitions) {
+            YearMonth month = monthOf(table, partition);
+            if (month != null) {
+                months.add(month);
+            }
+        }
+        return months;
+    }
+
+    private static YearMonth monthOf(PartitionedTable table, String partition) {
+        if (!partition.startsWith(table.name())) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(partition.substring(table.name().length()), MONTH_SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null; // default
+        }
+    }
+
+    private List<YearMonth> monthsInDefault(PartitionedTable table) {
+        return jdbcTemplate.queryForList("SELECT DISTINCT date_trunc('month', " + table.key() + ")::date FROM "
+                + table.defaultPartition(), LocalDate.class).stream().map(YearMonth::from).toList();
+    }
+
+    /**
+     * Секции месяца создаются отдельными таблицами и присоединяются (ATTACH): строки этого месяца,
+     * попавшие в default, переносятся в них до присоединения. CREATE TABLE ... PARTITION OF
+     * при непустом default завершился бы ошибкой.
+     *
+     * Обе таблицы обрабатываются в одной транзакции. Копии внешнего ключа в секциях appointments
+     * ссылаются на конкретную секцию schedules, поэтому слот нельзя удалить из schedules_default,
+     * пока на него ссылается запись. Записи месяца уходят из appointments_default первыми,
+     * а присоединяется их секция последней - ключ проверяется уже по новой секции слотов.
+     */
+    private void createPartitions(YearMonth month) {
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        List<PartitionedTable> created = new ArrayList<>();
+        for (PartitionedTable table : TABLES) {
+            if (attachedMonths(table).contains(month)) {
+                continue; // другой узел успел раньше
+            }
+            String partition = table.partition(month);
+            jdbcTemplate.execute("CREATE TABLE " + partition + " (LIKE " + table.name()
+                    + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + table.defaultPartition() + " WHERE "
+                    + table.key() + " >= ? AND " + table.key() + " < ? RETURNING *) "
+                    + "INSERT INTO " + partition + " SELECT * FROM moved", from, to);
+            log.info("Created partition {} ({} rows moved from {})", partition, moved, table.defaultPartition());
+            created.add(table);
+        }
+        for (int i = created.size() - 1; i >= 0; i--) {
+            PartitionedTable table = created.get(i);
+            jdbcTemplate.execute("ALTER TABLE " + table.name() + " ATTACH PARTITION " + table.partition(month)
+                    + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+        }
+    }
+
+    // --- Архив ---
+
+    /**
+     * Отсоединить секции месяца и перенести в схему archive. Ссылки на секционированные
+     * таблицы у архивной секции снимаются: строки, на которые они указывают, уходят в архив
+     * вместе с ней. Если архивная таблица месяца уже есть (в архивный месяц импортировали
+     * данные), строки дописываются в нее.
+     */
+    private void archive(YearMonth month) {
+        for (PartitionedTable table : TABLES) {
+            String partition = table.partition(month);
+            if (!attachedMonths(table).contains(month)) {
+                continue;
+            }
+            jdbcTemplate.execute("ALTER TABLE " + table.name() + " DETACH PARTITION " + partition);
+            List<String> references = jdbcTemplate.queryForList("SELECT quote_ident(conname) FROM pg_constraint "
+                    + "WHERE conrelid = to_regclass(?) AND contype = 'f' AND confrelid = ANY (?::regclass[])",
+                    String.class, partition, managedTables());
+            for (String reference : references) {
+                jdbcTemplate.execute("ALTER TABLE " + partition + " DROP CONSTRAINT " + reference);
+            }
+            String archived = ARCHIVE_SCHEMA + "." + partition;
+            if (jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, archived)) {
+                addMissingColumns(table, archived);
+                String columns = columns(partition);
+                int rows = jdbcTemplate.update("INSERT INTO " + archived + " (" + columns + ") SELECT "
+                        + columns + " FROM " + partition);
+                jdbcTemplate.execute("DROP TABLE " + partition);
+                log.info("Partition {} merged into {} ({} rows)", partition, archived, rows);
+            } else {
+                jdbcTemplate.execute("ALTER TABLE " + partition + " SET SCHEMA " + ARCHIVE_SCHEMA);
+                log.info("Partition {} moved to schema {}", partition, ARCHIVE_SCHEMA);
+            }
+        }
+    }
+
+    /**
+     * Представление <таблица>_history: основная таблица и все архивные секции. Архивным
+     * секциям сначала добавляются колонки, появившиеся в основной таблице после архивации.
+     */
+    private void refreshHistoryViews() {
+        for (PartitionedTable table : TABLES) {
+            List<String> archived = jdbcTemplate.queryForList("SELECT quote_ident(n.nspname) || '.' || "
+                    + "quote_ident(c.relname) FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace "
+                    + "WHERE n.nspname = ? AND c.relkind = 'r' AND c.relname ~ ? ORDER BY c.relname",
+                    String.class, ARCHIVE_SCHEMA, "^" + table.name() + "_p[0-9]{4}_[0-9]{2}$");
+            String columns = columns(table.name());
+            List<String> selects = new ArrayList<>();
+            selects.add("SELECT " + columns + " FROM public." + table.name());
+            for (String partition : archived) {
+                addMissingColumns(table, partition);
+                selects.add("SELECT " + columns + " FROM " + partition);
+            }
+            jdbcTemplate.execute("DROP VIEW IF EXISTS " + table.history());
+            jdbcTemplate.execute("CREATE VIEW " + table.history() + " AS " + String.join(" UNION ALL ", selects));
+        }
+    }
+
+    private void addMissingColumns(PartitionedTable table, String archived) {
+        List<String> columns = jdbcTemplate.queryForList("SELECT quote_ident(attname) || ' ' || "
+                + "format_type(atttypid, atttypmod) FROM pg_attribute "
+                + "WHERE attrelid = to_regclass(?) AND attnum > 0 AND NOT attisdropped",
+                String.class, "public." + table.name());
+        for (String column : columns) {
+            jdbcTemplate.execute("ALTER TABLE " + archived + " ADD COLUMN IF NOT EXISTS " + column);
+        }
+    }
+
+    private String columns(String relation) {
+        return jdbcTemplate.queryForList("SELECT quote_ident(attname) FROM pg_attribute "
+                + "WHERE attrelid = to_regclass(?) AND attnum > 0 AND NOT attisdropped ORDER BY attnum",
+                String.class, relation).stream().collect(Collectors.joining(", "));
+    }
+
+    private static String managedTables() {
+        return TABLES.stream().map(PartitionedTable::name).collect(Collectors.joining(",", "{", "}"));
+    }
+}
@@ -1,35 +1,104 @@
 package com.clinic.management.service;
 
+import com.clinic.management.dto.KeysetPage;
+import com.clinic.management.dto.SlotView;
 import com.clinic.management.entity.Doctor;
 import com.clinic.management.entity.Schedule;
+import com.clinic.management.event.DoctorChangedEvent;
+import com.clinic.management.event.SlotChangedEvent;
+import com.clinic.management.event.SlotsBulkChangedEvent;
 import com.clinic.management.exception.ResourceNotFoundException;
 import com.clinic.management.repository.DoctorRepository;
 import com.clinic.management.repository.ScheduleRepository;
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StringUtils;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class ScheduleService {
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduleService.class);
+
+    // Поля, по которым разрешена сортировка списка слотов
+    public static final Set<String> SORT_FIELDS = Set.of("startTime", "endTime", "id");
+
+    public static final int EARLIEST_DEFAULT_LIMIT = 10;
+    public static final int EARLIEST_MAX_LIMIT = 50;
+
+    // Запас кандидатов из индекса занятости на слоты, занятые после его обновления
+    private static final int EARLIEST_CANDIDATE_RESERVE = 10;
+    // Страница запроса к БД, когда индекс не может ответить, а слоты отбираются по длительности
+    private static final int EARLIEST_DB_PAGE = 200;
+
     @Autowired
     private ScheduleRepository scheduleRepository;
 
     @Autowired
     private DoctorRepository doctorRepository;
 
+    @Autowired
+    private SlotOccupancyIndex slotOccupancyIndex;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // Версия данных списка слотов для кэша отрисованной таблицы (FragmentCache)
+    private final AtomicLong dataVersion = new AtomicLong();
+
     public List<Schedule> getAllSchedules() {
         return scheduleRepository.findAll();
     }
 
+    /**
+     * Страница списка слотов (keyset-пагинация), по умолчанию по времени начала.
+     * Врач загружается тем же запросом.
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<Schedule> findSchedulesPage(Long doctorId, LocalDate date, boolean availableOnly,
+                                                  String sortBy, boolean descending, String cursor, Integer size) {
+        Sort sort = KeysetPage.sort(sortBy, SORT_FIELDS, "startTime", descending);
+        KeysetScrollPosition position = KeysetPage.position(cursor, sort, Schedule.class);
+        Specification<Schedule> spec = Specification
+                .where(ScheduleRepository.forDoctor(doctorId))
+                .and(ScheduleRepository.onDate(date))
+                .and(ScheduleRepository.availableOnly(availableOnly))
+                .and(ScheduleRepository.fetchDoctor());
+        int limit = KeysetPage.clampSize(size);
+        return KeysetPage.of(scheduleRepository.findBy(spec, q -> q.sortBy(sort).limit(limit).scroll(position)), position);
+    }
+
     public Schedule addSchedule(Schedule schedule) {
         if (schedule.getDoctor() != null && schedule.getDoctor().getId() != null) {
             Doctor doctor = doctorRepository.findById(schedule.getDoctor().getId())
                     .orElseThrow(() -> new ResourceNotFoundException("Doctor not found"));
             schedule.setDoctor(doctor);
         }
-        return scheduleRepository.save(schedule);
+        Schedule saved = scheduleRepository.save(schedule);
+        eventPublisher.publishEvent(SlotChangedEvent.of(SlotChangedEvent.Type.ADDED, saved));
+        return saved;
     }
 
     public List<Schedule> getDoctorSchedule(Long doctorId) {
@@ -37,10 +106,114 @@ public class ScheduleService {
     }
 
     public void deleteSchedule(Long scheduleId) {
-        scheduleRepository.deleteById(scheduleId);
+        scheduleRepository.findWithDoctorById(scheduleId).ifPresent(schedule -> {
+            scheduleRepository.delete(schedule);
+            eventPublisher.publishEvent(SlotChangedEvent.of(SlotChangedEvent.Type.REMOVED, schedule));
+        });
     }
 
     public List<Schedule> getAvailableSchedules(LocalDate date, String specialization) {
         return scheduleRepository.findAvailableSchedules(date, specialization);
     }
-}
\ No newline at end of file
+
+    /**
+     * Ближайшее свободное время у любого врача специализации: первые limit свободных слотов
+     * с началом в [from, to) и длительностью не меньше minDurationMinutes, по времени начала.
+     * Кандидатов подбирает индекс занятости слиянием отсортированных списков свободных слотов
+     * врачей (SlotOccupancyIndex.earliestFree), затем они проверяются одним запросом к БД
+     * (JDBC, без загрузки сущностей).
+     * Если индекс не может ответить или после проверки осталось меньше limit слотов, ответ
+     * дает БД - запросом по времени начала с LIMIT: индекс локален для узла, и слоты, созданные
+     * или освобожденные на других узлах, он до сверки не знает.
+     * @param minDurationMinutes минимальная длительность слота в минутах (null - любая)
+     * @param limit сколько слотов вернуть (по умолчанию EARLIEST_DEFAULT_LIMIT, не больше EARLIEST_MAX_LIMIT)
+     * @throws IllegalArgumentException если не указана специализация, окно пустое или длительность отрицательная
+     */
+    @Timed(value = "clinic.slots.earliest", description = "Earliest free slots across doctors of a specialization")
+    public List<SlotView> findEarliestAvailable(String specialization, LocalDateTime from, LocalDateTime to,
+                                                Integer minDurationMinutes, Integer limit) {
+        if (!StringUtils.hasText(specialization)) {
+            throw new IllegalArgumentException("Specialization is required");
+        }
+        if (from == null || to == null || !from.isBefore(to)) {
+            throw new IllegalArgumentException("Search window is empty: " + from + " - " + to);
+        }
+        int minDuration = minDurationMinutes != null ? minDurationMinutes : 0;
+        if (minDuration < 0) {
+            throw new IllegalArgumentException("Duration must not be negative: " + minDuration);
+        }
+        int count = limit != null ? Math.max(1, Math.min(limit, EARLIEST_MAX_LIMIT)) : EARLIEST_DEFAULT_LIMIT;
+        String trimmed = specialization.trim();
+
+        List<Long> doctorIds = doctorRepository.findIdsBySpecialization(trimmed);
+        if (doctorIds.isEmpty()) {
+            return List.of();
+        }
+        int wanted = count + EARLIEST_CANDIDATE_RESERVE;
+        Optional<List<SlotOccupancyIndex.FreeSlot>> candidates =
+                slotOccupancyIndex.earliestFree(doctorIds, from, to, minDuration, wanted);
+        if (candidates.isPresent()) {
+            List<SlotOccupancyIndex.FreeSlot> found = candidates.get();
+            // Индекс обновляется после коммита: слот могли занять только что
+            Map<Long, SlotView> available = new HashMap<>();
+            scheduleRepository.findAvailableSlotViews(found.stream().map(SlotOccupancyIndex.FreeSlot::scheduleId).toList())
+                    .forEach(slot -> available.put(slot.id(), slot));
+            List<SlotView> result = found.stream()
+                    .map(slot -> available.get(slot.scheduleId()))
+                    .filter(Objects::nonNull)
+                    .limit(count)
+                    .toList();
+            if (result.size() == count) {
+                return result;
+            }
+            log.debug("Occupancy index returned {} of {} earliest slot(s), falling back to DB", result.size(), count);
+        }
+        return findEarliestInDatabase(trimmed, from, to, minDuration, count);
+    }
+
+    private List<SlotView> findEarliestInDatabase(String specialization, LocalDateTime from, LocalDateTime to,
+                                                  int minDuration, int count) {
+        // Без ограничения длительности подходит каждый слот - достаточно count строк
+        Pageable page = PageRequest.of(0, minDuration > 0 ? EARLIEST_DB_PAGE : count);
+        List<SlotView> result = new ArrayList<>(count);
+        while (true) {
+            List<SlotView> slots = scheduleRepository.findFirstAvailableForSpecialization(specialization, from, to, page);
+            for (SlotView slot : slots) {
+                if (Duration.between(slot.startTime(), slot.endTime()).toMinutes() >= minDuration) {
+                    result.add(slot);
+                    if (result.size() == count) {
+                        return result;
+                    }
+                }
+            }
+            if (slots.size() < page.getPageSize()) {
+                return result;
+            }
+            page = page.next();
+        }
+    }
+
+    /**
+     * Версия данных расписания: растет после коммита любого изменения слотов - добавления,
+     * удаления, записи и отмены (занятость), генерации по шаблону, а также правки или удаления
+     * врача (имя и специализация видны в таблице). Совпадение версий - таблица не изменилась.
+     */
+    public long dataVersion() {
+        return dataVersion.get();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSlotChanged(SlotChangedEvent event) {
+        dataVersion.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSlotsBulkChanged(SlotsBulkChangedEvent event) {
+        dataVersion.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDoctorChanged(DoctorChangedEvent event) {
+        dataVersion.incrementAndGet();
+    }
+}
@@ -0,0 +1,167 @@
+package com.clinic.management.service;
+
+import com.clinic.management.entity.Doctor;
+import com.clinic.management.entity.Schedule;
+import com.clinic.management.entity.ShiftTemplate;
+import com.clinic.management.event.SlotsBulkChangedEvent;
+import com.clinic.management.exception.ResourceNotFoundException;
+import com.clinic.management.repository.DoctorRepository;
+import com.clinic.management.repository.ScheduleRepository;
+import com.clinic.management.repository.ShiftTemplateRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Шаблоны смен врачей и массовая генерация слотов расписания по ним.
+ */
+@Service
+public class ShiftTemplateService {
+
+    private static final Logger log = LoggerFactory.getLogger(ShiftTemplateService.class);
+
+    // Защита от опечаток в датах: генерация больше чем на год вперед за раз не нужна
+    private static final long MAX_RANGE_DAYS = 366;
+
+    /**
+     * Итог генерации слотов по одному шаблону.
+     */
+    public record GenerationResult(Long templateId, Long doctorId, int slotsCreated, int slotsSkipped, long elapsedMillis) {
+    }
+
+    @Autowired
+    private ShiftTemplateRepository shiftTemplateRepository;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Размер пачки совпадает с hibernate.jdbc.batch_size: после каждой пачки
+    // контекст сбрасывается в БД и очищается, чтобы не держать в памяти все слоты
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}")
+    private int batchSize;
+
+    public List<ShiftTemplate> getAllTemplates() {
+        return shiftTemplateRepository.findAllByOrderByCreatedAtDesc();
+    }
+
+    /**
+     * Создает шаблон смены.
+     * @throws ResourceNotFoundException если врач не найден
+     * @throws IllegalArgumentException если параметры шаблона некорректны
+     */
+    @Transactional
+    public ShiftTemplate createTemplate(Long doctorId, ShiftTemplate template) {
+        Doctor doctor = doctorRepository.findById(doctorId)
+                .orElseThrow(() -> new ResourceNotFoundException("Doctor not found with id: " + doctorId));
+        validate(template);
+        template.setDoctor(doctor);
+        template.setCreatedAt(LocalDateTime.now());
+        ShiftTemplate saved = shiftTemplateRepository.save(template);
+        log.info("Created shift template id={} for doctor id={}: {} {}-{} every {} min, {}..{}",
+                saved.getId(), doctorId, saved.getDaysOfWeek(), saved.getStartTime(), saved.getEndTime(),
+                saved.getSlotMinutes(), saved.getValidFrom(), saved.getValidTo());
+        return saved;
+    }
+
+    /**
+     * Разворачивает шаблон в слоты расписания. Уже существующие слоты врача с тем же
+     * временем начала пропускаются, поэтому повторный запуск безопасен.
+     * Вставка идет пачками: ID берутся из последовательности с pooled-оптимизатором
+     * (один nextval на allocationSize слотов), а INSERT-ы группируются в JDBC batch.
+     * @throws ResourceNotFoundException если шаблон не найден
+     */
+    @Transactional
+    public GenerationResult generateSlots(Long templateId) {
+        long startedAt = System.nanoTime();
+        ShiftTemplate template = shiftTemplateRepository.findById(templateId)
+                .orElseThrow(() -> new ResourceNotFoundException("Shift template not found with id: " + templateId));
+        Long doctorId = template.getDoctor().getId();
+        LocalDate from = template.getValidFrom();
+        LocalDate to = template.getValidTo();
+        Set<DayOfWeek> days = template.getDaysOfWeekSet();
+        int slotMinutes = template.getSlotMinutes();
+        int shiftStart = template.getStartTime().toSecondOfDay() / 60;
+        int shiftEnd = template.getEndTime().toSecondOfDay() / 60;
+
+        Set<LocalDateTime> existing = new HashSet<>(scheduleRepository.findStartTimesForDoctor(
+                doctorId, from.atStartOfDay(), to.plusDays(1).atStartOfDay()));
+
+        Doctor doctorRef = entityManager.getReference(Doctor.class, doctorId);
+        int created = 0;
+        int skipped = 0;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            if (!days.contains(day.getDayOfWeek())) {
+                continue;
+            }
+            for (int minute = shiftStart; minute + slotMinutes <= shiftEnd; minute += slotMinutes) {
+                LocalDateTime start = day.atStartOfDay().plusMinutes(minute);
+                if (existing.contains(start)) {
+                    skipped++;
+                    continue;
+                }
+                Schedule slot = new Schedule();
+                slot.setDoctor(doctorRef);
+                slot.setStartTime(start);
+                slot.setEndTime(start.plusMinutes(slotMinutes));
+                slot.setAvailable(true);
+                entityManager.persist(slot);
+                if (++created % batchSize == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                    doctorRef = entityManager.getReference(Doctor.class, doctorId);
+                }
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        eventPublisher.publishEvent(new SlotsBulkChangedEvent(doctorId, from, to));
+        long elapsed = (System.nanoTime() - startedAt) / 1_000_000;
+        log.info("Generated {} slots ({} already existed) from shift template id={} in {} ms",
+                created, skipped, templateId, elapsed);
+        return new GenerationResult(templateId, doctorId, created, skipped, elapsed);
+    }
+
+    private void validate(ShiftTemplate template) {
+        if (template.getDaysOfWeekSet().isEmpty()) {
+            throw new IllegalArgumentException("Не выбраны дни недели.");
+        }
+        if (template.getStartTime() == null || template.getEndTime() == null
+                || !template.getStartTime().isBefore(template.getEndTime())) {
+            throw new IllegalArgumentException("Начало смены должно быть раньше конца.");
+        }
+        if (template.getSlotMinutes() < 5 || template.getSlotMinutes() > 480) {
+            throw new IllegalArgumentException("Длительность слота должна быть от 5 до 480 минут.");
+        }
+        if (template.getValidFrom() == null || template.getValidTo() == null
+                || template.getValidTo().isBefore(template.getValidFrom())) {
+            throw new IllegalArgumentException("Некорректный период действия шаблона.");
+        }
+        if (ChronoUnit.DAYS.between(template.getValidFrom(), template.getValidTo()) > MAX_RANGE_DAYS) {
+            throw new IllegalArgumentException("Период действия шаблона не может превышать год.");
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.clinic.management.service;
+
+import com.clinic.management.event.SlotChangedEvent;
+import com.clinic.management.event.SlotsBulkChangedEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Поток Server-Sent Events об изменениях слотов для страницы записи (/appointments/stream):
+ * слот занят, освобожден, добавлен, удален; массовое изменение (генерация по шаблону) -
+ * событие "reload", после которого клиент перезагружает список.
+ *
+ * Рассылка дешевая при любом числе подписчиков: событие сериализуется в готовый SSE-кадр
+ * (байты) один раз, подписчикам раздается один и тот же кадр - он передается
+ * в ResponseBodyEmitter.send(Set) как есть, без повторной сборки "id:/event:/data:". У каждого подписчика своя
+ * ограниченная очередь; отправка идет в applicationTaskExecutor (на Java 21 - виртуальные
+ * потоки), поэтому медленный клиент не задерживает ни транзакцию, ни других подписчиков.
+ * Если очередь клиента переполнена, он отключается: браузер переподключится сам и
+ * перезагрузит список целиком.
+ */
+@Service
+public class SlotEventBroadcaster {
+
+    private static final Logger log = LoggerFactory.getLogger(SlotEventBroadcaster.class);
+
+    private static final Set<ResponseBodyEmitter.DataWithMediaType> PING = frame(": ping\n\n");
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private TaskExecutor executor;
+
+    @Value("${clinic.sse.max-subscribers:10000}")
+    private int maxSubscribers;
+
+    @Value("${clinic.sse.buffer-size:64}")
+    private int bufferSize;
+
+    @Value("${clinic.sse.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong eventIds = new AtomicLong();
+    private Counter dropped;
+    private Counter events;
+
+    /**
+     * Фильтр подписки; null - без ограничения.
+     */
+    public record Filter(LocalDate date, Long doctorId, String specialization) {
+
+        boolean matches(SlotChangedEvent event) {
+            return (date == null || (event.startTime() != null && date.equals(event.startTime().toLocalDate())))
+                    && (doctorId == null || doctorId.equals(event.doctorId()))
+                    && (specialization == null || specialization.equalsIgnoreCase(event.specialization()));
+        }
+
+        // Специализацию врача массовое событие не несет - по ней не отсеиваем
+        boolean matches(SlotsBulkChangedEvent event) {
+            return (date == null || (!date.isBefore(event.from()) && !date.isAfter(event.to())))
+                    && (doctorId == null || doctorId.equals(event.doctorId()));
+        }
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("clinic.sse.subscribers", subscribers, CopyOnWriteArrayList::size)
+                .description("Open slot event streams")
+                .register(meterRegistry);
+        dropped = Counter.builder("clinic.sse.dropped")
+                .description("Slot event subscribers disconnected for falling behind")
+                .register(meterRegistry);
+        events = Counter.builder("clinic.sse.events")
+                .description("Slot events broadcast")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Новый подписчик. Возвращает null, если подписчиков уже maxSubscribers.
+     */
+    public SseEmitter subscribe(Filter filter) {
+        if (subscribers.size() >= maxSubscribers) {
+            log.warn("Slot event stream rejected: {} subscribers already connected", subscribers.size());
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, filter, new ArrayBlockingQueue<>(bufferSize));
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscriber.close(false));
+        emitter.onError(e -> subscriber.close(false));
+        subscribers.add(subscriber);
+        // Первый кадр сразу: браузер получает заголовки и событие open без ожидания изменений
+        subscriber.enqueue(PING);
+        log.debug("Slot event stream opened: {}, subscribers={}", filter, subscribers.size());
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSlotChanged(SlotChangedEvent event) {
+        Set<ResponseBodyEmitter.DataWithMediaType> frame = null;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.filter.matches(event)) {
+                if (frame == null) {
+                    frame = frame("slot", event); // сериализуем, только если есть кому отправить
+                }
+                subscriber.enqueue(frame);
+            }
+        }
+        events.increment();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSlotsBulkChanged(SlotsBulkChangedEvent event) {
+        Set<ResponseBodyEmitter.DataWithMediaType> frame = null;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.filter.matches(event)) {
+                if (frame == null) {
+                    frame = frame("reload", event);
+                }
+                subscriber.enqueue(frame);
+            }
+        }
+        events.increment();
+    }
+
+    // Комментарий-пинг: держит соединение через прокси и выявляет закрытые вкладки
+    @Scheduled(fixedRateString = "${clinic.sse.heartbeat-ms:25000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.enqueue(PING);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close(true);
+        }
+    }
+
+    private Set<ResponseBodyEmitter.DataWithMediaType> frame(String name, Object payload) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize slot event " + payload, e);
+        }
+        return frame("id:" + eventIds.incrementAndGet() + "\nevent:" + name + "\ndata:" + json + "\n\n");
+    }
+
+    // Кадр целиком одним массивом байтов: отправка - одна запись в ответ без конвертеров сообщений
+    private static Set<ResponseBodyEmitter.DataWithMediaType> frame(String text) {
+        return Set.of(new ResponseBodyEmitter.DataWithMediaType(text.getBytes(StandardCharsets.UTF_8),
+                MediaType.TEXT_EVENT_STREAM));
+    }
+
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final Filter filter;
+        final BlockingQueue<Set<ResponseBodyEmitter.DataWithMediaType>> queue;
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, Filter filter, BlockingQueue<Set<ResponseBodyEmitter.DataWithMediaType>> queue) {
+            this.emitter = emitter;
+            this.filter = filter;
+            this.queue = queue;
+        }
+
+        void enqueue(Set<ResponseBodyEmitter.DataWithMediaType> frame) {
+            if (closed.get()) {
+                return;
+            }
+            if (!queue.offer(frame)) {
+                dropped.increment();
+                log.info("Slot event subscriber {} fell behind ({} queued), disconnecting", filter, queue.size());
+                close(true);
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                Set<ResponseBodyEmitter.DataWithMediaType> frame;
+                while (!closed.get() && (frame = queue.poll()) != null) {
+                    emitter.send(frame);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // клиент ушел - штатная ситуация для SSE
+                close(false);
+            } finally {
+                draining.set(false);
+                // кадр мог прийти между последним poll и сбросом флага
+                if (!closed.get() && !queue.isEmpty() && draining.compareAndSet(false, true)) {
+                    executor.execute(this::drain);
+                }
+            }
+        }
+
+        void close(boolean complete) {
+            if (closed.compareAndSet(false, true)) {
+                subscribers.remove(this);
+                queue.clear();
+                if (complete) {
+                    try {
+                        emitter.complete();
+                    } catch (IllegalStateException ignored) {
+                        // уже завершен
+                    }
+                }
+            }
+        }
+    }
+}
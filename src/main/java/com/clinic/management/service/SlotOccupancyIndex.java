@@ -0,0 +1,757 @@
+package com.clinic.management.service;
+
+import com.clinic.management.dto.SlotRow;
+import com.clinic.management.event.SlotChangedEvent;
+import com.clinic.management.event.SlotsBulkChangedEvent;
+import com.clinic.management.repository.ScheduleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Индекс занятости слотов в памяти приложения: для каждого врача и дня хранит
+ * отсортированные по времени слоты и битовую карту свободных.
+ * Без обращения к БД отвечает, свободен ли слот (slotState) и какие слоты врача свободны
+ * в этот день (freeSlotIds), а также подбирает ближайшие свободные слоты нескольких врачей (earliestFree).
+ *
+ * Индекс строится из таблицы schedules при старте (слоты начиная с "сегодня - days-back")
+ * и обновляется по событиям SlotChangedEvent после коммита транзакций этого узла.
+ * Изменения на других узлах он видит только после сверки (clinic.slot-index.verify-cron),
+ * поэтому его ответы - подсказки: кандидаты проверяются по БД, а отрицательный ответ
+ * ("занят", "свободных нет") без проверки в БД пользователю не отдается.
+ */
+@Service
+public class SlotOccupancyIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SlotOccupancyIndex.class);
+
+    // Ключ дня: ID врача в старших битах, номер дня от эпохи - в младших 20 битах
+    private static final int EPOCH_DAY_BITS = 20;
+    private static final long EPOCH_DAY_MASK = (1L << EPOCH_DAY_BITS) - 1;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    public enum SlotState { FREE, TAKEN, UNKNOWN }
+
+    /**
+     * Результат сверки индекса с БД.
+     * missing - слоты, которых нет в индексе; extra - слоты, которых нет в БД;
+     * availabilityMismatches - расхождения по занятости или дню слота.
+     */
+    public record ConsistencyReport(LocalDateTime checkedAt,
+                                    long slotsChecked,
+                                    long missing,
+                                    long extra,
+                                    long availabilityMismatches,
+                                    boolean repaired) {
+        public boolean isConsistent() {
+            return missing == 0 && extra == 0 && availabilityMismatches == 0;
+        }
+    }
+
+    /**
+     * Свободный слот по данным индекса (время - с точностью до минуты).
+     */
+    public record FreeSlot(long scheduleId, long doctorId, LocalDateTime startTime, LocalDateTime endTime) {
+    }
+
+    /**
+     * Оценка занимаемой индексом памяти (без учета выравнивания JVM).
+     */
+    public record FootprintReport(long slots, long doctorDays, long estimatedBytes, long bytesPerMillionSlots) {
+    }
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${clinic.slot-index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${clinic.slot-index.days-back:1}")
+    private int daysBack;
+
+    @Value("${clinic.slot-index.verify-repair:true}")
+    private boolean repairOnVerify;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean loading = new AtomicBoolean();
+
+    private State state; // null, пока индекс не построен; защищено lock
+    private List<Consumer<State>> pendingMutations; // изменения, пришедшие во время загрузки из БД
+    private volatile ConsistencyReport lastReport;
+
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return state != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Состояние слота по данным индекса.
+     * @return UNKNOWN, если индекс не построен или слот вне горизонта индекса
+     */
+    public SlotState slotState(Long scheduleId) {
+        if (scheduleId == null) {
+            return SlotState.UNKNOWN;
+        }
+        lock.readLock().lock();
+        try {
+            return state != null ? state.stateOf(scheduleId) : SlotState.UNKNOWN;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ID свободных слотов врача на дату по времени начала (при равенстве - по id слота).
+     * Ответ - кандидаты: слоты могли занять на других узлах, а созданных или освобожденных
+     * там индекс до сверки не знает.
+     * @return пустое значение, если индекс не может ответить (не построен или дата вне горизонта)
+     */
+    public Optional<List<Long>> freeSlotIds(LocalDate date, long doctorId) {
+        long epochDay = date.toEpochDay();
+        lock.readLock().lock();
+        try {
+            if (state == null || epochDay < state.horizonEpochDay) {
+                return Optional.empty();
+            }
+            return Optional.of(state.freeIds(doctorId, epochDay));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Первые limit свободных слотов врачей doctorIds с началом в [from, to) и длительностью
+     * не меньше minDurationMinutes - по времени начала, при равенстве по id слота.
+     * Слоты каждого врача в индексе уже упорядочены (дни по порядку, в дне - по времени), поэтому
+     * списки сливаются через кучу курсоров (k-way merge): из кучи берется самый ранний слот,
+     * курсор его врача сдвигается к следующему подходящему. Дни без свободных слотов
+     * пропускаются по счетчику, в дне свободные ищутся по битовой карте - работа пропорциональна
+     * limit и числу врачей, а не числу слотов в окне.
+     * @return пустое значение, если индекс не может ответить (не построен или from раньше горизонта)
+     */
+    public Optional<List<FreeSlot>> earliestFree(Collection<Long> doctorIds, LocalDateTime from, LocalDateTime to,
+                                                 int minDurationMinutes, int limit) {
+        // Время слотов в индексе - минуты; слот подходит, если его минута начала в [fromMinute, toMinute)
+        long fromMinute = Math.floorDiv(from.toEpochSecond(ZoneOffset.UTC) + 59, 60);
+        long toMinute = Math.floorDiv(to.toEpochSecond(ZoneOffset.UTC) + 59, 60);
+        lock.readLock().lock();
+        try {
+            if (state == null || Math.floorDiv(fromMinute, MINUTES_PER_DAY) < state.horizonEpochDay) {
+                return Optional.empty();
+            }
+            if (fromMinute >= toMinute || limit <= 0) {
+                return Optional.of(List.of());
+            }
+            return Optional.of(state.earliestFree(doctorIds, fromMinute, toMinute, minDurationMinutes, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public FootprintReport footprint() {
+        lock.readLock().lock();
+        try {
+            if (state == null) {
+                return new FootprintReport(0, 0, 0, 0);
+            }
+            long slots = state.slotToDay.size();
+            long bytes = state.estimateBytes();
+            return new FootprintReport(slots, state.days.size(), bytes,
+                    slots > 0 ? bytes * 1_000_000L / slots : 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public ConsistencyReport lastConsistencyReport() {
+        return lastReport;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (!enabled) {
+            log.info("Slot occupancy index is disabled (clinic.slot-index.enabled=false)");
+            return;
+        }
+        synchronizeWithDatabase(true);
+    }
+
+    /**
+     * Режим сверки: периодически сравнивает индекс с БД и (при verify-repair=true)
+     * заменяет его свежей копией - так подтягиваются изменения с других узлов.
+     */
+    @Scheduled(cron = "${clinic.slot-index.verify-cron:0 */10 * * * *}")
+    public void scheduledConsistencyCheck() {
+        if (enabled) {
+            verify(repairOnVerify);
+        }
+    }
+
+    /**
+     * Сверяет индекс с БД.
+     * @param repair заменить индекс данными из БД, если найдены расхождения
+     * @return отчет о сверке (null, если индекс еще не был построен)
+     */
+    public ConsistencyReport verify(boolean repair) {
+        ConsistencyReport report = synchronizeWithDatabase(repair);
+        if (report != null) {
+            if (report.isConsistent()) {
+                log.info("Slot occupancy index is consistent with DB: {} slots checked", report.slotsChecked());
+            } else {
+                log.warn("Slot occupancy index differs from DB: missing={}, extra={}, mismatches={}, repaired={}",
+                        report.missing(), report.extra(), report.availabilityMismatches(), report.repaired());
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Ежедневно удаляет из индекса прошедшие дни.
+     */
+    @Scheduled(cron = "${clinic.slot-index.evict-cron:0 5 0 * * *}")
+    public void evictPastDays() {
+        long horizon = LocalDate.now().minusDays(daysBack).toEpochDay();
+        applyMutation(s -> s.evictBefore(horizon));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSlotChanged(SlotChangedEvent event) {
+        if (event.scheduleId() == null) {
+            return;
+        }
+        long id = event.scheduleId();
+        switch (event.type()) {
+            case ADDED -> applyMutation(s -> s.put(id, event.doctorId(), event.startTime(), event.endTime(), true));
+            case REMOVED -> applyMutation(s -> s.remove(id));
+            case BOOKED, FREED -> {
+                boolean free = event.type() == SlotChangedEvent.Type.FREED;
+                applyMutation(s -> {
+                    if (!s.setAvailable(id, free)) {
+                        s.put(id, event.doctorId(), event.startTime(), event.endTime(), free);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Массовое изменение слотов врача: перечитываем из БД только затронутый диапазон.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSlotsBulkChanged(SlotsBulkChangedEvent event) {
+        if (!isReady()) {
+            return;
+        }
+        List<SlotRow> rows = new ArrayList<>();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.executeWithoutResult(status -> {
+            try (Stream<SlotRow> stream = scheduleRepository.streamSlotsForDoctor(event.doctorId(),
+                    event.from().atStartOfDay(), event.to().plusDays(1).atStartOfDay())) {
+                stream.forEach(rows::add);
+            }
+        });
+        applyMutation(s -> rows.forEach(row -> s.put(row.getId(), row.getDoctorId(), row.getStartTime(),
+                row.getEndTime(), Boolean.TRUE.equals(row.getAvailable()))));
+        log.debug("Slot occupancy index reloaded {} slots of doctor id={} for {}..{}",
+                rows.size(), event.doctorId(), event.from(), event.to());
+    }
+
+    private void applyMutation(Consumer<State> mutation) {
+        lock.writeLock().lock();
+        try {
+            if (state != null) {
+                mutation.accept(state);
+            }
+            if (pendingMutations != null) {
+                pendingMutations.add(mutation);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Загружает актуальное состояние из БД. Изменения, пришедшие во время загрузки,
+     * запоминаются и применяются к новой копии перед заменой (операции идемпотентны).
+     */
+    private ConsistencyReport synchronizeWithDatabase(boolean replace) {
+        if (!loading.compareAndSet(false, true)) {
+            log.info("Slot occupancy index synchronization is already running, skipping");
+            return lastReport;
+        }
+        try {
+            long horizon = LocalDate.now().minusDays(daysBack).toEpochDay();
+            int expectedSize;
+            lock.writeLock().lock();
+            try {
+                pendingMutations = new ArrayList<>();
+                expectedSize = state != null ? state.slotToDay.size() : 1024;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            long startedAt = System.nanoTime();
+            State fresh = null;
+            try {
+                fresh = loadFromDatabase(horizon, expectedSize);
+            } finally {
+                lock.writeLock().lock();
+                try {
+                    if (fresh != null) {
+                        for (Consumer<State> mutation : pendingMutations) {
+                            mutation.accept(fresh);
+                        }
+                    }
+                    pendingMutations = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+
+            ConsistencyReport report = null;
+            lock.writeLock().lock();
+            try {
+                boolean initialLoad = state == null;
+                if (!initialLoad) {
+                    report = compare(state, fresh, replace);
+                    lastReport = report;
+                }
+                if (initialLoad || replace) {
+                    state = fresh;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            FootprintReport footprint = footprint();
+            log.info("Slot occupancy index synchronized in {} ms: {} slots, {} doctor-days, ~{} KB ({} bytes per million slots)",
+                    (System.nanoTime() - startedAt) / 1_000_000, footprint.slots(), footprint.doctorDays(),
+                    footprint.estimatedBytes() / 1024, footprint.bytesPerMillionSlots());
+            return report;
+        } finally {
+            loading.set(false);
+        }
+    }
+
+    private State loadFromDatabase(long horizonEpochDay, int expectedSize) {
+        State fresh = new State(horizonEpochDay, expectedSize);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.executeWithoutResult(status -> {
+            try (Stream<SlotRow> rows = scheduleRepository.streamSlotsStartingFrom(
+                    LocalDate.ofEpochDay(horizonEpochDay).atStartOfDay())) {
+                rows.forEach(row -> fresh.put(row.getId(), row.getDoctorId(), row.getStartTime(),
+                        row.getEndTime(), Boolean.TRUE.equals(row.getAvailable())));
+            }
+        });
+        return fresh;
+    }
+
+    private static ConsistencyReport compare(State current, State fresh, boolean repaired) {
+        long[] checked = {0}, missing = {0}, extra = {0}, mismatches = {0};
+        fresh.slotToDay.forEach((id, dayKey) -> {
+            checked[0]++;
+            long currentDayKey = current.slotToDay.get(id, 0L);
+            if (currentDayKey == 0L) {
+                missing[0]++;
+            } else if (currentDayKey != dayKey || current.stateOf(id) != fresh.stateOf(id)) {
+                mismatches[0]++;
+            }
+        });
+        current.slotToDay.forEach((id, dayKey) -> {
+            if (epochDayOf(dayKey) >= fresh.horizonEpochDay && !fresh.slotToDay.containsKey(id)) {
+                extra[0]++;
+            }
+        });
+        return new ConsistencyReport(LocalDateTime.now(), checked[0], missing[0], extra[0], mismatches[0], repaired);
+    }
+
+    private static long dayKey(long doctorId, long epochDay) {
+        return (doctorId << EPOCH_DAY_BITS) | (epochDay & EPOCH_DAY_MASK);
+    }
+
+    private static long epochDayOf(long dayKey) {
+        return dayKey & EPOCH_DAY_MASK;
+    }
+
+    /**
+     * Содержимое индекса. Не потокобезопасно - доступ только под lock.
+     */
+    private static final class State {
+        long horizonEpochDay;
+        final LongLongHashMap slotToDay; // scheduleId -> ключ дня
+        final Map<Long, DaySlots> days = new HashMap<>(); // ключ дня -> слоты врача за день
+
+        State(long horizonEpochDay, int expectedSize) {
+            this.horizonEpochDay = horizonEpochDay;
+            this.slotToDay = new LongLongHashMap(expectedSize);
+        }
+
+        void put(long id, Long doctorId, LocalDateTime start, LocalDateTime end, boolean free) {
+            if (doctorId == null || start == null) {
+                return;
+            }
+            long epochDay = start.toLocalDate().toEpochDay();
+            remove(id); // время слота могло измениться
+            if (epochDay < horizonEpochDay) {
+                return;
+            }
+            long key = dayKey(doctorId, epochDay);
+            int minuteOfDay = start.getHour() * 60 + start.getMinute();
+            long duration = end != null ? Math.max(0, Duration.between(start, end).toMinutes()) : 0;
+            days.computeIfAbsent(key, k -> new DaySlots())
+                    .insert(id, (short) minuteOfDay, (short) Math.min(duration, Short.MAX_VALUE), free);
+            slotToDay.put(id, key);
+        }
+
+        boolean remove(long id) {
+            long key = slotToDay.get(id, 0L);
+            if (key == 0L) {
+                return false;
+            }
+            slotToDay.remove(id);
+            DaySlots day = days.get(key);
+            if (day != null) {
+                int i = day.indexOf(id);
+                if (i >= 0) {
+                    day.removeAt(i);
+                }
+                if (day.size() == 0) {
+                    days.remove(key);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return false, если слота нет в индексе
+         */
+        boolean setAvailable(long id, boolean free) {
+            long key = slotToDay.get(id, 0L);
+            DaySlots day = key != 0L ? days.get(key) : null;
+            int i = day != null ? day.indexOf(id) : -1;
+            if (i < 0) {
+                return false;
+            }
+            day.setFree(i, free);
+            return true;
+        }
+
+        SlotState stateOf(long id) {
+            long key = slotToDay.get(id, 0L);
+            DaySlots day = key != 0L ? days.get(key) : null;
+            int i = day != null ? day.indexOf(id) : -1;
+            if (i < 0) {
+                return SlotState.UNKNOWN;
+            }
+            return day.isFree(i) ? SlotState.FREE : SlotState.TAKEN;
+        }
+
+        List<Long> freeIds(long doctorId, long epochDay) {
+            DaySlots day = days.get(dayKey(doctorId, epochDay));
+            if (day == null || day.freeCount == 0) {
+                return List.of();
+            }
+            List<Long> ids = new ArrayList<>(day.freeCount);
+            for (int i = day.nextFree(0); i >= 0; i = day.nextFree(i + 1)) {
+                ids.add(day.ids[i]);
+            }
+            return ids;
+        }
+
+        void evictBefore(long newHorizon) {
+            if (newHorizon <= horizonEpochDay) {
+                return;
+            }
+            horizonEpochDay = newHorizon;
+            days.entrySet().removeIf(entry -> {
+                if (epochDayOf(entry.getKey()) >= newHorizon) {
+                    return false;
+                }
+                for (long id : entry.getValue().ids) {
+                    slotToDay.remove(id);
+                }
+                return true;
+            });
+        }
+
+        List<FreeSlot> earliestFree(Collection<Long> doctorIds, long fromMinute, long toMinute,
+                                    int minDuration, int limit) {
+            long fromDay = Math.floorDiv(fromMinute, MINUTES_PER_DAY);
+            int fromMinuteOfDay = (int) (fromMinute - fromDay * MINUTES_PER_DAY);
+            PriorityQueue<DoctorCursor> heap = new PriorityQueue<>(Math.max(1, doctorIds.size()), CURSOR_ORDER);
+            for (Long doctorId : doctorIds) {
+                DoctorCursor cursor = new DoctorCursor(doctorId, fromDay, days.get(dayKey(doctorId, fromDay)));
+                if (cursor.day != null) {
+                    cursor.pos = cursor.day.firstStartingAt(fromMinuteOfDay);
+                }
+                if (advance(cursor, toMinute, minDuration)) {
+                    heap.add(cursor);
+                }
+            }
+            List<FreeSlot> found = new ArrayList<>(Math.min(limit, heap.size() + 1));
+            while (found.size() < limit && !heap.isEmpty()) {
+                DoctorCursor cursor = heap.poll();
+                found.add(cursor.freeSlot());
+                cursor.pos++;
+                if (advance(cursor, toMinute, minDuration)) {
+                    heap.add(cursor);
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Сдвигает курсор к ближайшему свободному слоту длительностью не меньше minDuration,
+         * начиная с позиции pos текущего дня.
+         * @return false, если до конца окна таких слотов у врача нет
+         */
+        private boolean advance(DoctorCursor cursor, long toMinute, int minDuration) {
+            long lastDay = Math.floorDiv(toMinute - 1, MINUTES_PER_DAY);
+            while (true) {
+                DaySlots day = cursor.day;
+                if (day != null && day.freeCount > 0) {
+                    for (int i = day.nextFree(cursor.pos); i >= 0; i = day.nextFree(i + 1)) {
+                        long start = cursor.epochDay * MINUTES_PER_DAY + day.startMinutes[i];
+                        if (start >= toMinute) {
+                            return false;
+                        }
+                        if (day.durations[i] >= minDuration) {
+                            cursor.pos = i;
+                            cursor.startMinute = start;
+                            return true;
+                        }
+                    }
+                }
+                if (++cursor.epochDay > lastDay) {
+                    return false;
+                }
+                cursor.day = days.get(dayKey(cursor.doctorId, cursor.epochDay));
+                cursor.pos = 0;
+            }
+        }
+
+        long estimateBytes() {
+            long bytes = 16L * slotToDay.capacity() + 64;
+            // узел HashMap + ключ Long на каждый день врача
+            bytes += days.size() * 48L;
+            for (DaySlots day : days.values()) {
+                bytes += day.estimateBytes();
+            }
+            return bytes;
+        }
+    }
+
+    private static final Comparator<DoctorCursor> CURSOR_ORDER = Comparator
+            .comparingLong((DoctorCursor cursor) -> cursor.startMinute)
+            .thenComparingLong(cursor -> cursor.day.ids[cursor.pos]);
+
+    /**
+     * Позиция в отсортированном списке свободных слотов одного врача (earliestFree):
+     * день, его слоты и номер текущего слота в дне.
+     */
+    private static final class DoctorCursor {
+        final long doctorId;
+        long epochDay;
+        DaySlots day; // null - у врача нет слотов в этот день
+        int pos;
+        long startMinute; // начало текущего слота, минут от эпохи
+
+        DoctorCursor(long doctorId, long epochDay, DaySlots day) {
+            this.doctorId = doctorId;
+            this.epochDay = epochDay;
+            this.day = day;
+        }
+
+        FreeSlot freeSlot() {
+            LocalDateTime start = LocalDate.ofEpochDay(epochDay).atStartOfDay().plusMinutes(day.startMinutes[pos]);
+            return new FreeSlot(day.ids[pos], doctorId, start, start.plusMinutes(day.durations[pos]));
+        }
+    }
+
+    /**
+     * Слоты одного врача за один день, отсортированные по времени начала.
+     * Дней у врача немного, слотов в дне - десятки, поэтому массивы копируются при вставке/удалении.
+     */
+    private static final class DaySlots {
+        long[] ids = new long[0];
+        short[] startMinutes = new short[0]; // минута от начала дня
+        short[] durations = new short[0];    // длительность в минутах
+        long[] freeBits = new long[0];       // битовая карта свободных слотов
+        int freeCount;
+
+        int size() {
+            return ids.length;
+        }
+
+        int indexOf(long id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        boolean isFree(int i) {
+            return (freeBits[i >>> 6] & (1L << i)) != 0;
+        }
+
+        /**
+         * @return номер первого свободного слота не раньше i или -1
+         */
+        int nextFree(int i) {
+            if (i >= ids.length) {
+                return -1;
+            }
+            int w = i >>> 6;
+            long word = freeBits[w] & (-1L << i);
+            while (word == 0) {
+                if (++w == freeBits.length) {
+                    return -1;
+                }
+                word = freeBits[w];
+            }
+            return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        /**
+         * @return номер первого слота, начинающегося не раньше minuteOfDay (size(), если таких нет)
+         */
+        int firstStartingAt(int minuteOfDay) {
+            int low = 0;
+            int high = startMinutes.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (startMinutes[mid] < minuteOfDay) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        void insert(long id, short startMinute, short duration, boolean free) {
+            int n = ids.length;
+            int pos = 0;
+            while (pos < n && (startMinutes[pos] < startMinute
+                    || (startMinutes[pos] == startMinute && ids[pos] < id))) {
+                pos++;
+            }
+            long[] newIds = new long[n + 1];
+            short[] newStarts = new short[n + 1];
+            short[] newDurations = new short[n + 1];
+            long[] newBits = new long[words(n + 1)];
+            System.arraycopy(ids, 0, newIds, 0, pos);
+            System.arraycopy(ids, pos, newIds, pos + 1, n - pos);
+            System.arraycopy(startMinutes, 0, newStarts, 0, pos);
+            System.arraycopy(startMinutes, pos, newStarts, pos + 1, n - pos);
+            System.arraycopy(durations, 0, newDurations, 0, pos);
+            System.arraycopy(durations, pos, newDurations, pos + 1, n - pos);
+            for (int i = 0; i < n; i++) {
+                if (isFree(i)) {
+                    int target = i < pos ? i : i + 1;
+                    newBits[target >>> 6] |= 1L << target;
+                }
+            }
+            newIds[pos] = id;
+            newStarts[pos] = startMinute;
+            newDurations[pos] = duration;
+            if (free) {
+                newBits[pos >>> 6] |= 1L << pos;
+                freeCount++;
+            }
+            ids = newIds;
+            startMinutes = newStarts;
+            durations = newDurations;
+            freeBits = newBits;
+        }
+
+        /**
+         * @return true, если удаленный слот был свободен
+         */
+        boolean removeAt(int pos) {
+            boolean wasFree = isFree(pos);
+            int n = ids.length;
+            long[] newIds = new long[n - 1];
+            short[] newStarts = new short[n - 1];
+            short[] newDurations = new short[n - 1];
+            long[] newBits = new long[words(n - 1)];
+            System.arraycopy(ids, 0, newIds, 0, pos);
+            System.arraycopy(ids, pos + 1, newIds, pos, n - pos - 1);
+            System.arraycopy(startMinutes, 0, newStarts, 0, pos);
+            System.arraycopy(startMinutes, pos + 1, newStarts, pos, n - pos - 1);
+            System.arraycopy(durations, 0, newDurations, 0, pos);
+            System.arraycopy(durations, pos + 1, newDurations, pos, n - pos - 1);
+            for (int i = 0; i < n; i++) {
+                if (i != pos && isFree(i)) {
+                    int target = i < pos ? i : i - 1;
+                    newBits[target >>> 6] |= 1L << target;
+                }
+            }
+            ids = newIds;
+            startMinutes = newStarts;
+            durations = newDurations;
+            freeBits = newBits;
+            if (wasFree) {
+                freeCount--;
+            }
+            return wasFree;
+        }
+
+        /**
+         * @return true, если состояние изменилось
+         */
+        boolean setFree(int i, boolean free) {
+            if (isFree(i) == free) {
+                return false;
+            }
+            freeBits[i >>> 6] ^= 1L << i;
+            freeCount += free ? 1 : -1;
+            return true;
+        }
+
+        long estimateBytes() {
+            // заголовок объекта + 4 массива с заголовками + данные
+            return 32 + 4 * 16 + ids.length * 8L + startMinutes.length * 2L + durations.length * 2L + freeBits.length * 8L;
+        }
+
+        private static int words(int bits) {
+            return (bits + 63) >>> 6;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.clinic.management.service;
+
+import com.clinic.management.repository.ScheduleRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+/**
+ * Версии данных о слотах по врачу и дню - для ETag списков слотов в JSON API.
+ * Версию хранит БД (slot_day_versions, db/sql/11-slot-day-versions.sql): ее поднимают триггеры
+ * в транзакции любого изменения слотов дня или их врача, поэтому она одинакова на всех узлах.
+ * Совпадение ETag означает, что список не менялся: вместо загрузки списка и сериализации -
+ * один запрос по первичному ключу (врач и день) или по индексу (день, для всех врачей).
+ * Для списков по специализации берется версия дня целиком.
+ */
+@Service
+public class SlotVersionService {
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    /**
+     * Строгий ETag списка свободных слотов на день (врача или всех врачей, если doctorId == null).
+     * Вызывать до чтения данных: изменение, закоммиченное во время чтения, даст новую версию.
+     */
+    @Transactional(readOnly = true)
+    public String etag(LocalDate day, Long doctorId) {
+        long version = doctorId != null
+                ? scheduleRepository.findSlotDayVersion(doctorId, day)
+                : scheduleRepository.findMaxSlotDayVersion(day);
+        return "\"" + (doctorId != null ? doctorId : 0L) + "-" + day.toEpochDay() + "-" + version + "\"";
+    }
+}
@@ -0,0 +1,370 @@
+package com.clinic.management.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Буфер отложенной записи остатков (clinic.stock.write-behind.enabled): изменения копятся
+ * в памяти по лекарствам в LongAdder - параллельные списания одного лекарства не соревнуются
+ * за одну ячейку - и пишутся в БД пачкой (MedicationService.flushStockDeltas). Выдача
+ * (отрицательные изменения) считается отдельно: журнал движения запасов хранит расход
+ * и поступления, а не только их разность.
+ *
+ * Изменения копятся эпохами: сброс запечатывает текущую эпоху и открывает новую, пачка -
+ * все изменения запечатанной эпохи. Прежде чем add вернет управление, изменение записывается
+ * в журнал эпохи - отображенный в память файл в clinic.stock.write-behind.journal-dir.
+ * Запись в отображенную память переживает падение процесса (страницы уже в кэше ОС),
+ * но не падение ОС или отключение питания. Файл удаляется, когда пачка применена;
+ * журналы, оставшиеся после падения, применяются при старте (recover). Повторное применение
+ * исключает отметка пачки в stock_delta_batch (db/sql/09-stock-write-behind.sql).
+ *
+ * Каталог журналов принадлежит одному узлу: у каждого экземпляра приложения должен быть свой.
+ */
+@Service
+public class StockDeltaBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(StockDeltaBuffer.class);
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+    // Запись журнала: id лекарства (8 байт), изменение (4), контрольное значение (4).
+    // Недописанная при падении запись не сходится по контрольному значению и пропускается
+    private static final int RECORD_BYTES = 16;
+    // Полосы счетчика потоков внутри add; соседние полосы разнесены по разным строкам кэша
+    private static final int WRITER_STRIPES = 64;
+    private static final int STRIPE_SPACING = 16;
+
+    /**
+     * Пачка изменений для применения в БД.
+     * @param id номер пачки (имя файла журнала)
+     * @param deltas сумма изменений по каждому лекарству (нулевая, если выдачу возместили поступления)
+     * @param dispensed сколько выдано по каждому лекарству - сумма отрицательных изменений со знаком плюс
+     * @param forgetBatchIds ранее примененные пачки, журналы которых уже удалены, - их отметки больше не нужны
+     */
+    public record Batch(String id, Map<Long, Long> deltas, Map<Long, Long> dispensed, List<String> forgetBatchIds) {
+    }
+
+    @Value("${clinic.stock.write-behind.journal-dir:stock-journal}")
+    private Path journalDir;
+
+    // Сколько изменений помещается в журнал одной эпохи; при переполнении add возвращает false
+    @Value("${clinic.stock.write-behind.journal-records:262144}")
+    private int journalRecords;
+
+    // null - буфер не открыт или журнал не удалось создать: изменения применяются сразу
+    private volatile Epoch current;
+    // Буфер открыт; журнал, который не удалось создать, создается заново при следующем flush
+    private boolean opened;
+
+    // Запечатанные и найденные при старте пачки в порядке применения; под lock
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    private final List<String> forgetBatchIds = new ArrayList<>();
+    private final Object lock = new Object();
+
+    /**
+     * Добавляет изменение остатка в текущую эпоху.
+     * @return false, если буфер не открыт или журнал эпохи заполнен - изменение нужно применить сразу
+     */
+    public boolean add(long medicationId, int delta) {
+        while (true) {
+            Epoch epoch = current;
+            if (epoch == null) {
+                return false;
+            }
+            if (!epoch.enter()) {
+                continue; // эпоху запечатали - уже открыта следующая
+            }
+            try {
+                if (!epoch.journal(medicationId, delta)) {
+                    return false;
+                }
+                Counter counter = epoch.counters.get(medicationId);
+                if (counter == null) {
+                    counter = epoch.counters.computeIfAbsent(medicationId, id -> new Counter());
+                }
+                counter.add(delta);
+                return true;
+            } finally {
+                epoch.exit();
+            }
+        }
+    }
+
+    /**
+     * Находит журналы, оставшиеся от прошлого запуска: они применяются первыми при следующем flush.
+     */
+    public void recover() {
+        if (!Files.isDirectory(journalDir)) {
+            return;
+        }
+        synchronized (lock) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(journalDir, "*" + JOURNAL_SUFFIX)) {
+                for (Path file : files) {
+                    Epoch epoch = current;
+                    if (epoch != null && epoch.file.equals(file)) {
+                        continue;
+                    }
+                    String fileName = file.getFileName().toString();
+                    String batchId = fileName.substring(0, fileName.length() - JOURNAL_SUFFIX.length());
+                    Pending batch = readJournal(batchId, file);
+                    log.warn("Recovered stock delta journal {}: {} medication(s) not yet written to DB",
+                            file, batch.deltas().size());
+                    pending.add(batch);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read stock delta journals in " + journalDir, e);
+            }
+        }
+    }
+
+    // Открывает первую эпоху: с этого момента add принимает изменения
+    public void open() {
+        synchronized (lock) {
+            opened = true;
+            if (current == null) {
+                current = openEpoch();
+            }
+        }
+    }
+
+    /**
+     * Запечатывает текущую эпоху (если в ней есть изменения) и применяет все ожидающие пачки
+     * по порядку. Пачка, которую применить не удалось, остается вместе с журналом
+     * до следующего вызова, следующие за ней ждут.
+     * @param apply применяет пачку в БД одной транзакцией
+     * @return сколько пачек применено
+     */
+    public int flush(Consumer<Batch> apply) {
+        synchronized (lock) {
+            Epoch epoch = current;
+            if (epoch != null && !epoch.isEmpty()) {
+                current = openEpoch();
+                epoch.seal();
+                pending.add(epoch.totals());
+            } else if (epoch == null && opened) {
+                current = openEpoch();
+            }
+            int applied = 0;
+            while (!pending.isEmpty()) {
+                Pending batch = pending.peek();
+                if (!batch.deltas().isEmpty()) {
+                    try {
+                        apply.accept(new Batch(batch.id(), batch.deltas(), batch.dispensed(),
+                                List.copyOf(forgetBatchIds)));
+                    } catch (RuntimeException e) {
+                        log.error("Failed to apply stock delta batch {} ({} medication(s)), will retry: {}",
+                                batch.id(), batch.deltas().size(), e.getMessage(), e);
+                        break;
+                    }
+                    forgetBatchIds.clear();
+                    applied++;
+                }
+                pending.poll();
+                try {
+                    Files.deleteIfExists(batch.file());
+                    if (!batch.deltas().isEmpty()) {
+                        forgetBatchIds.add(batch.id());
+                    }
+                } catch (IOException e) {
+                    // Отметка пачки остается в БД, и при старте журнал будет пропущен
+                    log.warn("Failed to delete applied stock delta journal {}: {}", batch.file(), e.getMessage());
+                }
+            }
+            return applied;
+        }
+    }
+
+    /**
+     * Закрывает буфер (остановка приложения, после flush): новые изменения применяются сразу.
+     * Пустой журнал текущей эпохи удаляется; непустой (изменения после flush) остается до старта.
+     */
+    public void close() {
+        synchronized (lock) {
+            Epoch epoch = current;
+            current = null;
+            opened = false;
+            if (epoch == null) {
+                return;
+            }
+            epoch.seal();
+            if (epoch.isEmpty()) {
+                try {
+                    Files.deleteIfExists(epoch.file);
+                } catch (IOException e) {
+                    log.warn("Failed to delete empty stock delta journal {}: {}", epoch.file, e.getMessage());
+                }
+            } else {
+                log.warn("Stock delta journal {} left with unflushed changes, it will be applied on startup", epoch.file);
+            }
+        }
+    }
+
+    private Epoch openEpoch() {
+        String batchId = UUID.randomUUID().toString();
+        Path file = journalDir.resolve(batchId + JOURNAL_SUFFIX);
+        try {
+            Files.createDirectories(journalDir);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // Отображение остается действительным после закрытия канала
+                MappedByteBuffer journal = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        (long) journalRecords * RECORD_BYTES);
+                return new Epoch(batchId, file, journal, journalRecords);
+            }
+        } catch (IOException e) {
+            log.error("Failed to create stock delta journal {}, stock changes are written directly: {}",
+                    file, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static Pending readJournal(String batchId, Path file) throws IOException {
+        Map<Long, Counter> counters = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer journal = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (int offset = 0; offset + RECORD_BYTES <= journal.limit(); offset += RECORD_BYTES) {
+                long medicationId = journal.getLong(offset);
+                int delta = journal.getInt(offset + 8);
+                if (journal.getInt(offset + 12) == checksum(medicationId, delta)) {
+                    counters.computeIfAbsent(medicationId, id -> new Counter()).add(delta);
+                }
+            }
+        }
+        return Pending.of(batchId, file, counters);
+    }
+
+    // Никогда не 0: пустая (не записанная) ячейка журнала не проходит проверку
+    private static int checksum(long medicationId, int delta) {
+        long mixed = (medicationId * 0x9E3779B97F4A7C15L) ^ (delta * 0xC2B2AE3D27D4EB4FL);
+        return (int) (mixed ^ (mixed >>> 32)) | 1;
+    }
+
+    private record Pending(String id, Path file, Map<Long, Long> deltas, Map<Long, Long> dispensed) {
+
+        static Pending of(String id, Path file, Map<Long, Counter> counters) {
+            Map<Long, Long> deltas = new HashMap<>();
+            Map<Long, Long> dispensed = new HashMap<>();
+            counters.forEach((medicationId, counter) -> {
+                long out = counter.dispensed.sum();
+                long net = counter.received.sum() - out;
+                if (net != 0 || out != 0) {
+                    deltas.put(medicationId, net);
+                }
+                if (out != 0) {
+                    dispensed.put(medicationId, out);
+                }
+            });
+            return new Pending(id, file, deltas, dispensed);
+        }
+    }
+
+    // Выдача и поступления одного лекарства в эпохе
+    private static final class Counter {
+
+        final LongAdder dispensed = new LongAdder();
+        final LongAdder received = new LongAdder();
+
+        void add(int delta) {
+            if (delta < 0) {
+                dispensed.add(-(long) delta);
+            } else {
+                received.add(delta);
+            }
+        }
+    }
+
+    private static final class Epoch {
+
+        final String id;
+        final Path file;
+        final MappedByteBuffer journal;
+        final int capacity;
+        final AtomicInteger next = new AtomicInteger();
+        final ConcurrentHashMap<Long, Counter> counters = new ConcurrentHashMap<>();
+        // Потоки внутри add по полосам: запечатывание ждет, пока они выйдут. Поток входит и выходит
+        // через одну полосу, поэтому полоса с потоком внутри не бывает нулевой (у LongAdder ячейка
+        // потока может смениться, и сумма во время подсчета - ложно нулевой)
+        final AtomicIntegerArray writers = new AtomicIntegerArray(WRITER_STRIPES * STRIPE_SPACING);
+        volatile boolean sealed;
+
+        Epoch(String id, Path file, MappedByteBuffer journal, int capacity) {
+            this.id = id;
+            this.file = file;
+            this.journal = journal;
+            this.capacity = capacity;
+        }
+
+        // Поток объявляет о себе до проверки sealed, seal ставит sealed до подсчета потоков:
+        // либо seal дождется потока, либо поток увидит sealed и уйдет в следующую эпоху
+        boolean enter() {
+            int stripe = stripe();
+            writers.getAndIncrement(stripe);
+            if (sealed) {
+                writers.getAndDecrement(stripe);
+                return false;
+            }
+            return true;
+        }
+
+        void exit() {
+            writers.getAndDecrement(stripe());
+        }
+
+        void seal() {
+            sealed = true;
+            for (int stripe = 0; stripe < WRITER_STRIPES; stripe++) {
+                while (writers.get(stripe * STRIPE_SPACING) != 0) {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+
+        private static int stripe() {
+            int hash = System.identityHashCode(Thread.currentThread());
+            return ((hash ^ (hash >>> 16)) & (WRITER_STRIPES - 1)) * STRIPE_SPACING;
+        }
+
+        boolean journal(long medicationId, int delta) {
+            int slot = next.getAndIncrement();
+            if (slot >= capacity) {
+                return false;
+            }
+            int offset = slot * RECORD_BYTES;
+            journal.putLong(offset, medicationId);
+            journal.putInt(offset + 8, delta);
+            journal.putInt(offset + 12, checksum(medicationId, delta));
+            return true;
+        }
+
+        boolean isEmpty() {
+            return next.get() == 0;
+        }
+
+        Pending totals() {
+            return Pending.of(id, file, counters);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.clinic.management.service;
+
+import com.clinic.management.dto.StockMovement;
+import com.clinic.management.dto.StockPoint;
+import com.clinic.management.repository.StockLedgerRepository;
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Журнал движения запасов: выдача, поступления, автозаказ, корректировки. Строки журнала пишет
+ * тот же оператор или транзакция, что меняет medications.quantity (MedicationService,
+ * MedicationRepositoryCustomImpl, CsvTransferService), поэтому сумма движений лекарства
+ * равна его остатку.
+ *
+ * Остаток на момент T и расход за период не требуют прохода по всей истории: раз в сутки
+ * (clinic.stock.ledger.snapshot-cron) делается снимок остатков и суммарной выдачи, и запрос
+ * читает последний снимок не позже T и движения после него - не больше суток.
+ * История начинается с появления журнала: до первой строки лекарства его остаток - 0.
+ *
+ * Раз в сутки (clinic.stock.ledger.reconcile-cron) журнал сверяется с medications.quantity;
+ * расхождения (изменения в обход приложения) дописываются строками CORRECTION.
+ */
+@Service
+public class StockLedgerService {
+
+    private static final Logger log = LoggerFactory.getLogger(StockLedgerService.class);
+
+    @Autowired
+    private StockLedgerRepository stockLedgerRepository;
+
+    @Autowired
+    private JobCoordinator jobCoordinator;
+
+    // Исправлять ли расхождения, найденные сверкой (false - только предупреждение в логе)
+    @Value("${clinic.stock.ledger.reconcile-repair:true}")
+    private boolean reconcileRepair;
+
+    // Добавляет движения в журнал; вызывается в транзакции, изменившей остатки
+    public void record(List<StockMovement> movements) {
+        stockLedgerRepository.append(movements);
+    }
+
+    public void record(StockMovement movement) {
+        stockLedgerRepository.append(List.of(movement));
+    }
+
+    /**
+     * Начальные остатки лекарств, которых еще нет в журнале (каталог до появления журнала,
+     * данные, загруженные в обход приложения). Вызывается при старте (MedicationService)
+     * до применения отложенных изменений - иначе их движения заменили бы начальный остаток.
+     */
+    @Transactional
+    public int recordOpeningBalances() {
+        int added = stockLedgerRepository.appendOpeningBalances();
+        if (added > 0) {
+            log.info("Stock ledger: recorded opening balances for {} medication(s)", added);
+        }
+        return added;
+    }
+
+    // Плановый снимок остатков: выполняет один узел кластера
+    @Scheduled(cron = "${clinic.stock.ledger.snapshot-cron:0 15 0 * * *}")
+    public void scheduledSnapshot() {
+        jobCoordinator.runExclusive("stock-snapshot", this::takeSnapshot);
+    }
+
+    /**
+     * Снимок остатков для лекарств с движениями после предыдущего снимка. Момент снимка -
+     * начало самой старой открытой транзакции (StockLedgerRepository.commitWatermark):
+     * строка, которая закоммитится позже, получит время после снимка и войдет в следующий.
+     * @return сколько лекарств попало в снимок
+     */
+    @Transactional
+    @Timed(value = "clinic.stock.snapshot", description = "Stock ledger snapshot")
+    public int takeSnapshot() {
+        LocalDateTime at = stockLedgerRepository.commitWatermark();
+        Optional<LocalDateTime> previous = stockLedgerRepository.lastSnapshotTime();
+        if (previous.isPresent() && !previous.get().isBefore(at)) {
+            return 0;
+        }
+        int rows = stockLedgerRepository.insertSnapshot(previous.orElse(null), at);
+        log.info("Stock ledger snapshot at {}: {} medication(s)", at, rows);
+        return rows;
+    }
+
+    // Плановая сверка журнала с остатками: выполняет один узел кластера
+    @Scheduled(cron = "${clinic.stock.ledger.reconcile-cron:0 45 0 * * *}")
+    public void scheduledReconcile() {
+        jobCoordinator.runExclusive("stock-ledger-reconcile", this::reconcile);
+    }
+
+    /**
+     * Сверка журнала с medications.quantity (см. StockLedgerRepository.reconcile).
+     * @return сколько лекарств расходилось с журналом
+     */
+    @Transactional
+    @Timed(value = "clinic.stock.ledger.reconcile", description = "Stock ledger reconciliation with medication quantities")
+    public int reconcile() {
+        int drifted = stockLedgerRepository.reconcile(reconcileRepair);
+        if (drifted > 0) {
+            log.warn("Stock ledger: {} medication(s) did not match the ledger{}", drifted,
+                    reconcileRepair ? ", CORRECTION movements recorded" : "");
+        } else {
+            log.info("Stock ledger reconciliation: no drift");
+        }
+        return drifted;
+    }
+
+    /**
+     * Остаток лекарства на момент at и расход за days дней до него.
+     */
+    @Transactional(readOnly = true)
+    public StockPoint stockAt(Long medicationId, LocalDateTime at, int days) {
+        List<Long> ids = List.of(medicationId);
+        StockLedgerRepository.Totals end = stockLedgerRepository.totalsAt(ids, at)
+                .getOrDefault(medicationId, StockLedgerRepository.Totals.EMPTY);
+        StockLedgerRepository.Totals start = stockLedgerRepository.totalsAt(ids, at.minusDays(days))
+                .getOrDefault(medicationId, StockLedgerRepository.Totals.EMPTY);
+        return new StockPoint(medicationId, at, end.quantity(), days, end.dispensedTotal() - start.dispensedTotal());
+    }
+
+    /**
+     * Сколько выдано каждого из лекарств за последние days дней (лекарств без выдачи в ответе нет).
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, Long> consumption(Collection<Long> medicationIds, int days) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, StockLedgerRepository.Totals> end = stockLedgerRepository.totalsAt(medicationIds, now);
+        Map<Long, StockLedgerRepository.Totals> start = stockLedgerRepository.totalsAt(medicationIds, now.minusDays(days));
+        Map<Long, Long> consumed = new HashMap<>();
+        end.forEach((id, totals) -> {
+            long dispensed = totals.dispensedTotal()
+                    - start.getOrDefault(id, StockLedgerRepository.Totals.EMPTY).dispensedTotal();
+            if (dispensed > 0) {
+                consumed.put(id, dispensed);
+            }
+        });
+        return consumed;
+    }
+}
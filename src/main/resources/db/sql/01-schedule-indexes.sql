@@ -0,0 +1,17 @@
+-- Индексы для поиска свободных слотов.
+-- Hibernate (ddl-auto=update) создает таблицы, но частичные индексы через JPA не описать,
+-- поэтому они создаются здесь; скрипт выполняется после Hibernate и должен быть идемпотентным.
+
+-- Свободные слоты конкретного врача в диапазоне времени
+CREATE INDEX IF NOT EXISTS idx_schedules_doctor_start_available
+    ON schedules (doctor_id, start_time)
+    WHERE is_available;
+
+-- Свободные слоты всех врачей в диапазоне времени (поиск без указания врача)
+CREATE INDEX IF NOT EXISTS idx_schedules_start_available
+    ON schedules (start_time)
+    WHERE is_available;
+
+-- Поиск врачей по специализации
+CREATE INDEX IF NOT EXISTS idx_doctors_specialization
+    ON doctors (specialization);
@@ -0,0 +1,10 @@
+-- Слоты расписания получают ID из последовательности schedules_seq (шаг 50, pooled-оптимизатор).
+-- Раньше таблица использовала IDENTITY, поэтому поднимаем последовательность выше уже занятых ID.
+-- Значение последовательности только растет, так что повторный запуск ничего не меняет.
+SELECT setval('schedules_seq',
+              GREATEST((SELECT last_value FROM schedules_seq),
+                       (SELECT COALESCE(MAX(id), 0) FROM schedules)));
+
+-- Все слоты врача по времени (генерация по шаблонам, расписание врача)
+CREATE INDEX IF NOT EXISTS idx_schedules_doctor_start
+    ON schedules (doctor_id, start_time);
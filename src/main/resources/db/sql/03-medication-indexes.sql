@@ -0,0 +1,5 @@
+-- Лекарства с низким запасом: частичный индекс по условию сравнения двух колонок.
+-- Задание автозаказа читает его порциями по id, не просматривая весь каталог.
+CREATE INDEX IF NOT EXISTS idx_medications_low_stock
+    ON medications (id)
+    WHERE quantity < min_stock_level;
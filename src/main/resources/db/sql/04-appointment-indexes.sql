@@ -0,0 +1,9 @@
+-- Записи по времени приема: сверка счетчиков панели управления считает записи
+-- за сегодня (GROUP BY status) по диапазону, а не по всей таблице.
+CREATE INDEX IF NOT EXISTS idx_appointments_time
+    ON appointments (appointment_time);
+
+-- Записи врача по времени (страница записей врача, API): в секционированной таблице
+-- индекс есть в каждой секции, запрос читает только "горячие" месяцы
+CREATE INDEX IF NOT EXISTS idx_appointments_doctor_time
+    ON appointments (doctor_id, appointment_time);
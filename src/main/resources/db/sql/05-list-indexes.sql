@@ -0,0 +1,18 @@
+-- Индексы под keyset-пагинацию списков: порядок (поле сортировки, id) совпадает
+-- с ORDER BY страницы, так что следующая страница читается с позиции курсора по индексу.
+-- Индекс нужен для каждого поля из SORT_FIELDS сервисов (DoctorService, ScheduleService,
+-- MedicationService); сортировка по id идет по первичному ключу.
+CREATE INDEX IF NOT EXISTS idx_doctors_name_id ON doctors (name, id);
+CREATE INDEX IF NOT EXISTS idx_doctors_specialization_id ON doctors (specialization, id);
+CREATE INDEX IF NOT EXISTS idx_medications_name_id ON medications (name, id);
+CREATE INDEX IF NOT EXISTS idx_medications_quantity_id ON medications (quantity, id);
+CREATE INDEX IF NOT EXISTS idx_medications_price_id ON medications (price, id);
+CREATE INDEX IF NOT EXISTS idx_schedules_start_id ON schedules (start_time, id);
+CREATE INDEX IF NOT EXISTS idx_schedules_end_id ON schedules (end_time, id);
+
+-- Фильтры списков по имени - без учета регистра, как в спецификациях репозиториев:
+-- начало имени врача (lower(name) LIKE 'x%') - по B-дереву с text_pattern_ops (не зависит от
+-- правил сортировки базы), подстрока в названии лекарства (lower(name) LIKE '%x%') - по триграммам
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_doctors_lower_name_prefix ON doctors (lower(name) text_pattern_ops);
+CREATE INDEX IF NOT EXISTS idx_medications_lower_name_trgm ON medications USING gin (lower(name) gin_trgm_ops);
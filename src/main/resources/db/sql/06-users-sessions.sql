@@ -0,0 +1,28 @@
+-- Пользователи и HTTP-сессии: таблицы "user" и session из db/changelog/v.1.0.0
+-- (create-user-tables.xml, create-session-table.xml). Liquibase выключен, поэтому схема - здесь.
+-- "user" - зарезервированное слово PostgreSQL, имя всегда в кавычках.
+CREATE TABLE IF NOT EXISTS "user" (
+    id       BIGSERIAL PRIMARY KEY,
+    username VARCHAR(255),
+    password VARCHAR(255),
+    role     VARCHAR(32)
+);
+CREATE UNIQUE INDEX IF NOT EXISTS uk_user_username ON "user" (username);
+
+CREATE TABLE IF NOT EXISTS session (
+    id          BIGSERIAL PRIMARY KEY,
+    token       VARCHAR(255) NOT NULL,
+    user_id     BIGINT       NOT NULL REFERENCES "user" (id),
+    active      BOOLEAN      NOT NULL,
+    created_at  TIMESTAMP    NOT NULL,
+    expiry_date TIMESTAMP    NOT NULL
+);
+-- Общее хранилище сессий (JdbcSessionRepository): сессия есть и до входа (CSRF-токен формы входа),
+-- поэтому user_id необязателен; атрибуты сессии хранятся одним сериализованным блоком
+ALTER TABLE session ALTER COLUMN user_id DROP NOT NULL;
+ALTER TABLE session ADD COLUMN IF NOT EXISTS last_accessed_at TIMESTAMP;
+ALTER TABLE session ADD COLUMN IF NOT EXISTS max_inactive_seconds INT;
+ALTER TABLE session ADD COLUMN IF NOT EXISTS attributes BYTEA;
+-- Чтение сессии на каждый запрос - по token; чистка истекших - по expiry_date
+CREATE UNIQUE INDEX IF NOT EXISTS uk_session_token ON session (token);
+CREATE INDEX IF NOT EXISTS idx_session_expiry_date ON session (expiry_date);
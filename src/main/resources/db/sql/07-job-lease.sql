@@ -0,0 +1,12 @@
+-- Аренды заданий по расписанию (JobCoordinator): строка на задание и часть его работы.
+-- Задание выполняет узел, захвативший строку; захват возможен только после expires_at,
+-- время берется из часов БД, а не узлов.
+CREATE TABLE IF NOT EXISTS job_lease (
+    job_name     VARCHAR(100) NOT NULL,
+    partition_no INT          NOT NULL,
+    owner        VARCHAR(255) NOT NULL,
+    acquired_at  TIMESTAMPTZ  NOT NULL,
+    expires_at   TIMESTAMPTZ  NOT NULL,
+    finished_at  TIMESTAMPTZ,
+    PRIMARY KEY (job_name, partition_no)
+);
@@ -0,0 +1,34 @@
+-- Поиск по каталогу лекарств (MedicationSearchService, clinic.medication-search.backend=trigram).
+-- Текст нормализуется так же, как запрос в Java: нижний регистр, ё -> е, все, кроме цифр,
+-- латиницы и кириллицы, - пробелы. Слово запроса ищется как начало слова: ' ' || текст LIKE '% слово%'.
+-- Кириллица переводится в нижний регистр явно: lower() и [:alnum:] зависят от LC_CTYPE базы
+-- и при LC_CTYPE=C кириллицу не трогают. Триграммы pg_trgm тоже выделяет по LC_CTYPE: при C
+-- кириллические слова в индекс не попадают, и поиск остается верным, но идет перебором -
+-- для trigram базе нужна UTF-8 локаль (ru_RU.UTF-8, C.UTF-8).
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE OR REPLACE FUNCTION clinic_search_text(text) RETURNS text
+    LANGUAGE sql IMMUTABLE PARALLEL SAFE
+    AS 'SELECT btrim(regexp_replace(translate(lower($1), ''АБВГДЕЁЖЗИЙКЛМНОПРСТУФХЦЧШЩЪЫЬЭЮЯё'',
+        ''абвгдеежзийклмнопрстуфхцчшщъыьэюяе''), ''[^0-9a-zа-я]+'', '' '', ''g''))';
+
+-- Нормализованные тексты хранятся в таблице: иначе при проверке строк, найденных по индексу
+-- (а слово из описания, например форма выпуска, находит десятки тысяч строк), функцию
+-- приходится вычислять заново для каждой. Столбцы и индексы должны совпадать с условиями
+-- в MedicationRepositoryCustomImpl.searchByTrigrams; сущность Medication их не отображает.
+ALTER TABLE medications ADD COLUMN IF NOT EXISTS search_name text
+    GENERATED ALWAYS AS (clinic_search_text(name)) STORED;
+ALTER TABLE medications ADD COLUMN IF NOT EXISTS search_text text
+    GENERATED ALWAYS AS (clinic_search_text(name || ' ' || coalesce(description, ''))) STORED;
+
+-- Названия, начинающиеся с запроса, в порядке названий (COLLATE "C" - порядок кодов символов,
+-- как у String.compareTo в MedicationSearchIndex, и LIKE 'начало%' по B-дереву)
+CREATE INDEX IF NOT EXISTS idx_medications_search_name
+    ON medications ((search_name COLLATE "C"), id);
+
+-- Слова запроса в названии и в названии с описанием
+CREATE INDEX IF NOT EXISTS idx_medications_search_name_trgm
+    ON medications USING gin ((' ' || search_name) gin_trgm_ops);
+
+CREATE INDEX IF NOT EXISTS idx_medications_search_trgm
+    ON medications USING gin ((' ' || search_text) gin_trgm_ops);
@@ -0,0 +1,8 @@
+-- Примененные пачки отложенных изменений остатков (StockDeltaBuffer, clinic.stock.write-behind.enabled).
+-- Номер пачки записывается в той же транзакции, что и изменение остатков: журнал пачки,
+-- оставшийся после падения узла между коммитом и удалением файла, при старте повторно
+-- не применяется. Строку удаляет следующая пачка узла - когда файл журнала уже удален.
+CREATE TABLE IF NOT EXISTS stock_delta_batch (
+    batch_id   VARCHAR(64) PRIMARY KEY,
+    applied_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
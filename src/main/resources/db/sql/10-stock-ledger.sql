@@ -0,0 +1,38 @@
+-- Журнал движения запасов (StockLedgerService): строки только добавляются, каждое изменение
+-- medications.quantity пишет сюда фактическое изменение в той же транзакции. Сумма quantity_change
+-- по лекарству равна его остатку; первая строка - начальный остаток (CORRECTION).
+-- moved_at - время записи строки (clock_timestamp), а не начала транзакции: иначе строка долгой
+-- транзакции получает время задолго до коммита
+CREATE TABLE IF NOT EXISTS stock_movements (
+    id              BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    medication_id   BIGINT      NOT NULL,
+    movement_type   VARCHAR(20) NOT NULL,
+    quantity_change BIGINT      NOT NULL,
+    moved_at        TIMESTAMP   NOT NULL DEFAULT clock_timestamp()::timestamp
+);
+
+-- Для баз, где таблица создана со старым значением по умолчанию (localtimestamp)
+ALTER TABLE stock_movements ALTER COLUMN moved_at SET DEFAULT clock_timestamp()::timestamp;
+
+-- Движения лекарства за период: остаток на момент времени и расход
+CREATE INDEX IF NOT EXISTS idx_stock_movements_medication_time
+    ON stock_movements (medication_id, moved_at);
+
+-- Все движения между двумя снимками. Строки добавляются в порядке времени - BRIN
+-- в сотни раз меньше B-дерева
+CREATE INDEX IF NOT EXISTS idx_stock_movements_moved_at_brin
+    ON stock_movements USING brin (moved_at);
+
+-- Снимки остатков: строка на лекарство, у которого были движения после предыдущего снимка.
+-- dispensed_total - сколько выдано за всю историю журнала к моменту снимка (расход за период -
+-- разность двух значений). Снимки всех лекарств делаются на один момент taken_at.
+CREATE TABLE IF NOT EXISTS stock_snapshots (
+    medication_id   BIGINT    NOT NULL,
+    taken_at        TIMESTAMP NOT NULL,
+    quantity        BIGINT    NOT NULL,
+    dispensed_total BIGINT    NOT NULL,
+    PRIMARY KEY (medication_id, taken_at)
+);
+
+CREATE INDEX IF NOT EXISTS idx_stock_snapshots_taken_at
+    ON stock_snapshots (taken_at);
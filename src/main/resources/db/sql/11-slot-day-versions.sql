@@ -0,0 +1,85 @@
+-- Версии слотов по врачу и дню (SlotVersionService, ETag списков слотов в JSON API).
+-- Версию поднимают триггеры в транзакции самого изменения, каким бы путем оно ни пришло:
+-- запись и отмена (claimSlot/releaseSlot), добавление и удаление слотов, генерация по шаблону,
+-- импорт через COPY, правка имени или специализации врача - на любом узле.
+-- Номер версии берется из общей последовательности, а не +1 к строке: тогда max(version) дня
+-- (список всех врачей) тоже растет при любом изменении любого врача этого дня.
+-- Проверка ETag - один запрос по первичному ключу или по индексу (day, version).
+CREATE SEQUENCE IF NOT EXISTS slot_day_version_seq;
+
+CREATE TABLE IF NOT EXISTS slot_day_versions (
+    doctor_id BIGINT NOT NULL,
+    day       DATE   NOT NULL,
+    version   BIGINT NOT NULL,
+    PRIMARY KEY (doctor_id, day)
+);
+
+CREATE INDEX IF NOT EXISTS idx_slot_day_versions_day
+    ON slot_day_versions (day, version);
+
+-- Триггеры на уровне оператора с таблицами переходов: пакетная вставка поднимает каждый
+-- день врача один раз, а строки версий блокируются в порядке (doctor_id, day) - две пакетные
+-- операции не ждут друг друга по кругу. Запрос, не изменивший строк (проигранный claimSlot),
+-- ничего не пишет. Тело функции - в одинарных кавычках: скрипты делятся на команды по ';'.
+CREATE OR REPLACE FUNCTION clinic_bump_slot_days() RETURNS trigger
+    LANGUAGE plpgsql
+    AS '
+BEGIN
+    IF TG_OP = ''INSERT'' THEN
+        INSERT INTO slot_day_versions (doctor_id, day, version)
+        SELECT doctor_id, day, nextval(''slot_day_version_seq'') FROM (
+            SELECT DISTINCT doctor_id, start_time::date AS day FROM new_rows
+            WHERE doctor_id IS NOT NULL AND start_time IS NOT NULL ORDER BY 1, 2) d
+        ON CONFLICT (doctor_id, day) DO UPDATE SET version = EXCLUDED.version;
+    ELSIF TG_OP = ''UPDATE'' THEN
+        INSERT INTO slot_day_versions (doctor_id, day, version)
+        SELECT doctor_id, day, nextval(''slot_day_version_seq'') FROM (
+            SELECT doctor_id, start_time::date AS day FROM old_rows
+            WHERE doctor_id IS NOT NULL AND start_time IS NOT NULL
+            UNION
+            SELECT doctor_id, start_time::date FROM new_rows
+            WHERE doctor_id IS NOT NULL AND start_time IS NOT NULL ORDER BY 1, 2) d
+        ON CONFLICT (doctor_id, day) DO UPDATE SET version = EXCLUDED.version;
+    ELSE
+        INSERT INTO slot_day_versions (doctor_id, day, version)
+        SELECT doctor_id, day, nextval(''slot_day_version_seq'') FROM (
+            SELECT DISTINCT doctor_id, start_time::date AS day FROM old_rows
+            WHERE doctor_id IS NOT NULL AND start_time IS NOT NULL ORDER BY 1, 2) d
+        ON CONFLICT (doctor_id, day) DO UPDATE SET version = EXCLUDED.version;
+    END IF;
+    RETURN NULL;
+END';
+
+-- Имя и специализация врача видны в списке слотов: поднимаются все его дни
+CREATE OR REPLACE FUNCTION clinic_bump_doctor_slot_days() RETURNS trigger
+    LANGUAGE plpgsql
+    AS '
+BEGIN
+    UPDATE slot_day_versions v SET version = nextval(''slot_day_version_seq'')
+    FROM (SELECT n.id FROM new_rows n JOIN old_rows o ON o.id = n.id
+          WHERE (n.name, n.specialization) IS DISTINCT FROM (o.name, o.specialization)) changed
+    WHERE v.doctor_id = changed.id;
+    RETURN NULL;
+END';
+
+-- Таблица переходов допускает одно событие на триггер. На секционированной schedules
+-- триггеры действуют для всех секций; PartitionManager переносит их при перестройке таблицы
+DROP TRIGGER IF EXISTS schedules_slot_days_insert ON schedules;
+CREATE TRIGGER schedules_slot_days_insert AFTER INSERT ON schedules
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION clinic_bump_slot_days();
+
+DROP TRIGGER IF EXISTS schedules_slot_days_update ON schedules;
+CREATE TRIGGER schedules_slot_days_update AFTER UPDATE ON schedules
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION clinic_bump_slot_days();
+
+DROP TRIGGER IF EXISTS schedules_slot_days_delete ON schedules;
+CREATE TRIGGER schedules_slot_days_delete AFTER DELETE ON schedules
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION clinic_bump_slot_days();
+
+DROP TRIGGER IF EXISTS doctors_slot_days_update ON doctors;
+CREATE TRIGGER doctors_slot_days_update AFTER UPDATE ON doctors
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION clinic_bump_doctor_slot_days();
@@ -0,0 +1,51 @@
+package com.clinic.management;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Встроенный PostgreSQL для тестов: один на JVM, общий для всех контекстов Spring
+ * (как общая база у нескольких экземпляров приложения). Останавливается вместе с JVM.
+ */
+public final class TestDatabase {
+
+    private static EmbeddedPostgres embedded;
+
+    private TestDatabase() {
+    }
+
+    public static synchronized String url() {
+        if (embedded == null) {
+            try {
+                embedded = EmbeddedPostgres.builder()
+                        // UTF-8, как у рабочих баз: иначе pg_trgm не видит кириллицу
+                        .setLocaleConfig("lc-ctype", "C.UTF-8")
+                        .setServerConfig("fsync", "off")
+                        .setServerConfig("synchronous_commit", "off")
+                        .start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to start embedded PostgreSQL", e);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(TestDatabase::shutdown));
+        }
+        return embedded.getJdbcUrl("postgres", "postgres") + "&reWriteBatchedInserts=true";
+    }
+
+    // Для @DynamicPropertySource тестов с @SpringBootTest
+    public static void register(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", TestDatabase::url);
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    private static synchronized void shutdown() {
+        try {
+            embedded.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
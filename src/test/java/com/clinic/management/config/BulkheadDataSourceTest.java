@@ -0,0 +1,83 @@
+package com.clinic.management.config;
+
+import com.clinic.management.TestDatabase;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Все разрешения перегородки заняты, и каждый держатель берет второе соединение (REQUIRES_NEW
+ * внутри транзакции): вложенные соединения выдаются из остатка пула, а не ждут разрешения
+ * до таймаута.
+ */
+class BulkheadDataSourceTest {
+
+    private static final int PERMITS = 2;
+
+    private HikariDataSource pool;
+    private BulkheadDataSource bulkhead;
+
+    @BeforeEach
+    void createPool() {
+        pool = new HikariDataSource();
+        pool.setJdbcUrl(TestDatabase.url());
+        pool.setUsername("postgres");
+        pool.setPassword("postgres");
+        pool.setMaximumPoolSize(PERMITS + 1);
+        bulkhead = new BulkheadDataSource(pool, PERMITS, 100, 2_000, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void closePool() {
+        pool.close();
+    }
+
+    @Test
+    void nestedConnectionsDoNotWaitForPermits() throws Exception {
+        CyclicBarrier allHoldPermits = new CyclicBarrier(PERMITS);
+        ExecutorService executor = Executors.newFixedThreadPool(PERMITS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < PERMITS; i++) {
+                results.add(executor.submit(() -> {
+                    try (Connection outer = bulkhead.getConnection()) {
+                        allHoldPermits.await(5, TimeUnit.SECONDS);
+                        try (Connection nested = bulkhead.getConnection()) {
+                            return nested.isValid(1) && outer.isValid(1) ? 1 : 0;
+                        }
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // разрешения вернулись: снова можно взять PERMITS соединений
+        List<Connection> connections = new ArrayList<>();
+        try {
+            for (int i = 0; i < PERMITS; i++) {
+                connections.add(bulkhead.getConnection());
+            }
+        } finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.clinic.management.controller;
+
+import com.clinic.management.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Изменение, сделанное в обход узла (другим экземпляром), не меняет локальную версию данных,
+ * но отрисованная таблица перестает отдаваться из кэша через clinic.fragment-cache.ttl.
+ * Время кэша управляется тестом (FragmentCache.ticker): результат не зависит от скорости машины.
+ */
+@SpringBootTest(properties = "clinic.fragment-cache.ttl=5s")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class FragmentCacheTest {
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        TestDatabase.register(registry);
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FragmentCache fragmentCache;
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @BeforeEach
+    void createMedication() {
+        fragmentCache.ticker = nanos::get;
+        jdbcTemplate.execute("TRUNCATE medication_orders, medications, stock_movements, stock_snapshots RESTART IDENTITY CASCADE");
+        jdbcTemplate.update("INSERT INTO medications (name, quantity, min_stock_level, price) VALUES ('Анальгин', 50, 10, 100.00)");
+    }
+
+    @Test
+    void changeFromAnotherNodeShowsAfterTtl() throws Exception {
+        assertThat(medicationsPage()).contains("Анальгин");
+        jdbcTemplate.update("UPDATE medications SET name = 'Аспирин'");
+        // версия данных этого узла не изменилась - таблица из кэша
+        assertThat(medicationsPage()).contains("Анальгин");
+
+        nanos.addAndGet(Duration.ofSeconds(4).toNanos());
+        assertThat(medicationsPage()).contains("Анальгин");
+
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertThat(medicationsPage()).contains("Аспирин").doesNotContain("Анальгин");
+    }
+
+    @AfterEach
+    void restoreTicker() {
+        fragmentCache.ticker = System::nanoTime;
+    }
+
+    private String medicationsPage() throws Exception {
+        return mockMvc.perform(get("/medications").with(user("admin").roles("ADMIN")))
+                .andReturn().getResponse().getContentAsString();
+    }
+}
@@ -0,0 +1,86 @@
+package com.clinic.management.controller;
+
+import com.clinic.management.TestDatabase;
+import com.clinic.management.config.SqlStatementCounter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Число SQL-запросов Hibernate на страницу списка не зависит от размера страницы (нет N+1).
+ * Кэш фрагментов и кэш второго уровня выключены - считаются запросы каждой отрисовки.
+ * Счетчик (SqlStatementCounter) сбрасывает SqlStatementsMetricsFilter; MockMvc выполняет
+ * запрос в потоке теста, поэтому значение читается после perform.
+ */
+@SpringBootTest(properties = {
+        "clinic.fragment-cache.max-bytes=0",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ListPageSqlStatementsTest {
+
+    private static final int DOCTORS = 60;
+    private static final int SLOTS_PER_DOCTOR = 2;
+    private static final int MEDICATIONS = 120;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        TestDatabase.register(registry);
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createData() {
+        jdbcTemplate.execute("TRUNCATE appointments, schedules, doctors RESTART IDENTITY CASCADE");
+        jdbcTemplate.execute("TRUNCATE medication_orders, medications, stock_movements, stock_snapshots RESTART IDENTITY CASCADE");
+        jdbcTemplate.update("INSERT INTO doctors (name, specialization) "
+                + "SELECT 'Доктор ' || g, 'Терапевт' FROM generate_series(1, ?) g", DOCTORS);
+        // слоты разных врачей вперемешку - у каждой строки страницы свой врач
+        jdbcTemplate.update("INSERT INTO schedules (id, doctor_id, start_time, end_time, is_available) "
+                        + "SELECT nextval('schedules_seq'), d.id, ?::date + interval '9 hours' + (s * ? + d.id) * interval '15 minutes', "
+                        + "?::date + interval '9 hours' + (s * ? + d.id + 1) * interval '15 minutes', true "
+                        + "FROM doctors d CROSS JOIN generate_series(0, ? - 1) s",
+                LocalDate.now().plusDays(1), DOCTORS, LocalDate.now().plusDays(1), DOCTORS, SLOTS_PER_DOCTOR);
+        jdbcTemplate.update("INSERT INTO medications (name, quantity, min_stock_level, price) "
+                + "SELECT 'Лекарство ' || g, 50, 10, 100.00 FROM generate_series(1, ?) g", MEDICATIONS);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "/doctors, 1",
+            "/schedules, 2",
+            "/medications, 1"
+    })
+    void statementsPerPageDoNotDependOnPageSize(String path, int expected) throws Exception {
+        assertThat(statements(path, 5)).isEqualTo(expected);
+        assertThat(statements(path, 50)).isEqualTo(expected);
+        assertThat(statements(path, 100)).isEqualTo(expected);
+    }
+
+    private int statements(String path, int size) throws Exception {
+        mockMvc.perform(get(path).param("size", String.valueOf(size)).with(user("admin").roles("ADMIN")))
+                .andExpect(status().isOk());
+        return SqlStatementCounter.current();
+    }
+}
@@ -0,0 +1,79 @@
+package com.clinic.management.controller;
+
+import com.clinic.management.TestDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Выдача и поступление через JSON API: остаток меняется сразу (write-behind выключен),
+ * в журнал движения пишутся DISPENSE и RESTOCK.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class MedicationApiControllerTest {
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        TestDatabase.register(registry);
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private long medicationId;
+
+    @BeforeEach
+    void createMedication() {
+        jdbcTemplate.execute("TRUNCATE medication_orders, medications, stock_movements, stock_snapshots RESTART IDENTITY CASCADE");
+        medicationId = jdbcTemplate.queryForObject("INSERT INTO medications (name, quantity, min_stock_level, price) "
+                + "VALUES ('Анальгин', 50, 10, 100.00) RETURNING id", Long.class);
+        jdbcTemplate.update("INSERT INTO stock_movements (medication_id, movement_type, quantity_change) "
+                + "VALUES (?, 'CORRECTION', 50)", medicationId);
+    }
+
+    @Test
+    void dispenseAndRestockAreRecordedInLedger() throws Exception {
+        mockMvc.perform(post("/api/v1/medications/{id}/dispense", medicationId).with(httpBasic("admin", "admin123"))
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"quantity\": 3}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity").value(47))
+                .andExpect(jsonPath("$.deferred").value(false));
+        mockMvc.perform(post("/api/v1/medications/{id}/restock", medicationId).with(httpBasic("admin", "admin123"))
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"quantity\": 10}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity").value(57));
+
+        assertThat(jdbcTemplate.queryForList("SELECT movement_type || ':' || quantity_change FROM stock_movements "
+                + "WHERE medication_id = ? ORDER BY id", String.class, medicationId))
+                .containsExactly("CORRECTION:50", "DISPENSE:-3", "RESTOCK:10");
+    }
+
+    @Test
+    void rejectsNonPositiveQuantityAndUnknownMedication() throws Exception {
+        mockMvc.perform(post("/api/v1/medications/{id}/dispense", medicationId).with(httpBasic("admin", "admin123"))
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"quantity\": 0}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/v1/medications/{id}/dispense", medicationId + 1000).with(httpBasic("admin", "admin123"))
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"quantity\": 1}"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,74 @@
+package com.clinic.management.dto;
+
+import com.clinic.management.entity.Medication;
+import com.clinic.management.entity.Schedule;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Курсор из URL может быть подделан: любой поврежденный или не подходящий к сортировке курсор
+ * ведет на первую страницу, а не в запрос.
+ */
+class KeysetPageTest {
+
+    private static final Sort SCHEDULE_SORT = Sort.by(Sort.Direction.ASC, "startTime", "id");
+
+    @Test
+    void validCursorIsDecoded() {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        keys.put("startTime", LocalDateTime.of(2024, 5, 20, 9, 0));
+        keys.put("id", 42L);
+        String cursor = PageCursor.encode(ScrollPosition.forward(keys));
+
+        KeysetScrollPosition position = KeysetPage.position(cursor, SCHEDULE_SORT, Schedule.class);
+
+        assertThat(position.getKeys()).isEqualTo(keys);
+    }
+
+    @Test
+    void unparsableDateFallsBackToFirstPage() {
+        String cursor = cursor("startTime=T:" + b64("not-a-time"), "id=L:" + b64("42"));
+
+        assertThat(KeysetPage.position(cursor, SCHEDULE_SORT, Schedule.class).isInitial()).isTrue();
+    }
+
+    @Test
+    void valueOfWrongTypeFallsBackToFirstPage() {
+        String cursor = cursor("startTime=S:" + b64("abc"), "id=L:" + b64("42"));
+
+        assertThat(KeysetPage.position(cursor, SCHEDULE_SORT, Schedule.class).isInitial()).isTrue();
+    }
+
+    @Test
+    void primitivePropertyAcceptsBoxedValue() {
+        String cursor = cursor("quantity=I:" + b64("5"), "id=L:" + b64("42"));
+
+        KeysetScrollPosition position = KeysetPage.position(cursor,
+                Sort.by(Sort.Direction.ASC, "quantity", "id"), Medication.class);
+
+        assertThat(position.isInitial()).isFalse();
+    }
+
+    private static String cursor(String... parts) {
+        StringBuilder sb = new StringBuilder("f");
+        for (String part : parts) {
+            int eq = part.indexOf('=');
+            sb.append(';').append(b64(part.substring(0, eq))).append(part.substring(eq));
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String b64(String s) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,115 @@
+package com.clinic.management.service;
+
+import com.clinic.management.TestDatabase;
+import com.clinic.management.exception.SlotUnavailableException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тысячи одновременных записей на несколько слотов: каждый слот занимает ровно один запрос,
+ * остальные получают SlotUnavailableException, двойных записей в БД нет.
+ * Пропускная способность (попыток записи в секунду) и число дважды занятых слотов пишутся в лог.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class AppointmentServiceConcurrencyTest {
+
+    private static final int SLOTS = 5;
+    private static final int THREADS = 32;
+    private static final int CALLS = 2000;
+
+    private static final Logger log = LoggerFactory.getLogger(AppointmentServiceConcurrencyTest.class);
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        TestDatabase.register(registry);
+    }
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private List<Long> slotIds;
+
+    @BeforeEach
+    void createSlots() {
+        jdbcTemplate.execute("TRUNCATE appointments, schedules, doctors RESTART IDENTITY CASCADE");
+        Long doctorId = jdbcTemplate.queryForObject(
+                "INSERT INTO doctors (name, specialization) VALUES ('Доктор', 'Терапевт') RETURNING id", Long.class);
+        slotIds = jdbcTemplate.queryForList("INSERT INTO schedules (id, doctor_id, start_time, end_time, is_available) "
+                        + "SELECT nextval('schedules_seq'), ?, ?::date + interval '9 hours' + g * interval '15 minutes', "
+                        + "?::date + interval '9 hours' + (g + 1) * interval '15 minutes', true "
+                        + "FROM generate_series(0, ? - 1) g RETURNING id",
+                Long.class, doctorId, LocalDate.now().plusDays(1), LocalDate.now().plusDays(1), SLOTS);
+    }
+
+    @Test
+    void concurrentBookingsClaimEachSlotOnce() throws Exception {
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        long elapsedNanos;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> calls = new ArrayList<>();
+            for (int i = 0; i < CALLS; i++) {
+                Long slotId = slotIds.get(i % SLOTS);
+                calls.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        appointmentService.bookAppointment(slotId, "Осмотр");
+                        booked.incrementAndGet();
+                    } catch (SlotUnavailableException e) {
+                        rejected.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            long startedAt = System.nanoTime();
+            start.countDown();
+            for (Future<?> call : calls) {
+                // любое другое исключение (ошибка уникальности, deadlock) валит тест
+                call.get(60, TimeUnit.SECONDS);
+            }
+            elapsedNanos = System.nanoTime() - startedAt;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Integer doubleBooked = jdbcTemplate.queryForObject("SELECT count(*) FROM (SELECT schedule_id FROM appointments "
+                + "GROUP BY schedule_id HAVING count(*) > 1) d", Integer.class);
+        double seconds = elapsedNanos / 1e9;
+        log.info("{} booking attempts on {} slots in {} threads: {} ms, {} attempts/s; booked {}, rejected {}, "
+                        + "double-booked slots {}", CALLS, SLOTS, THREADS, Math.round(seconds * 1000),
+                Math.round(CALLS / seconds), booked.get(), rejected.get(), doubleBooked);
+
+        assertThat(doubleBooked).isZero();
+        assertThat(booked.get()).isEqualTo(SLOTS);
+        assertThat(rejected.get()).isEqualTo(CALLS - SLOTS);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM appointments", Integer.class)).isEqualTo(SLOTS);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM schedules WHERE is_available", Integer.class))
+                .isZero();
+    }
+}
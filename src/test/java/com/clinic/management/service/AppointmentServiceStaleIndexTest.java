@@ -0,0 +1,85 @@
+package com.clinic.management.service;
+
+import com.clinic.management.TestDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Индекс занятости не видит изменений других узлов до сверки: слот, освобожденный
+ * в обход этого узла, должен находиться и заниматься по данным БД.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class AppointmentServiceStaleIndexTest {
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        TestDatabase.register(registry);
+    }
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private SlotOccupancyIndex slotOccupancyIndex;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private LocalDate day;
+    private Long doctorId;
+    private Long slotId;
+
+    @BeforeEach
+    void createTakenSlot() {
+        jdbcTemplate.execute("TRUNCATE appointments, schedules, doctors RESTART IDENTITY CASCADE");
+        day = LocalDate.now().plusDays(1);
+        doctorId = jdbcTemplate.queryForObject(
+                "INSERT INTO doctors (name, specialization) VALUES ('Доктор', 'Терапевт') RETURNING id", Long.class);
+        slotId = jdbcTemplate.queryForObject("INSERT INTO schedules (id, doctor_id, start_time, end_time, is_available) "
+                + "VALUES (nextval('schedules_seq'), ?, ?::date + interval '9 hours', ?::date + interval '9 hours 15 minutes', false) "
+                + "RETURNING id", Long.class, doctorId, day, day);
+        slotOccupancyIndex.verify(true);
+        // другой узел освободил слот: этот узел об изменении не знает
+        jdbcTemplate.update("UPDATE schedules SET is_available = true WHERE id = ?", slotId);
+    }
+
+    @Test
+    void slotFreedOnAnotherNodeIsFoundAndBooked() {
+        assertThat(slotOccupancyIndex.slotState(slotId)).isEqualTo(SlotOccupancyIndex.SlotState.TAKEN);
+
+        assertThat(appointmentService.findAvailableSchedules(day, null)).extracting("id").containsExactly(slotId);
+        assertThat(appointmentService.bookAppointment(slotId, "Осмотр").getId()).isNotNull();
+    }
+
+    @Test
+    void doctorDayWithoutFreeSlotsInIndexIsAnsweredByDatabase() {
+        assertThat(slotOccupancyIndex.freeSlotIds(day, doctorId)).contains(List.of());
+
+        assertThat(appointmentService.findAvailableSchedules(day, doctorId)).extracting("id").containsExactly(slotId);
+    }
+
+    @Test
+    void indexCandidatesTakenOnAnotherNodeAreFilteredOut() {
+        Long secondSlotId = jdbcTemplate.queryForObject("INSERT INTO schedules (id, doctor_id, start_time, end_time, is_available) "
+                + "VALUES (nextval('schedules_seq'), ?, ?::date + interval '10 hours', ?::date + interval '10 hours 15 minutes', true) "
+                + "RETURNING id", Long.class, doctorId, day, day);
+        slotOccupancyIndex.verify(true);
+        // другой узел занял первый слот
+        jdbcTemplate.update("UPDATE schedules SET is_available = false WHERE id = ?", slotId);
+        assertThat(slotOccupancyIndex.freeSlotIds(day, doctorId)).contains(List.of(slotId, secondSlotId));
+
+        assertThat(appointmentService.findAvailableSchedules(day, doctorId)).extracting("id").containsExactly(secondSlotId);
+    }
+}
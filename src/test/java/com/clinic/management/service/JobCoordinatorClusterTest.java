@@ -0,0 +1,126 @@
+package com.clinic.management.service;
+
+import com.clinic.management.ClinicManagementApplication;
+import com.clinic.management.TestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Два экземпляра приложения (два контекста Spring) на одной базе: cron срабатывает на обоих
+ * одновременно, и каждое задание и каждая его часть выполняется ровно один раз за запуск.
+ * Узел, сработавший позже завершения запуска (в пределах min-hold), его не повторяет.
+ */
+class JobCoordinatorClusterTest {
+
+    private static final int FIRINGS = 3;
+    private static final int PARTITIONS = 8;
+
+    private static final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    @BeforeAll
+    static void startNodes() {
+        for (int i = 0; i < 2; i++) {
+            // Аргументами командной строки, чтобы перекрыть application.properties
+            nodes.add(new SpringApplicationBuilder(ClinicManagementApplication.class)
+                    .profiles("test")
+                    .run("--spring.datasource.url=" + TestDatabase.url(),
+                            "--spring.datasource.username=postgres",
+                            "--spring.datasource.password=postgres",
+                            "--clinic.jobs.min-hold=1s"));
+        }
+        nodes.get(0).getBean(JdbcTemplate.class).update("DELETE FROM job_lease WHERE job_name LIKE 'cluster-test-%'");
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void exclusiveJobRunsOncePerFiring() throws Exception {
+        for (int firing = 0; firing < FIRINGS; firing++) {
+            AtomicInteger runs = new AtomicInteger();
+            List<Boolean> ran = fireOnAllNodes(coordinator -> coordinator.runExclusive("cluster-test-exclusive", () -> {
+                runs.incrementAndGet();
+                sleep(300);
+            }));
+            assertThat(runs.get()).as("runs in firing %d", firing).isEqualTo(1);
+            assertThat(ran).containsExactlyInAnyOrder(true, false);
+
+            // опоздавший узел: запуск уже завершен, min-hold не истек
+            assertThat(coordinator(1).runExclusive("cluster-test-exclusive", runs::incrementAndGet)).isFalse();
+            assertThat(runs.get()).isEqualTo(1);
+            sleep(1_100);
+        }
+    }
+
+    @Test
+    void eachPartitionRunsOncePerFiring() throws Exception {
+        for (int firing = 0; firing < FIRINGS; firing++) {
+            ConcurrentHashMap<Integer, AtomicInteger> runs = new ConcurrentHashMap<>();
+            List<Integer> done = fireOnAllNodes(coordinator -> coordinator.runPartitioned("cluster-test-partitioned",
+                    PARTITIONS, partition -> {
+                        runs.computeIfAbsent(partition, p -> new AtomicInteger()).incrementAndGet();
+                        sleep(50);
+                    }));
+            assertThat(runs).as("partitions in firing %d", firing).hasSize(PARTITIONS);
+            runs.forEach((partition, count) -> assertThat(count.get()).as("partition %d", partition).isEqualTo(1));
+            assertThat(done.stream().mapToInt(Integer::intValue).sum()).isEqualTo(PARTITIONS);
+            sleep(1_100);
+        }
+    }
+
+    private static JobCoordinator coordinator(int node) {
+        return nodes.get(node).getBean(JobCoordinator.class);
+    }
+
+    // Один и тот же запуск на всех узлах одновременно - как cron на нескольких экземплярах
+    private static <T> List<T> fireOnAllNodes(Function<JobCoordinator, T> firing) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(nodes.size());
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < nodes.size(); i++) {
+                JobCoordinator coordinator = coordinator(i);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return firing.apply(coordinator);
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(30, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
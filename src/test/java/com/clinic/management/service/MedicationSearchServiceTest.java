@@ -0,0 +1,56 @@
+package com.clinic.management.service;
+
+import com.clinic.management.TestDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Поиск по триграммам дает тот же результат, что индекс в памяти: и для частых слов описания
+ * (находятся в начале списка по названию), и для редких, и для слов, которых нет в начале списка.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class MedicationSearchServiceTest {
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        TestDatabase.register(registry);
+    }
+
+    @Autowired
+    private MedicationSearchService medicationSearchService;
+
+    @Autowired
+    private MedicationSearchIndex medicationSearchIndex;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createCatalog() {
+        jdbcTemplate.execute("TRUNCATE medication_orders, medications, stock_movements, stock_snapshots RESTART IDENTITY CASCADE");
+        // 3000 лекарств: каждое третье - капсулы; мазь - только у названий на «Я», в конце списка
+        jdbcTemplate.update("INSERT INTO medications (name, description, quantity, min_stock_level, price) "
+                + "SELECT CASE WHEN g > 2990 THEN 'Ялекс ' ELSE 'Амбро ' END || g || ' мг', "
+                + "CASE WHEN g > 2990 THEN 'Мазь' WHEN g % 3 = 0 THEN 'Капсулы' ELSE 'Таблетки' END || ', Озон', "
+                + "100, 10, 100.00 FROM generate_series(1, 3000) g");
+        jdbcTemplate.execute("ANALYZE medications");
+        medicationSearchIndex.rebuild();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"кап", "таблетки озон", "мазь", "озон", "амбро 15", "ялекс", "15 мг", "нет такого"})
+    void trigramMatchesMemory(String query) {
+        assertThat(medicationSearchService.search(query, 10, MedicationSearchService.Backend.TRIGRAM))
+                .isEqualTo(medicationSearchService.search(query, 10, MedicationSearchService.Backend.MEMORY));
+    }
+}
@@ -0,0 +1,84 @@
+package com.clinic.management.service;
+
+import com.clinic.management.TestDatabase;
+import com.clinic.management.dto.SlotView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Ближайшие свободные слоты: если индекс занятости (локальный для узла) знает меньше слотов,
+ * чем запрошено, ответ дополняется из БД - в том числе слотами, созданными на другом узле.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ScheduleServiceEarliestTest {
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        TestDatabase.register(registry);
+    }
+
+    @Autowired
+    private ScheduleService scheduleService;
+
+    @Autowired
+    private SlotOccupancyIndex slotOccupancyIndex;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private LocalDate day;
+    private Long doctorId;
+
+    @BeforeEach
+    void createDoctor() {
+        jdbcTemplate.execute("TRUNCATE appointments, schedules, doctors RESTART IDENTITY CASCADE");
+        day = LocalDate.now().plusDays(1);
+        doctorId = jdbcTemplate.queryForObject(
+                "INSERT INTO doctors (name, specialization) VALUES ('Доктор', 'Терапевт') RETURNING id", Long.class);
+    }
+
+    @Test
+    void slotsUnknownToIndexComeFromDatabase() {
+        Long known = insertSlot(10);
+        slotOccupancyIndex.verify(true);
+        // слоты добавлены другим узлом: индекс этого узла о них не знает
+        Long earlier = insertSlot(9);
+        Long later = insertSlot(11);
+
+        List<SlotView> found = scheduleService.findEarliestAvailable("Терапевт", day.atStartOfDay(),
+                day.plusDays(1).atStartOfDay(), null, 3);
+
+        assertThat(found).extracting(SlotView::id).containsExactly(earlier, known, later);
+    }
+
+    @Test
+    void emptyIndexAnswerFallsBackToDatabase() {
+        slotOccupancyIndex.verify(true);
+        Long slot = insertSlot(9);
+
+        List<SlotView> found = scheduleService.findEarliestAvailable("Терапевт", LocalDateTime.now(),
+                day.plusDays(1).atStartOfDay(), null, 1);
+
+        assertThat(found).extracting(SlotView::id).containsExactly(slot);
+    }
+
+    private Long insertSlot(int hour) {
+        return jdbcTemplate.queryForObject("INSERT INTO schedules (id, doctor_id, start_time, end_time, is_available) "
+                + "VALUES (nextval('schedules_seq'), ?, ?::date + ? * interval '1 hour', "
+                + "?::date + ? * interval '1 hour' + interval '15 minutes', true) RETURNING id",
+                Long.class, doctorId, day, hour, day, hour);
+    }
+}
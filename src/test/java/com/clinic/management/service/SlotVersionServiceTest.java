@@ -0,0 +1,93 @@
+package com.clinic.management.service;
+
+import com.clinic.management.TestDatabase;
+import com.clinic.management.config.SqlStatementCounter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * ETag списков слотов меняется от изменений, сделанных в обход этого узла (другим экземпляром),
+ * и не меняется, пока данные дня те же. Ответ 304 стоит один запрос версии, без чтения списка.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class SlotVersionServiceTest {
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        TestDatabase.register(registry);
+    }
+
+    @Autowired
+    private SlotVersionService slotVersionService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private LocalDate day;
+    private Long doctorId;
+    private Long slotId;
+
+    @BeforeEach
+    void createSlot() {
+        jdbcTemplate.execute("TRUNCATE appointments, schedules, doctors RESTART IDENTITY CASCADE");
+        day = LocalDate.now().plusDays(1);
+        doctorId = jdbcTemplate.queryForObject(
+                "INSERT INTO doctors (name, specialization) VALUES ('Доктор', 'Терапевт') RETURNING id", Long.class);
+        slotId = jdbcTemplate.queryForObject("INSERT INTO schedules (id, doctor_id, start_time, end_time, is_available) "
+                + "VALUES (nextval('schedules_seq'), ?, ?::date + interval '9 hours', ?::date + interval '9 hours 15 minutes', true) "
+                + "RETURNING id", Long.class, doctorId, day, day);
+    }
+
+    @Test
+    void etagFollowsDatabaseChanges() {
+        String doctorEtag = slotVersionService.etag(day, doctorId);
+        String dayEtag = slotVersionService.etag(day, null);
+        assertThat(slotVersionService.etag(day, doctorId)).isEqualTo(doctorEtag);
+        assertThat(slotVersionService.etag(day.plusDays(1), doctorId)).isNotEqualTo(doctorEtag);
+
+        jdbcTemplate.update("UPDATE schedules SET is_available = false WHERE id = ?", slotId);
+        String bookedEtag = slotVersionService.etag(day, doctorId);
+        assertThat(bookedEtag).isNotEqualTo(doctorEtag);
+        assertThat(slotVersionService.etag(day, null)).isNotEqualTo(dayEtag);
+
+        // специализация и имя врача входят в список слотов
+        jdbcTemplate.update("UPDATE doctors SET name = 'Доктор Петров' WHERE id = ?", doctorId);
+        assertThat(slotVersionService.etag(day, doctorId)).isNotEqualTo(bookedEtag);
+    }
+
+    @Test
+    void notModifiedCostsOneStatement() throws Exception {
+        for (String doctor : new String[]{String.valueOf(doctorId), ""}) {
+            String etag = mockMvc.perform(get("/api/v1/slots").param("date", day.toString()).param("doctorId", doctor)
+                            .with(user("admin").roles("ADMIN")))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getHeader("ETag");
+
+            mockMvc.perform(get("/api/v1/slots").param("date", day.toString()).param("doctorId", doctor)
+                            .header("If-None-Match", etag).with(user("admin").roles("ADMIN")))
+                    .andExpect(status().isNotModified());
+            // счетчик сбрасывает SqlStatementsMetricsFilter; MockMvc выполняет запрос в потоке теста
+            assertThat(SqlStatementCounter.current()).isLessThanOrEqualTo(1);
+        }
+    }
+}
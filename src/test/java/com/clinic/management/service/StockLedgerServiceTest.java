@@ -0,0 +1,95 @@
+package com.clinic.management.service;
+
+import com.clinic.management.TestDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Снимки журнала движения не теряют строки транзакций, закоммиченных после снимка,
+ * а сверка находит и исправляет изменения остатков в обход журнала.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class StockLedgerServiceTest {
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        TestDatabase.register(registry);
+    }
+
+    @Autowired
+    private StockLedgerService stockLedgerService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private long committedId;
+    private long pendingId;
+
+    @BeforeEach
+    void createMedications() {
+        jdbcTemplate.execute("TRUNCATE medication_orders, medications, stock_movements, stock_snapshots RESTART IDENTITY CASCADE");
+        committedId = insertMedication("Анальгин", 20);
+        pendingId = insertMedication("Аспирин", 0);
+        jdbcTemplate.update("INSERT INTO stock_movements (medication_id, movement_type, quantity_change) "
+                + "VALUES (?, 'CORRECTION', 20)", committedId);
+    }
+
+    @Test
+    void snapshotDoesNotSkipMovementsCommittedAfterIt() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement restock = connection.prepareStatement(
+                    "WITH changed AS (UPDATE medications SET quantity = quantity + 10 WHERE id = ? RETURNING id) "
+                            + "INSERT INTO stock_movements (medication_id, movement_type, quantity_change) "
+                            + "SELECT id, 'RESTOCK', 10 FROM changed")) {
+                restock.setLong(1, pendingId);
+                restock.executeUpdate();
+            }
+            Thread.sleep(50);
+            // транзакция с поступлением еще открыта: снимок берет только закоммиченное до нее
+            assertThat(stockLedgerService.takeSnapshot()).isEqualTo(1);
+            connection.commit();
+        }
+        Thread.sleep(50);
+        assertThat(stockLedgerService.takeSnapshot()).isEqualTo(1);
+
+        assertThat(stockLedgerService.stockAt(pendingId, LocalDateTime.now(), 30).quantity()).isEqualTo(10);
+        assertThat(stockLedgerService.stockAt(committedId, LocalDateTime.now(), 30).quantity()).isEqualTo(20);
+        assertThat(jdbcTemplate.queryForObject("SELECT quantity FROM stock_snapshots WHERE medication_id = ?",
+                Long.class, pendingId)).isEqualTo(10);
+        assertThat(stockLedgerService.reconcile()).isZero();
+    }
+
+    @Test
+    void reconcileRecordsDriftAsCorrection() {
+        stockLedgerService.takeSnapshot();
+        // изменение в обход приложения
+        jdbcTemplate.update("UPDATE medications SET quantity = quantity - 5 WHERE id = ?", committedId);
+
+        assertThat(stockLedgerService.reconcile()).isEqualTo(1);
+        assertThat(stockLedgerService.stockAt(committedId, LocalDateTime.now(), 30).quantity()).isEqualTo(15);
+        assertThat(stockLedgerService.reconcile()).isZero();
+    }
+
+    private long insertMedication(String name, int quantity) {
+        return jdbcTemplate.queryForObject("INSERT INTO medications (name, quantity, min_stock_level, price) "
+                + "VALUES (?, ?, 1, 10.00) RETURNING id", Long.class, name, quantity);
+    }
+}